@@ -28,12 +28,15 @@ import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.reader.osm.conditional.DateRangeParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.CustomizableContractionHierarchies;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
 import com.graphhopper.routing.lm.LMPreparationHandler;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.querygraph.QueryGraphPool;
 import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
 import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks.PrepareJob;
 import com.graphhopper.routing.util.*;
@@ -42,9 +45,11 @@ import com.graphhopper.routing.util.parsers.*;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.SpeedOverlay;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.SnapCache;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
@@ -63,6 +68,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -96,6 +104,8 @@ public class GraphHopper {
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
     private boolean sortGraph = false;
+    private boolean sortTurnCosts = false;
+    private boolean edgeKVStringDictionary = false;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -103,10 +113,12 @@ public class GraphHopper {
     private final OSMReaderConfig osmReaderConfig = new OSMReaderConfig();
     // for routing
     private final RouterConfig routerConfig = new RouterConfig();
+    private ExecutorService viaLegExecutor;
     // for index
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private boolean packedRTreeIndex = false;
     // subnetworks
     private int minNetworkSize = 200;
     private int subnetworksThreads = 1;
@@ -120,7 +132,17 @@ public class GraphHopper {
     // preparation handlers
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
-    private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    // replaced as a whole when a CH graph changes, see replaceCHGraph
+    private volatile Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private int chUnpackingCacheSize = 0;
+    private int routeResponseCacheSizeMB = 0;
+    private RouteResponseCache routeResponseCache;
+    private SpeedOverlay speedOverlay;
+    private int snapCacheSize = 0;
+    private SnapCache snapCache;
+    private boolean reuseQueryGraphs = false;
+    private QueryGraphPool queryGraphPool;
+    private RouterMetrics routerMetrics;
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
 
     // for data reader
@@ -191,6 +213,92 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Use a packed R-tree over the edge segments as location index instead of tiles with a fixed resolution, see
+     * {@link LocationIndexTree#setPackedRTree(boolean)}.
+     */
+    public GraphHopper setPackedRTreeIndex(boolean packedRTreeIndex) {
+        ensureNotLoaded();
+        this.packedRTreeIndex = packedRTreeIndex;
+        return this;
+    }
+
+    /**
+     * Caches the original edges of up to this many shortcuts per CH graph, so the high-level shortcuts of frequent
+     * routes do not have to be unpacked recursively for every request. 0 disables the cache.
+     */
+    public GraphHopper setCHUnpackingCacheSize(int chUnpackingCacheSize) {
+        ensureNotLoaded();
+        this.chUnpackingCacheSize = chUnpackingCacheSize;
+        return this;
+    }
+
+    /**
+     * Caches the responses of route requests using up to this many MB, so exact repeats of a request are not
+     * calculated again. The cache is emptied when the graph is (re)loaded. 0 disables the cache.
+     */
+    public GraphHopper setRouteResponseCacheSizeMB(int routeResponseCacheSizeMB) {
+        ensureNotLoaded();
+        this.routeResponseCacheSizeMB = routeResponseCacheSizeMB;
+        return this;
+    }
+
+    /**
+     * @return the cache for the responses of route requests or null if it is disabled
+     */
+    public RouteResponseCache getRouteResponseCache() {
+        return routeResponseCache;
+    }
+
+    /**
+     * Returns the overlay that limits the speed of the edges for flexible and LM requests with custom profiles, e.g. to
+     * apply live traffic without blocking requests. Every update also empties the route response cache.
+     *
+     * @return null if the graph was not loaded yet
+     */
+    public SpeedOverlay getSpeedOverlay() {
+        return speedOverlay;
+    }
+
+    /**
+     * Caches the closest edges of up to this many grid cells of roughly one square meter, so requests starting or
+     * ending at the same places do not have to search the location index again. 0 disables the cache.
+     */
+    public GraphHopper setSnapCacheSize(int snapCacheSize) {
+        ensureNotLoaded();
+        this.snapCacheSize = snapCacheSize;
+        return this;
+    }
+
+    /**
+     * @return the cache for the closest edges of the request points or null if it is disabled
+     */
+    public SnapCache getSnapCache() {
+        return snapCache;
+    }
+
+    /**
+     * Resets and reuses the QueryGraph of the previous request in the same thread instead of creating a new one for
+     * every request, which reduces the allocations of short requests.
+     */
+    public GraphHopper setReuseQueryGraphs(boolean reuseQueryGraphs) {
+        ensureNotLoaded();
+        this.reuseQueryGraphs = reuseQueryGraphs;
+        return this;
+    }
+
+    /**
+     * Sets the receiver of the time spent in each stage of the route requests, e.g. to export it as metrics.
+     */
+    public GraphHopper setRouterMetrics(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+        return this;
+    }
+
+    public RouterMetrics getRouterMetrics() {
+        return routerMetrics;
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize) {
         ensureNotLoaded();
         this.minNetworkSize = minNetworkSize;
@@ -371,6 +479,62 @@ public class GraphHopper {
         return chGraphs;
     }
 
+    /**
+     * Customizes the given CCH with the current weighting of the specified profile including the speed overlay and
+     * replaces its CH graph, see {@link #customizeCH(String, CustomizableContractionHierarchies, PMap)}
+     */
+    public RoutingCHGraph customizeCH(String profileName, CustomizableContractionHierarchies cch) {
+        return customizeCH(profileName, cch, new PMap().putObject(Routing.SPEED_OVERLAY, true));
+    }
+
+    /**
+     * Customizes the given CCH with the current weighting of the specified profile and replaces its CH graph, e.g.
+     * after the speeds of the graph or the speed overlay were changed. The shortcuts are kept in memory only, so after
+     * a restart the CH graph of the preparation is loaded again.
+     *
+     * @param hints the hints used to create the weighting, e.g. speed_overlay=true to use the current speed overlay
+     * @return the previous CH graph, see {@link #replaceCHGraph}
+     */
+    public RoutingCHGraph customizeCH(String profileName, CustomizableContractionHierarchies cch, PMap hints) {
+        Profile profile = profilesByName.get(profileName);
+        if (profile == null || !chGraphs.containsKey(profileName))
+            throw new IllegalArgumentException("There is no CH graph for profile: " + profileName);
+        CHConfig chConfig = CHConfig.nodeBased(profileName, createWeighting(profile, hints));
+        RoutingCHGraph chGraph = cch.customize(chConfig, CHStorage.fromGraph(baseGraph.getBaseGraph(), chConfig, new RAMDirectory()));
+        return replaceCHGraph(profileName, chGraph);
+    }
+
+    /**
+     * Replaces the CH graph of the specified profile. Requests that were started before keep using the previous CH
+     * graph and cached responses are removed.
+     *
+     * @return the previous CH graph. It is not closed, because requests might still use it. Use
+     * {@link RoutingCHGraphImpl#getCHStorage()} to close it later, because closing the CH graph closes the base graph.
+     */
+    public synchronized RoutingCHGraph replaceCHGraph(String profileName, RoutingCHGraph chGraph) {
+        RoutingCHGraph previous = chGraphs.get(profileName);
+        if (previous == null)
+            throw new IllegalArgumentException("There is no CH graph for profile: " + profileName);
+        if (previous.isEdgeBased() != chGraph.isEdgeBased())
+            throw new IllegalArgumentException("The CH graph for profile " + profileName + " must be " + (previous.isEdgeBased() ? "edge-based" : "node-based"));
+        setShortcutUnpackingCache(chGraph);
+        Map<String, RoutingCHGraph> newCHGraphs = new LinkedHashMap<>(chGraphs);
+        newCHGraphs.put(profileName, chGraph);
+        chGraphs = newCHGraphs;
+        RouteResponseCache cache = routeResponseCache;
+        if (cache != null)
+            cache.clear();
+        if (snapCache != null)
+            snapCache.clear();
+        return previous;
+    }
+
+    private void setShortcutUnpackingCache(RoutingCHGraph chGraph) {
+        if (chUnpackingCacheSize > 0 && chGraph instanceof RoutingCHGraphImpl)
+            // shortcuts with only a few original edges are cheap to unpack and not worth caching
+            ((RoutingCHGraphImpl) chGraph).setShortcutUnpackingCache(new ShortcutUnpackingCache(chUnpackingCacheSize, 16));
+    }
+
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
      * or import.
@@ -404,6 +568,26 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Rewrites the turn costs after import such that the entries of every via node are stored contiguously and
+     * sorted, which makes turn cost lookups during edge-based routing and CH preparation faster.
+     */
+    public GraphHopper setSortTurnCosts(boolean sortTurnCosts) {
+        ensureNotLoaded();
+        this.sortTurnCosts = sortTurnCosts;
+        return this;
+    }
+
+    /**
+     * Stores the String values of the edge key-value pairs like street names in a deduplicated dictionary, which makes
+     * the storage smaller and fetching the street name of an edge cheaper.
+     */
+    public GraphHopper setEdgeKVStringDictionary(boolean edgeKVStringDictionary) {
+        ensureNotLoaded();
+        this.edgeKVStringDictionary = edgeKVStringDictionary;
+        return this;
+    }
+
     public boolean isAllowWrites() {
         return allowWrites;
     }
@@ -523,6 +707,8 @@ public class GraphHopper {
         }
 
         sortGraph = ghConfig.getBool("graph.do_sort", sortGraph);
+        sortTurnCosts = ghConfig.getBool("graph.turn_costs.do_sort", sortTurnCosts);
+        edgeKVStringDictionary = ghConfig.getBool("graph.edge_kv.string_dictionary", edgeKVStringDictionary);
         removeZipped = ghConfig.getBool("graph.remove_zipped", removeZipped);
 
         if (!ghConfig.getString("spatial_rules.location", "").isEmpty())
@@ -569,6 +755,7 @@ public class GraphHopper {
 
         // prepare CH&LM
         chPreparationHandler.init(ghConfig);
+        chUnpackingCacheSize = ghConfig.getInt("routing.ch.unpacking_cache_size", chUnpackingCacheSize);
         lmPreparationHandler.init(ghConfig);
 
         // osm import
@@ -588,10 +775,12 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setElevationThreads(ghConfig.getInt("graph.elevation.threads", osmReaderConfig.getElevationThreads()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = ghConfig.getInt("index.max_region_search", maxRegionSearch);
+        packedRTreeIndex = ghConfig.getBool("index.packed_rtree", packedRTreeIndex);
 
         // urban density calculation
         residentialAreaRadius = ghConfig.getDouble("graph.urban_density.residential_radius", residentialAreaRadius);
@@ -605,10 +794,16 @@ public class GraphHopper {
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
-        int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
-        if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
+        routerConfig.setViaLegThreads(ghConfig.getInt(Routing.INIT_VIA_LEG_THREADS, routerConfig.getViaLegThreads()));
+        routeResponseCacheSizeMB = ghConfig.getInt(Routing.INIT_RESPONSE_CACHE_SIZE_MB, routeResponseCacheSizeMB);
+        snapCacheSize = ghConfig.getInt(Routing.INIT_SNAP_CACHE_SIZE, snapCacheSize);
+        reuseQueryGraphs = ghConfig.getBool(Routing.INIT_REUSE_QUERY_GRAPHS, reuseQueryGraphs);
+        // only the stored landmarks can be active
+        int storedLandmarks = lmPreparationHandler.getStoredLandmarks();
+        int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, storedLandmarks));
+        if (activeLandmarkCount > storedLandmarks)
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
-                    + " should be less or equal to landmark count of " + lmPreparationHandler.getLandmarks());
+                    + " should be less or equal to stored landmark count of " + storedLandmarks);
         routerConfig.setActiveLandmarkCount(activeLandmarkCount);
 
         return this;
@@ -772,6 +967,8 @@ public class GraphHopper {
                     .setAutoRemoveTemporaryFiles(removeTempElevationFiles)
                     .setInterpolate(interpolate)
                     .setDAType(elevationDAType);
+            if (ghConfig.has("graph.elevation.max_cached_tiles"))
+                provider.setMaxCachedTiles(ghConfig.getInt("graph.elevation.max_cached_tiles", 64));
             if (!baseURL.isEmpty())
                 provider.setBaseURL(baseURL);
         }
@@ -847,6 +1044,7 @@ public class GraphHopper {
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
                 .setSegmentSize(defaultSegmentSize)
+                .setEdgeKVStringDictionary(edgeKVStringDictionary)
                 .build();
         properties = new StorableProperties(directory);
         checkProfilesConsistency();
@@ -883,6 +1081,11 @@ public class GraphHopper {
             baseGraph = newGraph;
         }
 
+        if (sortTurnCosts && baseGraph.getTurnCostStorage() != null) {
+            baseGraph.getTurnCostStorage().sortByViaNode();
+            logger.info("turn costs sorted (" + getMemInfo() + ")");
+        }
+
         if (hasElevation())
             interpolateBridgesTunnelsAndFerries();
 
@@ -1224,11 +1427,23 @@ public class GraphHopper {
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager(), speedOverlay);
     }
 
     public GHResponse route(GHRequest request) {
-        return createRouter().route(request);
+        RouteResponseCache cache = routeResponseCache;
+        if (cache == null)
+            return createRouter().route(request);
+        // create the key before routing, because the request might be modified while routing
+        String key = RouteResponseCache.createKey(request);
+        GHResponse response = cache.get(key);
+        if (response != null)
+            return response;
+        // the response is outdated if the cache is cleared while routing
+        long generation = cache.getGeneration();
+        response = createRouter().route(request);
+        cache.put(key, response, generation);
+        return response;
     }
 
     private Router createRouter() {
@@ -1239,8 +1454,36 @@ public class GraphHopper {
         if (locationIndex == null)
             throw new IllegalStateException("Location index not initialized");
 
-        return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
+        Router router = doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
                 trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+        if (routerConfig.getViaLegThreads() > 1)
+            router.setViaLegExecutor(getViaLegExecutor());
+        router.setSnapCache(snapCache);
+        if (reuseQueryGraphs)
+            router.setQueryGraphPool(getQueryGraphPool());
+        router.setRouterMetrics(routerMetrics);
+        return router;
+    }
+
+    private synchronized QueryGraphPool getQueryGraphPool() {
+        if (queryGraphPool == null)
+            queryGraphPool = new QueryGraphPool(baseGraph);
+        return queryGraphPool;
+    }
+
+    /**
+     * The executor for the legs of via-routes is shared by all requests so the number of routing threads stays bounded
+     */
+    private synchronized ExecutorService getViaLegExecutor() {
+        if (viaLegExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            viaLegExecutor = Executors.newFixedThreadPool(routerConfig.getViaLegThreads(), r -> {
+                Thread thread = new Thread(r, "via-leg-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return viaLegExecutor;
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
@@ -1255,6 +1498,7 @@ public class GraphHopper {
         LocationIndexTree tmpIndex = new LocationIndexTree(baseGraph, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
+        tmpIndex.setPackedRTree(packedRTreeIndex);
         if (!tmpIndex.loadExisting()) {
             ensureWriteAccess();
             tmpIndex.prepareIndex();
@@ -1271,6 +1515,9 @@ public class GraphHopper {
             throw new IllegalStateException("Cannot initialize locationIndex twice!");
 
         locationIndex = createLocationIndex(baseGraph.getDirectory());
+        if (snapCacheSize > 0 && locationIndex instanceof LocationIndexTree)
+            // the grid cells are roughly one meter wide
+            snapCache = new SnapCache((LocationIndexTree) locationIndex, snapCacheSize, 1e-5);
     }
 
     private String getCHProfileVersion(String profile) {
@@ -1302,7 +1549,7 @@ public class GraphHopper {
         Map<String, PrepareContractionHierarchies.Result> prepared = prepareCH(closeEarly, configsToPrepare);
 
         // we map all profile names for which there is CH support to the according CH graphs
-        chGraphs = new LinkedHashMap<>();
+        Map<String, RoutingCHGraph> chGraphs = new LinkedHashMap<>();
         for (CHProfile chProfile : chPreparationHandler.getCHProfiles()) {
             Stream.of(chProfile.getProfile(), chProfile.getNodeBasedCH()).filter(s -> !s.isEmpty()).forEach(name -> {
                 if (loaded.containsKey(name) && prepared.containsKey(name))
@@ -1317,6 +1564,8 @@ public class GraphHopper {
                     throw new IllegalStateException("CH graph should be either loaded or prepared: " + name);
             });
         }
+        chGraphs.values().forEach(this::setShortcutUnpackingCache);
+        this.chGraphs = chGraphs;
     }
 
     protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
@@ -1404,6 +1653,12 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        if (routeResponseCache != null)
+            routeResponseCache.clear();
+        if (snapCache != null)
+            snapCache.clear();
+        if (viaLegExecutor != null)
+            viaLegExecutor.shutdownNow();
         if (baseGraph != null)
             baseGraph.close();
         if (properties != null)
@@ -1446,6 +1701,16 @@ public class GraphHopper {
 
     private void setFullyLoaded() {
         fullyLoaded = true;
+        // a new cache for each loaded graph, the cached responses of the previous graph are invalid
+        routeResponseCache = routeResponseCacheSizeMB > 0 ? new RouteResponseCache(routeResponseCacheSizeMB * (1L << 20)) : null;
+        speedOverlay = new SpeedOverlay(baseGraph.getEdges(), () -> {
+            RouteResponseCache cache = routeResponseCache;
+            if (cache != null)
+                cache.clear();
+            // the overlay can make the snapped edges inaccessible
+            if (snapCache != null)
+                snapCache.clear();
+        });
     }
 
     public boolean getFullyLoaded() {
@@ -17,7 +17,6 @@
  */
 package com.graphhopper.reader.dem;
 
-import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.util.BitUtil;
 import com.graphhopper.util.Downloader;
@@ -39,8 +38,6 @@ public abstract class AbstractSRTMElevationProvider extends TileBasedElevationPr
     private final int MAX_LAT;
     private final int WIDTH_BYTE_INDEX = 0;
     private final int DEGREE = 1;
-    // use a map as an array is not quite useful if we want to hold only parts of the world
-    private final GHIntObjectHashMap<HeightTile> cacheData = new GHIntObjectHashMap<>();
     private final double precision = 1e7;
     private final double invPrecision = 1 / precision;
 
@@ -59,18 +56,6 @@ public abstract class AbstractSRTMElevationProvider extends TileBasedElevationPr
         return (down(lat) + 90) * 1000 + down(lon) + 180;
     }
 
-    @Override
-    public void release() {
-        cacheData.clear();
-        if (dir != null) {
-            // for memory mapped type we remove temporary files
-            if (autoRemoveTemporary)
-                dir.clear();
-            else
-                dir.close();
-        }
-    }
-
     int down(double val) {
         int intVal = (int) val;
         if (val >= 0 || intVal - val < invPrecision)
@@ -85,58 +70,69 @@ public abstract class AbstractSRTMElevationProvider extends TileBasedElevationPr
         if (lat >= MAX_LAT || lat <= MIN_LAT)
             return 0;
 
-        lat = (int) (lat * precision) / precision;
-        lon = (int) (lon * precision) / precision;
-        int intKey = calcIntKey(lat, lon);
-        HeightTile demProvider = cacheData.get(intKey);
-        if (demProvider == null) {
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
-
-            int minLat = down(lat);
-            int minLon = down(lon);
+        double tileLat = (int) (lat * precision) / precision;
+        double tileLon = (int) (lon * precision) / precision;
+        HeightTile demProvider = tileCache.acquire(calcIntKey(tileLat, tileLon), key -> loadTile((Integer) key, tileLat, tileLon));
+        if (demProvider == null)
+            return 0;
 
-            String fileName = getFileName(lat, lon);
-            if (fileName == null || (Helper.isEmpty(baseUrl) && !new File(fileName).exists()))
+        try {
+            if (demProvider.isSeaLevel())
                 return 0;
 
-            DataAccess heights = getDirectory().create("dem" + intKey);
-            boolean loadExisting = false;
-            try {
-                loadExisting = heights.loadExisting();
-            } catch (Exception ex) {
-                logger.warn("cannot load dem" + intKey + ", error:" + ex.getMessage());
-            }
+            return demProvider.getHeight(tileLat, tileLon);
+        } finally {
+            tileCache.release(demProvider);
+        }
+    }
 
-            if (!loadExisting) {
-                try {
-                    updateHeightsFromFile(lat, lon, heights);
-                } catch (FileNotFoundException ex) {
-                    demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
-                    cacheData.put(intKey, demProvider);
-                    demProvider.setHeights(heights);
-                    demProvider.setSeaLevel(true);
-                    // use small size on disc and in-memory
-                    heights.create(10)
-                            .flush();
-                    return 0;
-                }
-            }
+    private HeightTile loadTile(int intKey, double lat, double lon) {
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+
+        int minLat = down(lat);
+        int minLon = down(lon);
 
-            int width = (int) (Math.sqrt(heights.getHeader(WIDTH_BYTE_INDEX)) + 0.5);
-            if (width == 0)
-                width = DEFAULT_WIDTH;
+        String fileName = getFileName(lat, lon);
+        if (fileName == null || (Helper.isEmpty(baseUrl) && !new File(fileName).exists()))
+            return null;
 
-            demProvider = new HeightTile(minLat, minLon, width, width, precision, DEGREE, DEGREE);
-            cacheData.put(intKey, demProvider);
-            demProvider.setInterpolate(interpolate);
-            demProvider.setHeights(heights);
+        DataAccess heights = getDirectory().create("dem" + intKey);
+        boolean loadExisting = false;
+        try {
+            loadExisting = heights.loadExisting();
+        } catch (Exception ex) {
+            logger.warn("cannot load dem" + intKey + ", error:" + ex.getMessage());
         }
 
-        if (demProvider.isSeaLevel())
-            return 0;
+        if (!loadExisting) {
+            try {
+                updateHeightsFromFile(lat, lon, heights);
+            } catch (FileNotFoundException ex) {
+                HeightTile demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
+                demProvider.setHeights(heights);
+                // use small size on disc and in-memory
+                heights.create(10);
+                demProvider.setSeaLevel(true);
+                heights.flush();
+                return demProvider;
+            }
+        }
+
+        HeightTile seaLevelTile = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
+        seaLevelTile.setHeights(heights);
+        // a sea level tile that was evicted from the cache has no heights, so we must not read it as a normal tile
+        if (seaLevelTile.isSeaLevel())
+            return seaLevelTile;
+
+        int width = (int) (Math.sqrt(heights.getHeader(WIDTH_BYTE_INDEX)) + 0.5);
+        if (width == 0)
+            width = DEFAULT_WIDTH;
 
-        return demProvider.getHeight(lat, lon);
+        HeightTile demProvider = new HeightTile(minLat, minLon, width, width, precision, DEGREE, DEGREE);
+        demProvider.setInterpolate(interpolate);
+        demProvider.setHeights(heights);
+        return demProvider;
     }
 
     private void updateHeightsFromFile(double lat, double lon, DataAccess heights) throws FileNotFoundException {
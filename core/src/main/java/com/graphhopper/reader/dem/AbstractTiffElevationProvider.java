@@ -25,8 +25,6 @@ import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Provides basic methods that are usually used in an ElevationProvider that reads tiff files.
@@ -34,7 +32,6 @@ import java.util.Map;
  * @author Robin Boldt
  */
 public abstract class AbstractTiffElevationProvider extends TileBasedElevationProvider {
-    private final Map<String, HeightTile> cacheData = new HashMap<>();
     final double precision = 1e7;
 
     private final int WIDTH;
@@ -55,18 +52,6 @@ public abstract class AbstractTiffElevationProvider extends TileBasedElevationPr
         this.LON_DEGREE = lonDegree;
     }
 
-    @Override
-    public void release() {
-        cacheData.clear();
-        if (dir != null) {
-            // for memory mapped type we remove temporary files
-            if (autoRemoveTemporary)
-                dir.clear();
-            else
-                dir.close();
-        }
-    }
-
     /**
      * Return true if the coordinates are outside of the supported area
      */
@@ -103,58 +88,62 @@ public abstract class AbstractTiffElevationProvider extends TileBasedElevationPr
         if (isOutsideSupportedArea(lat, lon))
             return 0;
 
-        lat = (int) (lat * precision) / precision;
-        lon = (int) (lon * precision) / precision;
-        String name = getFileName(lat, lon);
-        HeightTile demProvider = cacheData.get(name);
-        if (demProvider == null) {
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
-
-            int minLat = getMinLatForTile(lat);
-            int minLon = getMinLonForTile(lon);
-            // less restrictive against boundary checking
-            demProvider = new HeightTile(minLat, minLon, WIDTH, HEIGHT, LON_DEGREE * precision, LON_DEGREE, LAT_DEGREE);
-            demProvider.setInterpolate(interpolate);
-
-            cacheData.put(name, demProvider);
-            DataAccess heights = getDirectory().create(name + ".gh");
-            demProvider.setHeights(heights);
-            boolean loadExisting = false;
-            try {
-                loadExisting = heights.loadExisting();
-            } catch (Exception ex) {
-                logger.warn("cannot load " + name + ", error: " + ex.getMessage());
-            }
+        double tileLat = (int) (lat * precision) / precision;
+        double tileLon = (int) (lon * precision) / precision;
+        HeightTile demProvider = tileCache.acquire(getFileName(tileLat, tileLon), key -> loadTile((String) key, tileLat, tileLon));
+        try {
+            if (demProvider.isSeaLevel())
+                return 0;
 
-            if (!loadExisting) {
-                File zipFile = new File(cacheDir, new File(getFileNameOfLocalFile(lat, lon)).getName());
-                if (!zipFile.exists())
-                    try {
-                        String zippedURL = getDownloadURL(lat, lon);
-                        downloadToFile(zipFile, zippedURL);
-                    } catch (SSLException ex) {
-                        throw new IllegalStateException("SSL problem with elevation provider " + getClass().getSimpleName(), ex);
-                    } catch (IOException ex) {
-                        demProvider.setSeaLevel(true);
-                        // use small size on disc and in-memory
-                        heights.create(10).flush();
-                        return 0;
-                    }
+            return demProvider.getHeight(tileLat, tileLon);
+        } finally {
+            tileCache.release(demProvider);
+        }
+    }
 
-                // short == 2 bytes
-                heights.create(2L * WIDTH * HEIGHT);
+    private HeightTile loadTile(String name, double lat, double lon) {
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
 
-                Raster raster = readFile(zipFile, name + ".tif");
-                fillDataAccessWithElevationData(raster, heights, WIDTH);
+        int minLat = getMinLatForTile(lat);
+        int minLon = getMinLonForTile(lon);
+        // less restrictive against boundary checking
+        HeightTile demProvider = new HeightTile(minLat, minLon, WIDTH, HEIGHT, LON_DEGREE * precision, LON_DEGREE, LAT_DEGREE);
+        demProvider.setInterpolate(interpolate);
 
-            } // loadExisting
+        DataAccess heights = getDirectory().create(name + ".gh");
+        demProvider.setHeights(heights);
+        boolean loadExisting = false;
+        try {
+            loadExisting = heights.loadExisting();
+        } catch (Exception ex) {
+            logger.warn("cannot load " + name + ", error: " + ex.getMessage());
         }
 
-        if (demProvider.isSeaLevel())
-            return 0;
+        if (!loadExisting) {
+            File zipFile = new File(cacheDir, new File(getFileNameOfLocalFile(lat, lon)).getName());
+            if (!zipFile.exists())
+                try {
+                    String zippedURL = getDownloadURL(lat, lon);
+                    downloadToFile(zipFile, zippedURL);
+                } catch (SSLException ex) {
+                    throw new IllegalStateException("SSL problem with elevation provider " + getClass().getSimpleName(), ex);
+                } catch (IOException ex) {
+                    // use small size on disc and in-memory
+                    heights.create(10);
+                    demProvider.setSeaLevel(true);
+                    heights.flush();
+                    return demProvider;
+                }
+
+            // short == 2 bytes
+            heights.create(2L * WIDTH * HEIGHT);
+
+            Raster raster = readFile(zipFile, name + ".tif");
+            fillDataAccessWithElevationData(raster, heights, WIDTH);
 
-        return demProvider.getHeight(lat, lon);
+        } // loadExisting
+        return demProvider;
     }
 
     abstract Raster readFile(File file, String tifName);
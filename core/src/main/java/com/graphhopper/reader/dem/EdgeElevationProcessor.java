@@ -0,0 +1,196 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import com.graphhopper.routing.OSMReaderConfig;
+import com.graphhopper.routing.util.SlopeCalculator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.*;
+
+import java.util.concurrent.Callable;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Samples and smoothes the elevation of all edges after the import and updates the geometry, the distance and the
+ * slopes of the edges accordingly. This does the same as the OSMReader does for every edge while reading, but the
+ * edges are processed in ranges using multiple threads. The elevation provider therefore has to be thread-safe.
+ * <p>
+ * The raw pillar nodes are kept in a temporary storage via {@link #setRawPillars} until {@link #execute} is called, so
+ * the way geometry of every edge is written only once and the geometry storage does not contain unused bytes. Like the
+ * other per-edge data the temporary storage is created in the directory of the graph.
+ * <p>
+ * Only the elevation lookups, the sampling, the smoothing and the simplification run in parallel. Reading from and
+ * writing to the graph is synchronized.
+ */
+public class EdgeElevationProcessor {
+    private static final int EDGES_PER_TASK = 10_000;
+    private final BaseGraph graph;
+    private final ElevationProvider eleProvider;
+    private final OSMReaderConfig config;
+    private final DistanceCalc distCalc = DistanceCalcEarth.DIST_EARTH;
+    private SlopeCalculator slopeCalculator;
+    private IntPredicate ignorePillarElevation = edge -> false;
+    // the raw pillar nodes of all edges, every entry is the number of pillar nodes followed by lat, lon and ele
+    private final DataAccess rawPillars;
+    // the byte pointer into rawPillars for every edge (8 bytes), -1 if the edge has no pillar nodes
+    private final DataAccess rawPillarPointers;
+    private final BitUtil bitUtil = BitUtil.LITTLE;
+    private int rawPillarEdges;
+    private long rawPillarBytes;
+
+    public EdgeElevationProcessor(BaseGraph graph, ElevationProvider eleProvider, OSMReaderConfig config) {
+        if (!graph.getNodeAccess().is3D())
+            throw new IllegalArgumentException("Elevation processing requires a 3D graph");
+        this.graph = graph;
+        this.eleProvider = eleProvider;
+        this.config = config;
+        this.rawPillars = graph.getDirectory().create("tmp_raw_pillars").create(100);
+        this.rawPillarPointers = graph.getDirectory().create("tmp_raw_pillar_pointers").create(100);
+    }
+
+    /**
+     * Stores the pillar nodes of the specified edge until the elevation is processed. The pillar nodes have to be
+     * in the direction of the edge, i.e. from its base node to its adjacent node.
+     */
+    public void setRawPillars(int edge, PointList pillars) {
+        if (edge != rawPillarEdges)
+            throw new IllegalArgumentException("Raw pillar nodes have to be added in edge order, expected edge "
+                    + rawPillarEdges + " but was " + edge);
+        rawPillarEdges++;
+        long pointerPos = (long) edge * 8;
+        rawPillarPointers.ensureCapacity(pointerPos + 8);
+        long pointer = pillars.isEmpty() ? -1 : rawPillarBytes;
+        rawPillarPointers.setInt(pointerPos, bitUtil.getIntLow(pointer));
+        rawPillarPointers.setInt(pointerPos + 4, bitUtil.getIntHigh(pointer));
+        if (pillars.isEmpty())
+            return;
+        rawPillars.ensureCapacity(rawPillarBytes + 4 + pillars.size() * 12L);
+        rawPillars.setInt(rawPillarBytes, pillars.size());
+        rawPillarBytes += 4;
+        for (int i = 0; i < pillars.size(); i++) {
+            rawPillars.setInt(rawPillarBytes, Helper.degreeToInt(pillars.getLat(i)));
+            rawPillars.setInt(rawPillarBytes + 4, Helper.degreeToInt(pillars.getLon(i)));
+            rawPillars.setInt(rawPillarBytes + 8, Helper.eleToInt(pillars.getEle(i)));
+            rawPillarBytes += 12;
+        }
+    }
+
+    private PointList getRawGeometry(EdgeIteratorState edgeState) {
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        int edge = edgeState.getEdge();
+        long pointer = edge < rawPillarEdges
+                ? bitUtil.combineIntsToLong(rawPillarPointers.getInt(edge * 8L), rawPillarPointers.getInt(edge * 8L + 4))
+                : -1;
+        int count = pointer < 0 ? 0 : rawPillars.getInt(pointer);
+        PointList pointList = new PointList(count + 2, true);
+        pointList.add(nodeAccess, edgeState.getBaseNode());
+        for (int i = 0; i < count; i++) {
+            long pos = pointer + 4 + i * 12L;
+            pointList.add(Helper.intToDegree(rawPillars.getInt(pos)), Helper.intToDegree(rawPillars.getInt(pos + 4)),
+                    Helper.intToEle(rawPillars.getInt(pos + 8)));
+        }
+        pointList.add(nodeAccess, edgeState.getAdjNode());
+        return pointList;
+    }
+
+    /**
+     * Recalculates average_slope and max_slope from the processed geometry.
+     *
+     * @param ignorePillarElevation returns true for the edges where max_slope should only depend on the tower nodes,
+     *                              see {@link SlopeCalculator#ignorePillarElevation}
+     */
+    public EdgeElevationProcessor setSlopeCalculator(SlopeCalculator slopeCalculator, IntPredicate ignorePillarElevation) {
+        this.slopeCalculator = slopeCalculator;
+        this.ignorePillarElevation = ignorePillarElevation;
+        return this;
+    }
+
+    /**
+     * @return true if the specified configuration requires sampling or smoothing of the edge elevation
+     */
+    public static boolean isEnabled(OSMReaderConfig config) {
+        return config.getLongEdgeSamplingDistance() < Double.MAX_VALUE
+                || config.getElevationSmoothing().equals("ramer")
+                || config.getElevationSmoothing().equals("moving_average");
+    }
+
+    public void execute(int threads) {
+        int edges = graph.getEdges();
+        Stream<Callable<String>> workers = IntStream.range(0, (edges + EDGES_PER_TASK - 1) / EDGES_PER_TASK)
+                .mapToObj(task -> () -> {
+                    RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker()
+                            .setMaxDistance(config.getMaxWayPointDistance())
+                            .setElevationMaxDistance(config.getElevationMaxWayPointDistance());
+                    int end = Math.min(edges, (task + 1) * EDGES_PER_TASK);
+                    for (int edge = task * EDGES_PER_TASK; edge < end; edge++) {
+                        processEdge(edge, simplifyAlgo);
+                    }
+                    return "edge_elevation";
+                });
+        GHUtility.runConcurrently(workers, threads);
+        graph.getDirectory().remove(rawPillars.getName());
+        graph.getDirectory().remove(rawPillarPointers.getName());
+    }
+
+    private void processEdge(int edge, RamerDouglasPeucker simplifyAlgo) {
+        EdgeIteratorState edgeState;
+        PointList pointList;
+        synchronized (graph) {
+            edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            pointList = getRawGeometry(edgeState);
+        }
+
+        // sample points along long edges
+        if (config.getLongEdgeSamplingDistance() < Double.MAX_VALUE)
+            pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
+
+        // smooth the elevation before calculating the distance because the distance will be incorrect if calculated afterwards
+        if (config.getElevationSmoothing().equals("ramer"))
+            EdgeElevationSmoothing.smoothRamer(pointList, config.getElevationSmoothingRamerMax());
+        else if (config.getElevationSmoothing().equals("moving_average"))
+            EdgeElevationSmoothing.smoothMovingAverage(pointList);
+
+        if (config.getMaxWayPointDistance() > 0 && pointList.size() > 2)
+            simplifyAlgo.simplify(pointList);
+
+        // the same limits as in OSMReader.addEdge
+        double distance = distCalc.calcDistance(pointList);
+        if (Double.isNaN(distance))
+            distance = 1;
+        distance = Math.max(0.001, Math.min(distance, (Integer.MAX_VALUE - 1) / 1000d));
+
+        synchronized (graph) {
+            if (slopeCalculator != null) {
+                IntsRef edgeFlags = edgeState.getFlags();
+                try {
+                    slopeCalculator.setSlopes(edgeFlags, pointList, ignorePillarElevation.test(edge));
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException(ex.getMessage() + " for edge " + edge, ex);
+                }
+                edgeState.setFlags(edgeFlags);
+            }
+            edgeState.setDistance(distance);
+            edgeState.setWayGeometry(pointList.size() > 2 ? pointList.shallowCopy(1, pointList.size() - 1, false) : PointList.EMPTY);
+        }
+    }
+}
@@ -43,6 +43,10 @@ public class HeightTile {
     private final double latHigherBound;
     private DataAccess heights;
     private boolean interpolate;
+    // the number of lookups currently using this tile, guarded by the HeightTileCache
+    int users;
+    // the first header slot is used by the SRTM providers to store the number of samples
+    private static final int SEA_LEVEL_HEADER = 4;
     private final double MIN_ELEVATION_METERS = -12_000;
     private final double MAX_ELEVATION_METERS = 9_000;
 
@@ -66,11 +70,15 @@ public class HeightTile {
     }
 
     public boolean isSeaLevel() {
-        return heights.getHeader(0) == 1;
+        return heights.getHeader(SEA_LEVEL_HEADER) == 1;
     }
 
+    /**
+     * Marks the tile as sea level. The flag is stored in the header of the DataAccess so that the tile is still
+     * recognized as sea level when it is loaded again from the cache directory.
+     */
     public HeightTile setSeaLevel(boolean b) {
-        heights.setHeader(0, b ? 1 : 0);
+        heights.setHeader(SEA_LEVEL_HEADER, b ? 1 : 0);
         return this;
     }
 
@@ -78,6 +86,10 @@ public class HeightTile {
         this.heights = da;
     }
 
+    DataAccess getHeights() {
+        return heights;
+    }
+
     private short getHeightSample(int x, int y) {
         // always keep in mind factor 2 because of short value
         return heights.getShort(2L * ((long) y * width + x));
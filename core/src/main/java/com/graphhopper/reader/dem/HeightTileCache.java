@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A bounded and thread-safe cache of HeightTiles. If more than maxTiles tiles are open the least recently used tiles
+ * that are not in use by another thread are evicted. For an evicted tile only the in-memory (or mapped) heights are
+ * released, the decoded file stays in the cache directory and is mapped again on the next access.
+ */
+class HeightTileCache<K> {
+    // access order, i.e. the first entry is the least recently used one
+    private final LinkedHashMap<K, HeightTile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    // only one tile is loaded at a time, but lookups of other tiles are not blocked while downloading or decoding
+    private final Object loadLock = new Object();
+    private final Consumer<HeightTile> evictListener;
+    private int maxTiles;
+
+    HeightTileCache(int maxTiles, Consumer<HeightTile> evictListener) {
+        setMaxTiles(maxTiles);
+        this.evictListener = evictListener;
+    }
+
+    synchronized void setMaxTiles(int maxTiles) {
+        if (maxTiles < 1)
+            throw new IllegalArgumentException("The maximum number of cached tiles must be positive but was " + maxTiles);
+        this.maxTiles = maxTiles;
+        evict();
+    }
+
+    synchronized int getMaxTiles() {
+        return maxTiles;
+    }
+
+    /**
+     * Returns the tile of the specified key and creates it via the loader if it is not in this cache. The returned
+     * tile cannot be evicted until {@link #release(HeightTile)} is called for it. If the loader returns null nothing
+     * is cached and null is returned.
+     */
+    HeightTile acquire(K key, Function<K, HeightTile> loader) {
+        HeightTile tile = get(key);
+        if (tile != null)
+            return tile;
+
+        synchronized (loadLock) {
+            // another thread might have loaded the tile while we were waiting
+            tile = get(key);
+            if (tile != null)
+                return tile;
+
+            tile = loader.apply(key);
+            if (tile == null)
+                return null;
+
+            synchronized (this) {
+                tile.users++;
+                tiles.put(key, tile);
+                evict();
+            }
+            return tile;
+        }
+    }
+
+    private synchronized HeightTile get(K key) {
+        HeightTile tile = tiles.get(key);
+        if (tile != null)
+            tile.users++;
+        return tile;
+    }
+
+    synchronized void release(HeightTile tile) {
+        if (tile.users <= 0)
+            throw new IllegalStateException("Tile " + tile + " was not acquired");
+        tile.users--;
+        if (tile.users == 0 && tiles.size() > maxTiles)
+            evict();
+    }
+
+    private void evict() {
+        if (tiles.size() <= maxTiles)
+            return;
+
+        List<HeightTile> evicted = new ArrayList<>();
+        Iterator<Map.Entry<K, HeightTile>> iter = tiles.entrySet().iterator();
+        while (tiles.size() > maxTiles && iter.hasNext()) {
+            HeightTile tile = iter.next().getValue();
+            // tiles that are still in use are kept even if this means we temporarily exceed maxTiles
+            if (tile.users > 0)
+                continue;
+            iter.remove();
+            evicted.add(tile);
+        }
+        evicted.forEach(evictListener);
+    }
+
+    synchronized int size() {
+        return tiles.size();
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+    }
+}
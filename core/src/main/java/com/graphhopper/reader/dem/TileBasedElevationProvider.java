@@ -18,14 +18,19 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Provides basic methods that are usually used in an ElevationProvider using tiles from files.
@@ -42,6 +47,10 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
     boolean interpolate = false;
     boolean autoRemoveTemporary = true;
     long sleep = 2000;
+    // use a map as an array is not quite useful if we want to hold only parts of the world
+    final HeightTileCache<Object> tileCache = new HeightTileCache<>(64, this::evictTile);
+    // the files of evicted tiles are no longer part of the directory but should be removed in release too
+    private final Set<String> evictedTiles = Collections.synchronizedSet(new HashSet<>());
 
     protected TileBasedElevationProvider(String cacheDirString) {
         File cacheDir = new File(cacheDirString);
@@ -103,6 +112,16 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return this;
     }
 
+    /**
+     * Specifies the maximum number of tiles that are kept open. If more tiles are needed the least recently used tile
+     * is closed. As the decoded heights stay in the cache directory reopening a tile is cheap for the storing DATypes
+     * like DAType.MMAP. Default is 64.
+     */
+    public TileBasedElevationProvider setMaxCachedTiles(int maxCachedTiles) {
+        tileCache.setMaxTiles(maxCachedTiles);
+        return this;
+    }
+
     public TileBasedElevationProvider setDownloader(Downloader downloader) {
         this.downloader = downloader;
         return this;
@@ -112,13 +131,35 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return cacheDir;
     }
 
-    protected Directory getDirectory() {
+    protected synchronized Directory getDirectory() {
         if (dir != null)
             return dir;
 
         logger.info(this.toString() + " Elevation Provider, from: " + baseUrl + ", to: " + cacheDir + ", as: " + daType +
-                " using interpolate: " + interpolate);
+                " using interpolate: " + interpolate + ", max cached tiles: " + tileCache.getMaxTiles());
         return dir = new GHDirectory(cacheDir.getAbsolutePath(), daType);
     }
 
+    private void evictTile(HeightTile tile) {
+        DataAccess heights = tile.getHeights();
+        evictedTiles.add(heights.getName());
+        getDirectory().close(heights.getName());
+    }
+
+    @Override
+    public void release() {
+        tileCache.clear();
+        if (dir != null) {
+            // for memory mapped type we remove temporary files
+            if (autoRemoveTemporary) {
+                dir.clear();
+                for (String name : evictedTiles) {
+                    Helper.removeDir(new File(dir.getLocation() + name));
+                }
+            } else
+                dir.close();
+        }
+        evictedTiles.clear();
+    }
+
 }
@@ -22,20 +22,25 @@ import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.LongHashSet;
 import com.carrotsearch.hppc.LongSet;
 import com.carrotsearch.hppc.cursors.LongCursor;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.coll.GHLongLongHashMap;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.dem.EdgeElevationProcessor;
 import com.graphhopper.reader.dem.EdgeElevationSmoothing;
 import com.graphhopper.reader.dem.EdgeSampling;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.routing.OSMReaderConfig;
 import com.graphhopper.routing.ev.Country;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.AreaIndex;
 import com.graphhopper.routing.util.CustomArea;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.routing.util.SlopeCalculator;
 import com.graphhopper.routing.util.countryrules.CountryRule;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.RestrictionSetter;
@@ -88,6 +93,10 @@ public class OSMReader {
     private CountryRuleFactory countryRuleFactory = null;
     private File osmFile;
     private final RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker();
+    // if true the elevation is sampled and smoothed after all edges were read, see EdgeElevationProcessor
+    private final boolean processElevationLater;
+    private EdgeElevationProcessor elevationProcessor;
+    private final GHBitSet ignorePillarElevationEdges = new GHBitSetImpl();
 
     private final IntsRef tempRelFlags;
     private Date osmDataDate;
@@ -108,6 +117,7 @@ public class OSMReader {
         simplifyAlgo.setMaxDistance(config.getMaxWayPointDistance());
         simplifyAlgo.setElevationMaxDistance(config.getElevationMaxWayPointDistance());
         turnCostStorage = baseGraph.getTurnCostStorage();
+        processElevationLater = config.getElevationThreads() > 0 && nodeAccess.is3D() && EdgeElevationProcessor.isEnabled(config);
 
         tempRelFlags = osmParsers.createRelationFlags();
         if (tempRelFlags.length != 2)
@@ -160,6 +170,8 @@ public class OSMReader {
         if (!baseGraph.isInitialized())
             throw new IllegalStateException("BaseGraph must be initialize before we can read OSM");
 
+        if (processElevationLater)
+            elevationProcessor = new EdgeElevationProcessor(baseGraph, eleProvider, config);
         WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess())
                 .setDirectory(baseGraph.getDirectory())
                 .setElevationProvider(eleProvider)
@@ -175,6 +187,9 @@ public class OSMReader {
         osmDataDate = waySegmentParser.getTimeStamp();
         if (baseGraph.getNodes() == 0)
             throw new RuntimeException("Graph after reading OSM must not be empty");
+        // this has to happen before the artificial edges for the restrictions are added as they copy the real edges
+        if (processElevationLater)
+            processElevation();
         releaseEverythingExceptRestrictionData();
         addRestrictionsToGraph();
         releaseRestrictionData();
@@ -182,6 +197,22 @@ public class OSMReader {
                 osmFile.getAbsolutePath(), nf(baseGraph.getNodes()), nf(baseGraph.getEdges()), nf(zeroCounter));
     }
 
+    private void processElevation() {
+        StopWatch sw = new StopWatch().start();
+        osmParsers.getWayTagParsers().stream()
+                .filter(p -> p instanceof SlopeCalculator)
+                .findFirst()
+                .ifPresent(p -> elevationProcessor.setSlopeCalculator((SlopeCalculator) p, ignorePillarElevationEdges::contains));
+        elevationProcessor.execute(config.getElevationThreads());
+        elevationProcessor = null;
+        // the same check as for the edges that are written while reading
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        while (iter.next())
+            checkDistance(iter);
+        LOGGER.info("Sampled and smoothed the elevation of {} edges with {} threads in {}s", nf(baseGraph.getEdges()),
+                config.getElevationThreads(), (int) sw.stop().getSeconds());
+    }
+
     /**
      * @return the timestamp given in the OSM file header or null if not found
      */
@@ -307,7 +338,8 @@ public class OSMReader {
         // to do some kind of elevation processing (bridge+tunnel interpolation in GraphHopper class, maybe this can
         // go together
 
-        if (pointList.is3D()) {
+        // when the elevation is processed later the raw geometry is kept by the EdgeElevationProcessor and simplified afterwards
+        if (pointList.is3D() && !processElevationLater) {
             // sample points along long edges
             if (config.getLongEdgeSamplingDistance() < Double.MAX_VALUE)
                 pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
@@ -319,7 +351,7 @@ public class OSMReader {
                 EdgeElevationSmoothing.smoothMovingAverage(pointList);
         }
 
-        if (config.getMaxWayPointDistance() > 0 && pointList.size() > 2)
+        if (config.getMaxWayPointDistance() > 0 && pointList.size() > 2 && !processElevationLater)
             simplifyAlgo.simplify(pointList);
 
         double distance = distCalc.calcDistance(pointList);
@@ -355,15 +387,25 @@ public class OSMReader {
             edge.setKeyValues(list);
 
         // If the entire way is just the first and last point, do not waste space storing an empty way geometry
+        PointList pillars = PointList.EMPTY;
         if (pointList.size() > 2) {
             // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
             // are equal to the tower node coordinates
             checkCoordinates(fromIndex, pointList.get(0));
             checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
-            edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
+            pillars = pointList.shallowCopy(1, pointList.size() - 1, false);
         }
 
-        checkDistance(edge);
+        if (processElevationLater) {
+            // the way geometry and the distance are set when the elevation is processed
+            elevationProcessor.setRawPillars(edge.getEdge(), pillars);
+            if (SlopeCalculator.ignorePillarElevation(way))
+                ignorePillarElevationEdges.add(edge.getEdge());
+        } else {
+            if (!pillars.isEmpty())
+                edge.setWayGeometry(pillars);
+            checkDistance(edge);
+        }
         restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
     }
 
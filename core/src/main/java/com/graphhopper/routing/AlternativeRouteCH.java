@@ -18,23 +18,36 @@
 
 package com.graphhopper.routing;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntIndexedContainer;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.predicates.IntObjectPredicate;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.*;
 
 /**
  * Minimum number-of-moving-parts implementation of alternative route search with
  * contraction hierarchies.
  * <p>
  * "Alternative Routes in Road Networks" (Abraham et al.)
+ * <p>
+ * The s-&gt;v and v-&gt;t shortest paths of all via node candidates are calculated in one batch: the upward search
+ * spaces of s and t are explored completely once, so each candidate only needs one upward search in each direction
+ * from v. Candidates on the shortest path are skipped, because they lead to the shortest path again. Unless disabled
+ * the same is done for candidates on the plateau of an already evaluated via path, i.e. nodes u for which the s-&gt;u
+ * and u-&gt;t shortest paths form exactly this via path. Their evaluation would end with the same result, at least if
+ * the via path was rejected because of its detour or share or if it was accepted. Only candidates that are still
+ * within the maxViaCandidates budget are checked, and the paths calculated for a candidate that is not skipped are
+ * kept for its evaluation. The time spent in each phase is added to the debug info of the best path.
  *
  * @author michaz
  */
@@ -43,8 +56,14 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     private final double maxShareFactor;
     private final double localOptimalityFactor;
     private final int maxPaths;
+    private final int maxViaCandidates;
+    private final boolean prunePlateaus;
     private final List<AlternativeInfo> alternatives = new ArrayList<>();
     private int extraVisitedNodes = 0;
+    private int evaluatedCandidates;
+    private int prunedCandidates;
+    private int checkedCandidates;
+    private long searchNanos, candidatesNanos, viaPathsNanos, localOptimalityNanos;
 
     public AlternativeRouteCH(RoutingCHGraph graph, PMap hints) {
         super(graph);
@@ -52,6 +71,8 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         maxShareFactor = hints.getDouble("alternative_route.max_share_factor", 0.8);
         localOptimalityFactor = hints.getDouble("alternative_route.local_optimality_factor", 0.25);
         maxPaths = hints.getInt("alternative_route.max_paths", 3);
+        maxViaCandidates = hints.getInt("alternative_route.max_via_candidates", Integer.MAX_VALUE);
+        prunePlateaus = hints.getBool("alternative_route.prune_plateaus", true);
     }
 
     @Override
@@ -71,15 +92,22 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
     List<AlternativeInfo> calcAlternatives(final int s, final int t) {
         // First, do a regular bidirectional route search
         checkAlreadyRun();
+        StopWatch sw = new StopWatch().start();
         init(s, 0, t, 0);
         runAlgo();
         final Path bestPath = extractPath();
+        searchNanos = sw.stop().getNanos();
         if (!bestPath.isFound()) {
             return Collections.emptyList();
         }
 
         alternatives.add(new AlternativeInfo(bestPath, 0));
 
+        sw = new StopWatch().start();
+        // via nodes on the shortest path only lead to the shortest path again
+        final IntHashSet skippedViaNodes = new IntHashSet();
+        if (maxShareFactor < 1)
+            skippedViaNodes.addAll(alternatives.get(0).nodes);
         final ArrayList<PotentialAlternativeInfo> potentialAlternativeInfos = new ArrayList<>();
 
         bestWeightMapFrom.forEach((IntObjectPredicate<SPTEntry>) (v, fromSPTEntry) -> {
@@ -90,6 +118,11 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
             if (fromSPTEntry.getWeightOfVisitedPath() + toSPTEntry.getWeightOfVisitedPath() > bestPath.getWeight() * maxWeightFactor)
                 return true;
 
+            if (skippedViaNodes.contains(v)) {
+                prunedCandidates++;
+                return true;
+            }
+
             // This gives us a path s -> v -> t, but since we are using contraction hierarchies,
             // s -> v and v -> t need not be shortest paths. In fact, they can sometimes be pretty strange.
             // We still use this preliminary path to filter for shared path length with other alternatives,
@@ -107,30 +140,58 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         });
 
         potentialAlternativeInfos.sort(Comparator.comparingDouble(o -> o.weight));
-
-        for (PotentialAlternativeInfo potentialAlternativeInfo : potentialAlternativeInfos) {
-            int v = potentialAlternativeInfo.v;
+        // maps the pending via nodes to their position in the order of evaluation
+        final IntIntHashMap pendingViaNodes = new IntIntHashMap(potentialAlternativeInfos.size());
+        for (int i = 0; i < potentialAlternativeInfos.size(); i++)
+            pendingViaNodes.put(potentialAlternativeInfos.get(i).v, i);
+        candidatesNanos = sw.stop().getNanos();
+
+        // the s->v and v->t paths calculated for candidates on a plateau that were not skipped
+        final IntObjectMap<Path> svPaths = new IntObjectHashMap<>();
+        final IntObjectMap<Path> vtPaths = new IntObjectHashMap<>();
+        UpwardSearch fromS = null;
+        UpwardSearch toT = null;
+        for (int index = 0; index < potentialAlternativeInfos.size(); index++) {
+            int v = potentialAlternativeInfos.get(index).v;
+            pendingViaNodes.remove(v);
+            if (skippedViaNodes.contains(v)) {
+                prunedCandidates++;
+                continue;
+            }
+            if (evaluatedCandidates >= maxViaCandidates)
+                break;
+            evaluatedCandidates++;
 
             // Okay, now we want the s -> v -> t shortest via-path, so we route s -> v and v -> t
-            // and glue them together.
-            DijkstraBidirectionCH svRouter = new DijkstraBidirectionCH(graph);
-            final Path svPath = svRouter.calcPath(s, v);
-            extraVisitedNodes += svRouter.getVisitedNodes();
-
-            DijkstraBidirectionCH vtRouter = new DijkstraBidirectionCH(graph);
-            final Path vtPath = vtRouter.calcPath(v, t);
+            // and glue them together. The complete upward search spaces of s and t are shared by all candidates.
+            sw = new StopWatch().start();
+            if (fromS == null) {
+                fromS = new UpwardSearch(s, false);
+                fromS.runCompletely();
+                toT = new UpwardSearch(t, true);
+                toT.runCompletely();
+            }
+            Path cachedSvPath = svPaths.remove(v);
+            final Path svPath = cachedSvPath != null ? cachedSvPath : calcPath(fromS, new UpwardSearch(v, true));
+            Path cachedVtPath = vtPaths.remove(v);
+            final Path vtPath = cachedVtPath != null ? cachedVtPath : calcPath(new UpwardSearch(v, false), toT);
+            viaPathsNanos += sw.stop().getNanos();
+            if (!svPath.isFound() || !vtPath.isFound())
+                continue;
             Path path = concat(graph.getBaseGraph(), svPath, vtPath);
-            extraVisitedNodes += vtRouter.getVisitedNodes();
 
             double sharedDistanceWithShortest = sharedDistanceWithShortest(path);
             double detourLength = path.getDistance() - sharedDistanceWithShortest;
             double directLength = bestPath.getDistance() - sharedDistanceWithShortest;
             if (detourLength > directLength * maxWeightFactor) {
+                skipPlateau(path, svPath.getEdgeCount(), index, fromS, toT, pendingViaNodes, skippedViaNodes, svPaths, vtPaths);
                 continue;
             }
 
             double share = calculateShare(path);
             if (share > maxShareFactor) {
+                // the share can only increase when more alternatives are added
+                skipPlateau(path, svPath.getEdgeCount(), index, fromS, toT, pendingViaNodes, skippedViaNodes, svPaths, vtPaths);
                 continue;
             }
 
@@ -139,16 +200,142 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
             // route, and check if v is on the shortest path.
             final IntIndexedContainer svNodes = svPath.calcNodes();
             int vIndex = svNodes.size() - 1;
-            if (!tTest(path, vIndex))
+            sw = new StopWatch().start();
+            boolean locallyShortest = tTest(path, vIndex);
+            localOptimalityNanos += sw.stop().getNanos();
+            if (!locallyShortest)
                 continue;
 
             alternatives.add(new AlternativeInfo(path, share));
             if (alternatives.size() >= maxPaths)
                 break;
+            // another via node leading to this path would share all of it with the alternatives
+            if (maxShareFactor < 1)
+                skipPlateau(path, svPath.getEdgeCount(), index, fromS, toT, pendingViaNodes, skippedViaNodes, svPaths, vtPaths);
         }
+        bestPath.setDebugInfo(bestPath.getDebugInfo() + ", " + getPhaseDebugInfo());
         return alternatives;
     }
 
+    /**
+     * @return the time spent in each phase of the last alternative route search and the number of via node
+     * candidates that were evaluated, pruned or checked for a plateau
+     */
+    public String getPhaseDebugInfo() {
+        return "alternatives: search: " + searchNanos / 1000 + " μs"
+                + ", candidates: " + candidatesNanos / 1000 + " μs"
+                + ", via paths: " + viaPathsNanos / 1000 + " μs"
+                + ", local optimality: " + localOptimalityNanos / 1000 + " μs"
+                + ", evaluated: " + evaluatedCandidates + ", pruned: " + prunedCandidates
+                + ", checked: " + checkedCandidates;
+    }
+
+    int getEvaluatedCandidates() {
+        return evaluatedCandidates;
+    }
+
+    int getPrunedCandidates() {
+        return prunedCandidates;
+    }
+
+    int getCheckedCandidates() {
+        return checkedCandidates;
+    }
+
+    /**
+     * Adds the pending via node candidates on the plateau of the given via path to the skipped via nodes. Starting at
+     * the via node we move along the path in both directions and check for every candidate whether the shortest paths
+     * from s and to t lead to the same via path again. We stop at the first candidate for which they do not, because
+     * the plateau is a contiguous part of the path. Candidates that would not be evaluated anymore because the
+     * maxViaCandidates budget runs out before their turn are not checked.
+     *
+     * @param vIndex         the index of the via node in the nodes of the path
+     * @param candidateIndex the position of the via node in the order of evaluation
+     */
+    private void skipPlateau(Path path, int vIndex, int candidateIndex, UpwardSearch fromS, UpwardSearch toT,
+                             IntIntHashMap pendingViaNodes, IntHashSet skippedViaNodes, IntObjectMap<Path> svPaths, IntObjectMap<Path> vtPaths) {
+        if (!prunePlateaus)
+            return;
+        StopWatch sw = new StopWatch().start();
+        // the number of candidates after this one that can still be evaluated
+        long budget = (long) maxViaCandidates - evaluatedCandidates;
+        IntIndexedContainer pathNodes = path.calcNodes();
+        for (int i = vIndex - 1; i > 0; i--) {
+            int u = pathNodes.get(i);
+            if (isWithinBudget(u, candidateIndex, budget, pendingViaNodes) && !skipIfSameViaPath(path, u, i, fromS, toT, skippedViaNodes, svPaths, vtPaths))
+                break;
+        }
+        for (int i = vIndex + 1; i < pathNodes.size() - 1; i++) {
+            int u = pathNodes.get(i);
+            if (isWithinBudget(u, candidateIndex, budget, pendingViaNodes) && !skipIfSameViaPath(path, u, i, fromS, toT, skippedViaNodes, svPaths, vtPaths))
+                break;
+        }
+        viaPathsNanos += sw.stop().getNanos();
+    }
+
+    /**
+     * @return true if u is a pending candidate that is evaluated within the given budget, even if none of the
+     * candidates before it is skipped
+     */
+    private static boolean isWithinBudget(int u, int candidateIndex, long budget, IntIntHashMap pendingViaNodes) {
+        int index = pendingViaNodes.getOrDefault(u, -1);
+        return index >= 0 && index - candidateIndex <= budget;
+    }
+
+    private boolean skipIfSameViaPath(Path path, int u, int uIndex, UpwardSearch fromS, UpwardSearch toT,
+                                      IntHashSet skippedViaNodes, IntObjectMap<Path> svPaths, IntObjectMap<Path> vtPaths) {
+        checkedCandidates++;
+        // these are the same searches we would run to evaluate u, so we keep their results in case u is not skipped
+        Path suPath = svPaths.get(u);
+        if (suPath == null) {
+            suPath = calcPath(fromS, new UpwardSearch(u, true));
+            svPaths.put(u, suPath);
+        }
+        if (!suPath.isFound() || !isSubPath(suPath, path, 0, uIndex))
+            return false;
+        Path utPath = vtPaths.get(u);
+        if (utPath == null) {
+            utPath = calcPath(new UpwardSearch(u, false), toT);
+            vtPaths.put(u, utPath);
+        }
+        if (!utPath.isFound() || !isSubPath(utPath, path, uIndex, path.getEdgeCount()))
+            return false;
+        svPaths.remove(u);
+        vtPaths.remove(u);
+        skippedViaNodes.add(u);
+        return true;
+    }
+
+    /**
+     * @return true if the edges of the given sub path are the edges of the given path from fromIndex (inclusive) to
+     * toIndex (exclusive)
+     */
+    private static boolean isSubPath(Path subPath, Path path, int fromIndex, int toIndex) {
+        IntIndexedContainer subEdges = subPath.getEdges();
+        if (subEdges.size() != toIndex - fromIndex)
+            return false;
+        for (int i = 0; i < subEdges.size(); i++)
+            if (subEdges.get(i) != path.getEdges().get(fromIndex + i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Calculates the shortest path between the roots of a completely explored forward upward search and a backward
+     * upward search, which is only explored as far as needed.
+     */
+    private Path calcPath(UpwardSearch fwd, UpwardSearch bwd) {
+        UpwardSearch partial = fwd.isComplete() ? bwd : fwd;
+        UpwardSearch complete = fwd.isComplete() ? fwd : bwd;
+        partial.run(complete);
+        if (partial.meetingEntry == null)
+            return createEmptyPath();
+        SPTEntry completeEntry = complete.bestWeightMap.get(partial.meetingEntry.adjNode);
+        SPTEntry fwdEntry = partial == fwd ? partial.meetingEntry : completeEntry;
+        SPTEntry bwdEntry = partial == fwd ? completeEntry : partial.meetingEntry;
+        return createPathExtractor().extract(fwdEntry, bwdEntry, partial.meetingWeight);
+    }
+
     private double calculateShare(final Path path) {
         double sharedDistance = sharedDistance(path);
         return sharedDistance / path.getDistance();
@@ -238,6 +425,74 @@ public class AlternativeRouteCH extends DijkstraBidirectionCHNoSOD {
         return path;
     }
 
+    /**
+     * A one-to-all Dijkstra search in the upward graph of the CH, either forward or backward.
+     */
+    private class UpwardSearch {
+        final boolean reverse;
+        final IntObjectMap<SPTEntry> bestWeightMap = new IntObjectHashMap<>();
+        final PriorityQueue<SPTEntry> queue = new PriorityQueue<>();
+        private boolean complete;
+        SPTEntry meetingEntry;
+        double meetingWeight = Double.POSITIVE_INFINITY;
+
+        UpwardSearch(int node, boolean reverse) {
+            this.reverse = reverse;
+            SPTEntry entry = new SPTEntry(node, 0);
+            bestWeightMap.put(node, entry);
+            queue.add(entry);
+        }
+
+        boolean isComplete() {
+            return complete;
+        }
+
+        void runCompletely() {
+            run(null);
+            complete = true;
+        }
+
+        /**
+         * Explores the search space until the shortest path to the root of the other, completely explored, search
+         * is known.
+         */
+        void run(UpwardSearch other) {
+            RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+            while (!queue.isEmpty()) {
+                SPTEntry curr = queue.poll();
+                if (curr.isDeleted())
+                    continue;
+                if (curr.weight >= meetingWeight)
+                    return;
+                extraVisitedNodes++;
+                if (other != null) {
+                    SPTEntry otherEntry = other.bestWeightMap.get(curr.adjNode);
+                    if (otherEntry != null && curr.weight + otherEntry.weight < meetingWeight) {
+                        meetingWeight = curr.weight + otherEntry.weight;
+                        meetingEntry = curr;
+                    }
+                }
+                RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+                while (iter.next()) {
+                    if (!accept(iter, curr, reverse))
+                        continue;
+                    double weight = calcWeight(iter, curr, reverse);
+                    if (Double.isInfinite(weight))
+                        continue;
+                    SPTEntry entry = bestWeightMap.get(iter.getAdjNode());
+                    if (entry != null) {
+                        if (entry.weight <= weight)
+                            continue;
+                        entry.setDeleted();
+                    }
+                    entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight, curr);
+                    bestWeightMap.put(iter.getAdjNode(), entry);
+                    queue.add(entry);
+                }
+            }
+        }
+    }
+
     @Override
     public List<Path> calcPaths(int from, int to) {
         List<AlternativeInfo> alts = calcAlternatives(from, to);
@@ -93,6 +93,7 @@ public class DefaultBidirPathExtractor implements BidirPathExtractor {
 
     protected void setExtractionTime(long nanos) {
         path.setDebugInfo("path extraction: " + nanos / 1000 + " μs");
+        path.setExtractionNanos(nanos);
     }
 
     protected int getIncEdge(SPTEntry entry) {
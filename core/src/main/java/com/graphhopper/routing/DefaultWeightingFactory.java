@@ -26,6 +26,7 @@ import com.graphhopper.routing.weighting.*;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.SpeedOverlay;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.PMap;
@@ -41,10 +42,19 @@ public class DefaultWeightingFactory implements WeightingFactory {
 
     private final BaseGraph graph;
     private final EncodingManager encodingManager;
+    private final SpeedOverlay speedOverlay;
 
     public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager) {
+        this(graph, encodingManager, null);
+    }
+
+    /**
+     * @param speedOverlay is used for custom weightings if the hints contain speed_overlay=true, can be null
+     */
+    public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager, SpeedOverlay speedOverlay) {
         this.graph = graph;
         this.encodingManager = encodingManager;
+        this.speedOverlay = speedOverlay;
     }
 
     @Override
@@ -91,8 +101,10 @@ public class DefaultWeightingFactory implements WeightingFactory {
             CustomProfile customProfile = (CustomProfile) profile;
 
             queryCustomModel = CustomModel.merge(customProfile.getCustomModel(), queryCustomModel);
+            // the overlay must not be used for the preparations, so it has to be requested explicitly
+            SpeedOverlay overlay = requestHints.getBool(Parameters.Routing.SPEED_OVERLAY, false) ? speedOverlay : null;
             weighting = CustomModelParser.createWeighting(accessEnc, speedEnc,
-                    priorityEnc, encodingManager, turnCostProvider, queryCustomModel);
+                    priorityEnc, encodingManager, turnCostProvider, queryCustomModel, overlay);
         } else if ("shortest".equalsIgnoreCase(weightingStr)) {
             weighting = new ShortestWeighting(accessEnc, speedEnc, turnCostProvider);
         } else if ("fastest".equalsIgnoreCase(weightingStr)) {
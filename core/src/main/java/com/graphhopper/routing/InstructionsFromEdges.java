@@ -114,6 +114,14 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
 
     @Override
     public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+        next(edge, edge.fetchWayGeometry(FetchMode.ALL));
+    }
+
+    /**
+     * Same as {@link #next(EdgeIteratorState, int, int)}, but uses the given geometry of the edge, which must have
+     * been fetched with {@link FetchMode#ALL}.
+     */
+    void next(EdgeIteratorState edge, PointList wayGeo) {
         // baseNode is the current node and adjNode is the next
         int adjNode = edge.getAdjNode();
         int baseNode = edge.getBaseNode();
@@ -127,7 +135,6 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
         double adjLon = nodeAccess.getLon(adjNode);
         double latitude, longitude;
 
-        PointList wayGeo = edge.fetchWayGeometry(FetchMode.ALL);
         boolean isRoundabout = edge.get(roundaboutEnc);
 
         if (wayGeo.size() <= 2) {
@@ -235,7 +242,7 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
             prevDestinationAndRef = destination + destinationRef;
 
         } else {
-            int sign = getTurn(edge, baseNode, prevNode, adjNode, name, destination + destinationRef);
+            int sign = getTurn(edge, baseNode, prevNode, adjNode, latitude, longitude, name, destination + destinationRef);
             if (sign != Instruction.IGNORE) {
                 /*
                     Check if the next instruction is likely to only be a short connector to execute a u-turn
@@ -259,10 +266,7 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
                         && Double.isFinite(weighting.calcEdgeWeightWithAccess(edge, false)) != Double.isFinite(weighting.calcEdgeWeightWithAccess(edge, true))
                         && InstructionsHelper.isNameSimilar(prevInstructionName, name)) {
                     // Chances are good that this is a u-turn, we only need to check if the orientation matches
-                    GHPoint point = InstructionsHelper.getPointForOrientationCalculation(edge, nodeAccess);
-                    double lat = point.getLat();
-                    double lon = point.getLon();
-                    double currentOrientation = AngleCalc.ANGLE_CALC.calcOrientation(prevLat, prevLon, lat, lon, false);
+                    double currentOrientation = AngleCalc.ANGLE_CALC.calcOrientation(prevLat, prevLon, latitude, longitude, false);
 
                     double diff = Math.abs(prevInstructionPrevOrientation - currentOrientation);
                     if (diff > (Math.PI * .9) && diff < (Math.PI * 1.1)) {
@@ -331,10 +335,8 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
         ways.add(finishInstruction);
     }
 
-    private int getTurn(EdgeIteratorState edge, int baseNode, int prevNode, int adjNode, String name, String destinationAndRef) {
-        GHPoint point = InstructionsHelper.getPointForOrientationCalculation(edge, nodeAccess);
-        double lat = point.getLat();
-        double lon = point.getLon();
+    private int getTurn(EdgeIteratorState edge, int baseNode, int prevNode, int adjNode, double lat, double lon,
+                        String name, String destinationAndRef) {
         prevOrientation = AngleCalc.ANGLE_CALC.calcOrientation(doublePrevLat, doublePrevLon, prevLat, prevLon);
         int sign = InstructionsHelper.calculateSign(prevLat, prevLon, lat, lon, prevOrientation);
 
@@ -31,6 +31,7 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private int elevationThreads = 0;
 
     public List<String> getIgnoredHighways() {
         return ignoredHighways;
@@ -145,4 +146,18 @@ public class OSMReaderConfig {
         this.workerThreads = workerThreads;
         return this;
     }
+
+    public int getElevationThreads() {
+        return elevationThreads;
+    }
+
+    /**
+     * Sets the number of threads used to sample and smooth the elevation of the edges after all edges were read. If
+     * this is zero (default) this is done for every edge while reading. The elevation provider must be thread-safe
+     * if this is larger than zero.
+     */
+    public OSMReaderConfig setElevationThreads(int elevationThreads) {
+        this.elevationThreads = elevationThreads;
+        return this;
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.details.PathDetailsBuilder;
+import com.graphhopper.util.details.PathDetailsFromEdges;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates the points, the instructions and the path details of a path in a single pass over its edges. The
+ * geometry of every edge is fetched only once and the same edge state is passed to {@link InstructionsFromEdges} and
+ * {@link PathDetailsFromEdges}, instead of iterating the path for each of them.
+ */
+public class PostProcessingFromEdges implements Path.EdgeVisitor {
+
+    private final PointList points;
+    private final InstructionsFromEdges instructionsFromEdges;
+    private final PathDetailsFromEdges pathDetailsFromEdges;
+
+    private PostProcessingFromEdges(PointList points, InstructionsFromEdges instructionsFromEdges,
+                                    PathDetailsFromEdges pathDetailsFromEdges) {
+        this.points = points;
+        this.instructionsFromEdges = instructionsFromEdges;
+        this.pathDetailsFromEdges = pathDetailsFromEdges;
+    }
+
+    /**
+     * @param calcInstructions    if false no instructions are calculated and {@link Result#getInstructions()} returns null
+     * @param pathDetailsBuilders the builders of the requested path details, can be empty
+     * @param previousIndex       the index of the first point of this path in the points of the whole route
+     */
+    public static Result calc(Path path, Graph graph, Weighting weighting, EncodedValueLookup evLookup, Translation tr,
+                              boolean calcInstructions, List<PathDetailsBuilder> pathDetailsBuilders, int previousIndex) {
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        Result result = new Result();
+        result.points = new PointList(path.getEdgeCount() + 1, nodeAccess.is3D());
+        result.instructions = calcInstructions ? new InstructionList(tr) : null;
+        if (!path.isFound()) {
+            result.pathDetails = Collections.emptyMap();
+            return result;
+        }
+
+        if (path.getEdgeCount() == 0) {
+            result.points.add(nodeAccess, path.getEndNode());
+            if (calcInstructions)
+                result.instructions.add(new FinishInstruction(nodeAccess, path.getEndNode()));
+        }
+        InstructionsFromEdges instructionsFromEdges = calcInstructions && path.getEdgeCount() > 0
+                ? new InstructionsFromEdges(graph, weighting, evLookup, result.instructions) : null;
+        PathDetailsFromEdges pathDetailsFromEdges = pathDetailsBuilders.isEmpty()
+                ? null : new PathDetailsFromEdges(pathDetailsBuilders, previousIndex);
+        path.forEveryEdge(new PostProcessingFromEdges(result.points, instructionsFromEdges, pathDetailsFromEdges));
+        result.pathDetails = pathDetailsBuilders.isEmpty()
+                ? Collections.emptyMap() : PathDetailsFromEdges.buildPathDetails(pathDetailsBuilders);
+        return result;
+    }
+
+    @Override
+    public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+        PointList wayGeo = edge.fetchWayGeometry(FetchMode.ALL);
+        // the base node was already added for the previous edge, except for the first one
+        for (int i = index == 0 ? 0 : 1; i < wayGeo.size(); i++)
+            points.add(wayGeo, i);
+        if (instructionsFromEdges != null)
+            instructionsFromEdges.next(edge, wayGeo);
+        if (pathDetailsFromEdges != null)
+            pathDetailsFromEdges.next(edge, wayGeo.size() - 1);
+    }
+
+    @Override
+    public void finish() {
+        if (instructionsFromEdges != null)
+            instructionsFromEdges.finish();
+        if (pathDetailsFromEdges != null)
+            pathDetailsFromEdges.finish();
+    }
+
+    public static class Result {
+        PointList points;
+        InstructionList instructions;
+        Map<String, List<PathDetail>> pathDetails;
+
+        public PointList getPoints() {
+            return points;
+        }
+
+        /**
+         * @return the instructions of the path or null if they were not calculated
+         */
+        public InstructionList getInstructions() {
+            return instructions;
+        }
+
+        public Map<String, List<PathDetail>> getPathDetails() {
+            return pathDetails;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the responses to route requests. Many requests are exact repeats, e.g. when clients retry or
+ * for popular origin/destination pairs, and these can be answered without routing again. The key is a canonical form
+ * of the request that contains everything that influences the response, see {@link #createKey(GHRequest)}. The
+ * cache is bounded by the estimated memory usage of the cached responses and the least recently used responses are
+ * removed first. Responses with errors are not cached.
+ * <p>
+ * Cached responses are shared between all requests that hit the cache, so they must not be modified.
+ * <p>
+ * Every {@link #clear()} starts a new generation. A response that was calculated in an older generation, e.g. by a
+ * request that was still running while the speeds changed, is not cached, see {@link #put(String, GHResponse, long)}.
+ */
+public class RouteResponseCache {
+    private final long maxBytes;
+    private final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RouteResponseCache(long maxBytes) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes must be positive, was: " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached response for the given key or null if there is none
+     */
+    public GHResponse get(String key) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response;
+    }
+
+    /**
+     * @return the current generation, read it before calculating a response that should be cached
+     */
+    public long getGeneration() {
+        synchronized (cache) {
+            return generation;
+        }
+    }
+
+    public void put(String key, GHResponse response) {
+        put(key, response, getGeneration());
+    }
+
+    /**
+     * Caches the response unless the cache was cleared after the given generation was read.
+     */
+    public void put(String key, GHResponse response, long generation) {
+        if (response.hasErrors())
+            return;
+        long size = estimateBytes(key, response);
+        // a single huge response would evict everything else
+        if (size > maxBytes / 10)
+            return;
+        synchronized (cache) {
+            if (generation != this.generation)
+                return;
+            Entry old = cache.put(key, new Entry(response, size));
+            if (old != null)
+                bytes -= old.bytes;
+            bytes += size;
+            Iterator<Entry> iter = cache.values().iterator();
+            while (bytes > maxBytes && iter.hasNext()) {
+                bytes -= iter.next().bytes;
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Creates the key under which the response to the given request is cached. Two requests have the same key if
+     * they only differ in ways that do not change the response, like the order of the hints.
+     */
+    public static String createKey(GHRequest request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getProfile()).append('|').append(request.getAlgorithm()).append('|').append(request.getLocale());
+        sb.append("|points=");
+        for (GHPoint point : request.getPoints()) {
+            sb.append(point.getLat()).append(',').append(point.getLon()).append(';');
+        }
+        sb.append("|headings=").append(request.getHeadings());
+        sb.append("|point_hints=").append(request.getPointHints());
+        sb.append("|curbsides=").append(request.getCurbsides());
+        sb.append("|snap_preventions=").append(request.getSnapPreventions());
+        sb.append("|details=").append(request.getPathDetails());
+        sb.append("|hints=").append(new TreeMap<>(request.getHints().toMap()));
+        if (request.getCustomModel() != null)
+            sb.append("|custom_model=").append(request.getCustomModel());
+        return sb.toString();
+    }
+
+    static long estimateBytes(String key, GHResponse response) {
+        long size = 200 + 2L * key.length();
+        for (ResponsePath path : response.getAll()) {
+            // the instructions contain the points again, so we count the points twice
+            size += 200 + 2 * estimateBytes(path.getPoints()) + estimateBytes(path.getWaypoints());
+            for (List<PathDetail> details : path.getPathDetails().values()) {
+                size += 50L * details.size();
+            }
+        }
+        return size;
+    }
+
+    private static long estimateBytes(PointList pointList) {
+        return pointList == null || pointList == PointList.EMPTY ? 0 : (pointList.is3D() ? 24L : 16L) * pointList.size();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return the estimated memory usage of the cached responses in bytes
+     */
+    public long getBytes() {
+        synchronized (cache) {
+            return bytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of requests that were answered from the cache, or 0 if there were no requests yet
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            bytes = 0;
+            generation++;
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + size() + ", bytes: " + getBytes() + "/" + maxBytes + ", hits: " + getHits()
+                + ", misses: " + getMisses() + ", hit rate: " + Math.round(getHitRate() * 1000) / 10.0 + "%";
+    }
+
+    private static class Entry {
+        final GHResponse response;
+        final long bytes;
+
+        Entry(GHResponse response, long bytes) {
+            this.response = response;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.graphhopper.routing.ev.Subnetwork;
 import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryGraphPool;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
@@ -39,6 +40,7 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.storage.index.SnapCache;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
@@ -48,6 +50,7 @@ import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static com.graphhopper.routing.weighting.Weighting.INFINITE_U_TURN_COSTS;
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
@@ -68,6 +71,10 @@ public class Router {
     protected final Map<String, LandmarkStorage> landmarks;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
+    private ExecutorService viaLegExecutor;
+    private SnapCache snapCache;
+    private QueryGraphPool queryGraphPool;
+    private RouterMetrics routerMetrics;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
@@ -94,6 +101,49 @@ public class Router {
         }
     }
 
+    /**
+     * Sets the executor that is used to calculate independent legs of via-routes concurrently, see
+     * {@link RouterConfig#setViaLegThreads(int)}. The executor is not shut down by this class.
+     */
+    public Router setViaLegExecutor(ExecutorService viaLegExecutor) {
+        this.viaLegExecutor = viaLegExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the cache that is used to find the closest edges of the request points. The closest edges depend on the
+     * weighting, so the cache is not used for requests with a custom model.
+     */
+    public Router setSnapCache(SnapCache snapCache) {
+        this.snapCache = snapCache;
+        return this;
+    }
+
+    /**
+     * Sets the pool that is used to reuse the QueryGraphs of previous requests in the same thread. The QueryGraph
+     * is not used after the response was created, so it can be reset for the next request.
+     */
+    public Router setQueryGraphPool(QueryGraphPool queryGraphPool) {
+        this.queryGraphPool = queryGraphPool;
+        return this;
+    }
+
+    /**
+     * Sets the receiver of the time spent in each stage of a request and of the number of visited nodes.
+     */
+    public Router setRouterMetrics(RouterMetrics routerMetrics) {
+        this.routerMetrics = routerMetrics;
+        return this;
+    }
+
+    protected QueryGraph createQueryGraph(List<Snap> snaps) {
+        return queryGraphPool == null ? QueryGraph.create(graph, snaps) : queryGraphPool.create(snaps);
+    }
+
+    private SnapCache getSnapCache(GHRequest request) {
+        return request.getCustomModel() == null ? snapCache : null;
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -216,15 +266,21 @@ public class Router {
         RoundTripRouting.Params params = new RoundTripRouting.Params(request.getHints(), startHeading, routerConfig.getMaxRoundTripRetries());
         List<Snap> snaps = RoundTripRouting.lookup(request.getPoints(), solver.createSnapFilter(), locationIndex, params);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        StageTimer timer = new StageTimer(request, solver, sw.getNanos());
 
-        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        QueryGraph queryGraph = createQueryGraph(snaps);
+        timer.stop(RouterMetrics.Stage.QUERY_GRAPH);
         FlexiblePathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
 
         RoundTripRouting.Result result = RoundTripRouting.calcPaths(snaps, pathCalculator);
+        // the round trip paths are extracted during the search
+        timer.stop(RouterMetrics.Stage.SEARCH);
         // we merge the different legs of the roundtrip into one response path
         // note that the waypoints are not just the snapped points of the snaps, as usual, because we do some kind of tweak
         // to avoid 'unnecessary tails' in the roundtrip algo
         ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, result.wayPoints);
+        timer.stop(RouterMetrics.Stage.POST_PROCESSING);
+        timer.recordVisitedNodes(result.visitedNodes);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
@@ -238,9 +294,12 @@ public class Router {
         StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
+                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings(),
+                getSnapCache(request), solver.getSnapFilterKey());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
-        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        StageTimer timer = new StageTimer(request, solver, sw.getNanos());
+        QueryGraph queryGraph = createQueryGraph(snaps);
+        timer.stop(RouterMetrics.Stage.QUERY_GRAPH);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
         boolean passThrough = getPassThrough(request.getHints());
         boolean forceCurbsides = getForceCurbsides(request.getHints());
@@ -252,6 +311,7 @@ public class Router {
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter, pathCalculator, request.getCurbsides(), forceCurbsides, request.getHeadings(), passThrough);
         if (result.paths.isEmpty())
             throw new RuntimeException("Empty paths for alternative route calculation not expected");
+        timer.stopSearch(result.extractionNanos);
 
         // each path represents a different alternative and we do the path merging for each of them
         PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
@@ -260,6 +320,8 @@ public class Router {
             ResponsePath responsePath = pathMerger.doWork(waypoints, Collections.singletonList(path), encodingManager, translationMap.getWithFallBack(request.getLocale()));
             ghRsp.add(responsePath);
         }
+        timer.stop(RouterMetrics.Stage.POST_PROCESSING);
+        timer.recordVisitedNodes(result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
         return ghRsp;
@@ -270,22 +332,28 @@ public class Router {
         StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
+                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings(),
+                getSnapCache(request), solver.getSnapFilterKey());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        StageTimer timer = new StageTimer(request, solver, sw.getNanos());
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
-        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
-        PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        QueryGraph queryGraph = createQueryGraph(snaps);
+        timer.stop(RouterMetrics.Stage.QUERY_GRAPH);
         boolean passThrough = getPassThrough(request.getHints());
         boolean forceCurbsides = getForceCurbsides(request.getHints());
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
-                pathCalculator, request.getCurbsides(), forceCurbsides, request.getHeadings(), passThrough);
+                () -> solver.createPathCalculator(queryGraph), request.getCurbsides(), forceCurbsides, request.getHeadings(),
+                passThrough, viaLegExecutor);
+        timer.stopSearch(result.extractionNanos);
 
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
 
         // here each path represents one leg of the via-route and we merge them all together into one response path
         ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
+        timer.stop(RouterMetrics.Stage.POST_PROCESSING);
+        timer.recordVisitedNodes(result.visitedNodes);
         responsePath.addDebugInfo(result.debug);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
@@ -343,6 +411,58 @@ public class Router {
         return hints.getBool(FORCE_CURBSIDE, true);
     }
 
+    // the algorithms that get their own metric names, all others are reported as 'other'
+    private static final Set<String> METRICS_ALGORITHMS = new HashSet<>(Arrays.asList(Parameters.Algorithms.DIJKSTRA,
+            Parameters.Algorithms.DIJKSTRA_BI, Parameters.Algorithms.ASTAR, Parameters.Algorithms.ASTAR_BI, ALT_ROUTE, ROUND_TRIP));
+
+    /**
+     * Measures the time between the stages of a request and passes it to the {@link RouterMetrics}, if there are any.
+     */
+    private class StageTimer {
+        private final String profile;
+        private final String algorithm;
+        private long start;
+
+        StageTimer(GHRequest request, Solver solver, long snappingNanos) {
+            profile = request.getProfile();
+            String solverName = solver instanceof CHSolver ? "ch" : solver instanceof LMSolver ? "lm" : solver instanceof FlexSolver ? "flex" : "custom";
+            String requestAlgorithm = request.getAlgorithm().toLowerCase(Locale.ROOT);
+            // the algorithm is part of the metric names, so we do not use unknown values
+            if (!requestAlgorithm.isEmpty() && !METRICS_ALGORITHMS.contains(requestAlgorithm))
+                requestAlgorithm = "other";
+            algorithm = requestAlgorithm.isEmpty() ? solverName : solverName + "." + requestAlgorithm;
+            record(RouterMetrics.Stage.SNAPPING, snappingNanos);
+            start = System.nanoTime();
+        }
+
+        void stop(RouterMetrics.Stage stage) {
+            long now = System.nanoTime();
+            record(stage, now - start);
+            start = now;
+        }
+
+        /**
+         * Records the time since the last stage as search time, but without the time that was spent on the
+         * extraction of the paths.
+         */
+        void stopSearch(long extractionNanos) {
+            long now = System.nanoTime();
+            record(RouterMetrics.Stage.SEARCH, Math.max(0, now - start - extractionNanos));
+            record(RouterMetrics.Stage.PATH_EXTRACTION, extractionNanos);
+            start = now;
+        }
+
+        void recordVisitedNodes(long visitedNodes) {
+            if (routerMetrics != null)
+                routerMetrics.recordVisitedNodes(profile, algorithm, visitedNodes);
+        }
+
+        private void record(RouterMetrics.Stage stage, long nanos) {
+            if (routerMetrics != null)
+                routerMetrics.recordTime(profile, algorithm, stage, nanos);
+        }
+    }
+
     public static abstract class Solver {
         protected final GHRequest request;
         private final Map<String, Profile> profilesByName;
@@ -379,6 +499,21 @@ public class Router {
             weighting = createWeighting();
         }
 
+        /**
+         * @return true if the weighting of this solver uses the speed overlay
+         */
+        protected boolean isSpeedOverlay() {
+            return false;
+        }
+
+        /**
+         * @return the key of the snap filter in the snap cache. Only requests whose snap filters accept the same edges
+         * may share their snaps, and the speed overlay can make edges inaccessible.
+         */
+        protected String getSnapFilterKey() {
+            return profile.getName() + "|" + Parameters.Routing.SPEED_OVERLAY + "=" + isSpeedOverlay();
+        }
+
         protected Profile getProfile() {
             Profile profile = profilesByName.get(request.getProfile());
             if (profile == null)
@@ -463,6 +598,13 @@ public class Router {
             return getRoutingCHGraph(profile.getName()).getWeighting();
         }
 
+        @Override
+        protected String getSnapFilterKey() {
+            // the weighting of a customized CH graph keeps the speeds at the time of the customization, so its snaps
+            // are not shared with the flexible weighting
+            return super.getSnapFilterKey() + "|ch";
+        }
+
         @Override
         protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
             PMap opts = new PMap(request.getHints());
@@ -506,9 +648,16 @@ public class Router {
         protected Weighting createWeighting() {
             PMap requestHints = new PMap(request.getHints());
             requestHints.putObject(CustomModel.KEY, request.getCustomModel());
+            requestHints.putObject(Parameters.Routing.SPEED_OVERLAY, isSpeedOverlay());
             return weightingFactory.createWeighting(profile, requestHints, false);
         }
 
+        @Override
+        protected boolean isSpeedOverlay() {
+            // flexible and LM requests use the speed overlay unless it is disabled explicitly
+            return request.getHints().getBool(Parameters.Routing.SPEED_OVERLAY, true);
+        }
+
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
             RoutingAlgorithmFactory algorithmFactory = new RoutingAlgorithmFactorySimple();
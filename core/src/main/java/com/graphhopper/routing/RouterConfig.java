@@ -30,6 +30,7 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private int viaLegThreads = 1;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -105,4 +106,19 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public int getViaLegThreads() {
+        return viaLegThreads;
+    }
+
+    /**
+     * This method sets the number of threads that are used to calculate the legs of a via-route concurrently. This is
+     * only done for legs that do not depend on each other, i.e. when neither pass_through nor headings are used.
+     * Identical legs are calculated only once in this case. The default of 1 calculates all legs sequentially.
+     */
+    public void setViaLegThreads(int viaLegThreads) {
+        if (viaLegThreads < 1)
+            throw new IllegalArgumentException("via leg threads must be positive, was: " + viaLegThreads);
+        this.viaLegThreads = viaLegThreads;
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.Locale;
+
+/**
+ * Receives the time spent in each stage of a route request and the number of visited nodes, e.g. to export them to
+ * a metrics registry. The algorithm is 'ch', 'lm' or 'flex', followed by the algorithm of the request if it was set
+ * explicitly, like 'flex.astarbi' or 'ch.alternative_route'. Implementations must be thread-safe.
+ *
+ * @see Router#setRouterMetrics(RouterMetrics)
+ */
+public interface RouterMetrics {
+
+    enum Stage {
+        /**
+         * finding the closest edges of the request points
+         */
+        SNAPPING,
+        /**
+         * creating the QueryGraph for the snapped points
+         */
+        QUERY_GRAPH,
+        /**
+         * the graph search without the path extraction
+         */
+        SEARCH,
+        /**
+         * extracting the paths from the shortest path trees, including the unpacking of CH shortcuts
+         */
+        PATH_EXTRACTION,
+        /**
+         * calculating the points, instructions and path details, and simplifying the points
+         */
+        POST_PROCESSING,
+        /**
+         * writing the response
+         */
+        SERIALIZATION;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @param algorithm the algorithm, or null if the stage does not depend on it
+     */
+    void recordTime(String profile, String algorithm, Stage stage, long nanos);
+
+    void recordVisitedNodes(String profile, String algorithm, long visitedNodes);
+}
@@ -26,12 +26,17 @@ import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.storage.index.SnapCache;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.shapes.GHPoint;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
@@ -53,6 +58,20 @@ public class ViaRouting {
     public static List<Snap> lookup(EncodedValueLookup lookup, List<GHPoint> points, EdgeFilter snapFilter,
                                     LocationIndex locationIndex, List<String> snapPreventions, List<String> pointHints,
                                     DirectedEdgeFilter directedSnapFilter, List<Double> headings) {
+        return lookup(lookup, points, snapFilter, locationIndex, snapPreventions, pointHints, directedSnapFilter, headings, null, null);
+    }
+
+    /**
+     * The same as the other lookup method, but points without heading and point hint are snapped using the given
+     * cache if it is not null.
+     *
+     * @param snapFilterKey the key of the snap filter in the cache, see {@link SnapCache#findClosest}
+     * @throws MultiplePointsNotFoundException in case one or more points could not be resolved
+     */
+    public static List<Snap> lookup(EncodedValueLookup lookup, List<GHPoint> points, EdgeFilter snapFilter,
+                                    LocationIndex locationIndex, List<String> snapPreventions, List<String> pointHints,
+                                    DirectedEdgeFilter directedSnapFilter, List<Double> headings,
+                                    SnapCache snapCache, String snapFilterKey) {
         if (points.size() < 2)
             throw new IllegalArgumentException("At least 2 points have to be specified, but was:" + points.size());
 
@@ -75,11 +94,15 @@ public class ViaRouting {
                 snap = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter,
                         pointHints.get(placeIndex), point, 170));
             } else if (!snapPreventions.isEmpty()) {
-                snap = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
+                snap = snapCache == null
+                        ? locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter)
+                        : snapCache.findClosest(point.lat, point.lon, strictEdgeFilter, snapFilterKey + "|" + new TreeSet<>(snapPreventions));
             }
 
             if (snap == null || !snap.isValid())
-                snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+                snap = snapCache == null
+                        ? locationIndex.findClosest(point.lat, point.lon, snapFilter)
+                        : snapCache.findClosest(point.lat, point.lon, snapFilter, snapFilterKey);
             if (!snap.isValid())
                 pointsNotFound.add(placeIndex);
 
@@ -93,10 +116,7 @@ public class ViaRouting {
     }
 
     public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter, PathCalculator pathCalculator, List<String> curbsides, boolean forceCurbsides, List<Double> headings, boolean passThrough) {
-        if (!curbsides.isEmpty() && curbsides.size() != points.size())
-            throw new IllegalArgumentException("If you pass " + CURBSIDE + ", you need to pass exactly one curbside for every point, empty curbsides will be ignored");
-        if (!curbsides.isEmpty() && !headings.isEmpty())
-            throw new IllegalArgumentException("You cannot use curbsides and headings or pass_through at the same time");
+        checkCurbsidesAndHeadings(points, curbsides, headings);
 
         final int legs = snaps.size() - 1;
         Result result = new Result(legs);
@@ -104,14 +124,6 @@ public class ViaRouting {
             Snap fromSnap = snaps.get(leg);
             Snap toSnap = snaps.get(leg + 1);
 
-            // enforce headings
-            // at via-nodes and the target node the heading parameter is interpreted as the direction we want
-            // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
-            // all for these points (unless using pass through). see this forum discussion:
-            // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
-            double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
-            double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
-
             // enforce pass-through
             int incomingEdge = NO_EDGE;
             if (leg != 0) {
@@ -121,16 +133,8 @@ public class ViaRouting {
                     incomingEdge = prevRoute.getFinalEdge().getEdge();
             }
 
-            // enforce curbsides
-            final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
-            final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
-
-            EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
-                    fromHeading, toHeading, incomingEdge, passThrough,
-                    fromCurbside, toCurbside, directedEdgeFilter);
-
-            edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, forceCurbsides));
-            edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, forceCurbsides));
+            EdgeRestrictions edgeRestrictions = buildLegEdgeRestrictions(queryGraph, snaps, leg, headings, incomingEdge,
+                    passThrough, curbsides, forceCurbsides, directedEdgeFilter);
 
             // calculate paths
             List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
@@ -139,25 +143,185 @@ public class ViaRouting {
             // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
             // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
             // a good method to decide how to combine the different legs
-            for (int i = 0; i < paths.size(); i++) {
-                Path path = paths.get(i);
-                if (path.getTime() < 0)
-                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
-
-                result.paths.add(path);
-                result.debug += ", " + path.getDebugInfo();
-            }
+            addPaths(result, paths);
 
             result.visitedNodes += pathCalculator.getVisitedNodes();
+            result.extractionNanos += sumExtractionNanos(paths);
             result.debug += ", visited nodes sum: " + result.visitedNodes;
         }
 
         return result;
     }
 
+    /**
+     * Same as {@link #calcPaths(List, QueryGraph, List, DirectedEdgeFilter, PathCalculator, List, boolean, List, boolean)},
+     * but if the legs do not depend on each other they are calculated concurrently using the given executor and
+     * identical legs are calculated only once. The legs depend on each other if pass_through is used, and we also
+     * calculate them sequentially if there are headings, because these are enforced by modifying the query graph.
+     *
+     * @param pathCalculators creates a new {@link PathCalculator} for every concurrently calculated leg, because
+     *                        path calculators are not thread-safe
+     * @param executor        the (bounded) executor used for the legs, or null to calculate all legs sequentially
+     */
+    public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter,
+                                   Supplier<PathCalculator> pathCalculators, List<String> curbsides, boolean forceCurbsides,
+                                   List<Double> headings, boolean passThrough, ExecutorService executor) {
+        if (executor == null || passThrough || !headings.stream().allMatch(h -> Double.isNaN(h)))
+            return calcPaths(points, queryGraph, snaps, directedEdgeFilter, pathCalculators.get(), curbsides, forceCurbsides, headings, passThrough);
+        checkCurbsidesAndHeadings(points, curbsides, headings);
+
+        // the legs are independent so we can determine all edge restrictions upfront and find the identical legs
+        final int legs = snaps.size() - 1;
+        List<Leg> uniqueLegs = new ArrayList<>();
+        Map<Leg, Leg> uniqueLegsByKey = new HashMap<>();
+        Leg[] legsByIndex = new Leg[legs];
+        for (int leg = 0; leg < legs; ++leg) {
+            EdgeRestrictions edgeRestrictions = buildLegEdgeRestrictions(queryGraph, snaps, leg, headings, NO_EDGE,
+                    false, curbsides, forceCurbsides, directedEdgeFilter);
+            Leg l = new Leg(leg, snaps.get(leg).getClosestNode(), snaps.get(leg + 1).getClosestNode(), edgeRestrictions);
+            Leg existing = uniqueLegsByKey.putIfAbsent(l, l);
+            if (existing == null) {
+                uniqueLegs.add(l);
+                legsByIndex[leg] = l;
+            } else {
+                legsByIndex[leg] = existing;
+            }
+        }
+
+        if (uniqueLegs.size() == 1) {
+            uniqueLegs.get(0).calc(pathCalculators.get());
+        } else {
+            List<Callable<Leg>> tasks = new ArrayList<>(uniqueLegs.size());
+            for (Leg l : uniqueLegs)
+                tasks.add(() -> l.calc(pathCalculators.get()));
+            try {
+                for (Future<Leg> future : executor.invokeAll(tasks))
+                    future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Calculating the legs was interrupted", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) ex.getCause();
+                if (ex.getCause() instanceof Error)
+                    throw (Error) ex.getCause();
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+
+        Result result = new Result(legs);
+        for (int leg = 0; leg < legs; ++leg) {
+            Leg l = legsByIndex[leg];
+            if (l.index == leg) {
+                result.debug += l.debug;
+                addPaths(result, l.paths);
+                result.visitedNodes += l.visitedNodes;
+                result.extractionNanos += sumExtractionNanos(l.paths);
+            } else {
+                result.debug += ", same as leg " + l.index;
+                addPaths(result, l.paths);
+            }
+            result.debug += ", visited nodes sum: " + result.visitedNodes;
+        }
+        return result;
+    }
+
+    private static void checkCurbsidesAndHeadings(List<GHPoint> points, List<String> curbsides, List<Double> headings) {
+        if (!curbsides.isEmpty() && curbsides.size() != points.size())
+            throw new IllegalArgumentException("If you pass " + CURBSIDE + ", you need to pass exactly one curbside for every point, empty curbsides will be ignored");
+        if (!curbsides.isEmpty() && !headings.isEmpty())
+            throw new IllegalArgumentException("You cannot use curbsides and headings or pass_through at the same time");
+    }
+
+    private static EdgeRestrictions buildLegEdgeRestrictions(QueryGraph queryGraph, List<Snap> snaps, int leg, List<Double> headings,
+                                                             int incomingEdge, boolean passThrough, List<String> curbsides,
+                                                             boolean forceCurbsides, DirectedEdgeFilter directedEdgeFilter) {
+        // enforce headings
+        // at via-nodes and the target node the heading parameter is interpreted as the direction we want
+        // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
+        // all for these points (unless using pass through). see this forum discussion:
+        // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
+        double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
+        double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
+
+        // enforce curbsides
+        final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
+        final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
+
+        EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, snaps.get(leg), snaps.get(leg + 1),
+                fromHeading, toHeading, incomingEdge, passThrough,
+                fromCurbside, toCurbside, directedEdgeFilter);
+
+        edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, forceCurbsides));
+        edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, forceCurbsides));
+        return edgeRestrictions;
+    }
+
+    private static long sumExtractionNanos(List<Path> paths) {
+        long nanos = 0;
+        for (Path path : paths)
+            nanos += path.getExtractionNanos();
+        return nanos;
+    }
+
+    private static void addPaths(Result result, List<Path> paths) {
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            if (path.getTime() < 0)
+                throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
+
+            result.paths.add(path);
+            result.debug += ", " + path.getDebugInfo();
+        }
+    }
+
+    /**
+     * A single leg of a via-route without unfavored edges. Two legs are equal if they have the same start and target
+     * nodes and the same source/target edge restrictions, because in this case they yield the same paths.
+     */
+    private static class Leg {
+        final int index;
+        final int from;
+        final int to;
+        final EdgeRestrictions edgeRestrictions;
+        List<Path> paths;
+        String debug;
+        int visitedNodes;
+
+        Leg(int index, int from, int to, EdgeRestrictions edgeRestrictions) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            this.edgeRestrictions = edgeRestrictions;
+        }
+
+        Leg calc(PathCalculator pathCalculator) {
+            paths = pathCalculator.calcPaths(from, to, edgeRestrictions);
+            debug = pathCalculator.getDebugString();
+            visitedNodes = pathCalculator.getVisitedNodes();
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Leg other = (Leg) o;
+            return from == other.from && to == other.to
+                    && edgeRestrictions.getSourceOutEdge() == other.edgeRestrictions.getSourceOutEdge()
+                    && edgeRestrictions.getTargetInEdge() == other.edgeRestrictions.getTargetInEdge();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to, edgeRestrictions.getSourceOutEdge(), edgeRestrictions.getTargetInEdge());
+        }
+    }
+
     public static class Result {
         public List<Path> paths;
         public long visitedNodes;
+        public long extractionNanos;
         public String debug = "";
 
         Result(int legs) {
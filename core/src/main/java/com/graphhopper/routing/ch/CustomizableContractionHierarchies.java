@@ -0,0 +1,533 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static com.graphhopper.util.Helper.getMemInfo;
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Customizable contraction hierarchies (CCH), see 'Customizable Contraction Hierarchies' by Dibbelt, Strasser and
+ * Wagner. In contrast to {@link PrepareContractionHierarchies} the expensive part of the preparation does not depend
+ * on the weighting:
+ * <ol>
+ * <li>{@link #contract()} orders the nodes using nested dissection and adds an arc between all upward neighbors of
+ * every contracted node, without any witness searches. This only depends on the graph topology.</li>
+ * <li>{@link #customize(CHConfig)} calculates the weights of these arcs for a given weighting, which only takes a
+ * small fraction of the time of a full preparation, and writes the resulting shortcuts into a new {@link CHStorage}
+ * that can be used with the usual CH algorithms.</li>
+ * </ol>
+ * So after changing speeds or the weighting only the customization needs to be repeated, see
+ * {@link com.graphhopper.GraphHopper#customizeCH} to replace the CH graph of a profile. This is only supported for
+ * node-based traversal. The topology is kept in memory only, i.e. {@link #contract()} has to be called again after a
+ * restart.
+ */
+public class CustomizableContractionHierarchies {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomizableContractionHierarchies.class);
+    // nodes of a level are customized in chunks of this size when running with multiple threads
+    private static final int CHUNK_SIZE = 1_000;
+    private final BaseGraph graph;
+    private final int nodes;
+    private NodeOrderingProvider nodeOrderingProvider;
+    private int threads = 1;
+    // the following arrays are indexed by rank, i.e. the CH level of a node
+    private int[] nodeByRank;
+    private int[] rankByNode;
+    // the arcs from a node to its upward neighbors: arcs upStart[rank] until upStart[rank + 1] belong to the node with
+    // this rank and are sorted by the rank of their target upTarget[arc]
+    private int[] upStart;
+    private int[] upTarget;
+    // for every node the arcs that point to it from lower nodes, organized like the upward arcs
+    private int[] downStart;
+    private int[] downSource;
+    private int[] downArc;
+    // nodes with the same level in the elimination tree can be customized in parallel
+    private int[] levelStart;
+    private int[] ranksByLevel;
+
+    public static CustomizableContractionHierarchies fromGraph(BaseGraph graph) {
+        return new CustomizableContractionHierarchies(graph.getBaseGraph());
+    }
+
+    private CustomizableContractionHierarchies(BaseGraph graph) {
+        if (!graph.isFrozen())
+            throw new IllegalStateException("BaseGraph must be frozen before creating CHs");
+        this.graph = graph;
+        this.nodes = graph.getNodes();
+    }
+
+    /**
+     * Uses the given node ordering instead of nested dissection, e.g. to re-use an ordering calculated before.
+     */
+    public CustomizableContractionHierarchies useFixedNodeOrdering(NodeOrderingProvider nodeOrderingProvider) {
+        if (nodeOrderingProvider.getNumNodes() != nodes)
+            throw new IllegalArgumentException("contraction order size (" + nodeOrderingProvider.getNumNodes() + ")" +
+                    " must be equal to number of nodes in graph (" + nodes + ").");
+        this.nodeOrderingProvider = nodeOrderingProvider;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads used by {@link #customize(CHConfig)}. Default is 1.
+     */
+    public CustomizableContractionHierarchies setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Calculates the node ordering and the arcs independent of any weighting. Call this once before customizing.
+     */
+    public CustomizableContractionHierarchies contract() {
+        if (isContracted())
+            throw new IllegalStateException("Call contract only once!");
+        StopWatch sw = new StopWatch().start();
+        nodeByRank = new int[nodes];
+        if (nodeOrderingProvider != null) {
+            for (int rank = 0; rank < nodes; rank++)
+                nodeByRank[rank] = nodeOrderingProvider.getNodeIdForLevel(rank);
+        } else {
+            new NestedDissection(graph, createAdjacency()).calcNodeOrdering(nodeByRank);
+        }
+        rankByNode = new int[nodes];
+        Arrays.fill(rankByNode, -1);
+        for (int rank = 0; rank < nodes; rank++) {
+            if (rankByNode[nodeByRank[rank]] >= 0)
+                throw new IllegalArgumentException("Node " + nodeByRank[rank] + " occurs twice in the node ordering");
+            rankByNode[nodeByRank[rank]] = rank;
+        }
+        LOGGER.info("Calculated node ordering, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
+        sw = new StopWatch().start();
+        buildArcs();
+        buildDownArcs();
+        buildLevels();
+        LOGGER.info("Added arcs, nodes: {}, edges: {}, arcs: {}, levels: {}, took: {}s, {}", nf(nodes), nf(graph.getEdges()),
+                nf(getArcs()), nf(levelStart.length - 1), sw.stop().getSeconds(), getMemInfo());
+        return this;
+    }
+
+    public boolean isContracted() {
+        return upStart != null;
+    }
+
+    /**
+     * @return the number of arcs between nodes that are adjacent in the contracted graph. Every arc yields up to two
+     * shortcuts, but shortcuts that are not shorter than the edges between the two nodes are omitted.
+     */
+    public int getArcs() {
+        return upStart[nodes];
+    }
+
+    public NodeOrderingProvider getNodeOrderingProvider() {
+        if (!isContracted())
+            throw new IllegalStateException("Call contract before getting the node ordering");
+        return NodeOrderingProvider.fromArray(nodeByRank);
+    }
+
+    /**
+     * Calculates the weights of all arcs for the weighting of the given config and stores the resulting shortcuts in
+     * a new CHStorage named after the config in the Directory of the graph. This can be repeated with different
+     * weightings, but the names of the configs must differ or the previous CHStorage has to be removed from the
+     * Directory first. Use {@link #customize(CHConfig, CHStorage)} to write into a storage of another Directory.
+     */
+    public RoutingCHGraph customize(CHConfig chConfig) {
+        checkCustomize(chConfig);
+        return customize(chConfig, CHStorage.fromGraph(graph, chConfig));
+    }
+
+    /**
+     * Like {@link #customize(CHConfig)}, but writes the shortcuts into the given CHStorage. It must have been created
+     * for the nodes of the graph and must not contain any shortcuts yet.
+     */
+    public RoutingCHGraph customize(CHConfig chConfig, CHStorage chStorage) {
+        checkCustomize(chConfig);
+        if (chStorage.isEdgeBased() || chStorage.getNodes() != nodes || chStorage.getShortcuts() > 0)
+            throw new IllegalArgumentException("The CHStorage must be node-based, created for " + nodes
+                    + " nodes and empty, but got: " + chStorage.getNodes() + " nodes and " + chStorage.getShortcuts() + " shortcuts");
+        StopWatch sw = new StopWatch().start();
+        Metric metric = new Metric(getArcs());
+        Weighting weighting = chConfig.getWeighting();
+        for (int level = 0; level < levelStart.length - 1; level++) {
+            int from = levelStart[level], to = levelStart[level + 1];
+            if (threads == 1 || to - from <= CHUNK_SIZE) {
+                customizeRanks(metric, weighting, graph.createEdgeExplorer(), from, to);
+            } else {
+                List<Callable<String>> callables = new ArrayList<>();
+                for (int chunk = from; chunk < to; chunk += CHUNK_SIZE) {
+                    final int chunkFrom = chunk, chunkTo = Math.min(to, chunk + CHUNK_SIZE);
+                    callables.add(() -> {
+                        customizeRanks(metric, weighting, graph.createEdgeExplorer(), chunkFrom, chunkTo);
+                        return "";
+                    });
+                }
+                GHUtility.runConcurrently(callables.stream(), threads);
+            }
+        }
+        float customizationSeconds = sw.stop().getSeconds();
+        sw = new StopWatch().start();
+        int shortcuts = writeShortcuts(metric, new CHStorageBuilder(chStorage));
+        LOGGER.info("Customized {}, arcs: {}, shortcuts: {}, took: {}s, writing shortcuts took: {}s, {}", chConfig.getName(),
+                nf(getArcs()), nf(shortcuts), customizationSeconds, sw.stop().getSeconds(), getMemInfo());
+        return RoutingCHGraphImpl.fromGraph(graph, chStorage, chConfig);
+    }
+
+    private void checkCustomize(CHConfig chConfig) {
+        if (!isContracted())
+            throw new IllegalStateException("Call contract before customize");
+        if (chConfig.isEdgeBased() || chConfig.getWeighting().hasTurnCosts())
+            throw new IllegalArgumentException("Customizable CH only supports node-based traversal without turn costs, but got: " + chConfig);
+    }
+
+    /**
+     * Builds the undirected adjacency lists of the base graph, ignoring loops.
+     */
+    private int[][] createAdjacency() {
+        int[] start = new int[nodes + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                start[iter.getBaseNode() + 1]++;
+                start[iter.getAdjNode() + 1]++;
+            }
+        for (int node = 0; node < nodes; node++)
+            start[node + 1] += start[node];
+        int[] adjNodes = new int[start[nodes]];
+        int[] next = Arrays.copyOf(start, nodes);
+        iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjNodes[next[iter.getBaseNode()]++] = iter.getAdjNode();
+                adjNodes[next[iter.getAdjNode()]++] = iter.getBaseNode();
+            }
+        return new int[][]{start, adjNodes};
+    }
+
+    /**
+     * Contracts the nodes in the order of their rank and connects all upward neighbors of every contracted node. We
+     * do not add these arcs explicitly, but move the upward neighbors to the lowest of them, which is contracted next
+     * among them and then connects them to each other (see the CCH paper).
+     */
+    private void buildArcs() {
+        IntArrayList[] upNeighbors = new IntArrayList[nodes];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int baseRank = rankByNode[iter.getBaseNode()], adjRank = rankByNode[iter.getAdjNode()];
+            if (baseRank == adjRank)
+                continue;
+            int lower = Math.min(baseRank, adjRank);
+            if (upNeighbors[lower] == null)
+                upNeighbors[lower] = new IntArrayList(4);
+            upNeighbors[lower].add(Math.max(baseRank, adjRank));
+        }
+        upStart = new int[nodes + 1];
+        IntArrayList targets = new IntArrayList(graph.getEdges());
+        for (int rank = 0; rank < nodes; rank++) {
+            upStart[rank] = targets.size();
+            IntArrayList neighbors = upNeighbors[rank];
+            upNeighbors[rank] = null;
+            if (neighbors == null)
+                continue;
+            int[] sorted = neighbors.toArray();
+            Arrays.sort(sorted);
+            int lowest = sorted[0];
+            for (int i = 0; i < sorted.length; i++) {
+                if (i > 0 && sorted[i] == sorted[i - 1])
+                    continue;
+                targets.add(sorted[i]);
+                if (sorted[i] != lowest) {
+                    if (upNeighbors[lowest] == null)
+                        upNeighbors[lowest] = new IntArrayList(sorted.length);
+                    upNeighbors[lowest].add(sorted[i]);
+                }
+            }
+        }
+        upStart[nodes] = targets.size();
+        upTarget = targets.toArray();
+    }
+
+    private void buildDownArcs() {
+        downStart = new int[nodes + 1];
+        for (int arc = 0; arc < upTarget.length; arc++)
+            downStart[upTarget[arc] + 1]++;
+        for (int rank = 0; rank < nodes; rank++)
+            downStart[rank + 1] += downStart[rank];
+        downSource = new int[upTarget.length];
+        downArc = new int[upTarget.length];
+        int[] next = Arrays.copyOf(downStart, nodes);
+        // iterating the sources in ascending order keeps the down arcs sorted by the rank of their source
+        for (int rank = 0; rank < nodes; rank++)
+            for (int arc = upStart[rank]; arc < upStart[rank + 1]; arc++) {
+                int index = next[upTarget[arc]]++;
+                downSource[index] = rank;
+                downArc[index] = arc;
+            }
+    }
+
+    /**
+     * Nodes only depend on their downward neighbors, so all nodes whose downward neighbors are on lower levels can be
+     * customized at the same time.
+     */
+    private void buildLevels() {
+        int[] level = new int[nodes];
+        int maxLevel = 0;
+        for (int rank = 0; rank < nodes; rank++) {
+            for (int i = downStart[rank]; i < downStart[rank + 1]; i++)
+                level[rank] = Math.max(level[rank], level[downSource[i]] + 1);
+            maxLevel = Math.max(maxLevel, level[rank]);
+        }
+        levelStart = new int[nodes == 0 ? 1 : maxLevel + 2];
+        for (int rank = 0; rank < nodes; rank++)
+            levelStart[level[rank] + 1]++;
+        for (int l = 0; l < levelStart.length - 1; l++)
+            levelStart[l + 1] += levelStart[l];
+        ranksByLevel = new int[nodes];
+        int[] next = Arrays.copyOf(levelStart, levelStart.length - 1);
+        for (int rank = 0; rank < nodes; rank++)
+            ranksByLevel[next[level[rank]]++] = rank;
+    }
+
+    /**
+     * Calculates the weights of the upward arcs of the nodes ranksByLevel[from] until ranksByLevel[to - 1]. The arcs of
+     * their downward neighbors must be customized already.
+     */
+    private void customizeRanks(Metric metric, Weighting weighting, EdgeExplorer explorer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int rank = ranksByLevel[i];
+            int firstArc = upStart[rank], lastArc = upStart[rank + 1];
+            if (firstArc == lastArc)
+                continue;
+            // the edges of the base graph
+            EdgeIterator iter = explorer.setBaseNode(nodeByRank[rank]);
+            while (iter.next()) {
+                int adjRank = rankByNode[iter.getAdjNode()];
+                if (adjRank <= rank)
+                    continue;
+                int arc = Arrays.binarySearch(upTarget, firstArc, lastArc, adjRank);
+                double fwdWeight = weighting.calcEdgeWeightWithAccess(iter, false);
+                if (fwdWeight < metric.fwdWeight[arc]) {
+                    metric.fwdWeight[arc] = fwdWeight;
+                    metric.fwdEdge[arc] = iter.getEdge();
+                }
+                double bwdWeight = weighting.calcEdgeWeightWithAccess(iter, true);
+                if (bwdWeight < metric.bwdWeight[arc]) {
+                    metric.bwdWeight[arc] = bwdWeight;
+                    metric.bwdEdge[arc] = iter.getEdge();
+                }
+            }
+            // the lower triangles: for every downward neighbor x the arcs x-rank and x-target with target > rank.
+            // the upward neighbors of x are all connected to each other, so we can walk both sorted arc lists at once
+            for (int j = downStart[rank]; j < downStart[rank + 1]; j++) {
+                int x = downSource[j];
+                int xArc = downArc[j];
+                int arc = firstArc;
+                for (int xTargetArc = xArc + 1; xTargetArc < upStart[x + 1]; xTargetArc++) {
+                    while (upTarget[arc] != upTarget[xTargetArc])
+                        arc++;
+                    // rank -> x -> target
+                    double fwdWeight = metric.bwdWeight[xArc] + metric.fwdWeight[xTargetArc];
+                    if (fwdWeight < metric.fwdWeight[arc]) {
+                        metric.fwdWeight[arc] = fwdWeight;
+                        metric.fwdEdge[arc] = Metric.NO_EDGE;
+                        metric.fwdSkip1[arc] = xArc;
+                        metric.fwdSkip2[arc] = xTargetArc;
+                    }
+                    // target -> x -> rank
+                    double bwdWeight = metric.bwdWeight[xTargetArc] + metric.fwdWeight[xArc];
+                    if (bwdWeight < metric.bwdWeight[arc]) {
+                        metric.bwdWeight[arc] = bwdWeight;
+                        metric.bwdEdge[arc] = Metric.NO_EDGE;
+                        metric.bwdSkip1[arc] = xTargetArc;
+                        metric.bwdSkip2[arc] = xArc;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a shortcut for every arc direction that is shorter than the edges of the base graph between its nodes.
+     *
+     * @return the number of added shortcuts
+     */
+    private int writeShortcuts(Metric metric, CHStorageBuilder chBuilder) {
+        for (int rank = 0; rank < nodes; rank++)
+            chBuilder.setLevel(nodeByRank[rank], rank);
+        int shortcuts = 0;
+        int baseEdges = graph.getEdges();
+        // from now on fwdEdge and bwdEdge hold the CH edge that represents an arc direction. the skipped arcs
+        // always belong to lower nodes, so their CH edges are known already
+        for (int rank = 0; rank < nodes; rank++) {
+            for (int arc = upStart[rank]; arc < upStart[rank + 1]; arc++) {
+                boolean fwdShortcut = metric.fwdEdge[arc] == Metric.NO_EDGE && Double.isFinite(metric.fwdWeight[arc]);
+                boolean bwdShortcut = metric.bwdEdge[arc] == Metric.NO_EDGE && Double.isFinite(metric.bwdWeight[arc]);
+                int nodeA = nodeByRank[rank], nodeB = nodeByRank[upTarget[arc]];
+                int fwdSkip1 = fwdShortcut ? metric.bwdEdge[metric.fwdSkip1[arc]] : -1;
+                int fwdSkip2 = fwdShortcut ? metric.fwdEdge[metric.fwdSkip2[arc]] : -1;
+                int bwdSkip1 = bwdShortcut ? metric.bwdEdge[metric.bwdSkip1[arc]] : -1;
+                int bwdSkip2 = bwdShortcut ? metric.fwdEdge[metric.bwdSkip2[arc]] : -1;
+                if (fwdShortcut && bwdShortcut && metric.fwdWeight[arc] == metric.bwdWeight[arc]
+                        && fwdSkip1 == bwdSkip2 && fwdSkip2 == bwdSkip1) {
+                    // both directions skip the same edges, so a single shortcut is sufficient
+                    int shortcut = chBuilder.addShortcutNodeBased(nodeA, nodeB, PrepareEncoder.getScDirMask(), metric.fwdWeight[arc], fwdSkip1, fwdSkip2);
+                    metric.fwdEdge[arc] = metric.bwdEdge[arc] = baseEdges + shortcut;
+                    shortcuts++;
+                    continue;
+                }
+                if (fwdShortcut) {
+                    int shortcut = chBuilder.addShortcutNodeBased(nodeA, nodeB, PrepareEncoder.getScFwdDir(), metric.fwdWeight[arc], fwdSkip1, fwdSkip2);
+                    metric.fwdEdge[arc] = baseEdges + shortcut;
+                    shortcuts++;
+                }
+                if (bwdShortcut) {
+                    int shortcut = chBuilder.addShortcutNodeBased(nodeA, nodeB, PrepareEncoder.getScBwdDir(), metric.bwdWeight[arc], bwdSkip1, bwdSkip2);
+                    metric.bwdEdge[arc] = baseEdges + shortcut;
+                    shortcuts++;
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * The weights of all arcs for one weighting. The forward direction of an arc points from its lower to its upper
+     * node. An arc direction is either represented by an edge of the base graph or by a lower triangle, i.e. two
+     * skipped arcs.
+     */
+    private static class Metric {
+        static final int NO_EDGE = -1;
+        final double[] fwdWeight;
+        final double[] bwdWeight;
+        final int[] fwdEdge;
+        final int[] bwdEdge;
+        final int[] fwdSkip1;
+        final int[] fwdSkip2;
+        final int[] bwdSkip1;
+        final int[] bwdSkip2;
+
+        Metric(int arcs) {
+            fwdWeight = new double[arcs];
+            bwdWeight = new double[arcs];
+            Arrays.fill(fwdWeight, Double.POSITIVE_INFINITY);
+            Arrays.fill(bwdWeight, Double.POSITIVE_INFINITY);
+            fwdEdge = new int[arcs];
+            bwdEdge = new int[arcs];
+            Arrays.fill(fwdEdge, NO_EDGE);
+            Arrays.fill(bwdEdge, NO_EDGE);
+            fwdSkip1 = new int[arcs];
+            fwdSkip2 = new int[arcs];
+            bwdSkip1 = new int[arcs];
+            bwdSkip2 = new int[arcs];
+        }
+    }
+
+    /**
+     * Orders the nodes by recursively splitting the graph at the median latitude or longitude. The nodes that separate
+     * both halves get the highest ranks, so the two halves do not share any arcs.
+     */
+    private static class NestedDissection {
+        private final NodeAccess nodeAccess;
+        private final int[] adjStart;
+        private final int[] adjNodes;
+        // marks the nodes of the two halves of the current split
+        private final int[] marks;
+        private int mark;
+
+        NestedDissection(BaseGraph graph, int[][] adjacency) {
+            nodeAccess = graph.getNodeAccess();
+            adjStart = adjacency[0];
+            adjNodes = adjacency[1];
+            marks = new int[graph.getNodes()];
+        }
+
+        void calcNodeOrdering(int[] nodeByRank) {
+            int[] cell = new int[nodeByRank.length];
+            for (int node = 0; node < cell.length; node++)
+                cell[node] = node;
+            dissect(cell, nodeByRank.length - 1, nodeByRank);
+        }
+
+        private void dissect(int[] cell, int maxRank, int[] nodeByRank) {
+            if (cell.length <= 2) {
+                for (int i = 0; i < cell.length; i++)
+                    nodeByRank[maxRank - i] = cell[i];
+                return;
+            }
+            int[][] latSplit = split(cell, true);
+            int[][] lonSplit = split(cell, false);
+            int[][] best = latSplit[0].length <= lonSplit[0].length ? latSplit : lonSplit;
+            int[] separator = best[0];
+            for (int i = 0; i < separator.length; i++)
+                nodeByRank[maxRank - i] = separator[i];
+            dissect(best[1], maxRank - separator.length, nodeByRank);
+            dissect(best[2], maxRank - separator.length - best[1].length, nodeByRank);
+        }
+
+        /**
+         * @return the separator and the remaining nodes of both halves
+         */
+        private int[][] split(int[] cell, boolean byLat) {
+            long[] sorted = new long[cell.length];
+            for (int i = 0; i < cell.length; i++) {
+                int node = cell[i];
+                long coordinate = Math.round((byLat ? nodeAccess.getLat(node) : nodeAccess.getLon(node)) * 1e7);
+                sorted[i] = coordinate << 32 | node;
+            }
+            Arrays.sort(sorted);
+            int half = sorted.length / 2;
+            int markA = ++mark, markB = ++mark;
+            for (int i = 0; i < sorted.length; i++)
+                marks[(int) sorted[i]] = i < half ? markA : markB;
+            IntArrayList boundaryA = new IntArrayList(), boundaryB = new IntArrayList();
+            for (long entry : sorted) {
+                int node = (int) entry;
+                int otherMark = marks[node] == markA ? markB : markA;
+                for (int i = adjStart[node]; i < adjStart[node + 1]; i++)
+                    if (marks[adjNodes[i]] == otherMark) {
+                        (otherMark == markB ? boundaryA : boundaryB).add(node);
+                        break;
+                    }
+            }
+            // we use the smaller boundary as separator. all edges between both halves are attached to it
+            IntArrayList separator = boundaryA.size() <= boundaryB.size() ? boundaryA : boundaryB;
+            int separatorMark = ++mark;
+            for (int i = 0; i < separator.size(); i++)
+                marks[separator.get(i)] = separatorMark;
+            IntArrayList restA = new IntArrayList(half), restB = new IntArrayList(sorted.length - half);
+            for (int i = 0; i < sorted.length; i++) {
+                int node = (int) sorted[i];
+                if (marks[node] != separatorMark)
+                    (i < half ? restA : restB).add(node);
+            }
+            return new int[][]{separator.toArray(), restA.toArray(), restB.toArray()};
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.storage.RoutingCHEdgeIteratorState;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.util.EdgeIteratorState;
@@ -18,15 +19,23 @@ import static com.graphhopper.util.EdgeIterator.NO_EDGE;
  * @see PrepareContractionHierarchies
  */
 public class ShortcutUnpacker {
+    // placeholder for the prevOrNextEdgeId of the first original edge of a cached shortcut, which depends on the query
+    private static final int OUTER_EDGE = Integer.MIN_VALUE;
     private final RoutingCHGraph graph;
     private final Visitor visitor;
     private final boolean edgeBased;
+    private final ShortcutUnpackingCache cache;
     private boolean reverseOrder;
+    // while a shortcut is unpacked for the cache its original edges are collected here instead of being visited
+    private IntArrayList recordedEdges;
+    // reused for every shortcut that is not in the cache, most of them are too short to be cached anyway
+    private final IntArrayList recordBuffer = new IntArrayList();
 
     public ShortcutUnpacker(RoutingCHGraph graph, Visitor visitor, boolean edgeBased) {
         this.graph = graph;
         this.visitor = visitor;
         this.edgeBased = edgeBased;
+        this.cache = graph.getShortcutUnpackingCache();
     }
 
     /**
@@ -49,12 +58,53 @@ public class ShortcutUnpacker {
         if (edge == null) {
             throw new IllegalArgumentException("Edge with id: " + edgeId + " does not exist or does not touch node " + adjNode);
         }
-        expandEdge(edge, reverse, prevOrNextEdgeId);
+        if (cache == null || !edge.isShortcut()) {
+            expandEdge(edge, reverse, prevOrNextEdgeId);
+            return;
+        }
+        long key = ShortcutUnpackingCache.createKey(edgeId, adjNode, reverse);
+        int[] originalEdges = cache.get(key);
+        if (originalEdges != null) {
+            visitOriginalEdges(originalEdges, originalEdges.length / 3, reverse, prevOrNextEdgeId);
+            return;
+        }
+        recordOriginalEdges(edge, reverse);
+        int count = recordBuffer.size() / 3;
+        cache.put(key, recordBuffer, count);
+        visitOriginalEdges(recordBuffer.buffer, count, reverse, prevOrNextEdgeId);
+    }
+
+    /**
+     * Collects the original edge, its adjacent node and the prevOrNextEdgeId for all original edges packed inside
+     * the given shortcut in forward order into the record buffer
+     */
+    private void recordOriginalEdges(RoutingCHEdgeIteratorState shortcut, boolean reverse) {
+        boolean tmpReverseOrder = reverseOrder;
+        reverseOrder = false;
+        recordBuffer.clear();
+        recordedEdges = recordBuffer;
+        try {
+            expandEdge(shortcut, reverse, OUTER_EDGE);
+        } finally {
+            recordedEdges = null;
+            reverseOrder = tmpReverseOrder;
+        }
+    }
+
+    private void visitOriginalEdges(int[] originalEdges, int count, boolean reverse, int prevOrNextEdgeId) {
+        for (int i = 0; i < count; i++) {
+            int pointer = 3 * (reverseOrder ? count - 1 - i : i);
+            int prevOrNext = originalEdges[pointer + 2] == OUTER_EDGE ? prevOrNextEdgeId : originalEdges[pointer + 2];
+            visitor.visit(graph.getBaseGraph().getEdgeIteratorState(originalEdges[pointer], originalEdges[pointer + 1]), reverse, prevOrNext);
+        }
     }
 
     private void expandEdge(RoutingCHEdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
         if (!edge.isShortcut()) {
-            visitor.visit(graph.getBaseGraph().getEdgeIteratorState(edge.getOrigEdge(), edge.getAdjNode()), reverse, prevOrNextEdgeId);
+            if (recordedEdges != null)
+                recordedEdges.add(edge.getOrigEdge(), edge.getAdjNode(), prevOrNextEdgeId);
+            else
+                visitor.visit(graph.getBaseGraph().getEdgeIteratorState(edge.getOrigEdge(), edge.getAdjNode()), reverse, prevOrNextEdgeId);
             return;
         }
         if (edgeBased) {
@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the original edges that are packed inside the shortcuts of a CH graph. The same high-level
+ * shortcuts are unpacked again and again for long routes and unpacking them recursively requires many lookups in the
+ * CH storage. Only shortcuts that contain at least a minimum number of original edges are cached, and when the cache
+ * is full the least recently used entry is removed. The cache can be shared by all queries on the same CH graph.
+ * Shortcuts that are too short to be cached are not counted as misses, so the hit rate only refers to the shortcuts
+ * the cache is meant for.
+ *
+ * @see ShortcutUnpacker
+ */
+public class ShortcutUnpackingCache {
+    private final int maxEntries;
+    private final int minOriginalEdges;
+    private final Map<Long, int[]> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries       the maximum number of shortcuts that are kept in the cache
+     * @param minOriginalEdges shortcuts that contain less original edges than this are not cached
+     */
+    public ShortcutUnpackingCache(int maxEntries, int minOriginalEdges) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be positive, was: " + maxEntries);
+        this.maxEntries = maxEntries;
+        this.minOriginalEdges = minOriginalEdges;
+        // use accessOrder==true to remove the least recently used entry, not the oldest inserted one
+        cache = new LinkedHashMap<Long, int[]>(Math.min(maxEntries, 10_000), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > ShortcutUnpackingCache.this.maxEntries;
+            }
+        };
+    }
+
+    static long createKey(int shortcut, int adjNode, boolean reverse) {
+        return ((long) shortcut << 32) | ((long) adjNode << 1) | (reverse ? 1 : 0);
+    }
+
+    /**
+     * @return the unpacked original edges for the given key or null if they are not in the cache
+     */
+    int[] get(long key) {
+        int[] result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result != null)
+            hits.increment();
+        return result;
+    }
+
+    /**
+     * Adds the unpacked original edges of a shortcut that was not found in the cache. Only if the shortcut contains
+     * enough original edges they are copied and the lookup is counted as a miss.
+     */
+    void put(long key, IntArrayList originalEdges, int originalEdgeCount) {
+        if (originalEdgeCount < minOriginalEdges)
+            return;
+        misses.increment();
+        int[] entry = originalEdges.toArray();
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of lookups that were answered from the cache, or 0 if there were no lookups yet
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + size() + "/" + maxEntries + ", hits: " + getHits() + ", misses: " + getMisses()
+                + ", hit rate: " + Math.round(getHitRate() * 1000) / 10.0 + "%";
+    }
+}
@@ -40,7 +40,10 @@ public class LMApproximator implements WeightApproximator {
     private final Weighting routingWeighting;
     private final int[] activeLandmarkIndices;
     private final int[] weightsFromActiveLandmarksToT;
+    private final int[] upperWeightsFromActiveLandmarksToT;
     private final int[] weightsFromTToActiveLandmarks;
+    private final int[] upperWeightsFromTToActiveLandmarks;
+    private int subnetwork;
     private double epsilon = 1;
     private int towerNodeNextToT = -1;
     private double weightFromTToTowerNode;
@@ -73,7 +76,9 @@ public class LMApproximator implements WeightApproximator {
         activeLandmarkIndices = new int[activeCount];
         Arrays.fill(activeLandmarkIndices, -1);
         weightsFromActiveLandmarksToT = new int[activeCount];
+        upperWeightsFromActiveLandmarksToT = new int[activeCount];
         weightsFromTToActiveLandmarks = new int[activeCount];
+        upperWeightsFromTToActiveLandmarks = new int[activeCount];
 
         this.graph = graph;
         this.lmWeighting = lmWeighting;
@@ -109,9 +114,12 @@ public class LMApproximator implements WeightApproximator {
         if (recalculateActiveLandmarks) {
             recalculateActiveLandmarks = false;
             if (lms.chooseActiveLandmarks(v, towerNodeNextToT, activeLandmarkIndices, reverse)) {
+                subnetwork = lms.getSubnetwork(towerNodeNextToT);
                 for (int i = 0; i < activeLandmarkIndices.length; i++) {
-                    weightsFromActiveLandmarksToT[i] = lms.getFromWeight(activeLandmarkIndices[i], towerNodeNextToT);
-                    weightsFromTToActiveLandmarks[i] = lms.getToWeight(activeLandmarkIndices[i], towerNodeNextToT);
+                    weightsFromActiveLandmarksToT[i] = lms.getFromWeight(subnetwork, activeLandmarkIndices[i], towerNodeNextToT);
+                    upperWeightsFromActiveLandmarksToT[i] = lms.getFromWeightUpperBound(subnetwork, activeLandmarkIndices[i], towerNodeNextToT);
+                    weightsFromTToActiveLandmarks[i] = lms.getToWeight(subnetwork, activeLandmarkIndices[i], towerNodeNextToT);
+                    upperWeightsFromTToActiveLandmarks[i] = lms.getToWeightUpperBound(subnetwork, activeLandmarkIndices[i], towerNodeNextToT);
                 }
             } else {
                 // note: fallback==true means forever true!
@@ -132,8 +140,8 @@ public class LMApproximator implements WeightApproximator {
             int resultInt = approximateForLandmark(i, v);
             maxWeightInt = Math.max(maxWeightInt, resultInt);
         }
-        // Round down, we need to be an underestimator.
-        return (maxWeightInt - 1) * factor;
+        // The upper bounds of the subtracted weights already include the rounding, so this is an underestimation.
+        return maxWeightInt * factor;
     }
 
     private int approximateForLandmark(int i, int v) {
@@ -165,16 +173,18 @@ public class LMApproximator implements WeightApproximator {
         //  III)  d(t,v)  + d(LM,t) >= d(LM,v), so d(t,v) >= d(LM,v) - d(LM,t)
         //   IV)  d(v,LM) + d(t,v)  >= d(t,LM), so d(t,v) >= d(t,LM) - d(v,LM)
         //
-        // ...and we can get the right-hand sides of III) and IV) by multiplying those of II) and I) by -1.
+        // ...and we can get the right-hand sides of III) and IV) by swapping the terms of II) and I).
+        //
+        // The weights are only stored with a limited precision, so we always subtract the upper bound of a weight
+        // from the lower bound of another weight to still get an underestimation.
 
-        int rhs1Int = lms.getToWeight(activeLandmarkIndices[i], v) - weightsFromTToActiveLandmarks[i];
-        int rhs2Int = weightsFromActiveLandmarksToT[i] - lms.getFromWeight(activeLandmarkIndices[i], v);
+        int lmIndex = activeLandmarkIndices[i];
+        if (reverse)
+            return Math.max(weightsFromTToActiveLandmarks[i] - lms.getToWeightUpperBound(subnetwork, lmIndex, v),
+                    lms.getFromWeight(subnetwork, lmIndex, v) - upperWeightsFromActiveLandmarksToT[i]);
 
-        if (reverse) {
-            rhs1Int *= -1;
-            rhs2Int *= -1;
-        }
-        return Math.max(rhs1Int, rhs2Int);
+        return Math.max(lms.getToWeight(subnetwork, lmIndex, v) - upperWeightsFromTToActiveLandmarks[i],
+                weightsFromActiveLandmarksToT[i] - lms.getFromWeightUpperBound(subnetwork, lmIndex, v));
     }
 
     @Override
@@ -209,7 +219,7 @@ public class LMApproximator implements WeightApproximator {
 
     @Override
     public double getSlack() {
-        return lms.getFactor();
+        return lms.getSlack();
     }
 
     /**
@@ -54,6 +54,9 @@ import static com.graphhopper.util.Helper.*;
 public class LMPreparationHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(LMPreparationHandler.class);
     private int landmarkCount = 16;
+    private int storedLandmarkCount = -1;
+    private LandmarkStorage.WeightFormat weightFormat = LandmarkStorage.WeightFormat.SHORT;
+    private boolean perLandmarkFactors = false;
     private final List<LMProfile> lmProfiles = new ArrayList<>();
     private final Map<String, Double> maximumWeights = new HashMap<>();
     private int minNodes = -1;
@@ -76,6 +79,9 @@ public class LMPreparationHandler {
         setLMProfiles(ghConfig.getLMProfiles());
 
         landmarkCount = ghConfig.getInt(Parameters.Landmark.COUNT, landmarkCount);
+        storedLandmarkCount = ghConfig.getInt(Landmark.PREPARE + "stored_landmarks", storedLandmarkCount);
+        weightFormat = LandmarkStorage.WeightFormat.valueOf(toUpperCase(ghConfig.getString(Landmark.PREPARE + "weight_format", weightFormat.name())));
+        perLandmarkFactors = ghConfig.getBool(Landmark.PREPARE + "per_landmark_factors", perLandmarkFactors);
         logDetails = ghConfig.getBool(Landmark.PREPARE + "log_details", false);
         minNodes = ghConfig.getInt(Landmark.PREPARE + "min_network_size", -1);
 
@@ -101,6 +107,14 @@ public class LMPreparationHandler {
         return landmarkCount;
     }
 
+    /**
+     * @return the number of landmarks that are stored per node, which is less than {@link #getLandmarks()} if
+     * prepare.lm.stored_landmarks is set
+     */
+    public int getStoredLandmarks() {
+        return storedLandmarkCount > 0 ? storedLandmarkCount : landmarkCount;
+    }
+
     public final boolean isEnabled() {
         return !lmProfiles.isEmpty();
     }
@@ -223,7 +237,11 @@ public class LMPreparationHandler {
                     lmConfig, landmarkCount).
                     setLandmarkSuggestions(lmSuggestions).
                     setMaximumWeight(maximumWeight).
+                    setWeightFormat(weightFormat).
+                    setPerLandmarkFactors(perLandmarkFactors).
                     setLogDetails(logDetails);
+            if (storedLandmarkCount > 0)
+                prepareLandmarks.setStoredLandmarks(storedLandmarkCount);
             if (minNodes > 1)
                 prepareLandmarks.setMinimumNodes(minNodes);
             // using the area index we separate certain areas from each other but we do not change the base graph for this
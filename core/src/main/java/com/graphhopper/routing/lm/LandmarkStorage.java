@@ -61,10 +61,14 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class LandmarkStorage {
 
-    // Short.MAX_VALUE = 2^15-1 but we have unsigned short so we need 2^16-1
-    private static final int SHORT_INFINITY = Short.MAX_VALUE * 2 + 1;
-    // We have large values that do not fit into a short, use a specific maximum value
-    private static final int SHORT_MAX = SHORT_INFINITY - 1;
+    // the upper bound of a weight that is not known, small enough that differences of weights do not overflow
+    private static final int WEIGHT_INFINITY = Integer.MAX_VALUE / 2;
+    // the codes of LOG_BYTE grow like log(1 + LOG_MU * weight / maxWeight), bigger values mean finer steps for small weights
+    private static final double LOG_MU = 32;
+    // with per landmark factors the common factor is chosen so that all weights fit into this many units
+    private static final int MAX_WEIGHT_UNITS = 1 << 20;
+    // the number of sampled node pairs per subnetwork to select the stored landmarks
+    private static final int SELECTION_PAIRS = 500;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LandmarkStorage.class);
     // This value is used to identify nodes where no subnetwork is associated
@@ -74,14 +78,31 @@ public class LandmarkStorage {
     // one node has an associated landmark information ('one landmark row'): the forward and backward weight
     private long LM_ROW_LENGTH;
     private int landmarks;
-    private final int FROM_OFFSET;
-    private final int TO_OFFSET;
+    private int storedLandmarks;
+    private WeightFormat weightFormat = WeightFormat.SHORT;
+    private int bytesPerWeight;
+    private int maxCode;
+    private int infinityCode;
+    private boolean perLandmarkFactors;
     private final DataAccess landmarkWeightDA;
+    // the weights are written into this DataAccess while preparing, it only differs from landmarkWeightDA if
+    // more landmarks are calculated than stored
+    private DataAccess weightDA;
+    // the subnetwork whose landmarks wrote the weights of a node, only needed to select the stored landmarks
+    private byte[] weightOwners;
     // every subnetwork has its own landmark mapping but the count of landmarks is always the same
     private final List<int[]> landmarkIDs;
+    // the scale of every landmark and direction per subnetwork, only used for perLandmarkFactors
+    private final List<float[]> landmarkScales;
     private double factor = -1;
+    // converts the stored codes into the units of the factor, see initDecoding
+    private double[] linearRatios;
+    private int[] logLowerBounds;
+    private int[] logUpperBounds;
+    private double slack;
     private final static double DOUBLE_MLTPL = 1e6;
     private final BaseGraph graph;
+    private final Directory dir;
     private final NodeAccess na;
     private final EncodedValueLookup encodedValueLookup;
     private final Weighting weighting;
@@ -101,6 +122,7 @@ public class LandmarkStorage {
 
     public LandmarkStorage(BaseGraph graph, EncodedValueLookup encodedValueLookup, Directory dir, final LMConfig lmConfig, int landmarks) {
         this.graph = graph;
+        this.dir = dir;
         this.encodedValueLookup = encodedValueLookup;
         this.na = graph.getNodeAccess();
         this.minimumNodes = Math.min(graph.getNodes() / 2, 500_000);
@@ -134,12 +156,13 @@ public class LandmarkStorage {
         this.traversalMode = TraversalMode.NODE_BASED;
         this.landmarkWeightDA = dir.create("landmarks_" + lmConfig.getName());
 
+        this.weightDA = landmarkWeightDA;
+
         this.landmarks = landmarks;
-        // one short per landmark and two directions => 2*2 byte
-        this.LM_ROW_LENGTH = landmarks * 4;
-        this.FROM_OFFSET = 0;
-        this.TO_OFFSET = 2;
+        this.storedLandmarks = landmarks;
+        initLayout();
         this.landmarkIDs = new ArrayList<>();
+        this.landmarkScales = new ArrayList<>();
         this.subnetworkStorage = new SubnetworkStorage(dir.create("landmarks_subnetwork_" + lmConfig.getName()));
     }
 
@@ -158,10 +181,63 @@ public class LandmarkStorage {
             this.factor = maxWeight / PRECISION;
             if (Double.isInfinite(factor) || Double.isNaN(factor))
                 throw new IllegalStateException("Illegal factor " + factor + " calculated from maximum weight " + maxWeight);
+            initDecoding();
         }
         return this;
     }
 
+    /**
+     * Specifies how the weights are stored. {@link WeightFormat#LOG_BYTE} needs half of the memory of the default
+     * {@link WeightFormat#SHORT}, but the weights of far away nodes are less precise, which makes queries slower.
+     */
+    public LandmarkStorage setWeightFormat(WeightFormat weightFormat) {
+        if (isInitialized())
+            throw new IllegalStateException("Cannot change the weight format of initialized landmarks");
+        this.weightFormat = weightFormat;
+        initLayout();
+        if (factor > 0)
+            initDecoding();
+        return this;
+    }
+
+    public WeightFormat getWeightFormat() {
+        return weightFormat;
+    }
+
+    /**
+     * Calculate a separate factor for every landmark and direction in every subnetwork from the maximum weight that
+     * was actually found. Then no weight is maxed out, small subnetworks get a finer precision and the maximum weight
+     * does neither have to be estimated nor configured, i.e. {@link #setMaximumWeight(double)} is ignored.
+     */
+    public LandmarkStorage setPerLandmarkFactors(boolean perLandmarkFactors) {
+        if (isInitialized())
+            throw new IllegalStateException("Cannot change the factors of initialized landmarks");
+        this.perLandmarkFactors = perLandmarkFactors;
+        return this;
+    }
+
+    /**
+     * Stores only the specified number of landmarks per node. All landmarks specified in the constructor are still
+     * calculated, but only those that give the best approximations for random node pairs of a subnetwork are kept.
+     * The preparation needs the memory of all landmarks until they are selected.
+     */
+    public LandmarkStorage setStoredLandmarks(int storedLandmarks) {
+        if (isInitialized())
+            throw new IllegalStateException("Cannot change the stored landmarks of initialized landmarks");
+        if (storedLandmarks < 1 || storedLandmarks > landmarks)
+            throw new IllegalArgumentException("Stored landmarks must be between 1 and " + landmarks + " but was " + storedLandmarks);
+        this.storedLandmarks = storedLandmarks;
+        return this;
+    }
+
+    private void initLayout() {
+        bytesPerWeight = weightFormat.bytes;
+        infinityCode = (1 << (8 * bytesPerWeight)) - 1;
+        // We have large values that do not fit into the stored bytes, use a specific maximum value
+        maxCode = infinityCode - 1;
+        LM_ROW_LENGTH = landmarks * 2L * bytesPerWeight;
+    }
+
     /**
      * By default do not log many details.
      */
@@ -233,15 +309,26 @@ public class LandmarkStorage {
         // fill 'from' and 'to' weights with maximum value
         long maxBytes = (long) graph.getNodes() * LM_ROW_LENGTH;
         this.landmarkWeightDA.create(2000);
-        this.landmarkWeightDA.ensureCapacity(maxBytes);
+        if (storedLandmarks < landmarks) {
+            // the weights of all landmarks are only needed until the stored landmarks are selected. They are kept in the
+            // directory of the landmark weights, so e.g. with memory mapped storages they do not have to fit into the heap
+            weightDA = dir.create("landmark_candidates_" + lmConfig.getName()).create(2000);
+            weightOwners = new byte[graph.getNodes()];
+        }
+        weightDA.ensureCapacity(maxBytes);
 
-        for (long pointer = 0; pointer < maxBytes; pointer += 2) {
-            landmarkWeightDA.setShort(pointer, (short) SHORT_INFINITY);
+        for (long pointer = 0; pointer < maxBytes; pointer += bytesPerWeight) {
+            setCode(weightDA, pointer, infinityCode);
         }
 
         int[] empty = new int[landmarks];
         Arrays.fill(empty, UNSET_SUBNETWORK);
         landmarkIDs.add(empty);
+        if (perLandmarkFactors) {
+            float[] emptyScales = new float[2 * landmarks];
+            Arrays.fill(emptyScales, 1);
+            landmarkScales.add(emptyScales);
+        }
 
         byte[] subnetworks = new byte[graph.getNodes()];
         Arrays.fill(subnetworks, (byte) UNSET_SUBNETWORK);
@@ -278,7 +365,7 @@ public class LandmarkStorage {
 
         String additionalInfo = "";
         // guess the factor
-        if (factor <= 0) {
+        if (factor <= 0 && !perLandmarkFactors) {
             // A 'factor' is necessary to store the weight in just a short value but without losing too much precision.
             // This factor is rather delicate to pick, we estimate it from an exploration with some "test landmarks",
             // see estimateMaxWeight. If we pick the distance too big for small areas this could lead to (slightly)
@@ -297,7 +384,7 @@ public class LandmarkStorage {
             nodes += subnetworkIds.size();
             if (subnetworkIds.size() < minimumNodes)
                 continue;
-            if (factor <= 0)
+            if (factor <= 0 && !perLandmarkFactors)
                 throw new IllegalStateException("factor wasn't initialized " + factor + ", subnetworks:"
                         + graphComponents.getComponents().size() + ", minimumNodes:" + minimumNodes + ", current size:" + subnetworkIds.size());
 
@@ -320,9 +407,18 @@ public class LandmarkStorage {
                 LOGGER.warn("next start node not found in big enough network of size " + subnetworkIds.size() + ", first element is " + subnetworkIds.get(0) + ", " + createPoint(graph, subnetworkIds.get(0)));
         }
 
+        if (perLandmarkFactors)
+            initPerLandmarkFactor();
+        initDecoding();
+        if (storedLandmarks < landmarks) {
+            selectLandmarks(subnetworks);
+            maxBytes = (long) graph.getNodes() * LM_ROW_LENGTH;
+        }
+
         int subnetworkCount = landmarkIDs.size();
         // store all landmark node IDs and one int for the factor itself.
-        this.landmarkWeightDA.ensureCapacity(maxBytes /* landmark weights */ + subnetworkCount * landmarks /* landmark mapping per subnetwork */);
+        this.landmarkWeightDA.ensureCapacity(maxBytes /* landmark weights */ + subnetworkCount * landmarks * 4L /* landmark mapping per subnetwork */
+                + (perLandmarkFactors ? subnetworkCount * landmarks * 8L : 0) /* landmark scales per subnetwork */);
 
         // calculate offset to point into landmark mapping
         long bytePos = maxBytes;
@@ -332,6 +428,12 @@ public class LandmarkStorage {
                 bytePos += 4L;
             }
         }
+        for (float[] scales : landmarkScales) {
+            for (float scale : scales) {
+                landmarkWeightDA.setInt(bytePos, Float.floatToIntBits(scale));
+                bytePos += 4L;
+            }
+        }
 
         landmarkWeightDA.setHeader(0 * 4, graph.getNodes());
         landmarkWeightDA.setHeader(1 * 4, landmarks);
@@ -339,6 +441,10 @@ public class LandmarkStorage {
         if (factor * DOUBLE_MLTPL > Integer.MAX_VALUE)
             throw new UnsupportedOperationException("landmark weight factor cannot be bigger than Integer.MAX_VALUE " + factor * DOUBLE_MLTPL);
         landmarkWeightDA.setHeader(3 * 4, (int) Math.round(factor * DOUBLE_MLTPL));
+        landmarkWeightDA.setHeader(4 * 4, weightFormat.ordinal());
+        // the per landmark factor can be much smaller than 1/DOUBLE_MLTPL, so store it exactly
+        landmarkWeightDA.setHeader(5 * 4, perLandmarkFactors ? 1 : 0);
+        landmarkWeightDA.setHeader(6 * 4, Float.floatToIntBits((float) factor));
 
         // serialize fast byte[] into DataAccess
         subnetworkStorage.create(graph.getNodes());
@@ -445,6 +551,7 @@ public class LandmarkStorage {
         }
 
         // 2) calculate weights for all landmarks -> 'from' and 'to' weight
+        float[] scales = new float[2 * landmarks];
         for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
             if (Thread.currentThread().isInterrupted()) {
                 throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
@@ -453,7 +560,7 @@ public class LandmarkStorage {
             LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
             explorer.setStartNode(lmNodeId);
             explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
+            explorer.initLandmarkWeights(lmIdx, lmNodeId, getPreparationScale(scales, lmIdx, explorer), subnetworkId);
 
             // set subnetwork id to all explored nodes, but do this only for the first landmark
             if (lmIdx == 0) {
@@ -464,7 +571,7 @@ public class LandmarkStorage {
             explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
             explorer.setStartNode(lmNodeId);
             explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
+            explorer.initLandmarkWeights(lmIdx, lmNodeId, getPreparationScale(scales, lmIdx, explorer), subnetworkId);
 
             if (lmIdx == 0) {
                 if (explorer.setSubnetworks(subnetworks, subnetworkId))
@@ -476,11 +583,163 @@ public class LandmarkStorage {
                         + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
         }
 
-        // TODO set weight to SHORT_MAX if entry has either no 'from' or no 'to' entry
+        // TODO set weight to the maximum code if entry has either no 'from' or no 'to' entry
         landmarkIDs.add(tmpLandmarkNodeIds);
+        if (perLandmarkFactors)
+            landmarkScales.add(scales);
         return true;
     }
 
+    /**
+     * @return the scale to store the weights of the finished explorer. With per landmark factors it is derived from
+     * the biggest weight of the explorer and remembered in the specified scales array.
+     */
+    private double getPreparationScale(float[] scales, int lmIdx, LandmarkExplorer explorer) {
+        if (!perLandmarkFactors)
+            return getGlobalScale();
+        // the weight of the last explored entry is the biggest weight, make sure that it is not maxed out
+        double maxWeight = Math.max(explorer.getLastEntry().weight, 1e-3);
+        float scale = Math.nextUp((float) (weightFormat == WeightFormat.LOG_BYTE ? maxWeight : maxWeight / (maxCode - 1)));
+        scales[2 * lmIdx + (explorer.reverse ? 1 : 0)] = scale;
+        return scale;
+    }
+
+    /**
+     * Picks the factor for the approximation, i.e. the unit of the weights returned from getFromWeight and
+     * getToWeight, as fine as the finest landmark scale but so that all weights still fit into MAX_WEIGHT_UNITS.
+     */
+    private void initPerLandmarkFactor() {
+        double maxWeight = 0, minStep = Double.MAX_VALUE;
+        for (int subnetwork = 1; subnetwork < landmarkScales.size(); subnetwork++) {
+            for (float scale : landmarkScales.get(subnetwork)) {
+                maxWeight = Math.max(maxWeight, getBoundary(maxCode, scale));
+                minStep = Math.min(minStep, getBoundary(1, scale));
+            }
+        }
+        // store the factor as float to get exactly the same factor after loading
+        factor = maxWeight > 0 ? (float) Math.max(minStep, maxWeight / MAX_WEIGHT_UNITS) : 1;
+    }
+
+    /**
+     * Keeps only storedLandmarks of the calculated landmarks in every subnetwork. Similar to the 'maxCover' selection
+     * of Goldberg and Werneck this greedily picks the landmark that improves the lower bounds for random node pairs of
+     * the subnetwork the most compared to the already picked landmarks.
+     */
+    private void selectLandmarks(byte[] subnetworks) {
+        int subnetworkCount = landmarkIDs.size();
+        // reservoir sampling of the node pairs per subnetwork
+        int[][] samples = new int[subnetworkCount][2 * SELECTION_PAIRS];
+        int[] counts = new int[subnetworkCount];
+        Random random = new Random(0);
+        for (int node = 0; node < subnetworks.length; node++) {
+            int subnetwork = subnetworks[node];
+            if (subnetwork <= UNCLEAR_SUBNETWORK)
+                continue;
+            int index = counts[subnetwork]++;
+            if (index >= samples[subnetwork].length)
+                index = random.nextInt(counts[subnetwork]);
+            if (index < samples[subnetwork].length)
+                samples[subnetwork][index] = node;
+        }
+
+        int[][] selected = new int[subnetworkCount][];
+        selected[0] = new int[0];
+        for (int subnetwork = 1; subnetwork < subnetworkCount; subnetwork++) {
+            int pairs = Math.min(counts[subnetwork], samples[subnetwork].length) / 2;
+            // the lower bound of every landmark for the sampled pairs in both directions
+            int[][] bounds = new int[landmarks][2 * pairs];
+            for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+                for (int pair = 0; pair < pairs; pair++) {
+                    int s = samples[subnetwork][2 * pair], t = samples[subnetwork][2 * pair + 1];
+                    bounds[lmIdx][2 * pair] = calcLowerBound(subnetwork, lmIdx, s, t);
+                    bounds[lmIdx][2 * pair + 1] = calcLowerBound(subnetwork, lmIdx, t, s);
+                }
+            }
+
+            int[] best = new int[2 * pairs];
+            boolean[] picked = new boolean[landmarks];
+            selected[subnetwork] = new int[storedLandmarks];
+            for (int i = 0; i < storedLandmarks; i++) {
+                int bestLmIdx = -1;
+                long bestGain = -1;
+                for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+                    if (picked[lmIdx])
+                        continue;
+                    long gain = 0;
+                    for (int j = 0; j < best.length; j++) {
+                        gain += Math.max(0, bounds[lmIdx][j] - best[j]);
+                    }
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestLmIdx = lmIdx;
+                    }
+                }
+                picked[bestLmIdx] = true;
+                selected[subnetwork][i] = bestLmIdx;
+                for (int j = 0; j < best.length; j++) {
+                    best[j] = Math.max(best[j], bounds[bestLmIdx][j]);
+                }
+            }
+            Arrays.sort(selected[subnetwork]);
+        }
+
+        // copy the weights of the selected landmarks. Not only nodes of the subnetwork have weights, e.g. a node
+        // without subnetwork can be reached from a landmark in a oneway dead end, so use the landmarks that wrote them
+        DataAccess candidateDA = weightDA;
+        long candidateRowLength = LM_ROW_LENGTH;
+        landmarks = storedLandmarks;
+        initLayout();
+        weightDA = landmarkWeightDA;
+        landmarkWeightDA.ensureCapacity((long) graph.getNodes() * LM_ROW_LENGTH);
+        for (int node = 0; node < subnetworks.length; node++) {
+            int subnetwork = weightOwners[node];
+            for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+                int fromCode = infinityCode, toCode = infinityCode;
+                // a failed subnetwork could have written weights without getting an id
+                if (subnetwork > UNCLEAR_SUBNETWORK && subnetwork < subnetworkCount) {
+                    long candidatePointer = node * candidateRowLength + selected[subnetwork][lmIdx] * 2L * bytesPerWeight;
+                    fromCode = getCode(candidateDA, candidatePointer);
+                    toCode = getCode(candidateDA, candidatePointer + bytesPerWeight);
+                }
+                setCode(landmarkWeightDA, getPointer(node, lmIdx, false), fromCode);
+                setCode(landmarkWeightDA, getPointer(node, lmIdx, true), toCode);
+            }
+        }
+        dir.remove(candidateDA.getName());
+        weightOwners = null;
+
+        for (int subnetwork = 0; subnetwork < subnetworkCount; subnetwork++) {
+            int[] candidateIDs = landmarkIDs.get(subnetwork);
+            int[] ids = new int[landmarks];
+            Arrays.fill(ids, UNSET_SUBNETWORK);
+            float[] candidateScales = perLandmarkFactors ? landmarkScales.get(subnetwork) : null;
+            float[] scales = new float[2 * landmarks];
+            Arrays.fill(scales, 1);
+            for (int lmIdx = 0; lmIdx < selected[subnetwork].length; lmIdx++) {
+                ids[lmIdx] = candidateIDs[selected[subnetwork][lmIdx]];
+                if (perLandmarkFactors) {
+                    scales[2 * lmIdx] = candidateScales[2 * selected[subnetwork][lmIdx]];
+                    scales[2 * lmIdx + 1] = candidateScales[2 * selected[subnetwork][lmIdx] + 1];
+                }
+            }
+            landmarkIDs.set(subnetwork, ids);
+            if (perLandmarkFactors)
+                landmarkScales.set(subnetwork, scales);
+        }
+
+        if (perLandmarkFactors)
+            initPerLandmarkFactor();
+        initDecoding();
+    }
+
+    /**
+     * @return the lower bound of the weight from s to t the specified landmark provides, see LMApproximator
+     */
+    private int calcLowerBound(int subnetwork, int lmIdx, int s, int t) {
+        return Math.max(getToWeight(subnetwork, lmIdx, s) - getToWeightUpperBound(subnetwork, lmIdx, t),
+                getFromWeight(subnetwork, lmIdx, t) - getFromWeightUpperBound(subnetwork, lmIdx, s));
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -518,55 +777,184 @@ public class LandmarkStorage {
         return factor;
     }
 
+    /**
+     * The maximum difference between the upper and the lower bound of a stored weight, which is also the maximum
+     * amount by which the approximation can be inconsistent.
+     */
+    double getSlack() {
+        return slack;
+    }
+
     /**
      * @return the weight from the landmark to the specified node. Where the landmark integer is not
      * a node ID but the internal index of the landmark array.
      */
     int getFromWeight(int landmarkIndex, int node) {
-        int res = (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4 + FROM_OFFSET)
-                & 0x0000FFFF;
-        if (res == SHORT_INFINITY)
-            // TODO can happen if endstanding oneway
-            // we should set a 'from' value to SHORT_MAX if the 'to' value was already set to find real bugs
-            // and what to return? Integer.MAX_VALUE i.e. convert to Double.pos_infinity upstream?
-            return SHORT_MAX;
-        // throw new IllegalStateException("Do not call getFromWeight for wrong landmark[" + landmarkIndex + "]=" + landmarkIDs[landmarkIndex] + " and node " + node);
-        // TODO if(res == MAX) fallback to beeline approximation!?
-
-        return res;
+        return getFromWeight(getScaleSubnetwork(node), landmarkIndex, node);
     }
 
     /**
      * @return the weight from the specified node to the landmark (specified *as index*)
      */
     int getToWeight(int landmarkIndex, int node) {
-        int res = (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4 + TO_OFFSET)
-                & 0x0000FFFF;
-        if (res == SHORT_INFINITY)
-            return SHORT_MAX;
+        return getToWeight(getScaleSubnetwork(node), landmarkIndex, node);
+    }
+
+    /**
+     * @return a lower bound of the weight from the landmark of the specified subnetwork to the specified node, in
+     * units of the factor
+     */
+    int getFromWeight(int subnetwork, int landmarkIndex, int node) {
+        // TODO the weight is infinite if endstanding oneway
+        // we should set a 'from' value to the maximum code if the 'to' value was already set to find real bugs
+        return getLowerBound(getScaleIndex(subnetwork, landmarkIndex, false), getCode(weightDA, getPointer(node, landmarkIndex, false)));
+    }
+
+    /**
+     * @return an upper bound of the weight from the landmark to the specified node, in units of the factor
+     */
+    int getFromWeightUpperBound(int subnetwork, int landmarkIndex, int node) {
+        return getUpperBound(getScaleIndex(subnetwork, landmarkIndex, false), getCode(weightDA, getPointer(node, landmarkIndex, false)));
+    }
 
-        return res;
+    /**
+     * @return a lower bound of the weight from the specified node to the landmark, in units of the factor
+     */
+    int getToWeight(int subnetwork, int landmarkIndex, int node) {
+        return getLowerBound(getScaleIndex(subnetwork, landmarkIndex, true), getCode(weightDA, getPointer(node, landmarkIndex, true)));
     }
 
     /**
-     * @return false if the value capacity was reached and instead of the real value the SHORT_MAX was stored.
+     * @return an upper bound of the weight from the specified node to the landmark, in units of the factor
+     */
+    int getToWeightUpperBound(int subnetwork, int landmarkIndex, int node) {
+        return getUpperBound(getScaleIndex(subnetwork, landmarkIndex, true), getCode(weightDA, getPointer(node, landmarkIndex, true)));
+    }
+
+    private int getLowerBound(int scaleIndex, int code) {
+        // a weight that was not reached is at least as big as a maxed out weight
+        if (code > maxCode)
+            code = maxCode;
+        if (weightFormat == WeightFormat.LOG_BYTE)
+            return logLowerBounds[scaleIndex * (maxCode + 1) + code];
+        return (int) (code * linearRatios[scaleIndex]);
+    }
+
+    private int getUpperBound(int scaleIndex, int code) {
+        if (code >= maxCode)
+            return WEIGHT_INFINITY;
+        if (weightFormat == WeightFormat.LOG_BYTE)
+            return logUpperBounds[scaleIndex * maxCode + code];
+        return (int) Math.ceil((code + 1) * linearRatios[scaleIndex]);
+    }
+
+    private int getScaleSubnetwork(int node) {
+        return perLandmarkFactors ? Math.max(subnetworkStorage.getSubnetwork(node), 0) : 0;
+    }
+
+    private int getScaleIndex(int subnetwork, int landmarkIndex, boolean to) {
+        return perLandmarkFactors ? 2 * (subnetwork * landmarks + landmarkIndex) + (to ? 1 : 0) : 0;
+    }
+
+    private long getPointer(int node, int landmarkIndex, boolean to) {
+        return node * LM_ROW_LENGTH + landmarkIndex * 2L * bytesPerWeight + (to ? bytesPerWeight : 0);
+    }
+
+    private int getCode(DataAccess da, long pointer) {
+        return bytesPerWeight == 2 ? da.getShort(pointer) & 0xFFFF : da.getByte(pointer) & 0xFF;
+    }
+
+    private void setCode(DataAccess da, long pointer, int code) {
+        if (bytesPerWeight == 2)
+            da.setShort(pointer, (short) code);
+        else
+            da.setByte(pointer, (byte) code);
+    }
+
+    /**
+     * @return the smallest weight that is stored with the specified code
+     */
+    private double getBoundary(int code, double scale) {
+        if (weightFormat == WeightFormat.LOG_BYTE)
+            return scale * (Math.pow(1 + LOG_MU, (double) code / maxCode) - 1) / LOG_MU;
+        return code * scale;
+    }
+
+    private double getGlobalScale() {
+        return weightFormat == WeightFormat.LOG_BYTE ? factor * PRECISION : factor;
+    }
+
+    /**
+     * Precalculates the conversion from the stored codes to the lower and upper bounds in units of the factor.
+     */
+    private void initDecoding() {
+        int scaleCount = perLandmarkFactors ? 2 * landmarkScales.size() * landmarks : 1;
+        linearRatios = new double[scaleCount];
+        if (weightFormat == WeightFormat.LOG_BYTE) {
+            logLowerBounds = new int[scaleCount * (maxCode + 1)];
+            logUpperBounds = new int[scaleCount * maxCode];
+        }
+        int slackUnits = 1;
+        for (int scaleIndex = 0; scaleIndex < scaleCount; scaleIndex++) {
+            double scale = perLandmarkFactors ? landmarkScales.get(scaleIndex / (2 * landmarks))[scaleIndex % (2 * landmarks)] : getGlobalScale();
+            if (weightFormat == WeightFormat.LOG_BYTE) {
+                for (int code = 0; code <= maxCode; code++) {
+                    logLowerBounds[scaleIndex * (maxCode + 1) + code] = (int) (getBoundary(code, scale) / factor);
+                }
+                for (int code = 0; code < maxCode; code++) {
+                    int upperBound = (int) Math.ceil(getBoundary(code + 1, scale) / factor);
+                    logUpperBounds[scaleIndex * maxCode + code] = upperBound;
+                    slackUnits = Math.max(slackUnits, upperBound - logLowerBounds[scaleIndex * (maxCode + 1) + code]);
+                }
+            } else {
+                linearRatios[scaleIndex] = scale / factor;
+                if (linearRatios[scaleIndex] != 1)
+                    slackUnits = Math.max(slackUnits, (int) Math.ceil(linearRatios[scaleIndex]) + 1);
+            }
+        }
+        slack = slackUnits * factor;
+    }
+
+    /**
+     * @return false if the value capacity was reached and instead of the real value the maximum code was stored.
      */
     final boolean setWeight(long pointer, double value) {
-        double tmpVal = value / factor;
+        return setWeight(pointer, value, getGlobalScale());
+    }
+
+    final boolean setWeight(long pointer, double value, double scale) {
+        double tmpVal = value / scale;
         if (tmpVal > Integer.MAX_VALUE)
             throw new UnsupportedOperationException("Cannot store infinity explicitly, pointer=" + pointer + ", value=" + value + ", factor=" + factor);
 
-        if (tmpVal >= SHORT_MAX) {
-            landmarkWeightDA.setShort(pointer, (short) SHORT_MAX);
+        int code = weightFormat == WeightFormat.LOG_BYTE ? getLogCode(value, scale) : (int) tmpVal;
+        if (code >= maxCode) {
+            setCode(weightDA, pointer, maxCode);
             return false;
         } else {
-            landmarkWeightDA.setShort(pointer, (short) tmpVal);
+            setCode(weightDA, pointer, code);
             return true;
         }
     }
 
+    private int getLogCode(double value, double scale) {
+        if (value >= scale)
+            return maxCode;
+        int code = (int) (maxCode * Math.log1p(LOG_MU * value / scale) / Math.log1p(LOG_MU));
+        // make sure that rounding errors do not move the weight out of the bounds of its code
+        while (code > 0 && getBoundary(code, scale) > value)
+            code--;
+        while (code < maxCode && getBoundary(code + 1, scale) <= value)
+            code++;
+        return code;
+    }
+
     boolean isInfinity(long pointer) {
-        return ((int) landmarkWeightDA.getShort(pointer) & 0x0000FFFF) == SHORT_INFINITY;
+        return getCode(weightDA, pointer) == infinityCode;
+    }
+
+    int getSubnetwork(int node) {
+        return subnetworkStorage.getSubnetwork(node);
     }
 
     int calcWeight(EdgeIteratorState edge, boolean reverse) {
@@ -591,8 +979,8 @@ public class LandmarkStorage {
         // See the similar formula in LMApproximator.approximateForLandmark
         List<Map.Entry<Integer, Integer>> list = new ArrayList<>(landmarks);
         for (int lmIndex = 0; lmIndex < landmarks; lmIndex++) {
-            int fromWeight = getFromWeight(lmIndex, toNode) - getFromWeight(lmIndex, fromNode);
-            int toWeight = getToWeight(lmIndex, fromNode) - getToWeight(lmIndex, toNode);
+            int fromWeight = getFromWeight(subnetworkFrom, lmIndex, toNode) - getFromWeight(subnetworkFrom, lmIndex, fromNode);
+            int toWeight = getToWeight(subnetworkFrom, lmIndex, fromNode) - getToWeight(subnetworkFrom, lmIndex, toNode);
 
             list.add(new MapEntry<>(reverse
                     ? Math.max(-fromWeight, -toWeight)
@@ -691,9 +1079,12 @@ public class LandmarkStorage {
             if (nodes != graph.getNodes())
                 throw new IllegalArgumentException("Cannot load landmark data as written for different graph storage with " + nodes + " nodes, not " + graph.getNodes());
             landmarks = landmarkWeightDA.getHeader(1 * 4);
+            storedLandmarks = landmarks;
             int subnetworks = landmarkWeightDA.getHeader(2 * 4);
-            factor = landmarkWeightDA.getHeader(3 * 4) / DOUBLE_MLTPL;
-            LM_ROW_LENGTH = landmarks * 4;
+            weightFormat = WeightFormat.values()[landmarkWeightDA.getHeader(4 * 4)];
+            perLandmarkFactors = landmarkWeightDA.getHeader(5 * 4) != 0;
+            factor = perLandmarkFactors ? Float.intBitsToFloat(landmarkWeightDA.getHeader(6 * 4)) : landmarkWeightDA.getHeader(3 * 4) / DOUBLE_MLTPL;
+            initLayout();
             long maxBytes = LM_ROW_LENGTH * nodes;
             long bytePos = maxBytes;
 
@@ -706,6 +1097,15 @@ public class LandmarkStorage {
                 }
                 landmarkIDs.add(tmpLandmarks);
             }
+            for (int j = 0; perLandmarkFactors && j < subnetworks; j++) {
+                float[] scales = new float[2 * landmarks];
+                for (int i = 0; i < scales.length; i++) {
+                    scales[i] = Float.intBitsToFloat(landmarkWeightDA.getInt(bytePos));
+                    bytePos += 4;
+                }
+                landmarkScales.add(scales);
+            }
+            initDecoding();
 
             initialized = true;
             return true;
@@ -862,7 +1262,7 @@ public class LandmarkStorage {
             return failed.get();
         }
 
-        public void initLandmarkWeights(final int lmIdx, int lmNodeId, final long rowSize, final int offset) {
+        public void initLandmarkWeights(final int lmIdx, int lmNodeId, final double scale, final int subnetworkId) {
             IntObjectMap<SPTEntry> map = reverse ? bestWeightMapTo : bestWeightMapFrom;
             final AtomicInteger maxedout = new AtomicInteger(0);
             final Map.Entry<Double, Double> finalMaxWeight = new MapEntry<>(0d, 0d);
@@ -870,7 +1270,9 @@ public class LandmarkStorage {
             map.forEach(new IntObjectProcedure<SPTEntry>() {
                 @Override
                 public void apply(int nodeId, SPTEntry b) {
-                    if (!lms.setWeight(nodeId * rowSize + lmIdx * 4 + offset, b.weight)) {
+                    if (lms.weightOwners != null)
+                        lms.weightOwners[nodeId] = (byte) subnetworkId;
+                    if (!lms.setWeight(lms.getPointer(nodeId, lmIdx, reverse), b.weight, scale)) {
                         maxedout.incrementAndGet();
                         finalMaxWeight.setValue(Math.max(b.weight, finalMaxWeight.getValue()));
                     }
@@ -898,4 +1300,25 @@ public class LandmarkStorage {
     static GHPoint createPoint(Graph graph, int nodeId) {
         return new GHPoint(graph.getNodeAccess().getLat(nodeId), graph.getNodeAccess().getLon(nodeId));
     }
+
+    /**
+     * The format of the stored weights, see {@link #setWeightFormat(WeightFormat)}.
+     */
+    public enum WeightFormat {
+        /**
+         * Two bytes per weight with a linear scale.
+         */
+        SHORT(2),
+        /**
+         * One byte per weight with a logarithmic scale: small weights keep a fine precision and big weights get a
+         * coarse one.
+         */
+        LOG_BYTE(1);
+
+        private final int bytes;
+
+        WeightFormat(int bytes) {
+            this.bytes = bytes;
+        }
+    }
 }
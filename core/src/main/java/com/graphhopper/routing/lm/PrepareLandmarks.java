@@ -74,6 +74,30 @@ public class PrepareLandmarks {
         return this;
     }
 
+    /**
+     * @see LandmarkStorage#setWeightFormat(LandmarkStorage.WeightFormat)
+     */
+    public PrepareLandmarks setWeightFormat(LandmarkStorage.WeightFormat weightFormat) {
+        lms.setWeightFormat(weightFormat);
+        return this;
+    }
+
+    /**
+     * @see LandmarkStorage#setPerLandmarkFactors(boolean)
+     */
+    public PrepareLandmarks setPerLandmarkFactors(boolean perLandmarkFactors) {
+        lms.setPerLandmarkFactors(perLandmarkFactors);
+        return this;
+    }
+
+    /**
+     * @see LandmarkStorage#setStoredLandmarks(int)
+     */
+    public PrepareLandmarks setStoredLandmarks(int storedLandmarks) {
+        lms.setStoredLandmarks(storedLandmarks);
+        return this;
+    }
+
     /**
      * @see LandmarkStorage#setLMSelectionWeighting(Weighting)
      */
@@ -31,32 +31,32 @@ import static com.graphhopper.routing.querygraph.QueryGraph.*;
 /**
  * Helper class for {@link QueryOverlayBuilder}
  *
- * @see #build(IntArrayList, List, int, IntObjectMap)
+ * @see #build(QueryOverlay, int)
  */
 class EdgeChangeBuilder {
     private final IntArrayList closestEdges;
     private final List<VirtualEdgeIteratorState> virtualEdges;
     private final IntObjectMap<QueryOverlay.EdgeChanges> edgeChangesAtRealNodes;
+    private final QueryOverlay queryOverlay;
     private final int firstVirtualNodeId;
 
     /**
-     * Builds a mapping between real node ids and the set of changes for their adjacent edges.
-     *
-     * @param edgeChangesAtRealNodes output parameter, you need to pass an empty & modifiable map and the results will
-     *                               be added to it
+     * Builds a mapping between real node ids and the set of changes for their adjacent edges and adds it to the
+     * edge changes of the given overlay, which need to be empty.
      */
-    static void build(IntArrayList closestEdges, List<VirtualEdgeIteratorState> virtualEdges, int firstVirtualNodeId, IntObjectMap<QueryOverlay.EdgeChanges> edgeChangesAtRealNodes) {
-        new EdgeChangeBuilder(closestEdges, virtualEdges, firstVirtualNodeId, edgeChangesAtRealNodes).build();
+    static void build(QueryOverlay queryOverlay, int firstVirtualNodeId) {
+        new EdgeChangeBuilder(queryOverlay, firstVirtualNodeId).build();
     }
 
-    private EdgeChangeBuilder(IntArrayList closestEdges, List<VirtualEdgeIteratorState> virtualEdges, int firstVirtualNodeId, IntObjectMap<QueryOverlay.EdgeChanges> edgeChangesAtRealNodes) {
-        this.closestEdges = closestEdges;
-        this.virtualEdges = virtualEdges;
+    private EdgeChangeBuilder(QueryOverlay queryOverlay, int firstVirtualNodeId) {
+        this.queryOverlay = queryOverlay;
+        this.closestEdges = queryOverlay.getClosestEdges();
+        this.virtualEdges = queryOverlay.getVirtualEdges();
         this.firstVirtualNodeId = firstVirtualNodeId;
-        if (!edgeChangesAtRealNodes.isEmpty()) {
+        if (!queryOverlay.getEdgeChangesAtRealNodes().isEmpty()) {
             throw new IllegalArgumentException("real node modifications need to be empty");
         }
-        this.edgeChangesAtRealNodes = edgeChangesAtRealNodes;
+        this.edgeChangesAtRealNodes = queryOverlay.getEdgeChangesAtRealNodes();
     }
 
     private void build() {
@@ -97,7 +97,7 @@ class EdgeChangeBuilder {
     private void addVirtualEdges(boolean base, int node, int virtNode) {
         QueryOverlay.EdgeChanges edgeChanges = edgeChangesAtRealNodes.get(node);
         if (edgeChanges == null) {
-            edgeChanges = new QueryOverlay.EdgeChanges(2, 2);
+            edgeChanges = queryOverlay.newEdgeChanges();
             edgeChangesAtRealNodes.put(node, edgeChanges);
         }
         EdgeIteratorState edge = base
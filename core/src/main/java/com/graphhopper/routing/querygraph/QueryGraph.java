@@ -20,6 +20,7 @@ package com.graphhopper.routing.querygraph;
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.carrotsearch.hppc.procedures.IntObjectProcedure;
 import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -46,6 +47,9 @@ import java.util.*;
  * to each adjacent nodes via 2 virtual edges with opposite base node / adjacent node encoding.
  * However, the edge explorer returned by {@link #createEdgeExplorer()} only returns two
  * virtual edges per virtual node (the ones with correct base node).
+ * <p>
+ * To reduce the allocations per query a QueryGraph can also be {@link #reset} for other snaps, see
+ * {@link QueryGraphPool}.
  *
  * @author Peter Karich
  */
@@ -60,8 +64,11 @@ public class QueryGraph implements Graph {
 
     // Use LinkedHashSet for predictable iteration order.
     private final Set<VirtualEdgeIteratorState> unfavoredEdges = new LinkedHashSet<>(5);
-    private final IntObjectMap<List<EdgeIteratorState>> virtualEdgesAtRealNodes;
-    private final List<List<EdgeIteratorState>> virtualEdgesAtVirtualNodes;
+    private final EdgeExplorer mainExplorer;
+    private final IntObjectMap<List<EdgeIteratorState>> virtualEdgesAtRealNodes = new GHIntObjectHashMap<>();
+    private final List<List<EdgeIteratorState>> virtualEdgesAtVirtualNodes = new ArrayList<>();
+    // the lists for virtualEdgesAtRealNodes are kept when the QueryGraph is reset, so they can be reused
+    private final List<List<EdgeIteratorState>> edgeListPool = new ArrayList<>();
 
     public static QueryGraph create(BaseGraph graph, Snap snap) {
         return QueryGraph.create(graph, Collections.singletonList(snap));
@@ -86,9 +93,24 @@ public class QueryGraph implements Graph {
 
         // build data structures holding the virtual edges at all real/virtual nodes that are modified compared to the
         // mainGraph.
-        final EdgeExplorer mainExplorer = baseGraph.createEdgeExplorer();
-        virtualEdgesAtRealNodes = buildVirtualEdgesAtRealNodes(mainExplorer);
-        virtualEdgesAtVirtualNodes = buildVirtualEdgesAtVirtualNodes();
+        mainExplorer = baseGraph.createEdgeExplorer();
+        buildVirtualEdgesAtRealNodes();
+        buildVirtualEdgesAtVirtualNodes();
+    }
+
+    /**
+     * Replaces the virtual nodes and edges of this QueryGraph with the ones for the given snaps, just like a new
+     * QueryGraph was created for them, but the collections of this QueryGraph are reused. All edge states, edge
+     * explorers and weightings obtained from this QueryGraph before must no longer be used.
+     */
+    public QueryGraph reset(List<Snap> snaps) {
+        if (baseGraph.getNodes() != baseNodes || baseGraph.getEdges() != baseEdges)
+            throw new IllegalStateException("Cannot reset QueryGraph, the base graph was modified");
+        clearUnfavoredStatus();
+        QueryOverlayBuilder.rebuild(baseGraph, queryOverlay, snaps);
+        buildVirtualEdgesAtRealNodes();
+        buildVirtualEdgesAtVirtualNodes();
+        return this;
     }
 
     public QueryOverlay getQueryOverlay() {
@@ -232,13 +254,17 @@ public class QueryGraph implements Graph {
         };
     }
 
-    private IntObjectMap<List<EdgeIteratorState>> buildVirtualEdgesAtRealNodes(final EdgeExplorer mainExplorer) {
-        final IntObjectMap<List<EdgeIteratorState>> virtualEdgesAtRealNodes =
-                new GHIntObjectHashMap<>(queryOverlay.getEdgeChangesAtRealNodes().size());
+    private void buildVirtualEdgesAtRealNodes() {
+        for (ObjectCursor<List<EdgeIteratorState>> c : virtualEdgesAtRealNodes.values()) {
+            c.value.clear();
+            edgeListPool.add(c.value);
+        }
+        virtualEdgesAtRealNodes.clear();
         queryOverlay.getEdgeChangesAtRealNodes().forEach(new IntObjectProcedure<QueryOverlay.EdgeChanges>() {
             @Override
             public void apply(int node, QueryOverlay.EdgeChanges edgeChanges) {
-                List<EdgeIteratorState> virtualEdges = new ArrayList<>(edgeChanges.getAdditionalEdges());
+                List<EdgeIteratorState> virtualEdges = edgeListPool.isEmpty() ? new ArrayList<>() : edgeListPool.remove(edgeListPool.size() - 1);
+                virtualEdges.addAll(edgeChanges.getAdditionalEdges());
                 EdgeIterator mainIter = mainExplorer.setBaseNode(node);
                 while (mainIter.next()) {
                     if (!edgeChanges.getRemovedEdges().contains(mainIter.getEdge())) {
@@ -248,19 +274,19 @@ public class QueryGraph implements Graph {
                 virtualEdgesAtRealNodes.put(node, virtualEdges);
             }
         });
-        return virtualEdgesAtRealNodes;
     }
 
-    private List<List<EdgeIteratorState>> buildVirtualEdgesAtVirtualNodes() {
-        final List<List<EdgeIteratorState>> virtualEdgesAtVirtualNodes = new ArrayList<>();
-        for (int i = 0; i < queryOverlay.getVirtualNodes().size(); i++) {
-            List<EdgeIteratorState> virtualEdges = Arrays.<EdgeIteratorState>asList(
-                    queryOverlay.getVirtualEdge(i * 4 + SNAP_BASE),
-                    queryOverlay.getVirtualEdge(i * 4 + SNAP_ADJ)
-            );
-            virtualEdgesAtVirtualNodes.add(virtualEdges);
+    private void buildVirtualEdgesAtVirtualNodes() {
+        int virtualNodes = queryOverlay.getVirtualNodes().size();
+        if (virtualEdgesAtVirtualNodes.size() > virtualNodes)
+            virtualEdgesAtVirtualNodes.subList(virtualNodes, virtualEdgesAtVirtualNodes.size()).clear();
+        for (int i = 0; i < virtualNodes; i++) {
+            if (i == virtualEdgesAtVirtualNodes.size())
+                virtualEdgesAtVirtualNodes.add(Arrays.asList(new EdgeIteratorState[2]));
+            List<EdgeIteratorState> virtualEdges = virtualEdgesAtVirtualNodes.get(i);
+            virtualEdges.set(0, queryOverlay.getVirtualEdge(i * 4 + SNAP_BASE));
+            virtualEdges.set(1, queryOverlay.getVirtualEdge(i * 4 + SNAP_ADJ));
         }
-        return virtualEdgesAtVirtualNodes;
     }
 
     @Override
@@ -0,0 +1,51 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.querygraph;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.Snap;
+
+import java.util.List;
+
+/**
+ * Keeps one {@link QueryGraph} per thread and resets it for every query instead of creating a new one, which saves
+ * most of the allocations of short queries. A QueryGraph obtained from this pool can only be used until the next call
+ * of {@link #create} in the same thread, so it must not be kept after the query is done.
+ */
+public class QueryGraphPool {
+    private final BaseGraph graph;
+    private final ThreadLocal<QueryGraph> queryGraphs = new ThreadLocal<>();
+
+    public QueryGraphPool(BaseGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @return a QueryGraph for the given snaps, see {@link QueryGraph#create(BaseGraph, List)}
+     */
+    public QueryGraph create(List<Snap> snaps) {
+        QueryGraph queryGraph = queryGraphs.get();
+        if (queryGraph == null) {
+            queryGraph = QueryGraph.create(graph, snaps);
+            queryGraphs.set(queryGraph);
+            return queryGraph;
+        }
+        return queryGraph.reset(snaps);
+    }
+}
@@ -30,6 +30,8 @@ import java.util.List;
 /**
  * This class holds the data that is necessary to add additional nodes and edges to an existing graph, as it is needed
  * when we want to start/end a route at a location that is in between the actual nodes of the graph (virtual nodes+edges).
+ * An overlay can be {@link #reset} and built again for other snaps, which reuses its collections, see
+ * {@link QueryGraph#reset(List)}.
  */
 class QueryOverlay {
     // stores the coordinates of the additional/virtual nodes
@@ -40,6 +42,9 @@ class QueryOverlay {
     private final List<VirtualEdgeIteratorState> virtualEdges;
     // stores the changes that need to be done to the real nodes
     private final IntObjectMap<EdgeChanges> edgeChangesAtRealNodes;
+    // the edge changes that were created so far, the first usedEdgeChanges of them are in use
+    private final List<EdgeChanges> edgeChangesPool = new ArrayList<>();
+    private int usedEdgeChanges;
 
     QueryOverlay(int numVirtualNodes, boolean is3D) {
         this.virtualNodes = new PointList(numVirtualNodes, is3D);
@@ -48,6 +53,34 @@ class QueryOverlay {
         edgeChangesAtRealNodes = new GHIntObjectHashMap<>(numVirtualNodes * 3);
     }
 
+    /**
+     * Removes all virtual nodes and edges, but keeps the allocated memory, so the overlay can be built again.
+     */
+    void reset() {
+        virtualNodes.clear();
+        closestEdges.clear();
+        virtualEdges.clear();
+        edgeChangesAtRealNodes.clear();
+        usedEdgeChanges = 0;
+    }
+
+    /**
+     * @return empty edge changes, which are reused after a {@link #reset}
+     */
+    EdgeChanges newEdgeChanges() {
+        EdgeChanges edgeChanges;
+        if (usedEdgeChanges < edgeChangesPool.size()) {
+            edgeChanges = edgeChangesPool.get(usedEdgeChanges);
+            edgeChanges.additionalEdges.clear();
+            edgeChanges.removedEdges.clear();
+        } else {
+            edgeChanges = new EdgeChanges(2, 2);
+            edgeChangesPool.add(edgeChanges);
+        }
+        usedEdgeChanges++;
+        return edgeChanges;
+    }
+
     int getNumVirtualEdges() {
         return virtualEdges.size();
     }
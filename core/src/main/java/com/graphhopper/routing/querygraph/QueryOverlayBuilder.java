@@ -44,7 +44,15 @@ class QueryOverlayBuilder {
     }
 
     public static QueryOverlay build(int firstVirtualNodeId, int firstVirtualEdgeId, boolean is3D, List<Snap> snaps) {
-        return new QueryOverlayBuilder(firstVirtualNodeId, firstVirtualEdgeId, is3D).build(snaps);
+        return new QueryOverlayBuilder(firstVirtualNodeId, firstVirtualEdgeId, is3D).build(new QueryOverlay(snaps.size(), is3D), snaps);
+    }
+
+    /**
+     * Builds the overlay for the given snaps into an existing overlay, which is reset first.
+     */
+    public static QueryOverlay rebuild(Graph graph, QueryOverlay queryOverlay, List<Snap> snaps) {
+        queryOverlay.reset();
+        return new QueryOverlayBuilder(graph.getNodes(), graph.getEdges(), graph.getNodeAccess().is3D()).build(queryOverlay, snaps);
     }
 
     private QueryOverlayBuilder(int firstVirtualNodeId, int firstVirtualEdgeId, boolean is3D) {
@@ -53,8 +61,8 @@ class QueryOverlayBuilder {
         this.is3D = is3D;
     }
 
-    private QueryOverlay build(List<Snap> resList) {
-        queryOverlay = new QueryOverlay(resList.size(), is3D);
+    private QueryOverlay build(QueryOverlay queryOverlay, List<Snap> resList) {
+        this.queryOverlay = queryOverlay;
         buildVirtualEdges(resList);
         buildEdgeChangesAtRealNodes();
         return queryOverlay;
@@ -239,6 +247,6 @@ class QueryOverlayBuilder {
     }
 
     private void buildEdgeChangesAtRealNodes() {
-        EdgeChangeBuilder.build(queryOverlay.getClosestEdges(), queryOverlay.getVirtualEdges(), firstVirtualNodeId, queryOverlay.getEdgeChangesAtRealNodes());
+        EdgeChangeBuilder.build(queryOverlay, firstVirtualNodeId);
     }
 }
\ No newline at end of file
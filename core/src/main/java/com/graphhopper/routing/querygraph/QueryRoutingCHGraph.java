@@ -21,6 +21,7 @@ package com.graphhopper.routing.querygraph;
 import com.carrotsearch.hppc.IntObjectHashMap;
 import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.procedures.IntObjectProcedure;
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.*;
 import com.graphhopper.util.EdgeIteratorState;
@@ -78,6 +79,12 @@ public class QueryRoutingCHGraph implements RoutingCHGraph {
         return routingCHGraph.getShortcuts();
     }
 
+    @Override
+    public ShortcutUnpackingCache getShortcutUnpackingCache() {
+        // the shortcuts are the same as in the underlying graph, virtual edges are never shortcuts
+        return routingCHGraph.getShortcutUnpackingCache();
+    }
+
     @Override
     public RoutingCHEdgeExplorer createInEdgeExplorer() {
         return createEdgeExplorer(routingCHGraph.createInEdgeExplorer(), virtualInEdgesAtRealNodes);
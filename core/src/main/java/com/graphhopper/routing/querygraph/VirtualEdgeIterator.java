@@ -31,7 +31,7 @@ import java.util.List;
 /**
  * @author Peter Karich
  */
-class VirtualEdgeIterator implements EdgeIterator {
+public class VirtualEdgeIterator implements EdgeIterator {
     private final EdgeFilter edgeFilter;
     private List<EdgeIteratorState> edges;
     private int current;
@@ -79,6 +79,15 @@ class VirtualEdgeIterator implements EdgeIterator {
         return getCurrentEdge().getReverseEdgeKey();
     }
 
+    /**
+     * @return the key of the edge of the base graph the current edge was created from, or its own key if it is not
+     * virtual
+     */
+    public int getOriginalEdgeKey() {
+        EdgeIteratorState edge = getCurrentEdge();
+        return edge instanceof VirtualEdgeIteratorState ? ((VirtualEdgeIteratorState) edge).getOriginalEdgeKey() : edge.getEdgeKey();
+    }
+
     @Override
     public int getBaseNode() {
         return getCurrentEdge().getBaseNode();
@@ -94,6 +103,11 @@ class VirtualEdgeIterator implements EdgeIterator {
         return getCurrentEdge().fetchWayGeometry(mode);
     }
 
+    @Override
+    public PointList fetchWayGeometry(FetchMode mode, PointList pointList) {
+        return getCurrentEdge().fetchWayGeometry(mode, pointList);
+    }
+
     @Override
     public EdgeIteratorState setWayGeometry(PointList list) {
         return getCurrentEdge().setWayGeometry(list);
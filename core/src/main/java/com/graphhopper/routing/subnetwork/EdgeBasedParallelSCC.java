@@ -0,0 +1,256 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.subnetwork;
+
+import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.ConnectedComponents;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.EdgeTransitionFilter;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.BitUtil;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+import static com.graphhopper.util.GHUtility.getEdgeFromEdgeKey;
+
+/**
+ * Finds the same strongly connected components as {@link EdgeBasedTarjanSCC#findComponents}, but uses multiple threads
+ * for the biggest component, which usually contains almost all edges of a road network. Tarjan's algorithm is
+ * inherently sequential, so instead we use the forward-backward algorithm: all edge keys that can be reached from a
+ * pivot edge key and that can also reach the pivot form the component of the pivot. Both searches are breadth-first
+ * searches where the edge keys of each level are expanded in parallel and the visited edge keys are stored in a
+ * concurrent bit set. The remaining edge keys are then handled by {@link EdgeBasedTarjanSCC} as if the biggest
+ * component had been removed from the graph.
+ *
+ * @see EdgeBasedTarjanSCC
+ */
+public class EdgeBasedParallelSCC {
+    // we only try a few pivots, if none of them is in a big component the parallel search would not help anyway
+    private static final int MAX_PIVOTS = 5;
+    private final Graph graph;
+    private final EdgeTransitionFilter edgeTransitionFilter;
+    private final int threads;
+    // levels with fewer edge keys are expanded in the calling thread
+    private final int minParallelLevelSize;
+    private final BitUtil bitUtil = BitUtil.LITTLE;
+    private final EdgeExplorer[] explorers;
+    private final EdgeExplorer[] innerExplorers;
+    private ExecutorService executorService;
+
+    /**
+     * @param edgeTransitionFilter is called concurrently from multiple threads and must be thread-safe
+     * @see EdgeBasedTarjanSCC#findComponents(Graph, EdgeTransitionFilter, boolean)
+     */
+    public static ConnectedComponents findComponents(Graph graph, EdgeTransitionFilter edgeTransitionFilter, boolean excludeSingleEdgeComponents, int threads) {
+        return findComponents(graph, edgeTransitionFilter, excludeSingleEdgeComponents, threads, 1000);
+    }
+
+    static ConnectedComponents findComponents(Graph graph, EdgeTransitionFilter edgeTransitionFilter, boolean excludeSingleEdgeComponents,
+                                              int threads, int minParallelLevelSize) {
+        return new EdgeBasedParallelSCC(graph, edgeTransitionFilter, threads, minParallelLevelSize).findComponents(excludeSingleEdgeComponents);
+    }
+
+    private EdgeBasedParallelSCC(Graph graph, EdgeTransitionFilter edgeTransitionFilter, int threads, int minParallelLevelSize) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        this.graph = graph;
+        this.edgeTransitionFilter = edgeTransitionFilter;
+        this.threads = threads;
+        this.minParallelLevelSize = minParallelLevelSize;
+        explorers = new EdgeExplorer[threads];
+        innerExplorers = new EdgeExplorer[threads];
+        for (int i = 0; i < threads; i++) {
+            explorers[i] = graph.createEdgeExplorer();
+            innerExplorers[i] = graph.createEdgeExplorer();
+        }
+    }
+
+    private ConnectedComponents findComponents(boolean excludeSingleEdgeComponents) {
+        ConnectedComponents components = new ConnectedComponents(excludeSingleEdgeComponents ? -1 : 2 * graph.getEdges());
+        if (graph.getEdges() == 0)
+            return components;
+        BitSet biggestComponentKeys = null;
+        executorService = Executors.newFixedThreadPool(threads);
+        try {
+            Random random = new Random(graph.getEdges());
+            for (int i = 0; i < MAX_PIVOTS; i++) {
+                EdgeIteratorState pivot = graph.getEdgeIteratorState(random.nextInt(graph.getEdges()), Integer.MIN_VALUE);
+                if (!edgeTransitionFilter.accept(NO_EDGE, pivot))
+                    continue;
+                IntArrayList component = findComponentOfPivot(pivot);
+                // a component with at least a quarter of all edge keys is the biggest or at least one of the few biggest
+                if (component.size() > 1 && 4L * component.size() >= 2L * graph.getEdges()) {
+                    components.add(component);
+                    biggestComponentKeys = new BitSet(2L * graph.getEdges());
+                    for (int k = 0; k < component.size(); k++)
+                        biggestComponentKeys.set(component.get(k));
+                    break;
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        return EdgeBasedTarjanSCC.findComponents(graph, edgeTransitionFilter, excludeSingleEdgeComponents, biggestComponentKeys, components);
+    }
+
+    private IntArrayList findComponentOfPivot(EdgeIteratorState pivot) {
+        int edgeKeys = 2 * graph.getEdges();
+        ConcurrentBitSet fwdVisited = new ConcurrentBitSet(edgeKeys);
+        search(pivot.getEdgeKey(), pivot.getAdjNode(), false, fwdVisited);
+        ConcurrentBitSet bwdVisited = new ConcurrentBitSet(edgeKeys);
+        search(pivot.getEdgeKey(), pivot.getBaseNode(), true, bwdVisited);
+        IntArrayList component = new IntArrayList();
+        for (int edgeKey = 0; edgeKey < edgeKeys; edgeKey++)
+            if (fwdVisited.get(edgeKey) && bwdVisited.get(edgeKey))
+                component.add(edgeKey);
+        return component;
+    }
+
+    /**
+     * Runs a breadth-first search on the edge keys starting at the given edge key. Every entry of a level combines an
+     * edge key with the node at which the search continues, i.e. the adjacent node for the forward search and the base
+     * node for the backward search.
+     */
+    private void search(int startEdgeKey, int startNode, boolean reverse, ConcurrentBitSet visited) {
+        visited.set(startEdgeKey);
+        LongArrayList level = new LongArrayList();
+        level.add(bitUtil.combineIntsToLong(startEdgeKey, startNode));
+        while (!level.isEmpty()) {
+            if (threads == 1 || level.size() < minParallelLevelSize) {
+                level = expand(level, 0, level.size(), reverse, visited, 0);
+                continue;
+            }
+            final LongArrayList currLevel = level;
+            int chunkSize = (currLevel.size() + threads - 1) / threads;
+            List<Callable<LongArrayList>> tasks = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                final int from = i * chunkSize, to = Math.min(currLevel.size(), from + chunkSize);
+                tasks.add(() -> expand(currLevel, from, to, reverse, visited, thread));
+            }
+            level = new LongArrayList();
+            try {
+                for (Future<LongArrayList> future : executorService.invokeAll(tasks))
+                    level.addAll(future.get());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private LongArrayList expand(LongArrayList level, int from, int to, boolean reverse, ConcurrentBitSet visited, int thread) {
+        LongArrayList nextLevel = new LongArrayList();
+        for (int i = from; i < to; i++) {
+            long entry = level.get(i);
+            int edgeKey = bitUtil.getIntLow(entry);
+            int node = bitUtil.getIntHigh(entry);
+            if (reverse)
+                expandBwd(edgeKey, node, visited, nextLevel, thread);
+            else
+                expandFwd(edgeKey, node, visited, nextLevel, thread);
+        }
+        return nextLevel;
+    }
+
+    private void expandFwd(int edgeKey, int adjNode, ConcurrentBitSet visited, LongArrayList nextLevel, int thread) {
+        // this has to match the transitions used in EdgeBasedTarjanSCC exactly
+        final int edge = getEdgeFromEdgeKey(edgeKey);
+        EdgeIterator iter = explorers[thread].setBaseNode(adjNode);
+        while (iter.next()) {
+            if (!edgeTransitionFilter.accept(edge, iter))
+                continue;
+            int q = iter.getEdgeKey();
+            if (visited.set(q))
+                nextLevel.add(bitUtil.combineIntsToLong(q, iter.getAdjNode()));
+            // loops can be travelled both ways, see EdgeBasedTarjanSCC
+            if (iter.getBaseNode() == iter.getAdjNode() && visited.set(q + 1))
+                nextLevel.add(bitUtil.combineIntsToLong(q + 1, iter.getAdjNode()));
+        }
+    }
+
+    private void expandBwd(int edgeKey, int baseNode, ConcurrentBitSet visited, LongArrayList nextLevel, int thread) {
+        // find the edge state that belongs to the edge key first, because the transition filter needs it
+        EdgeIterator edgeState = explorers[thread].setBaseNode(baseNode);
+        boolean found = false;
+        while (!found && edgeState.next()) {
+            int key = edgeState.getEdgeKey();
+            found = key == edgeKey || edgeState.getBaseNode() == edgeState.getAdjNode() && key + 1 == edgeKey;
+        }
+        if (!found)
+            throw new IllegalStateException("Could not find edge key " + edgeKey + " at node " + baseNode);
+        // now find all edge keys that end at the base node and from which the transition onto our edge is accepted
+        EdgeIterator iter = innerExplorers[thread].setBaseNode(baseNode);
+        while (iter.next()) {
+            if (!edgeTransitionFilter.accept(iter.getEdge(), edgeState))
+                continue;
+            if (iter.getBaseNode() == iter.getAdjNode()) {
+                int p = iter.getEdgeKey();
+                if (visited.set(p))
+                    nextLevel.add(bitUtil.combineIntsToLong(p, baseNode));
+                if (visited.set(p + 1))
+                    nextLevel.add(bitUtil.combineIntsToLong(p + 1, baseNode));
+            } else {
+                int p = iter.getReverseEdgeKey();
+                if (visited.set(p))
+                    nextLevel.add(bitUtil.combineIntsToLong(p, iter.getAdjNode()));
+            }
+        }
+    }
+
+    /**
+     * A fixed size bit set that can be modified from multiple threads.
+     */
+    static class ConcurrentBitSet {
+        private final AtomicLongArray words;
+
+        ConcurrentBitSet(int bits) {
+            words = new AtomicLongArray((bits >>> 6) + 1);
+        }
+
+        /**
+         * @return true if the bit was not set before
+         */
+        boolean set(int index) {
+            int wordIndex = index >>> 6;
+            long mask = 1L << index;
+            while (true) {
+                long word = words.get(wordIndex);
+                if ((word & mask) != 0)
+                    return false;
+                if (words.compareAndSet(wordIndex, word, word | mask))
+                    return true;
+            }
+        }
+
+        boolean get(int index) {
+            return (words.get(index >>> 6) & (1L << index)) != 0;
+        }
+    }
+}
@@ -58,6 +58,8 @@ public class EdgeBasedTarjanSCC {
     private TarjanIntIntMap edgeKeyIndex;
     private TarjanIntIntMap edgeKeyLowLink;
     private TarjanIntSet edgeKeyOnStack;
+    // edge keys that are treated as if they were removed from the graph, or null
+    private BitSet skippedEdgeKeys;
 
     private int currIndex = 0;
     private int p;
@@ -89,6 +91,18 @@ public class EdgeBasedTarjanSCC {
         return new EdgeBasedTarjanSCC(graph, edgeTransitionFilter, true).findComponentsForStartEdges(edges);
     }
 
+    /**
+     * Like {@link #findComponents(Graph, EdgeTransitionFilter, boolean)}, but the given edge keys are ignored as if
+     * they were removed from the graph. This is used to find the remaining components after the biggest component was
+     * found by {@link EdgeBasedParallelSCC}.
+     */
+    static ConnectedComponents findComponents(Graph graph, EdgeTransitionFilter edgeTransitionFilter, boolean excludeSingleEdgeComponents,
+                                              BitSet skippedEdgeKeys, ConnectedComponents components) {
+        EdgeBasedTarjanSCC tarjan = new EdgeBasedTarjanSCC(graph, edgeTransitionFilter, excludeSingleEdgeComponents, components);
+        tarjan.skippedEdgeKeys = skippedEdgeKeys;
+        return tarjan.findComponents();
+    }
+
     /**
      * Runs Tarjan's algorithm in a recursive way. Doing it like this requires a large stack size for large graphs,
      * which can be set like `-Xss1024M`. Usually the version using an explicit stack ({@link #findComponents()}) should be
@@ -101,18 +115,27 @@ public class EdgeBasedTarjanSCC {
     }
 
     private EdgeBasedTarjanSCC(Graph graph, EdgeTransitionFilter edgeTransitionFilter, boolean excludeSingleEdgeComponents) {
+        this(graph, edgeTransitionFilter, excludeSingleEdgeComponents, new ConnectedComponents(excludeSingleEdgeComponents ? -1 : 2 * graph.getEdges()));
+    }
+
+    private EdgeBasedTarjanSCC(Graph graph, EdgeTransitionFilter edgeTransitionFilter, boolean excludeSingleEdgeComponents, ConnectedComponents components) {
         this.graph = graph;
         this.edgeTransitionFilter = edgeTransitionFilter;
         this.explorer = graph.createEdgeExplorer();
         tarjanStack = new IntArrayDeque();
         dfsStackPQ = new LongArrayDeque();
         dfsStackAdj = new IntArrayDeque();
-        components = new ConnectedComponents(excludeSingleEdgeComponents ? -1 : 2 * graph.getEdges());
+        this.components = components;
         this.excludeSingleEdgeComponents = excludeSingleEdgeComponents;
     }
 
     private void initForEntireGraph() {
         final int edges = graph.getEdges();
+        if (skippedEdgeKeys != null && skippedEdgeKeys.cardinality() > edges) {
+            // most edge keys are skipped, so we save memory with the hash based data structures
+            initForStartEdges((int) (edges - skippedEdgeKeys.cardinality() / 2));
+            return;
+        }
         edgeKeyIndex = new TarjanArrayIntIntMap(2 * edges);
         edgeKeyLowLink = new TarjanArrayIntIntMap(2 * edges);
         edgeKeyOnStack = new TarjanArrayIntSet(2 * edges);
@@ -140,7 +163,7 @@ public class EdgeBasedTarjanSCC {
                 findComponentForEdgeKey(edgeKeyFwd, iter.getAdjNode());
             int edgeKeyBwd = createEdgeKey(iter, true);
             if (!edgeKeyIndex.has(edgeKeyBwd))
-                findComponentForEdgeKey(edgeKeyBwd, iter.getAdjNode());
+                findComponentForEdgeKey(edgeKeyBwd, iter.getBaseNode());
         }
         return components;
     }
@@ -199,12 +222,7 @@ public class EdgeBasedTarjanSCC {
                         break;
                 }
                 component.trimToSize();
-                assert component.size() > 1;
-                components.numComponents++;
-                components.numEdgeKeys += component.size();
-                components.components.add(component);
-                if (component.size() > components.biggestComponent.size())
-                    components.biggestComponent = component;
+                components.add(component);
             }
         }
     }
@@ -230,16 +248,20 @@ public class EdgeBasedTarjanSCC {
         return components;
     }
 
+    private boolean isVisited(int edgeKey) {
+        return edgeKeyIndex.has(edgeKey) || skippedEdgeKeys != null && skippedEdgeKeys.get(edgeKey);
+    }
+
     private void findComponentsForEdgeState(EdgeIteratorState edge) {
         int edgeKeyFwd = createEdgeKey(edge, false);
-        if (!edgeKeyIndex.has(edgeKeyFwd))
+        if (!isVisited(edgeKeyFwd))
             pushFindComponentForEdgeKey(edgeKeyFwd, edge.getAdjNode());
         startSearch();
         // We need to start the search for both edge keys of this edge, but its important to check if the second
         // has already been found by the first search. So we cannot simply push them both and start the search once.
         int edgeKeyBwd = createEdgeKey(edge, true);
-        if (!edgeKeyIndex.has(edgeKeyBwd))
-            pushFindComponentForEdgeKey(edgeKeyBwd, edge.getAdjNode());
+        if (!isVisited(edgeKeyBwd))
+            pushFindComponentForEdgeKey(edgeKeyBwd, edge.getBaseNode());
         startSearch();
     }
 
@@ -256,7 +278,7 @@ public class EdgeBasedTarjanSCC {
                 case HANDLE_NEIGHBOR:
                     if (edgeKeyIndex.has(q) && edgeKeyOnStack.contains(q))
                         edgeKeyLowLink.minTo(p, edgeKeyIndex.get(q));
-                    if (!edgeKeyIndex.has(q)) {
+                    if (!isVisited(q)) {
                         // we are pushing updateLowLinks first so it will run *after* findComponent finishes
                         pushUpdateLowLinks(p, q);
                         pushFindComponentForEdgeKey(q, adj);
@@ -400,6 +422,15 @@ public class EdgeBasedTarjanSCC {
         public int getEdgeKeys() {
             return numEdgeKeys;
         }
+
+        void add(IntArrayList component) {
+            assert component.size() > 1;
+            numComponents++;
+            numEdgeKeys += component.size();
+            components.add(component);
+            if (component.size() > biggestComponent.size())
+                biggestComponent = component;
+        }
     }
 
     private interface TarjanIntIntMap {
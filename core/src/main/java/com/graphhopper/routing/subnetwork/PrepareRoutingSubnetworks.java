@@ -84,6 +84,10 @@ public class PrepareRoutingSubnetworks {
         return this;
     }
 
+    /**
+     * The jobs are run in parallel. If there are more threads than jobs the remaining threads are used to find the
+     * components of each job in parallel, see {@link EdgeBasedParallelSCC}.
+     */
     public PrepareRoutingSubnetworks setThreads(int threads) {
         this.threads = threads;
         return this;
@@ -104,9 +108,10 @@ public class PrepareRoutingSubnetworks {
                 Helper.nf(graph.getNodes()) + ", edges: " + Helper.nf(graph.getEdges()) + ", jobs: " + prepareJobs + ", " + Helper.getMemInfo());
         AtomicInteger total = new AtomicInteger(0);
         List<BitSet> flags = Stream.generate(() -> new BitSet(graph.getEdges())).limit(prepareJobs.size()).collect(Collectors.toList());
+        final int threadsPerJob = Math.max(1, threads / Math.max(1, prepareJobs.size()));
         Stream<Callable<String>> callables = IntStream.range(0, prepareJobs.size()).mapToObj(i -> () -> {
             PrepareJob job = prepareJobs.get(i);
-            total.addAndGet(setSubnetworks(job.weighting, job.subnetworkEnc.getName().replaceAll("_subnetwork", ""), flags.get(i)));
+            total.addAndGet(setSubnetworks(job.weighting, job.subnetworkEnc.getName().replaceAll("_subnetwork", ""), flags.get(i), threadsPerJob));
             return job.toString();
         });
         GHUtility.runConcurrently(callables, threads);
@@ -121,17 +126,19 @@ public class PrepareRoutingSubnetworks {
         return total.get();
     }
 
-    private int setSubnetworks(Weighting weighting, String jobName, BitSet subnetworkFlags) {
-        // partition graph into strongly connected components using Tarjan's algorithm
+    private int setSubnetworks(Weighting weighting, String jobName, BitSet subnetworkFlags, int threads) {
+        // partition graph into strongly connected components using Tarjan's algorithm, or the forward-backward
+        // algorithm for the biggest component if we can use multiple threads
         StopWatch sw = new StopWatch().start();
-        EdgeBasedTarjanSCC.ConnectedComponents ccs = EdgeBasedTarjanSCC.findComponents(graph,
-                (prev, edge) -> Double.isFinite(GHUtility.calcWeightWithTurnWeightWithAccess(weighting, edge, false, prev)),
-                false);
+        EdgeBasedTarjanSCC.EdgeTransitionFilter filter = (prev, edge) -> Double.isFinite(GHUtility.calcWeightWithTurnWeightWithAccess(weighting, edge, false, prev));
+        EdgeBasedTarjanSCC.ConnectedComponents ccs = threads > 1
+                ? EdgeBasedParallelSCC.findComponents(graph, filter, false, threads)
+                : EdgeBasedTarjanSCC.findComponents(graph, filter, false);
         List<IntArrayList> components = ccs.getComponents();
         BitSet singleEdgeComponents = ccs.getSingleEdgeComponents();
         long numSingleEdgeComponents = singleEdgeComponents.cardinality();
         logger.info(jobName + " - Found " + ccs.getTotalComponents() + " subnetworks (" + numSingleEdgeComponents + " single edges and "
-                + components.size() + " components with more than one edge, total nodes: " + ccs.getEdgeKeys() + "), took: " + sw.stop().getSeconds() + "s");
+                + components.size() + " components with more than one edge, total nodes: " + ccs.getEdgeKeys() + "), threads: " + threads + ", took: " + sw.stop().getSeconds() + "s");
 
         final int minNetworkSizeEdgeKeys = 2 * minNetworkSize;
 
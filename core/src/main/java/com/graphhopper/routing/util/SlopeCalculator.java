@@ -22,57 +22,77 @@ public class SlopeCalculator implements TagParser {
     public void handleWayTags(IntsRef edgeFlags, ReaderWay way, IntsRef relationFlags) {
         PointList pointList = way.getTag("point_list", null);
         if (pointList != null) {
-            if (pointList.isEmpty() || !pointList.is3D()) {
-                averageSlopeEnc.setDecimal(false, edgeFlags, 0);
-                return;
-            }
-            // Calculate 2d distance, although pointList might be 3D.
-            // This calculation is a bit expensive and edge_distance is available already, but this would be in 3D
-            double distance2D = DistanceCalcEarth.calcDistance(pointList, false);
-            if (distance2D < MIN_LENGTH) {
-                // default is minimum of average_slope is negative so we have to explicitly set it to 0
-                averageSlopeEnc.setDecimal(false, edgeFlags, 0);
-                return;
+            try {
+                setSlopes(edgeFlags, pointList, ignorePillarElevation(way));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(ex.getMessage() + " for OSM way ID " + way.getId(), ex);
             }
+        }
+    }
+
+    /**
+     * For tunnels, bridges and steps we cannot trust the pillar node elevation and ignore all changes.
+     */
+    public static boolean ignorePillarElevation(ReaderWay way) {
+        return way.hasTag("tunnel", "yes") || way.hasTag("bridge", "yes") || way.hasTag("highway", "steps");
+    }
 
-            double towerNodeSlope = calcSlope(pointList.getEle(pointList.size() - 1) - pointList.getEle(0), distance2D);
-            if (Double.isNaN(towerNodeSlope))
-                throw new IllegalArgumentException("average_slope was NaN for OSM way ID " + way.getId());
+    /**
+     * Calculates average_slope and max_slope from the specified (usually 3D) geometry of an edge.
+     *
+     * @param ignorePillarElevation if true max_slope is calculated from the tower nodes only, see
+     *                              {@link #ignorePillarElevation(ReaderWay)}
+     */
+    public void setSlopes(IntsRef edgeFlags, PointList pointList, boolean ignorePillarElevation) {
+        if (pointList.isEmpty() || !pointList.is3D()) {
+            averageSlopeEnc.setDecimal(false, edgeFlags, 0);
+            return;
+        }
+        // Calculate 2d distance, although pointList might be 3D.
+        // This calculation is a bit expensive and edge_distance is available already, but this would be in 3D
+        double distance2D = DistanceCalcEarth.calcDistance(pointList, false);
+        if (distance2D < MIN_LENGTH) {
+            // default is minimum of average_slope is negative so we have to explicitly set it to 0
+            averageSlopeEnc.setDecimal(false, edgeFlags, 0);
+            return;
+        }
+
+        double towerNodeSlope = calcSlope(pointList.getEle(pointList.size() - 1) - pointList.getEle(0), distance2D);
+        if (Double.isNaN(towerNodeSlope))
+            throw new IllegalArgumentException("average_slope was NaN");
 
-            if (towerNodeSlope >= 0)
-                averageSlopeEnc.setDecimal(false, edgeFlags, Math.min(towerNodeSlope, averageSlopeEnc.getMaxStorableDecimal()));
-            else
-                averageSlopeEnc.setDecimal(true, edgeFlags, Math.min(Math.abs(towerNodeSlope), averageSlopeEnc.getMaxStorableDecimal()));
+        if (towerNodeSlope >= 0)
+            averageSlopeEnc.setDecimal(false, edgeFlags, Math.min(towerNodeSlope, averageSlopeEnc.getMaxStorableDecimal()));
+        else
+            averageSlopeEnc.setDecimal(true, edgeFlags, Math.min(Math.abs(towerNodeSlope), averageSlopeEnc.getMaxStorableDecimal()));
 
-            // max_slope is more error-prone as the shorter distances increase the fluctuation
-            // so apply some more filtering (here we use the average elevation delta of the previous two points)
-            double maxSlope = 0, prevDist = 0, prevLat = pointList.getLat(0), prevLon = pointList.getLon(0);
-            for (int i = 1; i < pointList.size(); i++) {
-                double pillarDistance2D = DistanceCalcEarth.DIST_EARTH.calcDist(prevLat, prevLon, pointList.getLat(i), pointList.getLon(i));
-                if (i > 1 && prevDist > MIN_LENGTH) {
-                    double averagedPrevEle = (pointList.getEle(i - 1) + pointList.getEle(i - 2)) / 2;
-                    double tmpSlope = calcSlope(pointList.getEle(i) - averagedPrevEle, pillarDistance2D + prevDist / 2);
-                    maxSlope = Math.max(maxSlope, Math.abs(tmpSlope));
-                }
-                prevDist = pillarDistance2D;
-                prevLat = pointList.getLat(i);
-                prevLon = pointList.getLon(i);
+        // max_slope is more error-prone as the shorter distances increase the fluctuation
+        // so apply some more filtering (here we use the average elevation delta of the previous two points)
+        double maxSlope = 0, prevDist = 0, prevLat = pointList.getLat(0), prevLon = pointList.getLon(0);
+        for (int i = 1; i < pointList.size(); i++) {
+            double pillarDistance2D = DistanceCalcEarth.DIST_EARTH.calcDist(prevLat, prevLon, pointList.getLat(i), pointList.getLon(i));
+            if (i > 1 && prevDist > MIN_LENGTH) {
+                double averagedPrevEle = (pointList.getEle(i - 1) + pointList.getEle(i - 2)) / 2;
+                double tmpSlope = calcSlope(pointList.getEle(i) - averagedPrevEle, pillarDistance2D + prevDist / 2);
+                maxSlope = Math.max(maxSlope, Math.abs(tmpSlope));
             }
+            prevDist = pillarDistance2D;
+            prevLat = pointList.getLat(i);
+            prevLon = pointList.getLon(i);
+        }
 
-            // For tunnels and bridges we cannot trust the pillar node elevation and ignore all changes.
-            // Probably we should somehow recalculate even the average_slope after elevation interpolation? See EdgeElevationInterpolator
-            if (way.hasTag("tunnel", "yes") || way.hasTag("bridge", "yes") || way.hasTag("highway", "steps"))
-                maxSlope = Math.abs(towerNodeSlope);
-            else
-                maxSlope = Math.max(Math.abs(towerNodeSlope), maxSlope);
+        // Probably we should somehow recalculate even the average_slope after elevation interpolation? See EdgeElevationInterpolator
+        if (ignorePillarElevation)
+            maxSlope = Math.abs(towerNodeSlope);
+        else
+            maxSlope = Math.max(Math.abs(towerNodeSlope), maxSlope);
 
-            if (Double.isNaN(maxSlope))
-                throw new IllegalArgumentException("max_slope was NaN for OSM way ID " + way.getId());
+        if (Double.isNaN(maxSlope))
+            throw new IllegalArgumentException("max_slope was NaN");
 
-            // TODO Use two independent values for both directions to store if it is a gain or loss and not just the absolute change.
-            // TODO To save space then it would be nice to have an encoded value that can store two different values which are swapped when the reverse direction is used
-            maxSlopeEnc.setDecimal(false, edgeFlags, Math.min(maxSlope, maxSlopeEnc.getMaxStorableDecimal()));
-        }
+        // TODO Use two independent values for both directions to store if it is a gain or loss and not just the absolute change.
+        // TODO To save space then it would be nice to have an encoded value that can store two different values which are swapped when the reverse direction is used
+        maxSlopeEnc.setDecimal(false, edgeFlags, Math.min(maxSlope, maxSlopeEnc.getMaxStorableDecimal()));
     }
 
     static double calcSlope(double eleDelta, double distance2D) {
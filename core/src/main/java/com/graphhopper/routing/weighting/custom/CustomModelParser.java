@@ -67,11 +67,20 @@ public class CustomModelParser {
 
     public static CustomWeighting createWeighting(BooleanEncodedValue accessEnc, DecimalEncodedValue speedEnc, DecimalEncodedValue priorityEnc,
                                                   EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel) {
+        return createWeighting(accessEnc, speedEnc, priorityEnc, lookup, turnCostProvider, customModel, null);
+    }
+
+    /**
+     * @param speedOverlay limits the speed of the edges, can be null
+     */
+    public static CustomWeighting createWeighting(BooleanEncodedValue accessEnc, DecimalEncodedValue speedEnc, DecimalEncodedValue priorityEnc,
+                                                  EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel,
+                                                  SpeedOverlay speedOverlay) {
         if (customModel == null)
             throw new IllegalStateException("CustomModel cannot be null");
         double maxSpeed = speedEnc.getMaxOrMaxStorableDecimal();
         CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup, speedEnc, maxSpeed, priorityEnc);
-        return new CustomWeighting(accessEnc, speedEnc, turnCostProvider, parameters);
+        return new CustomWeighting(accessEnc, speedEnc, turnCostProvider, parameters, speedOverlay);
     }
 
     /**
@@ -19,10 +19,13 @@ package com.graphhopper.routing.weighting.custom;
 
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.querygraph.VirtualEdgeIterator;
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
 import com.graphhopper.routing.weighting.AbstractWeighting;
 import com.graphhopper.routing.weighting.TurnCostProvider;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
 
 /**
  * The CustomWeighting allows adjusting the edge weights relative to those we'd obtain for a given base flag encoder.
@@ -83,9 +86,20 @@ public final class CustomWeighting extends AbstractWeighting {
     private final double headingPenaltySeconds;
     private final EdgeToDoubleMapping edgeToSpeedMapping;
     private final EdgeToDoubleMapping edgeToPriorityMapping;
+    // the speeds of the SpeedOverlay indexed by edge key, null if there are none
+    private final float[] overlaySpeeds;
 
     public CustomWeighting(BooleanEncodedValue baseAccessEnc, DecimalEncodedValue baseSpeedEnc, TurnCostProvider turnCostProvider, Parameters parameters) {
+        this(baseAccessEnc, baseSpeedEnc, turnCostProvider, parameters, null);
+    }
+
+    /**
+     * @param speedOverlay limits the speed of the edges, can be null
+     */
+    public CustomWeighting(BooleanEncodedValue baseAccessEnc, DecimalEncodedValue baseSpeedEnc, TurnCostProvider turnCostProvider, Parameters parameters,
+                           SpeedOverlay speedOverlay) {
         super(baseAccessEnc, baseSpeedEnc, turnCostProvider);
+        this.overlaySpeeds = speedOverlay == null ? null : speedOverlay.getSpeeds();
         this.edgeToSpeedMapping = parameters.getEdgeToSpeedMapping();
         this.edgeToPriorityMapping = parameters.getEdgeToPriorityMapping();
         this.headingPenaltySeconds = parameters.getHeadingPenaltySeconds();
@@ -126,6 +140,8 @@ public final class CustomWeighting extends AbstractWeighting {
             return Double.POSITIVE_INFINITY;
 
         double speed = edgeToSpeedMapping.get(edgeState, reverse);
+        if (overlaySpeeds != null)
+            speed = applySpeedOverlay(speed, edgeState, reverse);
         if (speed > maxSpeed * SPEED_CONV)
             throw new IllegalStateException("for " + getName() + " speed <= maxSpeed is violated, " + speed + " <= " + maxSpeed * SPEED_CONV);
         if (speed == 0)
@@ -138,6 +154,21 @@ public final class CustomWeighting extends AbstractWeighting {
         return edgeState.get(EdgeIteratorState.UNFAVORED_EDGE) ? seconds + headingPenaltySeconds : seconds;
     }
 
+    private double applySpeedOverlay(double speed, EdgeIteratorState edgeState, boolean reverse) {
+        // for virtual edges we use the speed of the original edge
+        int edgeKey;
+        if (edgeState instanceof VirtualEdgeIteratorState)
+            edgeKey = ((VirtualEdgeIteratorState) edgeState).getOriginalEdgeKey();
+        else if (edgeState instanceof VirtualEdgeIterator)
+            edgeKey = ((VirtualEdgeIterator) edgeState).getOriginalEdgeKey();
+        else
+            edgeKey = edgeState.getEdgeKey();
+        if (reverse)
+            edgeKey = GHUtility.reverseEdgeKey(edgeKey);
+        float overlaySpeed = overlaySpeeds[edgeKey];
+        return Float.isNaN(overlaySpeed) ? speed : Math.min(speed, overlaySpeed);
+    }
+
     @Override
     public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
         // we truncate to long here instead of rounding to make it consistent with FastestWeighting, maybe change to rounding later
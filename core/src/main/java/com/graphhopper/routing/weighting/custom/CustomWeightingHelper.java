@@ -23,6 +23,7 @@ import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.FetchMode;
 import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.Polygon;
 
@@ -33,6 +34,8 @@ import java.util.Map;
  * getSpeed and getPriority. At the end an instance is created and used in CustomWeighting.
  */
 public class CustomWeightingHelper {
+    // the generated subclasses can be used from multiple threads, so every thread reuses its own PointList
+    private static final ThreadLocal<PointList> TMP_POINTS = ThreadLocal.withInitial(() -> new PointList(10, false));
     protected DecimalEncodedValue avg_speed_enc;
     protected DecimalEncodedValue priority_enc;
 
@@ -82,6 +85,6 @@ public class CustomWeightingHelper {
             return false;
         if (p.isRectangle() && polyBBOX.contains(edgeBBox))
             return true;
-        return p.intersects(edge.fetchWayGeometry(FetchMode.ALL).makeImmutable()); // TODO PERF: cache bbox and edge wayGeometry for multiple area
+        return p.intersects(edge.fetchWayGeometry(FetchMode.ALL, TMP_POINTS.get())); // TODO PERF: cache bbox and edge wayGeometry for multiple area
     }
 }
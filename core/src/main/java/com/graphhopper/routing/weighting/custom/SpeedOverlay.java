@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Holds speeds per edge key (e.g. from a live traffic feed) that limit the speed calculated by the CustomWeighting
+ * of flexible and LM requests. The speeds are not stored in the graph, instead every update fills a new array that
+ * then replaces the current one. Requests never wait for an update and an update never waits for a request.
+ * <p>
+ * Every update replaces all speeds: an edge key that is not part of an update has no speed limit afterwards. A
+ * weighting uses the speeds that were current when it was created. An array is never modified after it was
+ * published, so a weighting that is still in use is not affected by later updates.
+ * <p>
+ * The overlay can only lower the speed of an edge, so weights never become smaller than those of the preparation and
+ * landmark routing stays correct. CH ignores the overlay.
+ */
+public class SpeedOverlay {
+    private final int edgeKeys;
+    private final Runnable afterUpdate;
+    // NaN means no speed limit for this edge key, null means no speed limit at all
+    private volatile float[] speeds;
+    private long updates;
+
+    public SpeedOverlay(int edges) {
+        this(edges, () -> {
+        });
+    }
+
+    /**
+     * @param afterUpdate is called after every update, e.g. to clear a response cache
+     */
+    public SpeedOverlay(int edges, Runnable afterUpdate) {
+        this.edgeKeys = edges * 2;
+        this.afterUpdate = afterUpdate;
+    }
+
+    /**
+     * Replaces all speeds. The edge key of an edge traversed in the direction in which it is stored is 2 * edge and
+     * otherwise 2 * edge + 1, see EdgeIteratorState.getEdgeKey.
+     *
+     * @param speeds the speeds in km/h, 0 blocks the edge key
+     */
+    public synchronized void update(int[] edgeKeys, double[] speeds) {
+        if (edgeKeys.length != speeds.length)
+            throw new IllegalArgumentException("The number of edge keys " + edgeKeys.length + " must be equal to the number of speeds " + speeds.length);
+        float[] next = createSpeeds();
+        for (int i = 0; i < edgeKeys.length; i++) {
+            set(next, edgeKeys[i], speeds[i]);
+        }
+        swap(next);
+    }
+
+    /**
+     * Replaces all speeds with the speeds read from a text with one 'edge_key,speed' pair per line, e.g. '4711,35.5'.
+     * Empty lines and lines starting with '#' are ignored. See {@link #update(int[], double[])}
+     *
+     * @return the number of speeds read
+     */
+    public synchronized int update(BufferedReader reader) throws IOException {
+        float[] next = createSpeeds();
+        int count = 0, lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.charAt(0) == '#')
+                continue;
+            int index = line.indexOf(',');
+            if (index < 0)
+                throw new IllegalArgumentException("Expected 'edge_key,speed' in line " + lineNumber + " but was: " + line);
+            try {
+                int edgeKey = Integer.parseInt(line, 0, index, 10);
+                set(next, edgeKey, Double.parseDouble(line.substring(index + 1)));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid speed in line " + lineNumber + ": " + ex.getMessage(), ex);
+            }
+            count++;
+        }
+        swap(next);
+        return count;
+    }
+
+    /**
+     * Removes all speeds.
+     */
+    public synchronized void clear() {
+        speeds = null;
+        updates++;
+        afterUpdate.run();
+    }
+
+    private float[] createSpeeds() {
+        // the current array might still be used by a weighting, so we always need a new one
+        float[] next = new float[edgeKeys];
+        Arrays.fill(next, Float.NaN);
+        return next;
+    }
+
+    private void set(float[] next, int edgeKey, double speed) {
+        if (edgeKey < 0 || edgeKey >= edgeKeys)
+            throw new IllegalArgumentException("Edge key " + edgeKey + " does not exist, edge keys: " + edgeKeys);
+        if (!(speed >= 0) || Double.isInfinite(speed))
+            throw new IllegalArgumentException("Speed of edge key " + edgeKey + " must be a finite and non-negative number but was " + speed);
+        next[edgeKey] = (float) speed;
+    }
+
+    private void swap(float[] next) {
+        speeds = next;
+        updates++;
+        afterUpdate.run();
+    }
+
+    /**
+     * @return the current speeds indexed by edge key or null if there are none
+     */
+    float[] getSpeeds() {
+        return speeds;
+    }
+
+    /**
+     * @return the number of updates including clear calls
+     */
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    @Override
+    public String toString() {
+        return "speed_overlay|edge_keys=" + edgeKeys + "|updates=" + getUpdates();
+    }
+}
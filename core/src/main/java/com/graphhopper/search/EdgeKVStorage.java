@@ -73,7 +73,25 @@ public class EdgeKVStorage {
     // 2. Every key can store values only of the same type
     // 3. We need to loop through X entries to get the start val_x.
     // 4. The key index (14 bits) is stored along with the availability (2 bits), i.e. whether they KeyValue is available in forward and/or backward directions
+    //
+    // Optionally String values are stored in a deduplicated string dictionary instead. Then a String value is stored
+    // as a fixed length dictionary id (4 bytes) in the vals DataAccess and all strings are stored only once in the dict
+    // DataAccess. This makes the vals DataAccess a lot smaller as most street names repeat many times and a lookup of
+    // one key only needs to skip fixed length values. The format is stored in the header of the vals DataAccess.
     private final DataAccess vals;
+    private static final int FORMAT_DEFAULT = 0, FORMAT_STRING_DICTIONARY = 1;
+    private final Directory dir;
+    private boolean stringDictionary;
+    // The storage layout in the dict DataAccess is: val_length (1 byte) and val (x bytes) for every string. The strings
+    // are kept in memory (idToString) so that fetching a String value does not create a new String object. Reading them
+    // from the dict DataAccess on demand would decode a new String for every fetch, e.g. for every edge of every path
+    // when creating the instructions, and would need another id to pointer index as the strings have different
+    // lengths. The dictionary only holds the distinct strings, so idToString is small compared to the vals DataAccess.
+    // The reverse mapping (stringToId) is only needed while adding and released in flush. It is rebuilt on demand.
+    private DataAccess dict;
+    private Map<String, Integer> stringToId = new HashMap<>();
+    private final List<String> idToString = new ArrayList<>();
+    private long dictBytePointer;
     private final Map<String, Integer> keyToIndex = new HashMap<>();
     private final List<Class<?>> indexToClass = new ArrayList<>();
     private final List<String> indexToKey = new ArrayList<>();
@@ -86,13 +104,30 @@ public class EdgeKVStorage {
      * Specify a larger cacheSize to reduce disk usage. Note that this increases the memory usage of this object.
      */
     public EdgeKVStorage(Directory dir) {
+        this(dir, false);
+    }
+
+    /**
+     * @param stringDictionary if true String values are stored in a deduplicated dictionary. This only has an effect
+     *                         when creating a new storage, for loadExisting the stored format is used.
+     */
+    public EdgeKVStorage(Directory dir, boolean stringDictionary) {
+        this.dir = dir;
+        this.stringDictionary = stringDictionary;
         keys = dir.create("edgekv_keys", 10 * 1024);
         vals = dir.create("edgekv_vals");
+        if (stringDictionary)
+            dict = dir.create("edgekv_dict");
     }
 
     public EdgeKVStorage create(long initBytes) {
         keys.create(initBytes);
         vals.create(initBytes);
+        if (stringDictionary) {
+            dict.create(initBytes);
+            // the empty string always has the id 0
+            addToDictionary("");
+        }
         // add special empty case to have a reliable duplicate detection via negative keyIndex
         keyToIndex.put("", 0);
         indexToKey.add("");
@@ -106,6 +141,12 @@ public class EdgeKVStorage {
             bytePointer = bitUtil.combineIntsToLong(vals.getHeader(0), vals.getHeader(4));
             GHUtility.checkDAVersion(vals.getName(), Constants.VERSION_EDGEKV_STORAGE, vals.getHeader(8));
             GHUtility.checkDAVersion(keys.getName(), Constants.VERSION_EDGEKV_STORAGE, keys.getHeader(0));
+            int format = vals.getHeader(12);
+            if (format != FORMAT_DEFAULT && format != FORMAT_STRING_DICTIONARY)
+                throw new IllegalStateException("Unknown format " + format + " of " + vals.getName());
+            stringDictionary = format == FORMAT_STRING_DICTIONARY;
+            if (stringDictionary)
+                loadDictionary();
 
             // load keys into memory
             int count = keys.getShort(0);
@@ -133,10 +174,64 @@ public class EdgeKVStorage {
         return false;
     }
 
+    private void loadDictionary() {
+        if (dict == null)
+            dict = dir.create("edgekv_dict");
+        if (!dict.loadExisting()) throw new IllegalStateException("Loaded values but cannot load string dictionary");
+        GHUtility.checkDAVersion(dict.getName(), Constants.VERSION_EDGEKV_STORAGE, dict.getHeader(12));
+        dictBytePointer = bitUtil.combineIntsToLong(dict.getHeader(0), dict.getHeader(4));
+        int count = dict.getHeader(8);
+        long pointer = 0;
+        for (int i = 0; i < count; i++) {
+            int length = dict.getByte(pointer) & 0xFF;
+            pointer++;
+            byte[] bytes = new byte[length];
+            dict.getBytes(pointer, bytes, length);
+            pointer += length;
+            idToString.add(new String(bytes, Helper.UTF_CS));
+        }
+        if (pointer != dictBytePointer)
+            throw new IllegalStateException("Invalid string dictionary, expected " + dictBytePointer + " bytes but was " + pointer);
+    }
+
+    private int addToDictionary(String str) {
+        // the reverse mapping is only needed while adding and e.g. not after loadExisting or flush
+        if (stringToId.size() < idToString.size())
+            for (int i = stringToId.size(); i < idToString.size(); i++)
+                stringToId.put(idToString.get(i), i);
+        Integer id = stringToId.get(str);
+        if (id != null) return id;
+
+        byte[] bytes = getBytesForValue(String.class, str);
+        dict.ensureCapacity(dictBytePointer + 1 + bytes.length);
+        dict.setByte(dictBytePointer, (byte) bytes.length);
+        dict.setBytes(dictBytePointer + 1, bytes, bytes.length);
+        dictBytePointer += 1 + bytes.length;
+        id = idToString.size();
+        stringToId.put(str, id);
+        idToString.add(str);
+        return id;
+    }
+
+    /**
+     * @return true if String values are stored in a deduplicated string dictionary
+     */
+    public boolean isStringDictionary() {
+        return stringDictionary;
+    }
+
     Collection<String> getKeys() {
         return indexToKey;
     }
 
+    int getDictionarySize() {
+        return idToString.size();
+    }
+
+    int getReverseDictionarySize() {
+        return stringToId.size();
+    }
+
     /**
      * This method writes the specified entryMap (key-value pairs) into the storage. Please note that null keys or null
      * values are rejected. The Class of a value can be only: byte[], String, int, long, float or double
@@ -204,7 +299,9 @@ public class EdgeKVStorage {
                 }
             }
 
-            final byte[] valueBytes = getBytesForValue(clazz, value);
+            final byte[] valueBytes = stringDictionary && clazz.equals(String.class)
+                    ? bitUtil.fromInt(addToDictionary((String) value))
+                    : getBytesForValue(clazz, value);
             vals.ensureCapacity(currentPointer + 2 + 1 + valueBytes.length);
             vals.setShort(currentPointer, (short) (keyIndex << 2 | (entry.fwd ? 2 : 0) | (entry.bwd ? 1 : 0)));
             currentPointer += 2;
@@ -264,11 +361,11 @@ public class EdgeKVStorage {
     }
 
     private boolean hasDynLength(Class<?> clazz) {
-        return clazz.equals(String.class) || clazz.equals(byte[].class);
+        return clazz.equals(String.class) && !stringDictionary || clazz.equals(byte[].class);
     }
 
     private int getFixLength(Class<?> clazz) {
-        if (clazz.equals(Integer.class) || clazz.equals(Float.class)) return 4;
+        if (clazz.equals(Integer.class) || clazz.equals(Float.class) || clazz.equals(String.class)) return 4;
         else if (clazz.equals(Long.class) || clazz.equals(Double.class)) return 8;
         else throw new IllegalArgumentException("unknown class " + clazz);
     }
@@ -333,7 +430,10 @@ public class EdgeKVStorage {
         } else {
             byte[] valueBytes = new byte[getFixLength(clazz)];
             vals.getBytes(pointer, valueBytes, valueBytes.length);
-            if (clazz.equals(Integer.class)) {
+            if (clazz.equals(String.class)) {
+                if (sizeOfObject != null) sizeOfObject.set(4);
+                return idToString.get(bitUtil.toInt(valueBytes, 0));
+            } else if (clazz.equals(Integer.class)) {
                 if (sizeOfObject != null) sizeOfObject.set(4);
                 return bitUtil.toInt(valueBytes, 0);
             } else if (clazz.equals(Long.class)) {
@@ -413,20 +513,34 @@ public class EdgeKVStorage {
         vals.setHeader(0, bitUtil.getIntLow(bytePointer));
         vals.setHeader(4, bitUtil.getIntHigh(bytePointer));
         vals.setHeader(8, Constants.VERSION_EDGEKV_STORAGE);
+        vals.setHeader(12, stringDictionary ? FORMAT_STRING_DICTIONARY : FORMAT_DEFAULT);
         vals.flush();
+
+        if (stringDictionary) {
+            dict.setHeader(0, bitUtil.getIntLow(dictBytePointer));
+            dict.setHeader(4, bitUtil.getIntHigh(dictBytePointer));
+            dict.setHeader(8, idToString.size());
+            dict.setHeader(12, Constants.VERSION_EDGEKV_STORAGE);
+            dict.flush();
+            // a new map as clear would keep the capacity of the table
+            stringToId = new HashMap<>();
+        }
     }
 
     public void close() {
         keys.close();
         vals.close();
+        if (dict != null)
+            dict.close();
+        stringToId.clear();
     }
 
     public boolean isClosed() {
-        return vals.isClosed() && keys.isClosed();
+        return vals.isClosed() && keys.isClosed() && (dict == null || dict.isClosed());
     }
 
     public long getCapacity() {
-        return vals.getCapacity() + keys.getCapacity();
+        return vals.getCapacity() + keys.getCapacity() + (dict == null ? 0 : dict.getCapacity());
     }
 
     public static class KeyValue {
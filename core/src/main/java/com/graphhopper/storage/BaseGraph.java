@@ -59,10 +59,15 @@ public class BaseGraph implements Graph, Closeable {
     private long maxGeoRef;
 
     public BaseGraph(Directory dir, int intsForFlags, boolean withElevation, boolean withTurnCosts, int segmentSize) {
+        this(dir, intsForFlags, withElevation, withTurnCosts, segmentSize, false);
+    }
+
+    public BaseGraph(Directory dir, int intsForFlags, boolean withElevation, boolean withTurnCosts, int segmentSize,
+                     boolean edgeKVStringDictionary) {
         this.dir = dir;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
-        this.edgeKVStorage = new EdgeKVStorage(dir);
+        this.edgeKVStorage = new EdgeKVStorage(dir, edgeKVStringDictionary);
         this.store = new BaseGraphNodesAndEdges(dir, intsForFlags, withElevation, withTurnCosts, segmentSize);
         this.nodeAccess = new GHNodeAccess(store);
         this.segmentSize = segmentSize;
@@ -228,7 +233,10 @@ public class BaseGraph implements Graph, Closeable {
                 + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0);
     }
 
-    long getMaxGeoRef() {
+    /**
+     * @return the number of ints that are used by the way geometry storage
+     */
+    public long getMaxGeoRef() {
         return maxGeoRef;
     }
 
@@ -401,55 +409,47 @@ public class BaseGraph implements Graph, Closeable {
     }
 
     private PointList fetchWayGeometry_(long edgePointer, boolean reverse, FetchMode mode, int baseNode, int adjNode) {
-        if (mode == FetchMode.TOWER_ONLY) {
-            // no reverse handling required as adjNode and baseNode is already properly switched
-            PointList pillarNodes = new PointList(2, nodeAccess.is3D());
-            pillarNodes.add(nodeAccess, baseNode);
-            pillarNodes.add(nodeAccess, adjNode);
-            return pillarNodes;
-        }
         long geoRef = Helper.toUnsignedLong(store.getGeoRef(edgePointer));
-        int count = 0;
-        byte[] bytes = null;
-        if (geoRef > 0) {
-            geoRef *= 4L;
-            count = wayGeometry.getInt(geoRef);
-
-            geoRef += 4L;
-            bytes = new byte[count * nodeAccess.getDimension() * 4];
-            wayGeometry.getBytes(geoRef, bytes, bytes.length);
-        } else if (mode == FetchMode.PILLAR_ONLY)
+        int count = geoRef > 0 && mode != FetchMode.TOWER_ONLY ? wayGeometry.getInt(geoRef * 4L) : 0;
+        if (count == 0 && mode == FetchMode.PILLAR_ONLY)
             return PointList.EMPTY;
-
         PointList pillarNodes = new PointList(getPointListLength(count, mode), nodeAccess.is3D());
-        if (reverse) {
-            if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
-                pillarNodes.add(nodeAccess, adjNode);
-        } else if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
-            pillarNodes.add(nodeAccess, baseNode);
+        return fetchWayGeometry_(edgePointer, reverse, mode, baseNode, adjNode, pillarNodes);
+    }
 
-        int index = 0;
-        for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
-                index += 4;
-            } else {
-                pillarNodes.add(lat, lon);
+    /**
+     * Writes the geometry into the specified PointList. The coordinates are read directly from the wayGeometry
+     * DataAccess, i.e. without an intermediate byte array, and in the requested order so that no reverse is needed.
+     */
+    private PointList fetchWayGeometry_(long edgePointer, boolean reverse, FetchMode mode, int baseNode, int adjNode,
+                                        PointList pillarNodes) {
+        pillarNodes.clear();
+        // no reverse handling required for the tower nodes as adjNode and baseNode is already properly switched
+        if (mode == FetchMode.TOWER_ONLY || mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
+            pillarNodes.add(nodeAccess, baseNode);
+        if (mode != FetchMode.TOWER_ONLY) {
+            long geoRef = Helper.toUnsignedLong(store.getGeoRef(edgePointer));
+            if (geoRef > 0) {
+                geoRef *= 4L;
+                int count = wayGeometry.getInt(geoRef);
+                int dim = nodeAccess.getDimension();
+                boolean is3D = nodeAccess.is3D() && pillarNodes.is3D();
+                geoRef += 4L;
+                for (int i = 0; i < count; i++) {
+                    long pointer = geoRef + (long) (reverse ? count - 1 - i : i) * dim * 4;
+                    double lat = Helper.intToDegree(wayGeometry.getInt(pointer));
+                    double lon = Helper.intToDegree(wayGeometry.getInt(pointer + 4));
+                    if (is3D)
+                        pillarNodes.add(lat, lon, Helper.intToEle(wayGeometry.getInt(pointer + 8)));
+                    else if (pillarNodes.is3D())
+                        pillarNodes.add(lat, lon, Double.NaN);
+                    else
+                        pillarNodes.add(lat, lon);
+                }
             }
         }
-
-        if (reverse) {
-            if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
-                pillarNodes.add(nodeAccess, baseNode);
-
-            pillarNodes.reverse();
-        } else if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
+        if (mode == FetchMode.TOWER_ONLY || mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
             pillarNodes.add(nodeAccess, adjNode);
-
         return pillarNodes;
     }
 
@@ -493,6 +493,13 @@ public class BaseGraph implements Graph, Closeable {
         return segmentSize;
     }
 
+    /**
+     * @return true if the String values of the key-value pairs are stored in a deduplicated string dictionary
+     */
+    public boolean isEdgeKVStringDictionary() {
+        return edgeKVStorage.isStringDictionary();
+    }
+
     public static class Builder {
         private final int intsForFlags;
         private Directory directory = new RAMDirectory();
@@ -500,6 +507,7 @@ public class BaseGraph implements Graph, Closeable {
         private boolean withTurnCosts = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private boolean edgeKVStringDictionary = false;
 
         public Builder(EncodingManager em) {
             this(em.getIntsForFlags());
@@ -533,13 +541,18 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        public Builder setEdgeKVStringDictionary(boolean edgeKVStringDictionary) {
+            this.edgeKVStringDictionary = edgeKVStringDictionary;
+            return this;
+        }
+
         public Builder setBytes(long bytes) {
             this.bytes = bytes;
             return this;
         }
 
         public BaseGraph build() {
-            return new BaseGraph(directory, intsForFlags, withElevation, withTurnCosts, segmentSize);
+            return new BaseGraph(directory, intsForFlags, withElevation, withTurnCosts, segmentSize, edgeKVStringDictionary);
         }
 
         public BaseGraph create() {
@@ -936,6 +949,11 @@ public class BaseGraph implements Graph, Closeable {
             return baseGraph.fetchWayGeometry_(edgePointer, reverse, mode, getBaseNode(), getAdjNode());
         }
 
+        @Override
+        public PointList fetchWayGeometry(FetchMode mode, PointList pointList) {
+            return baseGraph.fetchWayGeometry_(edgePointer, reverse, mode, getBaseNode(), getAdjNode(), pointList);
+        }
+
         @Override
         public int getEdge() {
             return edgeId;
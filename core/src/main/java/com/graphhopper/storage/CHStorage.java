@@ -70,11 +70,19 @@ public class CHStorage {
     private Consumer<LowWeightShortcut> lowShortcutWeightConsumer;
 
     public static CHStorage fromGraph(BaseGraph baseGraph, CHConfig chConfig) {
+        return fromGraph(baseGraph, chConfig, baseGraph.getDirectory());
+    }
+
+    /**
+     * Creates the storage in the given directory instead of the directory of the graph, e.g. in a {@link RAMDirectory}
+     * to keep it in memory only or to avoid a name clash with an existing storage.
+     */
+    public static CHStorage fromGraph(BaseGraph baseGraph, CHConfig chConfig, Directory dir) {
         String name = chConfig.getName();
         boolean edgeBased = chConfig.isEdgeBased();
         if (!baseGraph.isFrozen())
             throw new IllegalStateException("graph must be frozen before we can create ch graphs");
-        CHStorage store = new CHStorage(baseGraph.getDirectory(), name, baseGraph.getSegmentSize(), edgeBased);
+        CHStorage store = new CHStorage(dir, name, baseGraph.getSegmentSize(), edgeBased);
         store.setLowShortcutWeightConsumer(s -> {
             // we just log these to find mapping errors
             NodeAccess nodeAccess = baseGraph.getNodeAccess();
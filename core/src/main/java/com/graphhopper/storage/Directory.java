@@ -51,6 +51,12 @@ public interface Directory {
      */
     void remove(String name);
 
+    /**
+     * Releases the resources of the specified object and removes it from the directory without removing its backing
+     * file. Afterwards a new object with the same name can be created, e.g. to load the file again.
+     */
+    void close(String name);
+
     /**
      * @return the default type of a newly created DataAccess object
      */
@@ -18,6 +18,7 @@
 
 package com.graphhopper.storage;
 
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.weighting.Weighting;
 
@@ -59,6 +60,13 @@ public interface RoutingCHGraph {
 
     Weighting getWeighting();
 
+    /**
+     * @return the cache for unpacked shortcuts that is shared by all queries on this graph, or null if there is none
+     */
+    default ShortcutUnpackingCache getShortcutUnpackingCache() {
+        return null;
+    }
+
     // todo: would like to get rid of this
     void close();
 }
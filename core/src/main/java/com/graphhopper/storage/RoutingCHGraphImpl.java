@@ -18,12 +18,14 @@
 
 package com.graphhopper.storage;
 
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
 import com.graphhopper.routing.weighting.Weighting;
 
 public class RoutingCHGraphImpl implements RoutingCHGraph {
     private final BaseGraph baseGraph;
     private final CHStorage chStorage;
     private final Weighting weighting;
+    private ShortcutUnpackingCache shortcutUnpackingCache;
 
     public static RoutingCHGraph fromGraph(BaseGraph baseGraph, CHStorage chStorage, CHConfig chConfig) {
         return new RoutingCHGraphImpl(baseGraph, chStorage, chConfig.getWeighting());
@@ -37,6 +39,18 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
         this.weighting = weighting;
     }
 
+    @Override
+    public ShortcutUnpackingCache getShortcutUnpackingCache() {
+        return shortcutUnpackingCache;
+    }
+
+    /**
+     * Sets a cache for the original edges of shortcuts that is used when paths are extracted, or null to disable it
+     */
+    public void setShortcutUnpackingCache(ShortcutUnpackingCache shortcutUnpackingCache) {
+        this.shortcutUnpackingCache = shortcutUnpackingCache;
+    }
+
     @Override
     public int getNodes() {
         return baseGraph.getNodes();
@@ -102,6 +116,10 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
         return weighting.calcTurnWeight(edgeFrom, nodeVia, edgeTo);
     }
 
+    public CHStorage getCHStorage() {
+        return chStorage;
+    }
+
     @Override
     public void close() {
         if (!baseGraph.isClosed()) baseGraph.close();
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.sorting.IndirectComparator;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.TurnCost;
 import com.graphhopper.util.EdgeIterator;
@@ -30,6 +32,11 @@ import com.graphhopper.util.EdgeIterator;
  * <p>
  * In practice, the IntRefs are used to store generalized travel costs per turn cost relation per vehicle type.
  * In practice, we only store 0 or infinity. (Can turn, or cannot turn.)
+ * <p>
+ * While importing, the entries of every via node form a linked list, so entries can be added in any order. Once all
+ * turn costs are known {@link #sortByViaNode()} can rewrite the storage into a compressed sparse row layout: the entries
+ * of each via node are stored back to back and sorted by from and to edge, so lookups use a binary search within a
+ * contiguous range instead of following the links. No further entries can be added to a sorted storage.
  *
  * @author Karl Hübner
  * @author Peter Karich
@@ -44,10 +51,15 @@ public class TurnCostStorage {
     private static final int TC_FLAGS = 8;
     private static final int TC_NEXT = 12;
     private static final int BYTES_PER_ENTRY = 16;
+    // in the sorted layout the last field of each entry holds the (exclusive) end of the range of its via node
+    private static final int TC_END = TC_NEXT;
+    private static final int LINKED_LAYOUT = 0;
+    private static final int SORTED_LAYOUT = 1;
 
     private final BaseGraph baseGraph;
     private final DataAccess turnCosts;
     private int turnCostsCount;
+    private boolean sorted;
 
     public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts) {
         this.baseGraph = baseGraph;
@@ -62,6 +74,7 @@ public class TurnCostStorage {
     public void flush() {
         turnCosts.setHeader(0, BYTES_PER_ENTRY);
         turnCosts.setHeader(1 * 4, turnCostsCount);
+        turnCosts.setHeader(2 * 4, sorted ? SORTED_LAYOUT : LINKED_LAYOUT);
         turnCosts.flush();
     }
 
@@ -81,9 +94,77 @@ public class TurnCostStorage {
             throw new IllegalStateException("Number of bytes per turn cost entry does not match the current configuration: " + turnCosts.getHeader(0) + " vs. " + BYTES_PER_ENTRY);
         }
         turnCostsCount = turnCosts.getHeader(4);
+        sorted = turnCosts.getHeader(2 * 4) == SORTED_LAYOUT;
         return true;
     }
 
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Rewrites the turn cost entries such that the entries of each via node are stored in a contiguous range that is
+     * sorted by from and to edge. This speeds up {@link #get} considerably, especially for nodes with many entries,
+     * but afterwards no more turn costs can be added. So this should be called after the import is complete.
+     */
+    public void sortByViaNode() {
+        if (sorted)
+            return;
+        NodeAccess nodeAccess = baseGraph.getNodeAccess();
+        // from and to edge of each entry as a long, so sorting the keys also sorts by from edge and then by to edge
+        long[] keys = new long[turnCostsCount];
+        int[] flags = new int[turnCostsCount];
+        int[] starts = new int[baseGraph.getNodes()];
+        int count = 0;
+        for (int node = 0; node < baseGraph.getNodes(); node++) {
+            starts[node] = count;
+            int turnCostIndex = nodeAccess.getTurnCostIndex(node);
+            while (turnCostIndex != NO_TURN_ENTRY) {
+                long ptr = (long) turnCostIndex * BYTES_PER_ENTRY;
+                keys[count] = createKey(turnCosts.getInt(ptr + TC_FROM), turnCosts.getInt(ptr + TC_TO));
+                flags[count] = turnCosts.getInt(ptr + TC_FLAGS);
+                count++;
+                turnCostIndex = turnCosts.getInt(ptr + TC_NEXT);
+            }
+        }
+        if (count != turnCostsCount)
+            throw new IllegalStateException("Expected " + turnCostsCount + " turn cost entries, but found " + count);
+
+        IndirectComparator byKey = (indexA, indexB) -> Long.compare(keys[indexA], keys[indexB]);
+        for (int node = 0; node < starts.length; node++) {
+            int start = starts[node];
+            int end = node + 1 < starts.length ? starts[node + 1] : count;
+            if (start == end) {
+                nodeAccess.setTurnCostIndex(node, NO_TURN_ENTRY);
+                continue;
+            }
+            // sort the indices of the entries so the keys and their flags stay together
+            int[] order = IndirectSort.mergesort(start, end - start, byKey);
+            for (int i = start; i < end; i++) {
+                int entry = order[i - start];
+                long ptr = (long) i * BYTES_PER_ENTRY;
+                turnCosts.setInt(ptr + TC_FROM, getFromEdge(keys[entry]));
+                turnCosts.setInt(ptr + TC_TO, getToEdge(keys[entry]));
+                turnCosts.setInt(ptr + TC_FLAGS, flags[entry]);
+                turnCosts.setInt(ptr + TC_END, end);
+            }
+            nodeAccess.setTurnCostIndex(node, start);
+        }
+        sorted = true;
+    }
+
+    private static long createKey(int fromEdge, int toEdge) {
+        return ((long) fromEdge << 32) | (toEdge & 0xFFFFFFFFL);
+    }
+
+    private static int getFromEdge(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int getToEdge(long key) {
+        return (int) key;
+    }
+
     /**
      * Sets the turn cost at the viaNode when going from "fromEdge" to "toEdge"
      * WARNING: It is tacitly assumed that for every encoder, this method is only called once per turn cost relation.
@@ -97,6 +178,8 @@ public class TurnCostStorage {
     }
 
     private void merge(IntsRef tcFlags, int fromEdge, int viaNode, int toEdge) {
+        if (sorted)
+            throw new IllegalStateException("Cannot add turn costs after the turn cost storage was sorted");
         int newEntryIndex = turnCostsCount;
         ensureTurnCostIndex(newEntryIndex);
         boolean oldEntryFound = false;
@@ -174,6 +257,10 @@ public class TurnCostStorage {
     }
 
     private void readFlags(IntsRef tcFlags, int fromEdge, int viaNode, int toEdge) {
+        if (sorted) {
+            tcFlags.ints[0] = readFlagsSorted(fromEdge, viaNode, toEdge);
+            return;
+        }
         int turnCostIndex = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
         int i = 0;
         for (; i < 1000; i++) {
@@ -199,6 +286,26 @@ public class TurnCostStorage {
         tcFlags.ints[0] = EMPTY_FLAGS;
     }
 
+    private int readFlagsSorted(int fromEdge, int viaNode, int toEdge) {
+        int low = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
+        if (low == NO_TURN_ENTRY)
+            return EMPTY_FLAGS;
+        int high = turnCosts.getInt((long) low * BYTES_PER_ENTRY + TC_END) - 1;
+        long key = createKey(fromEdge, toEdge);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long ptr = (long) mid * BYTES_PER_ENTRY;
+            long midKey = createKey(turnCosts.getInt(ptr + TC_FROM), turnCosts.getInt(ptr + TC_TO));
+            if (midKey < key)
+                low = mid + 1;
+            else if (midKey > key)
+                high = mid - 1;
+            else
+                return turnCosts.getInt(ptr + TC_FLAGS);
+        }
+        return EMPTY_FLAGS;
+    }
+
     private void ensureTurnCostIndex(int nodeIndex) {
         turnCosts.ensureCapacity(((long) nodeIndex + 4) * BYTES_PER_ENTRY);
     }
@@ -295,7 +402,12 @@ public class TurnCostStorage {
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
-            turnCostIndex = turnCosts.getInt(turnCostPtr() + TC_NEXT);
+            if (sorted) {
+                int end = turnCosts.getInt(turnCostPtr() + TC_END);
+                turnCostIndex = turnCostIndex + 1 < end ? turnCostIndex + 1 : NO_TURN_ENTRY;
+            } else {
+                turnCostIndex = turnCosts.getInt(turnCostPtr() + TC_NEXT);
+            }
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
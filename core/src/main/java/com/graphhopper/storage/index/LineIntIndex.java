@@ -20,6 +20,7 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
@@ -231,19 +232,22 @@ public class LineIntIndex {
      * <p>
      */
     public void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, IntConsumer foundEntries) {
-        int x = keyAlgo.x(queryLon);
-        int y = keyAlgo.y(queryLat);
+        forEachTileInNeighborhood(getTileX(queryLon), getTileY(queryLat), iteration, (x, y) -> findEdgeIdsInTile(x, y, foundEntries));
+    }
+
+    /**
+     * Calls the procedure for the tiles which {@link #findEdgeIdsInNeighborhood} searches, in the same order.
+     */
+    void forEachTileInNeighborhood(int x, int y, int iteration, IntIntProcedure tileProcedure) {
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
             int subqueryY = y + yreg;
             int subqueryXA = x - iteration;
             int subqueryXB = x + iteration;
             if (subqueryXA >= 0 && subqueryY >= 0 && subqueryXA < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryXA, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                tileProcedure.apply(subqueryXA, subqueryY);
             }
             if (iteration > 0 && subqueryXB >= 0 && subqueryY >= 0 && subqueryXB < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryXB, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                tileProcedure.apply(subqueryXB, subqueryY);
             }
         }
 
@@ -252,16 +256,33 @@ public class LineIntIndex {
             int subqueryYA = y - iteration;
             int subqueryYB = y + iteration;
             if (subqueryX >= 0 && subqueryYA >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYA < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryX, subqueryYA) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                tileProcedure.apply(subqueryX, subqueryYA);
             }
             if (subqueryX >= 0 && subqueryYB >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYB < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryX, subqueryYB) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                tileProcedure.apply(subqueryX, subqueryYB);
             }
         }
     }
 
+    void findEdgeIdsInTile(int x, int y, IntConsumer foundEntries) {
+        fillIDs(keyAlgo.encode(x, y) << (64 - keyAlgo.getBits()), foundEntries);
+    }
+
+    int getTileX(double lon) {
+        return keyAlgo.x(lon);
+    }
+
+    int getTileY(double lat) {
+        return keyAlgo.y(lat);
+    }
+
+    /**
+     * @return the spatial key of the tile, i.e. tiles with similar keys are close to each other
+     */
+    long getTileKey(int x, int y) {
+        return keyAlgo.encode(x, y);
+    }
+
     public int getChecksum() {
         return checksum;
     }
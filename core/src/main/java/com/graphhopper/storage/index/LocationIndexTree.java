@@ -17,7 +17,12 @@
  */
 package com.graphhopper.storage.index;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
@@ -28,7 +33,13 @@ import com.graphhopper.util.shapes.BBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -52,6 +63,8 @@ import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
  * @author Peter Karich
  */
 public class LocationIndexTree implements LocationIndex {
+    // number of nearby query points which share a cache in findClosestBatch
+    private static final int BATCH_SIZE = 1024;
     private final Directory directory;
     private final Graph graph;
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -61,6 +74,8 @@ public class LocationIndexTree implements LocationIndex {
     private boolean initialized = false;
 
     LineIntIndex lineIntIndex;
+    // only used instead of the lineIntIndex if enabled via setPackedRTree
+    private PackedRTree rTree;
 
     /**
      * If normed distance is smaller than this value the node or edge is 'identical' and the
@@ -90,6 +105,32 @@ public class LocationIndexTree implements LocationIndex {
         lineIntIndex = new LineIntIndex(bounds, directory, "location_index");
     }
 
+    /**
+     * Use a packed R-tree over the bounding boxes of the edge segments instead of the tiles of fixed size, see
+     * {@link PackedRTree}. The closest edges are found exactly within a radius of
+     * minResolutionInMeter*maxRegionSearch, regardless of the length of the edges. Must be called before
+     * loadExisting or prepareIndex.
+     */
+    public LocationIndexTree setPackedRTree(boolean packedRTree) {
+        if (initialized)
+            throw new IllegalStateException("Call setPackedRTree before loadExisting or prepareIndex");
+        if (packedRTree && rTree == null) {
+            BBox bounds = graph.getBounds().clone();
+            if (!bounds.isValid())
+                bounds = new BBox(-10.0, 10.0, -10.0, 10.0);
+            rTree = new PackedRTree(bounds, directory, "location_index_rtree");
+        } else if (!packedRTree && rTree != null) {
+            rTree.close();
+            directory.remove("location_index_rtree");
+            rTree = null;
+        }
+        return this;
+    }
+
+    public boolean isPackedRTree() {
+        return rTree != null;
+    }
+
     public int getMinResolutionInMeter() {
         return minResolutionInMeter;
     }
@@ -128,6 +169,15 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     public boolean loadExisting() {
+        if (rTree != null) {
+            if (!rTree.loadExisting())
+                return false;
+            if (rTree.getChecksum() != checksum())
+                throw new IllegalStateException("location index was opened with incorrect graph: "
+                        + rTree.getChecksum() + " vs. " + checksum());
+            initialized = true;
+            return true;
+        }
         if (!lineIntIndex.loadExisting())
             return false;
 
@@ -141,7 +191,10 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     public void flush() {
-        lineIntIndex.flush();
+        if (rTree != null)
+            rTree.flush();
+        else
+            lineIntIndex.flush();
     }
 
     public LocationIndex prepareIndex() {
@@ -164,6 +217,18 @@ public class LocationIndexTree implements LocationIndex {
         if (!bounds.isValid())
             bounds = new BBox(-10.0, 10.0, -10.0, 10.0);
 
+        if (rTree != null) {
+            preparePackedRTree(edgeFilter);
+            rTree.setChecksum(checksum());
+            flush();
+            initialized = true;
+            logger.info("location index (packed R-tree) created in " + sw.stop().getSeconds()
+                    + "s, entries:" + Helper.nf(rTree.getEntries())
+                    + ", depth:" + rTree.getDepth()
+                    + ", checksum:" + checksum());
+            return this;
+        }
+
         InMemConstructionIndex inMemConstructionIndex = prepareInMemConstructionIndex(bounds, edgeFilter);
 
         lineIntIndex.setMinResolutionInMeter(minResolutionInMeter);
@@ -185,7 +250,31 @@ public class LocationIndexTree implements LocationIndex {
     InMemConstructionIndex prepareInMemConstructionIndex(BBox bounds, EdgeFilter edgeFilter) {
         indexStructureInfo = IndexStructureInfo.create(bounds, minResolutionInMeter);
         InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
+        forEachSegment(edgeFilter, inMem::addToAllTilesOnLine);
+        return inMem;
+    }
+
+    private void preparePackedRTree(EdgeFilter edgeFilter) {
+        IntArrayList edges = new IntArrayList();
+        DoubleArrayList minLats = new DoubleArrayList(), minLons = new DoubleArrayList();
+        DoubleArrayList maxLats = new DoubleArrayList(), maxLons = new DoubleArrayList();
+        forEachSegment(edgeFilter, (edge, lat1, lon1, lat2, lon2) -> {
+            edges.add(edge);
+            minLats.add(Math.min(lat1, lat2));
+            minLons.add(Math.min(lon1, lon2));
+            maxLats.add(Math.max(lat1, lat2));
+            maxLons.add(Math.max(lon1, lon2));
+        });
+        rTree.store(edges.buffer, minLats.buffer, minLons.buffer, maxLats.buffer, maxLons.buffer, edges.size());
+    }
+
+    private interface SegmentVisitor {
+        void onSegment(int edge, double lat1, double lon1, double lat2, double lon2);
+    }
+
+    private void forEachSegment(EdgeFilter edgeFilter, SegmentVisitor visitor) {
         AllEdgesIterator allIter = graph.getAllEdges();
+        PointList points = new PointList(10, false);
         try {
             while (allIter.next()) {
                 if (!edgeFilter.accept(allIter))
@@ -197,24 +286,23 @@ public class LocationIndexTree implements LocationIndex {
                 double lon1 = nodeAccess.getLon(nodeA);
                 double lat2;
                 double lon2;
-                PointList points = allIter.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+                allIter.fetchWayGeometry(FetchMode.PILLAR_ONLY, points);
                 int len = points.size();
                 for (int i = 0; i < len; i++) {
                     lat2 = points.getLat(i);
                     lon2 = points.getLon(i);
-                    inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+                    visitor.onSegment(edge, lat1, lon1, lat2, lon2);
                     lat1 = lat2;
                     lon1 = lon2;
                 }
                 lat2 = nodeAccess.getLat(nodeB);
                 lon2 = nodeAccess.getLon(nodeB);
-                inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+                visitor.onSegment(edge, lat1, lon1, lat2, lon2);
             }
         } catch (Exception ex1) {
             logger.error("Problem! base:" + allIter.getBaseNode() + ", adj:" + allIter.getAdjNode()
                     + ", edge:" + allIter.getEdge(), ex1);
         }
-        return inMem;
     }
 
     int checksum() {
@@ -223,14 +311,16 @@ public class LocationIndexTree implements LocationIndex {
 
     public void close() {
         lineIntIndex.close();
+        if (rTree != null)
+            rTree.close();
     }
 
     public boolean isClosed() {
-        return lineIntIndex.isClosed();
+        return rTree != null ? rTree.isClosed() : lineIntIndex.isClosed();
     }
 
     public long getCapacity() {
-        return lineIntIndex.getCapacity();
+        return rTree != null ? rTree.getCapacity() : lineIntIndex.getCapacity();
     }
 
     /**
@@ -273,24 +363,157 @@ public class LocationIndexTree implements LocationIndex {
     public Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter) {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (rTree != null)
+            return findKClosestInRTree(queryLat, queryLon, 1, edgeFilter).stream().findFirst().orElse(new Snap(queryLat, queryLon));
+        return findClosest(queryLat, queryLon, edgeFilter, null);
+    }
+
+    /**
+     * Finds the k closest edges, which is only supported with the packed R-tree, see {@link #setPackedRTree}.
+     *
+     * @return at most k snaps onto different edges, sorted by their distance to the query point
+     */
+    public List<Snap> findKClosest(double queryLat, double queryLon, int k, EdgeFilter edgeFilter) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (rTree == null)
+            throw new IllegalStateException("findKClosest is only supported for the packed R-tree");
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1 but was " + k);
+        return findKClosestInRTree(queryLat, queryLon, k, edgeFilter);
+    }
 
-        final Snap closestMatch = new Snap(queryLat, queryLon);
+    /**
+     * Snaps the query point onto the given edge. The result is the same as the one of {@link #findClosest} if this
+     * edge is the closest edge of the query point, see {@link SnapCache}.
+     */
+    public Snap snapToEdge(double queryLat, double queryLon, int edgeId) {
+        Snap snap = new Snap(queryLat, queryLon);
+        EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+        traverseEdge(queryLat, queryLon, edgeIteratorState, createEdgeCheck(snap, edgeIteratorState));
+        if (snap.isValid()) {
+            snap.setQueryDistance(DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()));
+            snap.calcSnappedPoint(DIST_PLANE);
+        }
+        return snap;
+    }
+
+    private List<Snap> findKClosestInRTree(double queryLat, double queryLon, int k, EdgeFilter edgeFilter) {
+        double maxNormedDist = DIST_PLANE.calcNormalizedDist((double) minResolutionInMeter * maxRegionSearch);
+        List<Snap> closest = new ArrayList<>(k);
         IntHashSet seenEdges = new IntHashSet();
-        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
-            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
+        PointList tmpPoints = new PointList(10, false);
+        rTree.findNearest(queryLat, queryLon, maxNormedDist, edgeId -> {
+            if (seenEdges.add(edgeId)) {
                 EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
-                if (seenEdges.add(edgeId) && edgeFilter.accept(edgeIteratorState)) { // TODO: or reverse?
-                    traverseEdge(queryLat, queryLon, edgeIteratorState, (node, normedDist, wayIndex, pos) -> {
-                        if (normedDist < closestMatch.getQueryDistance()) {
-                            closestMatch.setQueryDistance(normedDist);
-                            closestMatch.setClosestNode(node);
-                            closestMatch.setClosestEdge(edgeIteratorState.detach(false));
-                            closestMatch.setWayIndex(wayIndex);
-                            closestMatch.setSnappedPosition(pos);
-                        }
-                    });
+                if (edgeFilter.accept(edgeIteratorState)) {
+                    Snap snap = new Snap(queryLat, queryLon);
+                    traverseEdge(queryLat, queryLon, edgeIteratorState, tmpPoints, createEdgeCheck(snap, edgeIteratorState));
+                    if (snap.isValid() && (closest.size() < k || snap.getQueryDistance() < closest.get(k - 1).getQueryDistance())) {
+                        int index = 0;
+                        while (index < closest.size() && closest.get(index).getQueryDistance() <= snap.getQueryDistance())
+                            index++;
+                        closest.add(index, snap);
+                        if (closest.size() > k)
+                            closest.remove(k);
+                    }
+                }
+            }
+            return closest.size() < k ? Double.MAX_VALUE : closest.get(k - 1).getQueryDistance();
+        });
+        for (Snap snap : closest) {
+            snap.setQueryDistance(DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()));
+            snap.calcSnappedPoint(DIST_PLANE);
+        }
+        return closest;
+    }
+
+    /**
+     * The same as {@link #findClosestBatch(double[], double[], EdgeFilter, int)} with a single thread.
+     */
+    public Snap[] findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        return findClosestBatch(lats, lons, edgeFilter, 1);
+    }
+
+    /**
+     * Finds the closest edge for many query points at once. The result for each point is the same as the one of
+     * {@link #findClosest}, but the query points are sorted by their tiles and nearby points are processed together,
+     * so they share the edge ids of the tiles and the geometries of the edges instead of fetching them again for every
+     * point. With the packed R-tree the points are sorted by their Hilbert value and then snapped one by one.
+     *
+     * @param threads the number of threads used to process the batches of nearby points. If this is larger than one
+     *                the edgeFilter must be thread-safe.
+     * @return the snaps in the order of the query points
+     */
+    public Snap[] findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter, int threads) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("lats and lons must have the same length, but was " + lats.length + " vs. " + lons.length);
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+
+        long[] tileKeys = new long[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            tileKeys[i] = rTree != null ? rTree.hilbertValue(lats[i], lons[i])
+                    : lineIntIndex.getTileKey(lineIntIndex.getTileX(lons[i]), lineIntIndex.getTileY(lats[i]));
+        }
+        int[] order = IndirectSort.mergesort(0, lats.length, (a, b) -> Long.compare(tileKeys[a], tileKeys[b]));
+
+        Snap[] snaps = new Snap[lats.length];
+        Stream<Callable<String>> batches = IntStream.range(0, (lats.length + BATCH_SIZE - 1) / BATCH_SIZE).mapToObj(batch -> () -> {
+            BatchCache cache = new BatchCache();
+            int end = Math.min(lats.length, (batch + 1) * BATCH_SIZE);
+            for (int i = batch * BATCH_SIZE; i < end; i++) {
+                int query = order[i];
+                snaps[query] = rTree != null ? findClosest(lats[query], lons[query], edgeFilter) : findClosest(lats[query], lons[query], edgeFilter, cache);
+            }
+            return "batch " + batch;
+        });
+        if (threads == 1)
+            batches.forEach(batch -> {
+                try {
+                    batch.call();
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
                 }
             });
+        else
+            GHUtility.runConcurrently(batches, threads);
+        return snaps;
+    }
+
+    /**
+     * @param cache the edge ids and geometries which can be reused from previous queries, or null to fetch them
+     */
+    private Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, final BatchCache cache) {
+        final Snap closestMatch = new Snap(queryLat, queryLon);
+        IntHashSet seenEdges = new IntHashSet();
+        PointList tmpPoints = new PointList(10, false);
+        IntConsumer edgeConsumer = edgeId -> {
+            if (!seenEdges.add(edgeId))
+                return;
+            if (cache == null) {
+                EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                if (edgeFilter.accept(edgeIteratorState)) // TODO: or reverse?
+                    traverseEdge(queryLat, queryLon, edgeIteratorState, tmpPoints, createEdgeCheck(closestMatch, edgeIteratorState));
+            } else {
+                CachedEdge edge = cache.getEdge(edgeId, edgeFilter);
+                if (edge != null)
+                    traverseEdge(queryLat, queryLon, edge.baseNode, edge.baseLat, edge.baseLon, edge.adjNode, edge.adjLat, edge.adjLon,
+                            edge.pointList, createEdgeCheck(closestMatch, edge.edgeState));
+            }
+        };
+        int x = lineIntIndex.getTileX(queryLon);
+        int y = lineIntIndex.getTileY(queryLat);
+        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+            if (cache == null)
+                lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeConsumer);
+            else
+                lineIntIndex.forEachTileInNeighborhood(x, y, iteration, (tileX, tileY) -> {
+                    for (int edgeId : cache.getTileEdges(tileX, tileY))
+                        edgeConsumer.accept(edgeId);
+                });
             if (closestMatch.isValid()) {
                 // Check if we can stop...
                 double rMin = calculateRMin(queryLat, queryLon, iteration);
@@ -308,9 +531,77 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    private static EdgeCheck createEdgeCheck(Snap closestMatch, EdgeIteratorState edgeIteratorState) {
+        return (node, normedDist, wayIndex, pos) -> {
+            if (normedDist < closestMatch.getQueryDistance()) {
+                closestMatch.setQueryDistance(normedDist);
+                closestMatch.setClosestNode(node);
+                closestMatch.setClosestEdge(edgeIteratorState.detach(false));
+                closestMatch.setWayIndex(wayIndex);
+                closestMatch.setSnappedPosition(pos);
+            }
+        };
+    }
+
+    /**
+     * The edge ids per tile and the edges which were fetched while processing a batch of nearby query points.
+     */
+    private class BatchCache {
+        private final LongObjectHashMap<int[]> tileEdges = new LongObjectHashMap<>();
+        private final IntObjectHashMap<CachedEdge> edges = new IntObjectHashMap<>();
+        private final IntArrayList tmpEdgeIds = new IntArrayList();
+
+        int[] getTileEdges(int x, int y) {
+            long key = ((long) x << 32) | y;
+            int[] edgeIds = tileEdges.get(key);
+            if (edgeIds == null) {
+                tmpEdgeIds.clear();
+                lineIntIndex.findEdgeIdsInTile(x, y, tmpEdgeIds::add);
+                edgeIds = tmpEdgeIds.toArray();
+                tileEdges.put(key, edgeIds);
+            }
+            return edgeIds;
+        }
+
+        /**
+         * @return the edge or null if it is not accepted by the filter
+         */
+        CachedEdge getEdge(int edgeId, EdgeFilter edgeFilter) {
+            int index = edges.indexOf(edgeId);
+            if (edges.indexExists(index))
+                return edges.indexGet(index);
+            EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            CachedEdge edge = edgeFilter.accept(edgeIteratorState) ? new CachedEdge(edgeIteratorState) : null;
+            edges.indexInsert(index, edgeId, edge);
+            return edge;
+        }
+    }
+
+    private class CachedEdge {
+        final EdgeIteratorState edgeState;
+        final int baseNode, adjNode;
+        final double baseLat, baseLon, adjLat, adjLon;
+        final PointList pointList;
+
+        CachedEdge(EdgeIteratorState edgeState) {
+            this.edgeState = edgeState;
+            baseNode = edgeState.getBaseNode();
+            baseLat = nodeAccess.getLat(baseNode);
+            baseLon = nodeAccess.getLon(baseNode);
+            adjNode = edgeState.getAdjNode();
+            adjLat = nodeAccess.getLat(adjNode);
+            adjLon = nodeAccess.getLon(adjNode);
+            // only lat and lon are needed
+            pointList = edgeState.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ, new PointList(4, false));
+        }
+    }
+
     @Override
     public void query(BBox queryBBox, Visitor function) {
-        lineIntIndex.query(queryBBox, function);
+        if (rTree != null)
+            rTree.query(queryBBox, function);
+        else
+            lineIntIndex.query(queryBBox, function);
     }
 
     public interface EdgeCheck {
@@ -318,17 +609,28 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     public void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, EdgeCheck edgeCheck) {
+        traverseEdge(queryLat, queryLon, currEdge, new PointList(10, false), edgeCheck);
+    }
+
+    /**
+     * @param tmpPoints is used to fetch the geometry of the edge into, which avoids creating a new PointList for every
+     *                  edge
+     */
+    private void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, PointList tmpPoints, EdgeCheck edgeCheck) {
         int baseNode = currEdge.getBaseNode();
         double baseLat = nodeAccess.getLat(baseNode);
         double baseLon = nodeAccess.getLon(baseNode);
-        double baseDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, baseLat, baseLon);
-
         int adjNode = currEdge.getAdjNode();
         double adjLat = nodeAccess.getLat(adjNode);
         double adjLon = nodeAccess.getLon(adjNode);
-        double adjDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, adjLat, adjLon);
+        PointList pointList = currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ, tmpPoints);
+        traverseEdge(queryLat, queryLon, baseNode, baseLat, baseLon, adjNode, adjLat, adjLon, pointList, edgeCheck);
+    }
 
-        PointList pointList = currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
+    private void traverseEdge(double queryLat, double queryLon, int baseNode, double baseLat, double baseLon,
+                              int adjNode, double adjLat, double adjLon, PointList pointList, EdgeCheck edgeCheck) {
+        double baseDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, baseLat, baseLon);
+        double adjDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, adjLat, adjLon);
         final int len = pointList.size();
 
         int closestTowerNode;
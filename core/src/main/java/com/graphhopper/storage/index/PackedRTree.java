@@ -0,0 +1,302 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.shapes.BBox;
+
+import static java.lang.Math.*;
+
+/**
+ * A static R-tree over the bounding boxes of the edge segments, which can be used by {@link LocationIndexTree} instead
+ * of the {@link LineIntIndex}. The tree is bulk loaded: the segments are sorted by the Hilbert value of their center
+ * and every NODE_CAPACITY consecutive entries form a node of the next level, up to the root. As all nodes are full
+ * (except the last of every level) the children of a node do not have to be stored.
+ * <p>
+ * Unlike the tiles of the LineIntIndex the bounding boxes adapt to the length of the segments, i.e. a long rural edge
+ * is not stored in many tiles and tiny urban edges do not share one tile with many other edges. The nearest edges
+ * can be found exactly via a best-first search, see {@link #findNearest}.
+ * <p>
+ * The coordinates are stored as int with 7 decimal places and rounded outwards, so the bounding boxes always
+ * include the segments and never have zero width or height.
+ */
+public class PackedRTree {
+    static final int NODE_CAPACITY = 16;
+    private static final double FACTOR = 1e7;
+    private static final int HILBERT_ORDER = 16;
+    private static final int MIN_LAT = 0, MIN_LON = 4, MAX_LAT = 8, MAX_LON = 12, EDGE = 16;
+    private static final int RECORD_BYTES = 20;
+
+    private final DataAccess dataAccess;
+    private final BBox bounds;
+    private int checksum;
+    private int entries;
+    // the index of the first record of each level, level 0 are the entries, the last level is the root
+    private int[] levelStart = new int[0];
+
+    public PackedRTree(BBox bounds, Directory dir, String name) {
+        this.bounds = bounds;
+        this.dataAccess = dir.create(name, dir.getDefaultType(name, true));
+    }
+
+    public boolean loadExisting() {
+        if (!dataAccess.loadExisting())
+            return false;
+
+        GHUtility.checkDAVersion("location_index", Constants.VERSION_LOCATION_IDX, dataAccess.getHeader(0));
+        checksum = dataAccess.getHeader(4);
+        entries = dataAccess.getHeader(2 * 4);
+        if (dataAccess.getHeader(3 * 4) != NODE_CAPACITY)
+            throw new IllegalStateException("Unexpected node capacity of R-tree: " + dataAccess.getHeader(3 * 4));
+        levelStart = calcLevelStart(entries);
+        return true;
+    }
+
+    /**
+     * Stores the given segment bounding boxes. The arrays are in degrees and indexed by segment.
+     */
+    public void store(int[] edges, double[] minLats, double[] minLons, double[] maxLats, double[] maxLons, int size) {
+        entries = size;
+        levelStart = calcLevelStart(size);
+        long[] hilbertValues = new long[size];
+        for (int i = 0; i < size; i++) {
+            hilbertValues[i] = hilbertValue((minLats[i] + maxLats[i]) / 2, (minLons[i] + maxLons[i]) / 2);
+        }
+        int[] order = IndirectSort.mergesort(0, size, (a, b) -> Long.compare(hilbertValues[a], hilbertValues[b]));
+        int records = levelStart.length == 0 ? 0 : levelStart[levelStart.length - 1] + 1;
+        dataAccess.create((long) Math.max(1, records) * RECORD_BYTES);
+        dataAccess.ensureCapacity((long) records * RECORD_BYTES);
+        for (int i = 0; i < size; i++) {
+            int segment = order[i];
+            long pointer = (long) i * RECORD_BYTES;
+            dataAccess.setInt(pointer + MIN_LAT, (int) floor(minLats[segment] * FACTOR));
+            dataAccess.setInt(pointer + MIN_LON, (int) floor(minLons[segment] * FACTOR));
+            dataAccess.setInt(pointer + MAX_LAT, (int) floor(maxLats[segment] * FACTOR) + 1);
+            dataAccess.setInt(pointer + MAX_LON, (int) floor(maxLons[segment] * FACTOR) + 1);
+            dataAccess.setInt(pointer + EDGE, edges[segment]);
+        }
+        for (int level = 1; level < levelStart.length; level++) {
+            int childStart = levelStart[level - 1];
+            int childEnd = levelStart[level];
+            for (int node = levelStart[level]; node < levelEnd(level); node++) {
+                int first = childStart + (node - levelStart[level]) * NODE_CAPACITY;
+                int last = Math.min(childEnd, first + NODE_CAPACITY);
+                int minLat = Integer.MAX_VALUE, minLon = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE, maxLon = Integer.MIN_VALUE;
+                for (int child = first; child < last; child++) {
+                    long pointer = (long) child * RECORD_BYTES;
+                    minLat = Math.min(minLat, dataAccess.getInt(pointer + MIN_LAT));
+                    minLon = Math.min(minLon, dataAccess.getInt(pointer + MIN_LON));
+                    maxLat = Math.max(maxLat, dataAccess.getInt(pointer + MAX_LAT));
+                    maxLon = Math.max(maxLon, dataAccess.getInt(pointer + MAX_LON));
+                }
+                long pointer = (long) node * RECORD_BYTES;
+                dataAccess.setInt(pointer + MIN_LAT, minLat);
+                dataAccess.setInt(pointer + MIN_LON, minLon);
+                dataAccess.setInt(pointer + MAX_LAT, maxLat);
+                dataAccess.setInt(pointer + MAX_LON, maxLon);
+                dataAccess.setInt(pointer + EDGE, -1);
+            }
+        }
+    }
+
+    private static int[] calcLevelStart(int entries) {
+        if (entries == 0)
+            return new int[0];
+        IntArrayList starts = new IntArrayList();
+        int start = 0;
+        int size = entries;
+        while (true) {
+            starts.add(start);
+            if (size == 1)
+                break;
+            start += size;
+            size = (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        }
+        return starts.toArray();
+    }
+
+    private int levelEnd(int level) {
+        return level + 1 < levelStart.length ? levelStart[level + 1] : levelStart[level] + 1;
+    }
+
+    /**
+     * The Hilbert value of the point on a grid over the bounds. Points with similar values are close to each other.
+     */
+    long hilbertValue(double lat, double lon) {
+        int n = 1 << HILBERT_ORDER;
+        int x = (int) Math.max(0, Math.min(n - 1, (lon - bounds.minLon) / (bounds.maxLon - bounds.minLon) * n));
+        int y = (int) Math.max(0, Math.min(n - 1, (lat - bounds.minLat) / (bounds.maxLat - bounds.minLat) * n));
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return d;
+    }
+
+    public interface NearestVisitor {
+        /**
+         * Called for the edges in the order of the lower bound of their distance. An edge can be visited several
+         * times, once for each of its segments.
+         *
+         * @return the normed distance above which no further edges are needed, e.g. the distance of the closest edge
+         * found so far
+         */
+        double onEdge(int edgeId);
+    }
+
+    /**
+     * Visits the edges with a segment closer than maxNormedDist to the query point, in ascending order of the lower
+     * bound of their normed distance (see {@link com.graphhopper.util.DistancePlaneProjection}), until the lower bound
+     * is larger than the distance returned by the visitor.
+     */
+    public void findNearest(double queryLat, double queryLon, double maxNormedDist, NearestVisitor visitor) {
+        if (levelStart.length == 0)
+            return;
+        // float keys are rounded monotonically, so comparing them with the rounded threshold never stops too early
+        float threshold = (float) maxNormedDist;
+        IntFloatBinaryHeap heap = new IntFloatBinaryHeap(NODE_CAPACITY * 4);
+        int root = levelStart[levelStart.length - 1];
+        heap.insert(calcNormedLowerBound(queryLat, queryLon, root), root);
+        while (!heap.isEmpty()) {
+            if (heap.peekKey() > threshold)
+                return;
+            int record = heap.poll();
+            if (record < entries) {
+                double dist = visitor.onEdge(dataAccess.getInt((long) record * RECORD_BYTES + EDGE));
+                threshold = Math.min(threshold, (float) dist);
+                continue;
+            }
+            int level = getLevel(record);
+            int first = levelStart[level - 1] + (record - levelStart[level]) * NODE_CAPACITY;
+            int last = Math.min(levelStart[level], first + NODE_CAPACITY);
+            for (int child = first; child < last; child++) {
+                double lowerBound = calcNormedLowerBound(queryLat, queryLon, child);
+                if ((float) lowerBound <= threshold)
+                    heap.insert(lowerBound, child);
+            }
+        }
+    }
+
+    private int getLevel(int record) {
+        int level = levelStart.length - 1;
+        while (levelStart[level] > record)
+            level--;
+        return level;
+    }
+
+    /**
+     * @return a lower bound of the normed distance between the query point and any point in the bounding box
+     */
+    double calcNormedLowerBound(double queryLat, double queryLon, int record) {
+        long pointer = (long) record * RECORD_BYTES;
+        double minLat = dataAccess.getInt(pointer + MIN_LAT) / FACTOR;
+        double minLon = dataAccess.getInt(pointer + MIN_LON) / FACTOR;
+        double maxLat = dataAccess.getInt(pointer + MAX_LAT) / FACTOR;
+        double maxLon = dataAccess.getInt(pointer + MAX_LON) / FACTOR;
+        double dLat = queryLat < minLat ? minLat - queryLat : queryLat > maxLat ? queryLat - maxLat : 0;
+        double dLon = queryLon < minLon ? minLon - queryLon : queryLon > maxLon ? queryLon - maxLon : 0;
+        // the plane projection scales the longitude difference with the cosine of the mean latitude, so we use the
+        // smallest possible cosine
+        double maxMeanLat = Math.max(abs(queryLat + minLat), abs(queryLat + maxLat)) / 2;
+        double left = cos(toRadians(Math.min(90, maxMeanLat))) * toRadians(dLon);
+        dLat = toRadians(dLat);
+        return dLat * dLat + left * left;
+    }
+
+    public void query(BBox queryBBox, LocationIndex.Visitor function) {
+        if (levelStart.length == 0)
+            return;
+        IntHashSet seenEdges = new IntHashSet();
+        query(levelStart[levelStart.length - 1], levelStart.length - 1, queryBBox, function, seenEdges);
+    }
+
+    private void query(int record, int level, BBox queryBBox, LocationIndex.Visitor function, IntHashSet seenEdges) {
+        long pointer = (long) record * RECORD_BYTES;
+        BBox bbox = new BBox(dataAccess.getInt(pointer + MIN_LON) / FACTOR, dataAccess.getInt(pointer + MAX_LON) / FACTOR,
+                dataAccess.getInt(pointer + MIN_LAT) / FACTOR, dataAccess.getInt(pointer + MAX_LAT) / FACTOR);
+        if (queryBBox != null && !queryBBox.intersects(bbox))
+            return;
+        if (level == 0) {
+            int edge = dataAccess.getInt(pointer + EDGE);
+            if (seenEdges.add(edge))
+                function.onEdge(edge);
+            return;
+        }
+        if (function.isTileInfo())
+            function.onTile(bbox, levelStart.length - 1 - level);
+        int first = levelStart[level - 1] + (record - levelStart[level]) * NODE_CAPACITY;
+        int last = Math.min(levelStart[level], first + NODE_CAPACITY);
+        for (int child = first; child < last; child++) {
+            query(child, level - 1, queryBBox, function, seenEdges);
+        }
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(int checksum) {
+        this.checksum = checksum;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getDepth() {
+        return levelStart.length;
+    }
+
+    public void flush() {
+        dataAccess.setHeader(0, Constants.VERSION_LOCATION_IDX);
+        dataAccess.setHeader(4, checksum);
+        dataAccess.setHeader(2 * 4, entries);
+        dataAccess.setHeader(3 * 4, NODE_CAPACITY);
+        dataAccess.flush();
+    }
+
+    public void close() {
+        dataAccess.close();
+    }
+
+    public boolean isClosed() {
+        return dataAccess.isClosed();
+    }
+
+    public long getCapacity() {
+        return dataAccess.getCapacity();
+    }
+}
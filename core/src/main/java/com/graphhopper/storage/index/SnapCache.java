@@ -0,0 +1,151 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.storage.index;
+
+import com.graphhopper.routing.util.EdgeFilter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the closest edges of query points. Many requests start or end close to the same places and
+ * finding the closest edge in the {@link LocationIndexTree} is a considerable part of the time of short requests. The
+ * coordinates are quantized and all query points of the same grid cell share the closest edge that was found for
+ * the first of them. The query point is still snapped onto this edge exactly, so only the choice of the edge is
+ * shared. The edge filter cannot be compared, so the caller has to specify a key for it and the same key must only be
+ * used for filters that accept the same edges. When the cache is full the least recently used entry is removed.
+ */
+public class SnapCache {
+    private final LocationIndexTree locationIndex;
+    private final int maxEntries;
+    private final double cellsPerDegree;
+    private final Map<Key, Integer> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum number of grid cells that are kept in the cache
+     * @param cellSize   the size of the grid cells in degrees, e.g. 1e-5 is roughly one meter
+     */
+    public SnapCache(LocationIndexTree locationIndex, int maxEntries, double cellSize) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be positive, was: " + maxEntries);
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("cellSize must be positive, was: " + cellSize);
+        this.locationIndex = locationIndex;
+        this.maxEntries = maxEntries;
+        this.cellsPerDegree = 1 / cellSize;
+        // use accessOrder==true to remove the least recently used entry, not the oldest inserted one
+        cache = new LinkedHashMap<Key, Integer>(Math.min(maxEntries, 10_000), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                return size() > SnapCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The same as {@link LocationIndexTree#findClosest} but the closest edge is taken from the cache if possible.
+     *
+     * @param filterKey identifies the edges that are accepted by the edgeFilter, e.g. the name of the profile
+     */
+    public Snap findClosest(double queryLat, double queryLon, EdgeFilter edgeFilter, String filterKey) {
+        Key key = new Key(filterKey, (int) Math.floor(queryLat * cellsPerDegree), (int) Math.floor(queryLon * cellsPerDegree));
+        Integer edge;
+        synchronized (cache) {
+            edge = cache.get(key);
+        }
+        if (edge != null) {
+            hits.increment();
+            return locationIndex.snapToEdge(queryLat, queryLon, edge);
+        }
+        misses.increment();
+        Snap snap = locationIndex.findClosest(queryLat, queryLon, edgeFilter);
+        if (snap.isValid()) {
+            synchronized (cache) {
+                cache.put(key, snap.getClosestEdge().getEdge());
+            }
+        }
+        return snap;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of lookups that were answered from the cache, or 0 if there were no lookups yet
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + size() + "/" + maxEntries + ", hits: " + getHits() + ", misses: " + getMisses()
+                + ", hit rate: " + Math.round(getHitRate() * 1000) / 10.0 + "%";
+    }
+
+    private static class Key {
+        final String filterKey;
+        final int lat;
+        final int lon;
+
+        Key(String filterKey, int lat, int lon) {
+            this.filterKey = filterKey;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return lat == key.lat && lon == key.lon && filterKey.equals(key.filterKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filterKey, lat, lon);
+        }
+    }
+}
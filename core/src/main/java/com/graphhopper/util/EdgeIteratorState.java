@@ -119,6 +119,20 @@ public interface EdgeIteratorState {
      */
     PointList fetchWayGeometry(FetchMode mode);
 
+    /**
+     * Same as {@link #fetchWayGeometry(FetchMode)} but the points are written into the specified PointList, which is
+     * cleared before. Use this to avoid creating a new PointList for every edge if the geometry is only read
+     * temporarily, e.g. reuse one PointList for all edges of a loop. If the specified PointList is 2D the elevation is
+     * skipped.
+     *
+     * @return the specified pointList
+     */
+    default PointList fetchWayGeometry(FetchMode mode, PointList pointList) {
+        pointList.clear();
+        pointList.add(fetchWayGeometry(mode));
+        return pointList;
+    }
+
     /**
      * @param list is a sorted collection of coordinates between the base node and the current adjacent node. Specify
      *             the list without the adjacent and base node. This method can be called multiple times, but if the
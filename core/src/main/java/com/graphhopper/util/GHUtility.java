@@ -442,6 +442,7 @@ public class GHUtility {
         return new BaseGraph.Builder(baseGraph.getIntsForFlags())
                 .withTurnCosts(baseGraph.getTurnCostStorage() != null)
                 .set3D(baseGraph.getNodeAccess().is3D())
+                .setEdgeKVStringDictionary(baseGraph.isEdgeKVStringDictionary())
                 .setDir(outdir)
                 .create();
     }
@@ -18,13 +18,13 @@
 package com.graphhopper.util;
 
 import com.graphhopper.ResponsePath;
-import com.graphhopper.routing.InstructionsFromEdges;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PostProcessingFromEdges;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.util.details.PathDetailsBuilder;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
-import com.graphhopper.util.details.PathDetailsFromEdges;
 import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 
 import java.util.ArrayList;
@@ -38,7 +38,8 @@ import java.util.List;
  * two Path objects.
  * <p>
  * The instructions are generated per Path object and are merged into one continuous InstructionList.
- * The PointList per Path object are merged and optionally simplified.
+ * The PointList per Path object are merged and optionally simplified. The points, instructions and path details of
+ * a Path are calculated in a single pass over its edges, see {@link PostProcessingFromEdges}.
  *
  * @author Peter Karich
  * @author ratrun
@@ -110,23 +111,28 @@ public class PathMerger {
             fullTimeInMillis += path.getTime();
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
-            if (enableInstructions) {
-                InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
-
-                if (!il.isEmpty()) {
-                    fullInstructions.addAll(il);
-
-                    // for all paths except the last replace the FinishInstruction with a ViaInstruction
-                    if (pathIndex + 1 < paths.size()) {
-                        ViaInstruction newInstr = new ViaInstruction(fullInstructions.get(fullInstructions.size() - 1));
-                        newInstr.setViaCount(pathIndex + 1);
-                        fullInstructions.set(fullInstructions.size() - 1, newInstr);
+            if (calcPoints || enableInstructions) {
+                List<PathDetailsBuilder> pathDetailsBuilders = requestedPathDetails.isEmpty()
+                        ? Collections.emptyList()
+                        : pathBuilderFactory.createPathDetailsBuilders(requestedPathDetails, evLookup, weighting, graph);
+                PostProcessingFromEdges.Result result = PostProcessingFromEdges.calc(path, graph, weighting, evLookup, tr,
+                        enableInstructions, pathDetailsBuilders, origPoints);
+                if (enableInstructions) {
+                    InstructionList il = result.getInstructions();
+
+                    if (!il.isEmpty()) {
+                        fullInstructions.addAll(il);
+
+                        // for all paths except the last replace the FinishInstruction with a ViaInstruction
+                        if (pathIndex + 1 < paths.size()) {
+                            ViaInstruction newInstr = new ViaInstruction(fullInstructions.get(fullInstructions.size() - 1));
+                            newInstr.setViaCount(pathIndex + 1);
+                            fullInstructions.set(fullInstructions.size() - 1, newInstr);
+                        }
                     }
-                }
 
-            }
-            if (calcPoints || enableInstructions) {
-                PointList tmpPoints = path.calcPoints();
+                }
+                PointList tmpPoints = result.getPoints();
                 if (fullPoints.isEmpty())
                     fullPoints = new PointList(tmpPoints.size(), tmpPoints.is3D());
 
@@ -136,7 +142,7 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
-                responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
+                responsePath.addPathDetails(result.getPathDetails());
                 wayPointIntervals.add(new ResponsePath.Interval(origPoints, pathIndex < paths.size() - 1 ? fullPoints.size() : fullPoints.size() - 1));
                 origPoints = fullPoints.size();
             }
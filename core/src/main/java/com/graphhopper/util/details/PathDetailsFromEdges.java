@@ -67,7 +67,13 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
             return Collections.emptyMap();
 
         path.forEveryEdge(new PathDetailsFromEdges(pathBuilders, previousIndex));
+        return buildPathDetails(pathBuilders);
+    }
 
+    /**
+     * @return the PathDetails of the given builders, after all edges of a path were passed to them
+     */
+    public static Map<String, List<PathDetail>> buildPathDetails(List<PathDetailsBuilder> pathBuilders) {
         Map<String, List<PathDetail>> pathDetails = new HashMap<>(pathBuilders.size());
         for (PathDetailsBuilder builder : pathBuilders) {
             Map.Entry<String, List<PathDetail>> entry = builder.build();
@@ -81,13 +87,21 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
 
     @Override
     public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+        next(edge, edge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ).size());
+    }
+
+    /**
+     * Same as {@link #next(EdgeIteratorState, int, int)}, but uses the given number of pillar and adjacent nodes of
+     * the edge instead of fetching its geometry.
+     */
+    public void next(EdgeIteratorState edge, int pointCount) {
         for (PathDetailsBuilder calc : calculators) {
             if (calc.isEdgeDifferentToLastEdge(edge)) {
                 calc.endInterval(lastIndex);
                 calc.startInterval(lastIndex);
             }
         }
-        lastIndex += edge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ).size();
+        lastIndex += pointCount;
     }
 
     @Override
@@ -68,7 +68,8 @@ public class Polygon implements Shape {
     }
 
     public boolean intersects(PointList pointList) {
-        return prepPolygon.intersects(pointList.getCachedLineString(false));
+        // a mutable PointList is typically a reused buffer, so do not require the caller to make a copy immutable
+        return prepPolygon.intersects(pointList.isImmutable() ? pointList.getCachedLineString(false) : pointList.toLineString(false));
     }
 
     /**
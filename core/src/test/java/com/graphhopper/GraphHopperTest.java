@@ -24,27 +24,47 @@ import com.graphhopper.json.Statement;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.routing.RouteResponseCache;
+import com.graphhopper.routing.Router;
+import com.graphhopper.routing.RouterConfig;
+import com.graphhopper.routing.RouterMetrics;
+import com.graphhopper.routing.WeightingFactory;
+import com.graphhopper.routing.ch.CustomizableContractionHierarchies;
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.ev.RoadEnvironment;
 import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.ev.VehicleAccess;
+import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.DefaultTagParserFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
+import com.graphhopper.routing.weighting.custom.SpeedOverlay;
 import com.graphhopper.search.EdgeKVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.storage.index.SnapCache;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 import com.graphhopper.util.exceptions.MaximumNodesExceededException;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
@@ -63,7 +83,11 @@ import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.util.GHUtility.createCircle;
 import static com.graphhopper.util.GHUtility.createRectangle;
@@ -810,6 +834,387 @@ public class GraphHopperTest {
         assertEquals(Instruction.FINISH, res.getInstructions().get(1).getSign());
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testCHUnpackingCache(boolean edgeBased) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest").setTurnCosts(edgeBased)).
+                setCHUnpackingCacheSize(100).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse first = hopper.route(req);
+        GHResponse second = hopper.route(req);
+        assertFalse(second.hasErrors(), second.getErrors().toString());
+        assertEquals(first.getBest().getDistance(), second.getBest().getDistance(), 1.e-6);
+        assertEquals(first.getBest().getTime(), second.getBest().getTime());
+        assertEquals(first.getBest().getPoints(), second.getBest().getPoints());
+
+        ShortcutUnpackingCache cache = hopper.getCHGraphs().get("profile").getShortcutUnpackingCache();
+        // only long shortcuts are cached and counted, but if there are any the second request must have used them
+        assertEquals(cache.size() > 0, cache.getMisses() > 0);
+        assertEquals(cache.size() > 0, cache.getHits() > 0);
+        if (edgeBased)
+            assertTrue(cache.getHits() > 0);
+        hopper.close();
+    }
+
+    @Test
+    public void testCustomizeCH() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setCHUnpackingCacheSize(100).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        req.setPathDetails(Collections.singletonList(Parameters.Details.EDGE_ID));
+        GHResponse before = hopper.route(req);
+        assertFalse(before.hasErrors(), before.getErrors().toString());
+
+        // block an edge in the middle of the route. the prepared CH graph does not know this
+        List<PathDetail> edgeIds = before.getBest().getPathDetails().get(Parameters.Details.EDGE_ID);
+        int edge = (int) edgeIds.get(edgeIds.size() / 2).getValue();
+        BooleanEncodedValue accessEnc = hopper.getEncodingManager().getBooleanEncodedValue(VehicleAccess.key("car"));
+        hopper.getBaseGraph().getEdgeIteratorState(edge, Integer.MIN_VALUE).set(accessEnc, false, false);
+        GHResponse flexible = hopper.route(new GHRequest(req.getPoints()).setProfile("profile").putHint(CH.DISABLE, true));
+        assertFalse(flexible.hasErrors(), flexible.getErrors().toString());
+        assertTrue(flexible.getBest().getDistance() > before.getBest().getDistance());
+
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(hopper.getBaseGraph()).contract();
+        RoutingCHGraph previous = hopper.getCHGraphs().get("profile");
+        assertSame(previous, hopper.customizeCH("profile", cch));
+        assertNotSame(previous, hopper.getCHGraphs().get("profile"));
+        assertNotNull(hopper.getCHGraphs().get("profile").getShortcutUnpackingCache());
+        ((RoutingCHGraphImpl) previous).getCHStorage().close();
+        GHResponse after = hopper.route(req);
+        assertFalse(after.hasErrors(), after.getErrors().toString());
+        assertEquals(flexible.getBest().getDistance(), after.getBest().getDistance(), 1.e-6);
+        assertEquals(flexible.getBest().getTime(), after.getBest().getTime());
+
+        assertThrows(IllegalArgumentException.class, () -> hopper.customizeCH("unknown", cch));
+        hopper.close();
+    }
+
+    @Test
+    public void testCustomizeCHWithSpeedOverlay() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new CustomProfile("profile").setCustomModel(new CustomModel()).setVehicle("car")).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        req.setPathDetails(Collections.singletonList(Parameters.Details.EDGE_ID));
+        GHResponse before = hopper.route(req);
+        assertFalse(before.hasErrors(), before.getErrors().toString());
+
+        // block an edge in the middle of the route with the speed overlay
+        List<PathDetail> edgeIds = before.getBest().getPathDetails().get(Parameters.Details.EDGE_ID);
+        int edge = (int) edgeIds.get(edgeIds.size() / 2).getValue();
+        hopper.getSpeedOverlay().update(new int[]{2 * edge, 2 * edge + 1}, new double[]{0, 0});
+        GHResponse flexible = hopper.route(new GHRequest(req.getPoints()).setProfile("profile").putHint(CH.DISABLE, true));
+        assertFalse(flexible.hasErrors(), flexible.getErrors().toString());
+        assertTrue(flexible.getBest().getDistance() > before.getBest().getDistance());
+        assertEquals(before.getBest().getDistance(), hopper.route(req).getBest().getDistance(), 1.e-6);
+
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(hopper.getBaseGraph()).contract();
+        ((RoutingCHGraphImpl) hopper.customizeCH("profile", cch)).getCHStorage().close();
+        GHResponse after = hopper.route(req);
+        assertFalse(after.hasErrors(), after.getErrors().toString());
+        assertEquals(flexible.getBest().getDistance(), after.getBest().getDistance(), 1.e-6);
+        assertEquals(flexible.getBest().getTime(), after.getBest().getTime());
+
+        // without the speed overlay the customized CH graph finds the original route again
+        ((RoutingCHGraphImpl) hopper.customizeCH("profile", cch, new PMap())).getCHStorage().close();
+        assertEquals(before.getBest().getDistance(), hopper.route(req).getBest().getDistance(), 1.e-6);
+        hopper.close();
+    }
+
+    @Test
+    public void testRouteResponseCache() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setRouteResponseCacheSizeMB(1).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        RouteResponseCache cache = hopper.getRouteResponseCache();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        req.putHint("instructions", false).putHint("calc_points", true);
+        GHResponse first = hopper.route(req);
+        assertFalse(first.hasErrors(), first.getErrors().toString());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.size());
+
+        // the order of the hints does not matter
+        GHRequest sameReq = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        sameReq.putHint("calc_points", true).putHint("instructions", false);
+        assertSame(first, hopper.route(sameReq));
+        assertEquals(1, cache.getHits());
+
+        // different hints lead to a different response
+        sameReq.putHint("calc_points", false);
+        GHResponse noPoints = hopper.route(sameReq);
+        assertNotSame(first, noPoints);
+        assertEquals(0, noPoints.getBest().getPoints().size());
+        assertEquals(2, cache.size());
+
+        // errors are not cached
+        GHRequest errorReq = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("unknown");
+        assertTrue(hopper.route(errorReq).hasErrors());
+        assertTrue(hopper.route(errorReq).hasErrors());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.size());
+        hopper.close();
+
+        // the cache is emptied when the graph is loaded again
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setRouteResponseCacheSizeMB(1);
+        assertTrue(hopper.load());
+        assertEquals(0, hopper.getRouteResponseCache().size());
+        GHResponse loaded = hopper.route(req);
+        assertEquals(first.getBest().getDistance(), loaded.getBest().getDistance(), 1.e-6);
+        assertEquals(1, hopper.getRouteResponseCache().getMisses());
+        hopper.close();
+    }
+
+    @Test
+    public void testRouteResponseCacheWithSpeedUpdateWhileRouting() {
+        AtomicBoolean updateWhileRouting = new AtomicBoolean(true);
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex,
+                                            Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathBuilderFactory,
+                                            TranslationMap trMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                                            Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+                return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory, trMap,
+                        routerConfig, weightingFactory, chGraphs, landmarks) {
+                    @Override
+                    public GHResponse route(GHRequest request) {
+                        GHResponse response = super.route(request);
+                        // the speeds change after the response was calculated, but before it is cached
+                        if (updateWhileRouting.getAndSet(false))
+                            getSpeedOverlay().update(new int[]{0}, new double[]{0});
+                        return response;
+                    }
+                };
+            }
+        }.
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setRouteResponseCacheSizeMB(1).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        RouteResponseCache cache = hopper.getRouteResponseCache();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse outdated = hopper.route(req);
+        assertFalse(outdated.hasErrors(), outdated.getErrors().toString());
+        assertEquals(1, hopper.getSpeedOverlay().getUpdates());
+        // the response was calculated with the old speeds and must not be cached
+        assertEquals(0, cache.size());
+
+        GHResponse current = hopper.route(req);
+        assertNotSame(outdated, current);
+        assertEquals(1, cache.size());
+        assertSame(current, hopper.route(req));
+        hopper.close();
+    }
+
+    @Test
+    public void testSnapCache() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new CustomProfile("profile").setCustomModel(new CustomModel()).setVehicle("car")).
+                setSnapCacheSize(100).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        SnapCache cache = hopper.getSnapCache();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse first = hopper.route(req);
+        assertFalse(first.hasErrors(), first.getErrors().toString());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+
+        // a slightly different start point uses the cached edge
+        GHResponse second = hopper.route(new GHRequest(43.727687, 7.4187372, 43.74958, 7.436566).setProfile("profile"));
+        assertEquals(2, cache.getHits());
+        assertEquals(first.getBest().getDistance(), second.getBest().getDistance(), 0.1);
+        assertEquals(first.getBest().getWaypoints().size(), second.getBest().getWaypoints().size());
+
+        // the closest edge depends on the custom model
+        req.setCustomModel(new CustomModel()).putHint(CH.DISABLE, true);
+        assertFalse(hopper.route(req).hasErrors());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        hopper.close();
+    }
+
+    @Test
+    public void testSnapCacheWithSpeedOverlay() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new CustomProfile("profile").setCustomModel(new CustomModel()).setVehicle("car")).
+                setSnapCacheSize(100).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        SnapCache cache = hopper.getSnapCache();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile").putHint(CH.DISABLE, true);
+        GHResponse first = hopper.route(req);
+        assertFalse(first.hasErrors(), first.getErrors().toString());
+        assertEquals(2, cache.size());
+        // the CH weighting and a request without the speed overlay do not share the snaps of the flexible weighting
+        assertFalse(hopper.route(new GHRequest(req.getPoints()).setProfile("profile")).hasErrors());
+        assertFalse(hopper.route(new GHRequest(req.getPoints()).setProfile("profile")
+                .putHint(CH.DISABLE, true).putHint(Routing.SPEED_OVERLAY, false)).hasErrors());
+        assertEquals(0, cache.getHits());
+        assertEquals(6, cache.size());
+
+        // block the edge the start point was snapped to, then the start point has to be snapped to another edge
+        Snap snap = hopper.getLocationIndex().findClosest(43.727687, 7.418737, EdgeFilter.ALL_EDGES);
+        int edge = snap.getClosestEdge().getEdge();
+        hopper.getSpeedOverlay().update(new int[]{2 * edge, 2 * edge + 1}, new double[]{0, 0});
+        assertEquals(0, cache.size());
+        GHResponse second = hopper.route(req);
+        assertFalse(second.hasErrors(), second.getErrors().toString());
+        assertEquals(0, cache.getHits());
+        assertNotEquals(first.getBest().getWaypoints().get(0), second.getBest().getWaypoints().get(0));
+        hopper.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testReuseQueryGraphs(boolean withCH) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setReuseQueryGraphs(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        // the query graph of the previous request is reused, but the results must not depend on it
+        GHRequest viaReq = new GHRequest().setProfile("profile").setPoints(Arrays.asList(
+                new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566), new GHPoint(43.73468, 7.41343)));
+        GHRequest req = new GHRequest(43.74958, 7.436566, 43.727687, 7.418737).setProfile("profile");
+        for (GHRequest r : Arrays.asList(viaReq, req))
+            r.putHint(CH.DISABLE, !withCH);
+        GHResponse via = hopper.route(viaReq);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(via.hasErrors(), via.getErrors().toString());
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(via.getBest().getDistance(), hopper.route(viaReq).getBest().getDistance(), 1.e-6);
+            assertEquals(rsp.getBest().getPoints(), hopper.route(req).getBest().getPoints());
+        }
+        hopper.close();
+    }
+
+    @Test
+    public void testRouterMetrics() {
+        Map<String, Long> times = new ConcurrentHashMap<>();
+        Map<String, Long> visitedNodes = new ConcurrentHashMap<>();
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setRouterMetrics(new RouterMetrics() {
+                    @Override
+                    public void recordTime(String profile, String algorithm, Stage stage, long nanos) {
+                        assertTrue(nanos >= 0);
+                        times.merge(profile + "|" + algorithm + "|" + stage.getName(), 1L, Long::sum);
+                    }
+
+                    @Override
+                    public void recordVisitedNodes(String profile, String algorithm, long visited) {
+                        visitedNodes.merge(profile + "|" + algorithm, visited, Long::sum);
+                    }
+                }).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.74958, 7.436566, 43.727687, 7.418737).setProfile("profile");
+        assertFalse(hopper.route(req).hasErrors());
+        assertFalse(hopper.route(req).hasErrors());
+        req.putHint(CH.DISABLE, true).setAlgorithm(ASTAR_BI);
+        assertFalse(hopper.route(req).hasErrors());
+        req.putHint(CH.DISABLE, false).setAlgorithm(ALT_ROUTE);
+        assertFalse(hopper.route(req).hasErrors());
+        // unknown algorithms are not used in the metric names
+        req.putHint(CH.DISABLE, true).setAlgorithm("no_such_algo");
+        assertTrue(hopper.route(req).hasErrors());
+
+        for (String stage : Arrays.asList("snapping", "query_graph", "search", "path_extraction", "post_processing"))
+            assertEquals(2, times.get("profile|ch|" + stage), stage);
+        assertEquals(1, times.get("profile|flex.astarbi|search"));
+        assertEquals(1, times.get("profile|ch.alternative_route|path_extraction"));
+        assertEquals(1, times.get("profile|flex.other|snapping"));
+        assertFalse(times.containsKey("profile|flex.other|search"));
+        assertTrue(visitedNodes.get("profile|ch") > 0);
+        assertTrue(visitedNodes.get("profile|flex.astarbi") > 0);
+        assertEquals(3, visitedNodes.size());
+        hopper.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testMonacoViaLegThreads(boolean withCH) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new Profile("profile").setVehicle("car").setWeighting("fastest")).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest().
+                setPoints(Arrays.asList(
+                        new GHPoint(43.727687, 7.418737),
+                        new GHPoint(43.74958, 7.436566),
+                        new GHPoint(43.727687, 7.418737),
+                        new GHPoint(43.74958, 7.436566),
+                        new GHPoint(43.739213, 7.427806),
+                        new GHPoint(43.727687, 7.418737))).
+                setProfile("profile");
+        req.putHint(CH.DISABLE, !withCH);
+        GHResponse sequential = hopper.route(req);
+        assertFalse(sequential.hasErrors(), sequential.getErrors().toString());
+
+        hopper.getRouterConfig().setViaLegThreads(3);
+        GHResponse concurrent = hopper.route(req);
+        assertFalse(concurrent.hasErrors(), concurrent.getErrors().toString());
+        assertEquals(sequential.getBest().getDistance(), concurrent.getBest().getDistance(), 1.e-6);
+        assertEquals(sequential.getBest().getTime(), concurrent.getBest().getTime());
+        assertEquals(sequential.getBest().getPoints(), concurrent.getBest().getPoints());
+        assertEquals(sequential.getBest().getInstructions().size(), concurrent.getBest().getInstructions().size());
+        // the second leg is the same as the first and is only calculated once
+        assertTrue(concurrent.getHints().getLong("visited_nodes.sum", 0) < sequential.getHints().getLong("visited_nodes.sum", 0));
+
+        hopper.close();
+    }
+
     @Test
     public void testMonacoPathDetails() {
         final String profile = "profile";
@@ -1202,6 +1607,68 @@ public class GraphHopperTest {
         assertEquals(52.43, arsp.getPoints().get(10).getEle(), 1e-2);
     }
 
+    @Test
+    public void testElevationThreads() {
+        GraphHopper hopper = importWithElevation(0);
+        GraphHopper parallelHopper = importWithElevation(4);
+        DecimalEncodedValue averageSlopeEnc = hopper.getEncodingManager().getDecimalEncodedValue("average_slope");
+        DecimalEncodedValue maxSlopeEnc = hopper.getEncodingManager().getDecimalEncodedValue("max_slope");
+        DecimalEncodedValue parallelAverageSlopeEnc = parallelHopper.getEncodingManager().getDecimalEncodedValue("average_slope");
+        DecimalEncodedValue parallelMaxSlopeEnc = parallelHopper.getEncodingManager().getDecimalEncodedValue("max_slope");
+        assertEquals(hopper.getBaseGraph().getEdges(), parallelHopper.getBaseGraph().getEdges());
+
+        int differentSlopes = 0, totalPoints = 0, parallelTotalPoints = 0;
+        long geoRefs = 4, parallelGeoRefs = 4;
+        AllEdgesIterator iter = hopper.getBaseGraph().getAllEdges();
+        while (iter.next()) {
+            EdgeIteratorState edge = parallelHopper.getBaseGraph().getEdgeIteratorState(iter.getEdge(), iter.getAdjNode());
+            assertEquals(iter.getDistance(), edge.getDistance(), 0.1, "distance of edge " + iter.getEdge());
+            totalPoints += iter.fetchWayGeometry(FetchMode.ALL).size();
+            parallelTotalPoints += edge.fetchWayGeometry(FetchMode.ALL).size();
+            geoRefs += geoRefs(iter.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+            parallelGeoRefs += geoRefs(edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+            if (Math.abs(iter.get(averageSlopeEnc) - edge.get(parallelAverageSlopeEnc)) > 1
+                    || Math.abs(iter.get(maxSlopeEnc) - edge.get(parallelMaxSlopeEnc)) > 1)
+                differentSlopes++;
+        }
+        // the geometry is read from the graph storage which has a lower precision than during the import
+        assertEquals(totalPoints, parallelTotalPoints, totalPoints * 0.01);
+        assertTrue(differentSlopes < hopper.getBaseGraph().getEdges() / 100, "too many different slopes: " + differentSlopes);
+        // the geometry of every edge is stored only once, so there are no unused bytes in the geometry storage
+        assertEquals(geoRefs, hopper.getBaseGraph().getMaxGeoRef());
+        assertEquals(parallelGeoRefs, parallelHopper.getBaseGraph().getMaxGeoRef());
+        assertEquals(hopper.getBaseGraph().getMaxGeoRef(), parallelHopper.getBaseGraph().getMaxGeoRef(), geoRefs * 0.01);
+        // the temporary storages of the raw pillar nodes were removed from the directory, so they can be created again
+        Directory dir = parallelHopper.getBaseGraph().getDirectory();
+        for (String name : Arrays.asList("tmp_raw_pillars", "tmp_raw_pillar_pointers")) {
+            dir.create(name);
+            dir.remove(name);
+        }
+    }
+
+    private static long geoRefs(PointList pillars) {
+        // the number of pillar nodes followed by lat, lon and ele for every pillar node
+        return pillars.isEmpty() ? 0 : 1 + 3L * pillars.size();
+    }
+
+    private GraphHopper importWithElevation(int elevationThreads) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setStoreOnFlush(false).
+                setEncodedValuesString("average_slope,max_slope").
+                setProfiles(new Profile("profile").setVehicle("foot").setWeighting("shortest"));
+        hopper.getReaderConfig().
+                setLongEdgeSamplingDistance(30).
+                setElevationSmoothing("ramer").
+                setElevationThreads(elevationThreads);
+        SRTMProvider elevationProvider = new SRTMProvider(DIR);
+        elevationProvider.setInterpolate(true);
+        hopper.setElevationProvider(elevationProvider);
+        hopper.importOrLoad();
+        return hopper;
+    }
+
     @Disabled
     @Test
     public void testSkadiElevationProvider() {
@@ -1533,6 +2000,43 @@ public class GraphHopperTest {
         assertFalse(rsp.hasErrors());
     }
 
+    @Test
+    public void testSpeedOverlay() {
+        final String profile = "car_profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(new CustomProfile(profile).setCustomModel(new CustomModel()).setVehicle("car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        req.putHint(CH.DISABLE, true);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        long time = rsp.getBest().getTime();
+
+        // limit the speed of all edges to 10km/h
+        SpeedOverlay overlay = hopper.getSpeedOverlay();
+        int edgeKeys = hopper.getBaseGraph().getEdges() * 2;
+        overlay.update(IntStream.range(0, edgeKeys).toArray(), DoubleStream.generate(() -> 10).limit(edgeKeys).toArray());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(rsp.getBest().getDistance() / 10 * 3.6, rsp.getBest().getTime() / 1000.0, 1);
+        assertTrue(rsp.getBest().getTime() > 2 * time, time + " vs. " + rsp.getBest().getTime());
+
+        // the overlay can be disabled per request and CH ignores it
+        req.putHint(Parameters.Routing.SPEED_OVERLAY, false);
+        assertEquals(time, hopper.route(req).getBest().getTime());
+        req.putHint(Parameters.Routing.SPEED_OVERLAY, true);
+        req.putHint(CH.DISABLE, false);
+        assertEquals(time, hopper.route(req).getBest().getTime(), 1_000);
+
+        overlay.clear();
+        req.putHint(CH.DISABLE, true);
+        assertEquals(time, hopper.route(req).getBest().getTime());
+    }
+
     @Test
     public void testFlexMode_631() {
         final String profile = "car_profile";
@@ -1894,6 +2398,65 @@ public class GraphHopperTest {
         assertEquals(149504, path.getTime());
     }
 
+    @Test
+    public void testSortTurnCosts() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MOSCOW).
+                setSortTurnCosts(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest").setTurnCosts(true));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+        assertTrue(hopper.getBaseGraph().getTurnCostStorage().isSorted());
+
+        // same as testIssue1960, the turn restrictions have to be respected
+        GHRequest req = new GHRequest(55.815670, 37.604613, 55.806151, 37.617823);
+        req.setProfile(profile);
+        ResponsePath pathCH = hopper.route(req).getBest();
+        req.getHints().putObject(CH.DISABLE, true);
+        ResponsePath path = hopper.route(req).getBest();
+        assertEquals(1995.38, pathCH.getDistance(), 0.1);
+        assertEquals(1995.38, path.getDistance(), 0.1);
+        assertEquals(149504, pathCH.getTime());
+        assertEquals(149504, path.getTime());
+    }
+
+    @Test
+    public void testEdgeKVStringDictionary() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setSortGraph(true).
+                setEdgeKVStringDictionary(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest"));
+        hopper.importOrLoad();
+        assertTrue(hopper.getBaseGraph().isEdgeKVStringDictionary());
+        List<String> expectedStreets = asList("Boulevard de Suisse", "Avenue de la Costa");
+        assertEquals(expectedStreets, getStreetNames(hopper, new GHRequest(43.738399, 7.420782, 43.737949, 7.423523).setProfile(profile)));
+        hopper.close();
+
+        // the format is loaded from disk
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest"));
+        assertTrue(hopper.load());
+        assertTrue(hopper.getBaseGraph().isEdgeKVStringDictionary());
+        assertEquals(expectedStreets, getStreetNames(hopper, new GHRequest(43.738399, 7.420782, 43.737949, 7.423523).setProfile(profile)));
+        hopper.close();
+    }
+
+    private static List<String> getStreetNames(GraphHopper hopper, GHRequest req) {
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        List<String> streets = new ArrayList<>();
+        for (Instruction instruction : rsp.getBest().getInstructions())
+            if (!Helper.isEmpty(instruction.getName()))
+                streets.add(instruction.getName());
+        return streets;
+    }
+
     @Test
     public void testTurnCostsOnOff() {
         final String profile1 = "profile_no_turn_costs";
@@ -18,6 +18,7 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -27,6 +28,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -111,6 +113,36 @@ public class CGIARProviderTest {
         zipFile.delete();
     }
 
+    @Test
+    public void testEvictSeaLevelTile() {
+        File cacheDir = new File("./target/tmp/cgiar-sea-level");
+        Helper.removeDir(cacheDir);
+        instance = new CGIARProvider(cacheDir.getPath());
+        instance.setMaxCachedTiles(1);
+        AtomicInteger downloads = new AtomicInteger();
+        instance.setDownloader(new Downloader("test GH") {
+            @Override
+            public void downloadFile(String url, String toFile) throws IOException {
+                downloads.incrementAndGet();
+                throw new FileNotFoundException("xyz");
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            // there is no file for these tiles, so they are at sea level. every lookup evicts the other tile and the
+            // evicted tile has to be loaded from the cache directory again
+            assertEquals(0, instance.getEle(46, -20), 1e-1);
+            assertEquals(0, instance.getEle(36, -20), 1e-1);
+            assertEquals(1, instance.tileCache.size());
+        }
+        // the evicted tiles were loaded from the cache directory and not downloaded again
+        assertEquals(2, downloads.get());
+        HeightTile tile = instance.tileCache.acquire(instance.getFileName(36, -20), key -> null);
+        assertTrue(tile.isSeaLevel());
+        instance.tileCache.release(tile);
+        instance.release();
+        Helper.removeDir(cacheDir);
+    }
+
     @Disabled
     @Test
     public void testGetEle() {
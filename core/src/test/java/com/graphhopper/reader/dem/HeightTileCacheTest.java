@@ -0,0 +1,78 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeightTileCacheTest {
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        List<HeightTile> evicted = new ArrayList<>();
+        HeightTileCache<Integer> cache = new HeightTileCache<>(2, evicted::add);
+        HeightTile tile1 = acquireAndRelease(cache, 1);
+        HeightTile tile2 = acquireAndRelease(cache, 2);
+        // use tile 1 again so that tile 2 becomes the least recently used one
+        assertSame(tile1, acquireAndRelease(cache, 1));
+        acquireAndRelease(cache, 3);
+        assertEquals(List.of(tile2), evicted);
+        assertEquals(2, cache.size());
+
+        // a new tile is created for an evicted key
+        assertNotSame(tile2, acquireAndRelease(cache, 2));
+        assertEquals(List.of(tile2, tile1), evicted);
+    }
+
+    @Test
+    public void testDoNotEvictTilesInUse() {
+        List<HeightTile> evicted = new ArrayList<>();
+        HeightTileCache<Integer> cache = new HeightTileCache<>(1, evicted::add);
+        HeightTile tile1 = cache.acquire(1, HeightTileCacheTest::createTile);
+        HeightTile tile2 = cache.acquire(2, HeightTileCacheTest::createTile);
+        assertTrue(evicted.isEmpty());
+        assertEquals(2, cache.size());
+
+        cache.release(tile1);
+        assertEquals(List.of(tile1), evicted);
+        cache.release(tile2);
+        assertEquals(1, cache.size());
+        assertThrows(IllegalStateException.class, () -> cache.release(tile2));
+    }
+
+    @Test
+    public void testLoaderReturnsNull() {
+        HeightTileCache<Integer> cache = new HeightTileCache<>(1, tile -> fail());
+        assertNull(cache.acquire(1, key -> null));
+        assertEquals(0, cache.size());
+    }
+
+    private static HeightTile acquireAndRelease(HeightTileCache<Integer> cache, int key) {
+        HeightTile tile = cache.acquire(key, HeightTileCacheTest::createTile);
+        cache.release(tile);
+        return tile;
+    }
+
+    private static HeightTile createTile(int key) {
+        return new HeightTile(key, key, 10, 10, 1e7, 1, 1);
+    }
+}
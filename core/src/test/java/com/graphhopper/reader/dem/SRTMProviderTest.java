@@ -17,14 +17,24 @@
  */
 package com.graphhopper.reader.dem;
 
+import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -99,6 +109,81 @@ public class SRTMProviderTest {
         assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
     }
 
+    @Test
+    public void testMaxCachedTiles() {
+        instance = new SRTMProvider("./files/");
+        instance.setMaxCachedTiles(1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(466, instance.getEle(49.968651, 11.574869), 1e-1);
+            assertEquals(1678, instance.getEle(-28.88316, -71.070557), 1e-1);
+            assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
+            assertEquals(1, instance.tileCache.size());
+        }
+        instance.release();
+        // the files of the evicted tiles are removed too
+        assertFalse(new File("./files/dem139191").exists());
+        assertFalse(new File("./files/dem61108").exists());
+        assertFalse(new File("./files/dem145177").exists());
+    }
+
+    @Test
+    public void testEvictSeaLevelTile() {
+        File cacheDir = new File("./target/tmp/srtm-sea-level");
+        Helper.removeDir(cacheDir);
+        instance = new SRTMProvider(cacheDir.getPath());
+        instance.setMaxCachedTiles(1);
+        AtomicInteger downloads = new AtomicInteger();
+        instance.setDownloader(new Downloader("test GH") {
+            @Override
+            public void downloadFile(String url, String toFile) throws IOException {
+                downloads.incrementAndGet();
+                throw new FileNotFoundException("xyz");
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            // there is no file for these tiles, so they are at sea level. every lookup evicts the other tile and the
+            // evicted tile has to be loaded from the cache directory again
+            assertEquals(0, instance.getEle(49.968651, 11.574869), 1e-1);
+            assertEquals(0, instance.getEle(48.5, 12.5), 1e-1);
+            assertEquals(1, instance.tileCache.size());
+        }
+        // the evicted tiles were loaded from the cache directory and not downloaded again, every tile is tried
+        // with two different URLs
+        assertEquals(4, downloads.get());
+        HeightTile tile = instance.tileCache.acquire(instance.calcIntKey(48.5, 12.5), key -> null);
+        assertTrue(tile.isSeaLevel());
+        instance.tileCache.release(tile);
+        instance.release();
+        Helper.removeDir(cacheDir);
+    }
+
+    @Test
+    public void testGetEleConcurrently() throws Exception {
+        instance = new SRTMProvider("./files/");
+        instance.setMaxCachedTiles(2);
+        double[][] points = {{49.968651, 11.574869}, {49.958233, 11.558647}, {-28.88316, -71.070557},
+                {55.8943144, -3}, {48.003878, -124.660492}, {55.4711873, 19.2501641}};
+        double[] expected = {466, 330, 1678, 161, 84, 0};
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        int index = (i + offset) % points.length;
+                        assertEquals(expected[index], instance.getEle(points[index][0], points[index][1]), 1e-1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executorService.shutdown();
+        }
+        assertTrue(instance.tileCache.size() <= 2);
+    }
+
     @Disabled
     @Test
     public void testGetEle() {
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing;
 
+import com.carrotsearch.hppc.IntIndexedContainer;
 import com.graphhopper.routing.ch.NodeOrderingProvider;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
@@ -33,9 +34,9 @@ import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.PMap;
 import org.junit.jupiter.api.Test;
 
-import java.util.List;
+import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class AlternativeRouteCHTest {
     private final BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
@@ -121,4 +122,91 @@ public class AlternativeRouteCHTest {
         // 4 -> 11 -> 12 -> 10 is not too long compared to 4 -> 10
     }
 
+    @Test
+    public void testPruneViaNodeCandidates() {
+        // a grid with a few slightly longer edges, so there are many via node candidates that share the same detour
+        BaseGraph g = new BaseGraph.Builder(em).create();
+        int size = 8;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int node = i * size + j;
+                if (j < size - 1)
+                    GHUtility.setSpeed(60, 60, accessEnc, speedEnc, g.edge(node, node + 1).setDistance(1000 + 10 * ((i + j) % 3)));
+                if (i < size - 1)
+                    GHUtility.setSpeed(60, 60, accessEnc, speedEnc, g.edge(node, node + size).setDistance(1000 + 10 * ((i * j) % 4)));
+            }
+        }
+        g.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new FastestWeighting(accessEnc, speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(g, chConfig).doWork();
+        RoutingCHGraph routingCHGraph = RoutingCHGraphImpl.fromGraph(g, res.getCHStorage(), res.getCHConfig());
+        PMap hints = new PMap();
+        hints.putObject("alternative_route.max_weight_factor", 2);
+        hints.putObject("alternative_route.max_share_factor", 0.9);
+        hints.putObject("alternative_route.max_paths", 10);
+
+        AlternativeRouteCH pruning = new AlternativeRouteCH(routingCHGraph, hints);
+        List<AlternativeRouteCH.AlternativeInfo> pathInfos = pruning.calcAlternatives(0, size * size - 1);
+        AlternativeRouteCH noPruning = new AlternativeRouteCH(routingCHGraph, new PMap(hints).putObject("alternative_route.prune_plateaus", false));
+        List<AlternativeRouteCH.AlternativeInfo> expected = noPruning.calcAlternatives(0, size * size - 1);
+        // the plateaus of evaluated via paths are skipped, but we still find the same alternatives
+        assertEquals(toNodeLists(expected), toNodeLists(pathInfos));
+        assertEquals(expected.get(0).getPath().calcNodes(), pathInfos.get(0).getPath().calcNodes());
+        assertTrue(pruning.getEvaluatedCandidates() < noPruning.getEvaluatedCandidates(),
+                pruning.getEvaluatedCandidates() + " vs. " + noPruning.getEvaluatedCandidates());
+        assertTrue(pruning.getPrunedCandidates() > noPruning.getPrunedCandidates());
+        assertTrue(pathInfos.get(0).getPath().getDebugInfo().contains("alternatives: search: "), pathInfos.get(0).getPath().getDebugInfo());
+
+        AlternativeRouteCH limited = new AlternativeRouteCH(routingCHGraph, new PMap(hints).putObject("alternative_route.max_via_candidates", 1));
+        pathInfos = limited.calcAlternatives(0, size * size - 1);
+        assertEquals(1, limited.getEvaluatedCandidates());
+        // no candidate after the first one would be evaluated, so there is no point in checking the plateau
+        assertEquals(0, limited.getCheckedCandidates());
+        assertTrue(pathInfos.size() <= 2);
+        assertTrue(pruning.getCheckedCandidates() > 0);
+    }
+
+    @Test
+    public void testPrunePlateausOnRandomGraphs() {
+        PMap hints = new PMap();
+        hints.putObject("alternative_route.max_weight_factor", 2);
+        hints.putObject("alternative_route.max_share_factor", 0.9);
+        hints.putObject("alternative_route.max_paths", 5);
+        int pruned = 0;
+        for (long seed = 0; seed < 20; seed++) {
+            Random rnd = new Random(seed);
+            BaseGraph g = new BaseGraph.Builder(em).create();
+            GHUtility.buildRandomGraph(g, rnd, 100, 2.8, false, false,
+                    accessEnc, speedEnc, 60d, 0, 0.9, 0.5);
+            g.freeze();
+            CHConfig chConfig = CHConfig.nodeBased("p", new FastestWeighting(accessEnc, speedEnc));
+            PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(g, chConfig).doWork();
+            RoutingCHGraph routingCHGraph = RoutingCHGraphImpl.fromGraph(g, res.getCHStorage(), res.getCHConfig());
+            for (int i = 0; i < 10; i++) {
+                int s = rnd.nextInt(g.getNodes());
+                int t = rnd.nextInt(g.getNodes());
+                AlternativeRouteCH noPruning = new AlternativeRouteCH(routingCHGraph, new PMap(hints).putObject("alternative_route.prune_plateaus", false));
+                List<IntIndexedContainer> expected = toNodeList(noPruning.calcAlternatives(s, t));
+                AlternativeRouteCH pruning = new AlternativeRouteCH(routingCHGraph, hints);
+                assertEquals(expected, toNodeList(pruning.calcAlternatives(s, t)), "seed: " + seed + ", " + s + "->" + t);
+                pruned += pruning.getPrunedCandidates() - noPruning.getPrunedCandidates();
+            }
+        }
+        assertTrue(pruned > 0);
+    }
+
+    private static List<IntIndexedContainer> toNodeList(List<AlternativeRouteCH.AlternativeInfo> pathInfos) {
+        List<IntIndexedContainer> result = new ArrayList<>();
+        for (AlternativeRouteCH.AlternativeInfo pathInfo : pathInfos)
+            result.add(pathInfo.getPath().calcNodes());
+        return result;
+    }
+
+    private static Set<IntIndexedContainer> toNodeLists(List<AlternativeRouteCH.AlternativeInfo> pathInfos) {
+        Set<IntIndexedContainer> result = new HashSet<>();
+        for (AlternativeRouteCH.AlternativeInfo pathInfo : pathInfos)
+            result.add(pathInfo.getPath().calcNodes());
+        return result;
+    }
+
 }
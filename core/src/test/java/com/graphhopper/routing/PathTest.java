@@ -482,6 +482,32 @@ public class PathTest {
     /**
      * case with one edge being not an exit
      */
+    @Test
+    public void testPostProcessingFromEdges() {
+        ShortestWeighting weighting = new ShortestWeighting(mixedCarAccessEnc, mixedCarSpeedEnc);
+        List<String> requestedDetails = Arrays.asList(STREET_NAME, EDGE_ID, DISTANCE, TIME, AVERAGE_SPEED);
+        for (int[] fromTo : new int[][]{{6, 8}, {2, 8}, {1, 17}, {8, 8}}) {
+            Path p = new Dijkstra(roundaboutGraph.g, weighting, TraversalMode.NODE_BASED).calcPath(fromTo[0], fromTo[1]);
+            assertTrue(p.isFound());
+            PostProcessingFromEdges.Result result = PostProcessingFromEdges.calc(p, p.graph, weighting, mixedEncodingManager, tr, true,
+                    new PathDetailsBuilderFactory().createPathDetailsBuilders(requestedDetails, mixedEncodingManager, weighting, p.graph), 3);
+
+            assertEquals(p.calcPoints(), result.getPoints());
+            InstructionList expectedInstructions = InstructionsFromEdges.calcInstructions(p, p.graph, weighting, mixedEncodingManager, tr);
+            assertEquals(expectedInstructions.toString(), result.getInstructions().toString());
+            assertEquals(getTurnDescriptions(expectedInstructions), getTurnDescriptions(result.getInstructions()));
+            for (int i = 0; i < expectedInstructions.size(); i++)
+                assertEquals(expectedInstructions.get(i).getPoints(), result.getInstructions().get(i).getPoints());
+            assertEquals(PathDetailsFromEdges.calcDetails(p, mixedEncodingManager, weighting, requestedDetails,
+                    new PathDetailsBuilderFactory(), 3, p.graph).toString(), result.getPathDetails().toString());
+
+            result = PostProcessingFromEdges.calc(p, p.graph, weighting, mixedEncodingManager, tr, false, Collections.emptyList(), 0);
+            assertEquals(p.calcPoints(), result.getPoints());
+            assertNull(result.getInstructions());
+            assertTrue(result.getPathDetails().isEmpty());
+        }
+    }
+
     @Test
     public void testCalcInstructionsRoundabout2() {
         roundaboutGraph.inverse3to6();
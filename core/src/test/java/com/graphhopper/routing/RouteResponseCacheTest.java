@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteResponseCacheTest {
+
+    @Test
+    public void testKey() {
+        GHRequest req = new GHRequest(1, 2, 3, 4).setProfile("car");
+        req.putHint("instructions", false).putHint("ch.disable", true);
+        GHRequest sameReq = new GHRequest(1, 2, 3, 4).setProfile("car");
+        sameReq.putHint("ch.disable", true).putHint("instructions", false);
+        assertEquals(RouteResponseCache.createKey(req), RouteResponseCache.createKey(sameReq));
+
+        assertNotEquals(RouteResponseCache.createKey(req), RouteResponseCache.createKey(new GHRequest(1, 2, 3, 4).setProfile("car")));
+        assertNotEquals(RouteResponseCache.createKey(req), RouteResponseCache.createKey(sameReq.setProfile("bike")));
+        sameReq.setProfile("car");
+        assertNotEquals(RouteResponseCache.createKey(req), RouteResponseCache.createKey(sameReq.setCurbsides(Arrays.asList("right", "any"))));
+        GHRequest otherPoints = new GHRequest(1, 2, 3, 4.00001).setProfile("car");
+        otherPoints.putHint("instructions", false).putHint("ch.disable", true);
+        assertNotEquals(RouteResponseCache.createKey(req), RouteResponseCache.createKey(otherPoints));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        GHResponse rsp = createResponse(100);
+        long bytes = RouteResponseCache.estimateBytes("a", rsp);
+        // room for a bit more than three responses
+        RouteResponseCache cache = new RouteResponseCache(bytes * 35 / 10);
+        // a single response may use at most a tenth of the cache
+        cache.put("a", rsp);
+        assertEquals(0, cache.size());
+
+        cache = new RouteResponseCache(bytes * 35);
+        GHResponse small = createResponse(10);
+        for (String key : new String[]{"a", "b", "c"})
+            cache.put(key, small);
+        assertEquals(3, cache.size());
+        assertSame(small, cache.get("a"));
+        for (int i = 0; i < 34; i++)
+            cache.put("x" + i, rsp);
+        assertEquals(37, cache.size());
+        cache.put("d", small);
+        cache.put("e", small);
+        // the cache is full and b was used least recently, because a was read after it
+        assertEquals(38, cache.size());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertTrue(cache.getBytes() <= bytes * 35);
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        GHResponse error = new GHResponse();
+        error.addError(new IllegalArgumentException("error"));
+        cache.put("error", error);
+        assertNull(cache.get("error"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testClearWhileRouting() {
+        RouteResponseCache cache = new RouteResponseCache(1 << 20);
+        GHResponse rsp = createResponse(10);
+        long generation = cache.getGeneration();
+        // the cache is cleared while the response is calculated, so the response is outdated
+        cache.clear();
+        cache.put("a", rsp, generation);
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+
+        cache.put("a", rsp, cache.getGeneration());
+        assertSame(rsp, cache.get("a"));
+    }
+
+    private static GHResponse createResponse(int points) {
+        PointList pointList = new PointList(points, false);
+        for (int i = 0; i < points; i++)
+            pointList.add(i * 0.001, i * 0.001);
+        ResponsePath path = new ResponsePath();
+        path.setPoints(pointList);
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        return rsp;
+    }
+}
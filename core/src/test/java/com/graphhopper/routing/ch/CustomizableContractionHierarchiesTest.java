@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.CHStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomizableContractionHierarchiesTest {
+    private final BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue turnCostEnc = TurnCost.create("car", 1);
+    private final EncodingManager encodingManager = EncodingManager.start().add(accessEnc).add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+
+    @Test
+    public void testCustomize() {
+        // 0-1-2
+        // |   |
+        // 3---4
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(0, 1).setDistance(100));
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(1, 2).setDistance(100));
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(0, 3).setDistance(100));
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(3, 4).setDistance(300));
+        EdgeIteratorState edge = GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(4, 2).setDistance(100));
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph)
+                .useFixedNodeOrdering(NodeOrderingProvider.identity(graph.getNodes()))
+                .contract();
+        // 0 connects 1 and 3, after that 1 connects 2 and 3 and 2 connects 3 and 4
+        assertEquals(7, cch.getArcs());
+
+        Weighting weighting = new ShortestWeighting(accessEnc, speedEnc);
+        RoutingCHGraph chGraph = cch.customize(CHConfig.nodeBased("a", weighting));
+        // the shortcuts 1-3 via 0 and 2-3 via 1, but no shortcut 3-4 via 2 because it is not shorter than the edge
+        assertEquals(2, chGraph.getShortcuts());
+        Path path = createAlgo(chGraph).calcPath(4, 0);
+        assertEquals(300, path.getWeight(), 1.e-6);
+        assertEquals(IntArrayList.from(4, 2, 1, 0), path.calcNodes());
+
+        // block the edge 4->2, now the path via 3 is shorter than the one via 1
+        edge.set(accessEnc, false, true);
+        chGraph = cch.customize(CHConfig.nodeBased("b", weighting));
+        assertEquals(2, chGraph.getShortcuts());
+        path = createAlgo(chGraph).calcPath(4, 0);
+        assertEquals(400, path.getWeight(), 1.e-6);
+        assertEquals(IntArrayList.from(4, 3, 0), path.calcNodes());
+        assertEquals(600, createAlgo(chGraph).calcPath(4, 2).getWeight(), 1.e-6);
+        assertEquals(100, createAlgo(chGraph).calcPath(2, 4).getWeight(), 1.e-6);
+        assertEquals(300, createAlgo(chGraph).calcPath(0, 4).getWeight(), 1.e-6);
+    }
+
+    @RepeatedTest(10)
+    public void testRandomGraph() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, true, accessEnc, speedEnc, null, 0.7, 0.8, 0.8);
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph).contract();
+        Weighting weighting = new FastestWeighting(accessEnc, speedEnc);
+        checkQueries(cch.customize(CHConfig.nodeBased("fastest", weighting)), weighting, rnd, seed);
+        setRandomSpeeds(rnd);
+        checkQueries(cch.customize(CHConfig.nodeBased("changed_speeds", weighting)), weighting, rnd, seed);
+        weighting = new ShortestWeighting(accessEnc, speedEnc);
+        checkQueries(cch.customize(CHConfig.nodeBased("shortest", weighting)), weighting, rnd, seed);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testGrid(int threads) {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        int size = 80;
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                graph.getNodeAccess().setNode(node, 49.4 + row * 0.001 + rnd.nextDouble() * 0.0005, 9.7 + col * 0.001 + rnd.nextDouble() * 0.0005);
+                if (col > 0)
+                    graph.edge(node - 1, node).setDistance(50 + rnd.nextDouble() * 100);
+                if (row > 0)
+                    graph.edge(node - size, node).setDistance(50 + rnd.nextDouble() * 100);
+            }
+        setRandomSpeeds(rnd);
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph).setThreads(threads).contract();
+        // nested dissection yields far fewer arcs than contracting the grid row by row
+        int rowByRowArcs = CustomizableContractionHierarchies.fromGraph(graph)
+                .useFixedNodeOrdering(NodeOrderingProvider.identity(graph.getNodes())).contract().getArcs();
+        assertTrue(2 * cch.getArcs() < rowByRowArcs, "too many arcs: " + cch.getArcs() + " vs. " + rowByRowArcs);
+        Weighting weighting = new FastestWeighting(accessEnc, speedEnc);
+        checkQueries(cch.customize(CHConfig.nodeBased("first", weighting)), weighting, rnd, seed);
+        setRandomSpeeds(rnd);
+        checkQueries(cch.customize(CHConfig.nodeBased("second", weighting)), weighting, rnd, seed);
+    }
+
+    @Test
+    public void testCustomizeIntoStorage() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, true, accessEnc, speedEnc, null, 0.7, 0.8, 0.8);
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph).contract();
+        Weighting weighting = new FastestWeighting(accessEnc, speedEnc);
+        CHConfig chConfig = CHConfig.nodeBased("profile", weighting);
+        // every storage lives in its own directory, so we can customize again using the same name
+        CHStorage chStorage = CHStorage.fromGraph(graph, chConfig, new RAMDirectory());
+        checkQueries(cch.customize(chConfig, chStorage), weighting, rnd, seed);
+        setRandomSpeeds(rnd);
+        checkQueries(cch.customize(chConfig, CHStorage.fromGraph(graph, chConfig, new RAMDirectory())), weighting, rnd, seed);
+
+        // the storage must be empty
+        assertTrue(chStorage.getShortcuts() > 0);
+        assertThrows(IllegalArgumentException.class, () -> cch.customize(chConfig, chStorage));
+        CHStorage edgeBasedStorage = new CHStorage(new RAMDirectory(), "edge", -1, true);
+        edgeBasedStorage.create(graph.getNodes(), 10);
+        assertThrows(IllegalArgumentException.class, () -> cch.customize(chConfig, edgeBasedStorage));
+    }
+
+    @Test
+    public void testTurnCostsNotSupported() {
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(0, 1).setDistance(100));
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph).contract();
+        CHConfig chConfig = CHConfig.edgeBased("edge", new FastestWeighting(accessEnc, speedEnc,
+                new DefaultTurnCostProvider(turnCostEnc, graph.getTurnCostStorage())));
+        assertThrows(IllegalArgumentException.class, () -> cch.customize(chConfig));
+        assertThrows(IllegalStateException.class, cch::contract);
+    }
+
+    private void setRandomSpeeds(Random rnd) {
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            // some edges are one-way or blocked entirely
+            iter.set(accessEnc, rnd.nextDouble() < 0.95, rnd.nextDouble() < 0.8);
+            iter.set(speedEnc, 10 + rnd.nextDouble() * 110, 10 + rnd.nextDouble() * 110);
+        }
+    }
+
+    private void checkQueries(RoutingCHGraph chGraph, Weighting weighting, Random rnd, long seed) {
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = createAlgo(chGraph).calcPath(from, to);
+            String message = "seed: " + seed + ", " + from + "->" + to;
+            assertEquals(refPath.isFound(), path.isFound(), message);
+            if (!path.isFound())
+                continue;
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, message);
+            // the unpacked path must have the same weight
+            double unpackedWeight = 0;
+            for (EdgeIteratorState edge : path.calcEdges())
+                unpackedWeight += weighting.calcEdgeWeight(edge, false);
+            assertEquals(refPath.getWeight(), unpackedWeight, 1.e-2, message);
+        }
+    }
+
+    private static RoutingAlgorithm createAlgo(RoutingCHGraph chGraph) {
+        return new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap());
+    }
+}
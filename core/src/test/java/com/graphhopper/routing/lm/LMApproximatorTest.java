@@ -41,10 +41,16 @@ public class LMApproximatorTest {
     @RepeatedTest(value = 10)
     public void randomGraph() {
         final long seed = System.nanoTime();
-        run(seed);
+        run(seed, false);
     }
 
-    private void run(long seed) {
+    @RepeatedTest(value = 10)
+    public void randomGraphWithCompactLandmarks() {
+        final long seed = System.nanoTime();
+        run(seed, true);
+    }
+
+    private void run(long seed, boolean compactLandmarks) {
         Directory dir = new RAMDirectory();
         BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
         DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, false);
@@ -59,6 +65,8 @@ public class LMApproximatorTest {
 
         PrepareLandmarks lm = new PrepareLandmarks(dir, graph, encodingManager, new LMConfig("car", weighting), 16);
         lm.setMaximumWeight(10000);
+        if (compactLandmarks)
+            lm.setWeightFormat(LandmarkStorage.WeightFormat.LOG_BYTE).setPerLandmarkFactors(true).setStoredLandmarks(8);
         lm.doWork();
         LandmarkStorage landmarkStorage = lm.getLandmarkStorage();
 
@@ -113,8 +121,8 @@ public class LMApproximatorTest {
                         int w = neighbors.getAdjNode();
                         double vw = weighting.calcEdgeWeight(neighbors, false);
                         double vwApprox = lmApproximator.approximate(v) - lmApproximator.approximate(w);
-                        if (vwApprox - lm.getLandmarkStorage().getFactor() > vw) {
-                            System.out.printf("%f\t%f\n", vwApprox - lm.getLandmarkStorage().getFactor(), vw);
+                        if (vwApprox - landmarkStorage.getSlack() > vw) {
+                            System.out.printf("%f\t%f\n", vwApprox - landmarkStorage.getSlack(), vw);
                             nInconsistentWeights++;
                         }
                     }
@@ -124,8 +132,8 @@ public class LMApproximatorTest {
                         int w = neighbors.getAdjNode();
                         double vw = weighting.calcEdgeWeight(neighbors, false);
                         double vwApprox = balancedWeightApproximator.approximate(v, false) - balancedWeightApproximator.approximate(w, false);
-                        if (vwApprox - lm.getLandmarkStorage().getFactor() > vw) {
-                            System.out.printf("%f\t%f\n", vwApprox - lm.getLandmarkStorage().getFactor(), vw);
+                        if (vwApprox - landmarkStorage.getSlack() > vw) {
+                            System.out.printf("%f\t%f\n", vwApprox - landmarkStorage.getSlack(), vw);
                             nInconsistentWeights++;
                         }
                     }
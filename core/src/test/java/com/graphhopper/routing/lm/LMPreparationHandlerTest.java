@@ -1,5 +1,6 @@
 package com.graphhopper.routing.lm;
 
+import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
@@ -11,6 +12,7 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.weighting.ShortestWeighting;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.Parameters.Landmark;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
@@ -64,4 +66,28 @@ public class LMPreparationHandlerTest {
         handler.init(ghConfig);
         assertFalse(handler.isEnabled());
     }
+
+    @Test
+    public void testStoredLandmarks() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig().putObject("graph.location", "target/lm-handler-gh")
+                .putObject("import.osm.ignored_highways", "");
+        ghConfig.setProfiles(Collections.singletonList(new Profile("profile")));
+        ghConfig.setLMProfiles(Collections.singletonList(new LMProfile("profile")));
+        LMPreparationHandler handler = new LMPreparationHandler();
+        handler.init(ghConfig);
+        assertEquals(16, handler.getLandmarks());
+        assertEquals(16, handler.getStoredLandmarks());
+        assertEquals(8, new GraphHopper().init(ghConfig).getRouterConfig().getActiveLandmarkCount());
+
+        ghConfig.putObject(Landmark.PREPARE + "stored_landmarks", 4);
+        handler = new LMPreparationHandler();
+        handler.init(ghConfig);
+        assertEquals(16, handler.getLandmarks());
+        assertEquals(4, handler.getStoredLandmarks());
+        // only the stored landmarks can be active
+        assertEquals(4, new GraphHopper().init(ghConfig).getRouterConfig().getActiveLandmarkCount());
+        ghConfig.putObject(Landmark.ACTIVE_COUNT_DEFAULT, 6);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new GraphHopper().init(ghConfig));
+        assertTrue(e.getMessage().contains("stored landmark count of 4"), e.getMessage());
+    }
 }
\ No newline at end of file
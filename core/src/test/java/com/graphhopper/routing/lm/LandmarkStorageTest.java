@@ -112,6 +112,43 @@ public class LandmarkStorageTest {
         assertFalse(lms.isInfinity(0));
     }
 
+    @Test
+    public void testSetGetLogByteWeight() {
+        GHUtility.setSpeed(60, true, true, accessEnc, speedEnc, graph.edge(0, 1).setDistance(40.1));
+        LandmarkStorage lms = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("c1", new FastestWeighting(accessEnc, speedEnc)), 4).
+                setMaximumWeight(1000).setWeightFormat(LandmarkStorage.WeightFormat.LOG_BYTE);
+        lms._getInternalDA().create(2000);
+        double factor = lms.getFactor();
+        double previousLowerBound = 0;
+        for (double weight = 0; weight < 1000; weight += 0.7) {
+            assertTrue(lms.setWeight(0, weight));
+            double lowerBound = lms.getFromWeight(0, 0, 0) * factor;
+            double upperBound = lms.getFromWeightUpperBound(0, 0, 0) * factor;
+            assertTrue(lowerBound <= weight && weight <= upperBound, lowerBound + " <= " + weight + " <= " + upperBound);
+            assertTrue(upperBound - lowerBound <= lms.getSlack());
+            assertTrue(lowerBound >= previousLowerBound);
+            previousLowerBound = lowerBound;
+        }
+        // small weights are more precise than big weights
+        lms.setWeight(0, 1);
+        double smallError = (lms.getFromWeightUpperBound(0, 0, 0) - lms.getFromWeight(0, 0, 0)) * factor;
+        lms.setWeight(0, 900);
+        double bigError = (lms.getFromWeightUpperBound(0, 0, 0) - lms.getFromWeight(0, 0, 0)) * factor;
+        assertTrue(smallError < 1, "small error " + smallError);
+        assertTrue(bigError > 10 * smallError, "big error " + bigError);
+
+        // the maximum weight is maxed out and has no upper bound
+        assertFalse(lms.setWeight(0, 1000));
+        assertEquals(1000, lms.getFromWeight(0, 0, 0) * factor, 0.1);
+        assertEquals(Integer.MAX_VALUE / 2, lms.getFromWeightUpperBound(0, 0, 0));
+        // the 'to' weight is stored in the next byte
+        lms._getInternalDA().setByte(1, (byte) 0xFF);
+        assertTrue(lms.isInfinity(1));
+        lms.setWeight(1, 50);
+        assertFalse(lms.isInfinity(1));
+        assertEquals(1000, lms.getFromWeight(0, 0, 0) * factor, 0.1);
+    }
+
     @Test
     public void testWithSubnetworks() {
         // 0-1-2..4-5->6
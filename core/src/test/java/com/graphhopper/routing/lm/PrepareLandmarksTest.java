@@ -50,6 +50,7 @@ import static com.graphhopper.util.GHUtility.updateDistancesFor;
 import static com.graphhopper.util.Parameters.Algorithms.ASTAR;
 import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -214,4 +215,77 @@ public class PrepareLandmarksTest {
 
         Helper.removeDir(new File(fileStr));
     }
+
+    @Test
+    public void testStoreAndLoadCompactLandmarks() {
+        Random rand = new Random(0);
+        int width = 15, height = 15;
+        for (int hIndex = 0; hIndex < height; hIndex++) {
+            for (int wIndex = 0; wIndex < width; wIndex++) {
+                int node = wIndex + hIndex * width;
+                if (wIndex + 1 < width)
+                    graph.edge(node, node + 1).set(accessEnc, true, true).set(speedEnc, 20 + rand.nextDouble() * 30);
+                if (hIndex + 1 < height)
+                    graph.edge(node, node + width).set(accessEnc, true, true).set(speedEnc, 20 + rand.nextDouble() * 30);
+                updateDistancesFor(graph, node, -hIndex / 50.0, wIndex / 50.0);
+            }
+        }
+        String fileStr = "./target/tmp-lm-compact";
+        Helper.removeDir(new File(fileStr));
+
+        Weighting weighting = new FastestWeighting(accessEnc, speedEnc);
+        LMConfig lmConfig = new LMConfig("car", weighting);
+        PrepareLandmarks defaultPlm = new PrepareLandmarks(new RAMDirectory(), graph, encodingManager, lmConfig, 8);
+        defaultPlm.setMinimumNodes(2);
+        defaultPlm.doWork();
+
+        Directory dir = new RAMDirectory(fileStr, true).create();
+        PrepareLandmarks plm = new PrepareLandmarks(dir, graph, encodingManager, lmConfig, 8).
+                setWeightFormat(LandmarkStorage.WeightFormat.LOG_BYTE).
+                setPerLandmarkFactors(true).
+                setStoredLandmarks(4);
+        plm.setMinimumNodes(2);
+        plm.doWork();
+        LandmarkStorage lms = plm.getLandmarkStorage();
+        assertEquals(4, lms.getLandmarkCount());
+        // the stored landmarks are a subset of the calculated ones
+        List<Integer> defaultLandmarks = new ArrayList<>();
+        for (int lmNode : defaultPlm.getLandmarkStorage().getLandmarks(1))
+            defaultLandmarks.add(lmNode);
+        for (int lmNode : lms.getLandmarks(1))
+            assertTrue(defaultLandmarks.contains(lmNode), lmNode + " not in " + defaultLandmarks);
+        int[] fromWeights = new int[graph.getNodes()];
+        for (int node = 0; node < graph.getNodes(); node++)
+            fromWeights[node] = lms.getFromWeight(1, node);
+        String landmarks = Arrays.toString(lms.getLandmarks(1));
+        double factor = lms.getFactor();
+        plm.close();
+        // the weights of all calculated landmarks were kept in the same directory, but only until the selection
+        assertFalse(new File(fileStr, "landmark_candidates_car").exists());
+        assertTrue(new File(fileStr, "landmarks_car").exists());
+
+        dir = new RAMDirectory(fileStr, true);
+        plm = new PrepareLandmarks(dir, graph, encodingManager, lmConfig, 8);
+        assertTrue(plm.loadExisting());
+        lms = plm.getLandmarkStorage();
+        assertEquals(LandmarkStorage.WeightFormat.LOG_BYTE, lms.getWeightFormat());
+        assertEquals(4, lms.getLandmarkCount());
+        assertEquals(factor, lms.getFactor());
+        assertEquals(landmarks, Arrays.toString(lms.getLandmarks(1)));
+        for (int node = 0; node < graph.getNodes(); node++)
+            assertEquals(fromWeights[node], lms.getFromWeight(1, node));
+
+        PMap hints = new PMap().putObject(Parameters.Landmark.ACTIVE_COUNT, 2);
+        for (int i = 0; i < 50; i++) {
+            int from = rand.nextInt(graph.getNodes()), to = rand.nextInt(graph.getNodes());
+            Path expectedPath = new AStar(graph, weighting, tm).calcPath(from, to);
+            for (String algo : Arrays.asList(ASTAR, ASTAR_BI)) {
+                RoutingAlgorithm algoWithLandmarks = new LMRoutingAlgorithmFactory(lms).createAlgo(graph, weighting,
+                        new AlgorithmOptions().setAlgorithm(algo).setTraversalMode(tm).setHints(hints));
+                Path path = algoWithLandmarks.calcPath(from, to);
+                assertEquals(expectedPath.getWeight(), path.getWeight(), 1.e-6, algo + " " + from + "->" + to);
+            }
+        }
+        Helper.removeDir(new File(fileStr));
+    }
 }
@@ -31,15 +31,13 @@ import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedHashSet;
-import java.util.List;
+import java.util.*;
 
 import static com.graphhopper.storage.index.Snap.Position.*;
 import static com.graphhopper.util.EdgeIteratorState.UNFAVORED_EDGE;
@@ -186,6 +184,11 @@ public class QueryGraphTest {
         //  fetch virtual edge and check way geometry
         state = GHUtility.getEdge(queryGraph, 4, 3);
         assertEquals(2, state.fetchWayGeometry(FetchMode.ALL).size());
+        PointList tmp = new PointList(1, false);
+        for (FetchMode mode : FetchMode.values()) {
+            for (EdgeIteratorState edge : Arrays.asList(state, GHUtility.getEdge(queryGraph, 1, 4), GHUtility.getEdge(queryGraph, 4, 1)))
+                assertEquals(edge.fetchWayGeometry(mode), edge.fetchWayGeometry(mode, tmp), mode + " " + edge);
+        }
 
         // now we actually test the edges at the real tower nodes (virtual ones should be added and some real ones removed)
         assertEquals("[1->4, 1 1-0]", ((VirtualEdgeIterator) queryGraph.createEdgeExplorer().setBaseNode(1)).getEdges().toString());
@@ -988,6 +991,58 @@ public class QueryGraphTest {
         }
     }
 
+    @Test
+    public void testReset() {
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(g, rnd, 100, 2.2, true, true, accessEnc, speedEnc, 60d, 0.8, 0.8, 0.8);
+        LocationIndexTree index = new LocationIndexTree(g, new RAMDirectory());
+        index.prepareIndex();
+        BBox bounds = g.getBounds();
+        QueryGraph pooled = null;
+        for (int i = 0; i < 50; i++) {
+            // a varying number of snaps, so the reset query graph needs less or more virtual nodes than before
+            double[] lats = new double[1 + rnd.nextInt(4)];
+            double[] lons = new double[lats.length];
+            for (int j = 0; j < lats.length; j++) {
+                lats[j] = bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat);
+                lons[j] = bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon);
+            }
+            // the snaps are modified when the query graph is created, so we need separate ones
+            List<Snap> snaps = new ArrayList<>();
+            List<Snap> pooledSnaps = new ArrayList<>();
+            for (int j = 0; j < lats.length; j++) {
+                snaps.add(index.findClosest(lats[j], lons[j], EdgeFilter.ALL_EDGES));
+                pooledSnaps.add(index.findClosest(lats[j], lons[j], EdgeFilter.ALL_EDGES));
+            }
+            QueryGraph queryGraph = QueryGraph.create(g, snaps);
+            if (pooled == null)
+                pooled = QueryGraph.create(g, pooledSnaps);
+            else
+                assertSame(pooled, pooled.reset(pooledSnaps));
+            assertEquals(queryGraph.getNodes(), pooled.getNodes());
+            assertEquals(queryGraph.getEdges(), pooled.getEdges());
+            for (int j = 0; j < snaps.size(); j++)
+                assertEquals(snaps.get(j).getClosestNode(), pooledSnaps.get(j).getClosestNode());
+            EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+            EdgeExplorer pooledExplorer = pooled.createEdgeExplorer();
+            for (int node = 0; node < queryGraph.getNodes(); node++) {
+                assertEquals(queryGraph.getNodeAccess().getLat(node), pooled.getNodeAccess().getLat(node));
+                assertEquals(queryGraph.getNodeAccess().getLon(node), pooled.getNodeAccess().getLon(node));
+                assertEquals(getAdjEdges(explorer, node), getAdjEdges(pooledExplorer, node), "node " + node);
+            }
+        }
+        index.close();
+    }
+
+    private static List<String> getAdjEdges(EdgeExplorer explorer, int node) {
+        List<String> result = new ArrayList<>();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+            result.add(iter.getEdgeKey() + ": " + iter.getBaseNode() + "-" + iter.getAdjNode() + ", " + iter.getDistance()
+                    + ", " + iter.fetchWayGeometry(FetchMode.ALL));
+        return result;
+    }
+
     private void assertNodes(EdgeIteratorState edge, int base, int adj) {
         assertEquals(base, edge.getBaseNode());
         assertEquals(adj, edge.getAdjNode());
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.subnetwork;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.ev.SimpleBooleanEncodedValue;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.ConnectedComponents;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.EdgeTransitionFilter;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.graphhopper.routing.subnetwork.TarjanSCCTest.buildComponentSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgeBasedParallelSCCTest {
+
+    private final BooleanEncodedValue accessEnc;
+    private final BaseGraph g;
+    private final EdgeTransitionFilter fwdAccessFilter;
+
+    public EdgeBasedParallelSCCTest() {
+        accessEnc = new SimpleBooleanEncodedValue("access", true);
+        EncodedValue.InitializerConfig evConf = new EncodedValue.InitializerConfig();
+        accessEnc.init(evConf);
+        g = new BaseGraph.Builder(evConf.getRequiredInts()).create();
+        fwdAccessFilter = (prev, edge) -> edge.get(accessEnc);
+    }
+
+    @Test
+    public void biggestComponentAndOneWays() {
+        // 0 - 1 - 2 -> 3   4 - 5
+        // |   |
+        // 7 - 6
+        g.edge(0, 1).setDistance(1).set(accessEnc, true, true);
+        g.edge(1, 2).setDistance(1).set(accessEnc, true, true);
+        g.edge(2, 3).setDistance(1).set(accessEnc, true, false);
+        g.edge(4, 5).setDistance(1).set(accessEnc, true, true);
+        g.edge(0, 7).setDistance(1).set(accessEnc, true, true);
+        g.edge(7, 6).setDistance(1).set(accessEnc, true, true);
+        g.edge(6, 1).setDistance(1).set(accessEnc, true, true);
+        ConnectedComponents result = EdgeBasedParallelSCC.findComponents(g, fwdAccessFilter, false, 2);
+        assertEquals(14, result.getEdgeKeys());
+        // the biggest component, 4-5 and the single edge keys 2->3 and 3->2
+        assertEquals(4, result.getTotalComponents());
+        assertEquals(2, result.getComponents().size());
+        assertEquals(10, result.getBiggestComponent().size());
+        assertEquals(2, result.getSingleEdgeComponents().cardinality());
+        assertTrue(result.getSingleEdgeComponents().get(4));
+        assertTrue(result.getSingleEdgeComponents().get(5));
+    }
+
+    @Test
+    public void noBigComponent() {
+        // 0 -> 1 -> 2
+        g.edge(0, 1).setDistance(1).set(accessEnc, true, false);
+        g.edge(1, 2).setDistance(1).set(accessEnc, true, false);
+        ConnectedComponents result = EdgeBasedParallelSCC.findComponents(g, fwdAccessFilter, false, 2);
+        compareResults(g, 0, EdgeBasedTarjanSCC.findComponents(g, fwdAccessFilter, false), result);
+        assertEquals(4, result.getTotalComponents());
+        assertTrue(result.getComponents().isEmpty());
+    }
+
+    @RepeatedTest(20)
+    public void tarjanVsParallel() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, 500, 2.5, true, true,
+                accessEnc, null, 60d, 0.8, 0.7, 0);
+        // forbid some turns such that the components also depend on the previous edge
+        EdgeTransitionFilter turnRestrictionFilter = (prev, edge) -> edge.get(accessEnc) && (prev + 3 * edge.getEdge()) % 17 != 0;
+        for (EdgeTransitionFilter filter : new EdgeTransitionFilter[]{fwdAccessFilter, turnRestrictionFilter}) {
+            for (boolean excludeSingle : new boolean[]{false, true}) {
+                ConnectedComponents expected = EdgeBasedTarjanSCC.findComponents(g, filter, excludeSingle);
+                // use a small level size such that the levels are really expanded in parallel
+                compareResults(g, seed, expected, EdgeBasedParallelSCC.findComponents(g, filter, excludeSingle, 1, 10));
+                compareResults(g, seed, expected, EdgeBasedParallelSCC.findComponents(g, filter, excludeSingle, 4, 10));
+            }
+        }
+    }
+
+    @Test
+    public void reverseStartEdgeKey() {
+        // for this graph EdgeBasedTarjanSCC used to start the search for the reverse edge key of an edge at the wrong
+        // node, which lead to different components
+        long seed = 10111343379317L;
+        GHUtility.buildRandomGraph(g, new Random(seed), 2000, 2.5, true, true,
+                accessEnc, null, 60d, 0.8, 0.7, 0);
+        EdgeTransitionFilter turnRestrictionFilter = (prev, edge) -> edge.get(accessEnc) && (prev + 3 * edge.getEdge()) % 17 != 0;
+        ConnectedComponents expected = EdgeBasedTarjanSCC.findComponents(g, turnRestrictionFilter, false);
+        assertEquals(expected.getTotalComponents(), EdgeBasedTarjanSCC.findComponentsRecursive(g, turnRestrictionFilter, false).getTotalComponents());
+        compareResults(g, seed, expected, EdgeBasedParallelSCC.findComponents(g, turnRestrictionFilter, false, 2, 10));
+    }
+
+    private void compareResults(BaseGraph g, long seed, ConnectedComponents expected, ConnectedComponents given) {
+        assertEquals(expected.getEdgeKeys(), given.getEdgeKeys(), "seed: " + seed);
+        assertEquals(expected.getTotalComponents(), given.getTotalComponents(), "seed: " + seed);
+        // the order of the components and within the components differs, see also EdgeBasedTarjanSCCTest
+        assertEquals(buildComponentSet(expected.getComponents()), buildComponentSet(given.getComponents()), "seed: " + seed);
+        assertEquals(expected.getSingleEdgeComponents(), given.getSingleEdgeComponents(), "seed: " + seed);
+        IntArrayList expectedBiggest = expected.getBiggestComponent(), givenBiggest = given.getBiggestComponent();
+        assertEquals(expectedBiggest.size(), givenBiggest.size(), "seed: " + seed);
+    }
+}
@@ -31,6 +31,7 @@ import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 
@@ -244,6 +245,29 @@ class EdgeBasedTarjanSCCTest {
         }
     }
 
+    @Test
+    public void backwardEdgeKeyStartsAtBaseNode() {
+        // 0 - 1
+        //  \ /
+        //   2
+        // without u-turns we can only go around the triangle clockwise or counter-clockwise. the counter-clockwise
+        // circle cannot be reached from the clockwise one, so the search has to start at the backward edge key of
+        // edge 0, which means going 1->0 and continuing at node 0.
+        g.edge(0, 1).setDistance(1).set(accessEnc, true, true); // edge-keys 0,1
+        g.edge(0, 2).setDistance(1).set(accessEnc, true, true); // edge-keys 2,3
+        g.edge(2, 1).setDistance(1).set(accessEnc, true, true); // edge-keys 4,5
+        EdgeBasedTarjanSCC.EdgeTransitionFilter noUTurnFilter = (prev, edge) -> fwdAccessFilter.accept(prev, edge) && prev != edge.getEdge();
+        for (ConnectedComponents result : new ConnectedComponents[]{
+                EdgeBasedTarjanSCC.findComponentsRecursive(g, noUTurnFilter, false),
+                EdgeBasedTarjanSCC.findComponents(g, noUTurnFilter, false)}) {
+            assertEquals(2, result.getTotalComponents());
+            assertEquals(2, result.getComponents().size());
+            assertTrue(result.getSingleEdgeComponents().isEmpty());
+            Set<IntWithArray> components = buildComponentSet(result.getComponents());
+            assertEquals(buildComponentSet(Arrays.asList(IntArrayList.from(0, 5, 3), IntArrayList.from(1, 2, 4))), components);
+        }
+    }
+
     @RepeatedTest(20)
     public void implicitVsExplicitRecursion() {
         doImplicitVsExplicit(true);
@@ -340,6 +340,37 @@ class CustomWeightingTest {
         }
     }
 
+    @Test
+    public void testSpeedOverlay() {
+        // 50km/h -> 72s per km, 100km/h -> 36s per km
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(1000);
+        GHUtility.setSpeed(50, 100, accessEnc, avSpeedEnc, edge);
+        SpeedOverlay overlay = new SpeedOverlay(graph.getEdges());
+        CustomModel model = new CustomModel().setDistanceInfluence(0d);
+        Weighting weighting = CustomModelParser.createWeighting(accessEnc, avSpeedEnc, null, encodingManager, NO_TURN_COST_PROVIDER, model, overlay);
+        assertEquals(72, weighting.calcEdgeWeight(edge, false), 1.e-6);
+        assertEquals(36, weighting.calcEdgeWeight(edge, true), 1.e-6);
+
+        // 25km/h for the reverse direction, the overlay can only lower the speed
+        overlay.update(new int[]{edge.getEdgeKey(), GHUtility.reverseEdgeKey(edge.getEdgeKey())}, new double[]{60, 25});
+        // a weighting uses the speeds that were current when it was created
+        assertEquals(36, weighting.calcEdgeWeight(edge, true), 1.e-6);
+        weighting = CustomModelParser.createWeighting(accessEnc, avSpeedEnc, null, encodingManager, NO_TURN_COST_PROVIDER, model, overlay);
+        assertEquals(72, weighting.calcEdgeWeight(edge, false), 1.e-6);
+        assertEquals(144, weighting.calcEdgeWeight(edge, true), 1.e-6);
+        assertEquals(144_000, weighting.calcEdgeMillis(edge, true));
+        // the edge key of the reverse state already includes the direction
+        EdgeIteratorState reverseEdge = graph.getEdgeIteratorState(edge.getEdge(), 0);
+        assertEquals(144, weighting.calcEdgeWeight(reverseEdge, false), 1.e-6);
+        assertEquals(72, weighting.calcEdgeWeight(reverseEdge, true), 1.e-6);
+
+        // speed 0 blocks the edge
+        overlay.update(new int[]{edge.getEdgeKey()}, new double[]{0});
+        weighting = CustomModelParser.createWeighting(accessEnc, avSpeedEnc, null, encodingManager, NO_TURN_COST_PROVIDER, model, overlay);
+        assertEquals(Double.POSITIVE_INFINITY, weighting.calcEdgeWeight(edge, false));
+        assertEquals(36, weighting.calcEdgeWeight(edge, true), 1.e-6);
+    }
+
     private Weighting createWeighting(CustomModel vehicleModel) {
         return CustomModelParser.createWeighting(accessEnc, avSpeedEnc, null, encodingManager, NO_TURN_COST_PROVIDER, vehicleModel);
     }
@@ -0,0 +1,94 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeedOverlayTest {
+
+    @Test
+    public void testUpdate() {
+        AtomicInteger updates = new AtomicInteger();
+        SpeedOverlay overlay = new SpeedOverlay(3, updates::incrementAndGet);
+        assertNull(overlay.getSpeeds());
+
+        overlay.update(new int[]{0, 5}, new double[]{30, 12.5});
+        float[] speeds = overlay.getSpeeds();
+        assertEquals(6, speeds.length);
+        assertEquals(30, speeds[0]);
+        assertTrue(Float.isNaN(speeds[1]));
+        assertEquals(12.5, speeds[5]);
+
+        // every update replaces all speeds and does not modify the current array
+        overlay.update(new int[]{1}, new double[]{40});
+        assertEquals(30, speeds[0]);
+        float[] nextSpeeds = overlay.getSpeeds();
+        assertNotSame(speeds, nextSpeeds);
+        assertTrue(Float.isNaN(nextSpeeds[0]));
+        assertEquals(40, nextSpeeds[1]);
+
+        // ... and the previous arrays are never reused
+        overlay.update(new int[]{2}, new double[]{20});
+        assertNotSame(speeds, overlay.getSpeeds());
+        assertNotSame(nextSpeeds, overlay.getSpeeds());
+        assertEquals(20, overlay.getSpeeds()[2]);
+        assertTrue(Float.isNaN(speeds[2]));
+        assertEquals(30, speeds[0]);
+        assertEquals(40, nextSpeeds[1]);
+
+        overlay.clear();
+        assertNull(overlay.getSpeeds());
+        assertEquals(4, updates.get());
+        assertEquals(4, overlay.getUpdates());
+    }
+
+    @Test
+    public void testUpdateFromReader() throws IOException {
+        SpeedOverlay overlay = new SpeedOverlay(3);
+        String text = "# edge_key,speed\n4,35.5\n\n1,0\n";
+        assertEquals(2, overlay.update(new BufferedReader(new StringReader(text))));
+        float[] speeds = overlay.getSpeeds();
+        assertEquals(35.5, speeds[4]);
+        assertEquals(0, speeds[1]);
+        assertTrue(Float.isNaN(speeds[0]));
+    }
+
+    @Test
+    public void testInvalidUpdate() {
+        SpeedOverlay overlay = new SpeedOverlay(3);
+        overlay.update(new int[]{0}, new double[]{30});
+        float[] speeds = overlay.getSpeeds();
+        assertThrows(IllegalArgumentException.class, () -> overlay.update(new int[]{6}, new double[]{30}));
+        assertThrows(IllegalArgumentException.class, () -> overlay.update(new int[]{1}, new double[]{-1}));
+        assertThrows(IllegalArgumentException.class, () -> overlay.update(new int[]{1}, new double[]{Double.NaN}));
+        assertThrows(IllegalArgumentException.class, () -> overlay.update(new int[]{1, 2}, new double[]{30}));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> overlay.update(new BufferedReader(new StringReader("1,30\n2;30\n"))));
+        assertTrue(ex.getMessage().contains("line 2"), ex.getMessage());
+        // a failed update does not change the current speeds
+        assertSame(speeds, overlay.getSpeeds());
+        assertEquals(30, speeds[0]);
+    }
+}
@@ -261,6 +261,78 @@ public class EdgeKVStorageTest {
         Helper.removeDir(new File(location));
     }
 
+    @Test
+    public void testStringDictionary() {
+        Helper.removeDir(new File(location));
+
+        EdgeKVStorage index = new EdgeKVStorage(new RAMDirectory(location, true).create(), true).create(1000);
+        assertTrue(index.isStringDictionary());
+        long pointerA = index.add(createList("name", "Main Street", "ref", "B 96", "int", 5, "bytes", new byte[]{1, 2}));
+        long pointerB = index.add(Arrays.asList(new KeyValue("name", "Main Street"), new KeyValue("ref", ""),
+                new KeyValue("destination", "Berlin", true, false), new KeyValue("destination", "Leipzig", false, true)));
+        long pointerC = index.add(createList("name", "Main Street", "int", 7));
+        // the empty string, "Main Street", "B 96", "Berlin" and "Leipzig"
+        assertEquals(5, index.getDictionarySize());
+
+        assertEquals("Main Street", index.get(pointerA, "name", false));
+        assertEquals("B 96", index.get(pointerA, "ref", false));
+        assertEquals(5, index.get(pointerA, "int", false));
+        assertArrayEquals(new byte[]{1, 2}, (byte[]) index.get(pointerA, "bytes", false));
+        assertEquals("", index.get(pointerB, "ref", false));
+        assertEquals("Berlin", index.get(pointerB, "destination", false));
+        assertEquals("Leipzig", index.get(pointerB, "destination", true));
+        assertNull(index.get(pointerB, "int", false));
+        // no new String is created for every fetch
+        assertSame(index.get(pointerA, "name", false), index.get(pointerC, "name", false));
+        index.flush();
+        // the reverse mapping is released after flush and rebuilt for the next add
+        assertEquals(0, index.getReverseDictionarySize());
+        long pointerE = index.add(createList("name", "Main Street"));
+        assertEquals(5, index.getDictionarySize());
+        assertEquals(5, index.getReverseDictionarySize());
+        assertSame(index.get(pointerA, "name", false), index.get(pointerE, "name", false));
+        index.flush();
+        index.close();
+
+        // the format is detected from the stored data
+        index = new EdgeKVStorage(new RAMDirectory(location, true));
+        assertTrue(index.loadExisting());
+        assertTrue(index.isStringDictionary());
+        assertEquals(5, index.getDictionarySize());
+        assertEquals("[name=Main Street (true|true), ref=B 96 (true|true), int=5 (true|true)]",
+                index.getAll(pointerA).subList(0, 3).toString());
+        assertEquals("[name=Main Street (true|true), ref= (true|true), destination=Berlin (true|false), destination=Leipzig (false|true)]",
+                index.getAll(pointerB).toString());
+        assertEquals(7, index.get(pointerC, "int", false));
+        // adding after loadExisting reuses the existing strings
+        long pointerD = index.add(createList("name", "Main Street", "ref", "A 9"));
+        assertEquals(6, index.getDictionarySize());
+        assertEquals("A 9", index.get(pointerD, "ref", false));
+        assertEquals("Main Street", index.get(pointerD, "name", false));
+        index.close();
+
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testStringDictionaryIsSmaller() {
+        EdgeKVStorage defaultIndex = create();
+        EdgeKVStorage dictIndex = new EdgeKVStorage(new RAMDirectory(), true).create(1000);
+        LongArrayList defaultPointers = new LongArrayList(), dictPointers = new LongArrayList();
+        for (int i = 0; i < 1000; i++) {
+            List<KeyValue> list = createList("name", "Some rather long street name " + i % 10, "ref", "B " + i % 3);
+            defaultPointers.add(defaultIndex.add(list));
+            dictPointers.add(dictIndex.add(list));
+        }
+        assertEquals(14, dictIndex.getDictionarySize());
+        // 1 byte for the count and 2 x (2 bytes key index + 4 bytes dictionary id)
+        assertEquals(13, dictPointers.get(1) - dictPointers.get(0));
+        assertEquals(40, defaultPointers.get(1) - defaultPointers.get(0));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(defaultIndex.getAll(defaultPointers.get(i)), dictIndex.getAll(dictPointers.get(i)));
+        }
+    }
+
     @Test
     public void testEmptyKey() {
         EdgeKVStorage index = create();
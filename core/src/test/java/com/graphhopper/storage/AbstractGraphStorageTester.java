@@ -31,6 +31,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.Arrays;
 
 import static com.graphhopper.search.EdgeKVStorage.KeyValue.STREET_NAME;
 import static com.graphhopper.search.EdgeKVStorage.KeyValue.createKV;
@@ -732,6 +733,35 @@ public abstract class AbstractGraphStorageTester {
         assertEquals(Helper.createPointList3D(11, 2, 100, 11, 20, 1, 10, 27, 72, 10, 20, -10), GHUtility.getEdge(graph, 1, 0).fetchWayGeometry(FetchMode.ALL));
     }
 
+    @Test
+    public void testFetchWayGeometryIntoPointList() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 20, -10);
+        na.setNode(1, 11, 2, 100);
+        na.setNode(2, 12, 3, 50);
+        graph.edge(0, 1).setWayGeometry(Helper.createPointList3D(10, 27, 72, 11, 20, 1));
+        graph.edge(1, 2);
+
+        PointList tmp3D = new PointList(1, true);
+        PointList tmp2D = new PointList(1, false);
+        for (int[] nodes : new int[][]{{0, 1}, {1, 0}, {1, 2}, {2, 1}}) {
+            EdgeIteratorState edge = GHUtility.getEdge(graph, nodes[0], nodes[1]);
+            for (FetchMode mode : FetchMode.values()) {
+                PointList expected = edge.fetchWayGeometry(mode);
+                assertSame(tmp3D, edge.fetchWayGeometry(mode, tmp3D));
+                assertEquals(expected, tmp3D, mode + " " + Arrays.toString(nodes));
+                // the elevation is skipped for a 2D PointList
+                edge.fetchWayGeometry(mode, tmp2D);
+                assertEquals(expected.size(), tmp2D.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.getLat(i), tmp2D.getLat(i), 1.e-6);
+                    assertEquals(expected.getLon(i), tmp2D.getLon(i), 1.e-6);
+                }
+            }
+        }
+    }
+
     @Test
     public void testDontGrowOnUpdate() {
         graph = createGHStorage(defaultGraphLoc, true);
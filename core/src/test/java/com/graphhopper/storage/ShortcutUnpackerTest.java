@@ -4,6 +4,7 @@ import com.carrotsearch.hppc.DoubleArrayList;
 import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.ch.PrepareEncoder;
 import com.graphhopper.routing.ch.ShortcutUnpacker;
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
@@ -17,6 +18,8 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 import org.junit.jupiter.params.provider.ArgumentsSource;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
@@ -188,6 +191,80 @@ public class ShortcutUnpackerTest {
         }
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(FixtureProvider.class)
+    public void testUnpackingWithCache(Fixture f) {
+        // 0-1-2-3-4-5-6
+        GHUtility.setSpeed(60, 30, f.accessEnc, f.speedEnc,
+                f.graph.edge(0, 1).setDistance(1),
+                f.graph.edge(1, 2).setDistance(1),
+                f.graph.edge(2, 3).setDistance(1),
+                f.graph.edge(3, 4).setDistance(1),
+                f.graph.edge(4, 5).setDistance(1),
+                f.graph.edge(5, 6).setDistance(1) // edge 5
+        );
+        f.freeze();
+
+        f.setCHLevels(1, 3, 5, 4, 2, 0, 6);
+        f.shortcut(4, 2, 2, 3, 4, 6, true);
+        f.shortcut(4, 6, 4, 5, 8, 10, false);
+        f.shortcut(2, 0, 0, 1, 0, 2, true);
+        f.shortcut(2, 6, 6, 7, 4, 10, false);
+        f.shortcut(0, 6, 8, 9, 0, 10, false);
+
+        // without cache
+        List<TestVisitor> expected = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            for (boolean reverseOrder : new boolean[]{false, true}) {
+                expected.add(new TestVisitor(f.routingCHGraph));
+                f.visitFwd(10, 6, reverseOrder, expected.get(expected.size() - 1));
+                expected.add(new TestVisitor(f.routingCHGraph));
+                f.visitBwd(10, 0, reverseOrder, expected.get(expected.size() - 1));
+            }
+        }
+
+        // only the shortcut 0-6 is cached, the shortcut 2-6 is not used at the top-level and the others are too short
+        ShortcutUnpackingCache cache = new ShortcutUnpackingCache(10, 3);
+        ((RoutingCHGraphImpl) f.routingCHGraph).setShortcutUnpackingCache(cache);
+        List<TestVisitor> actual = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            for (boolean reverseOrder : new boolean[]{false, true}) {
+                actual.add(new TestVisitor(f.routingCHGraph));
+                f.visitFwd(10, 6, reverseOrder, actual.get(actual.size() - 1));
+                actual.add(new TestVisitor(f.routingCHGraph));
+                f.visitBwd(10, 0, reverseOrder, actual.get(actual.size() - 1));
+            }
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).edgeIds, actual.get(i).edgeIds);
+            assertEquals(expected.get(i).baseNodes, actual.get(i).baseNodes);
+            assertEquals(expected.get(i).adjNodes, actual.get(i).adjNodes);
+            assertEquals(expected.get(i).times, actual.get(i).times);
+            assertEquals(expected.get(i).prevOrNextEdgeIds, actual.get(i).prevOrNextEdgeIds);
+        }
+        // one entry for the forward and one for the backward direction of the same shortcut
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(6, cache.getHits());
+        assertEquals(0.75, cache.getHitRate(), 1.e-6);
+
+        // a single original edge is never looked up in the cache
+        f.visitFwd(0, 1, false, new TestVisitor(f.routingCHGraph));
+        assertEquals(8, cache.getHits() + cache.getMisses());
+
+        // shortcuts that are too short to be cached are unpacked as usual, but they do not count as misses
+        TestVisitor withCache = new TestVisitor(f.routingCHGraph);
+        f.visitBwd(8, 0, false, withCache);
+        ((RoutingCHGraphImpl) f.routingCHGraph).setShortcutUnpackingCache(null);
+        TestVisitor withoutCache = new TestVisitor(f.routingCHGraph);
+        f.visitBwd(8, 0, false, withoutCache);
+        assertEquals(2, withCache.edgeIds.size());
+        assertEquals(withCache.edgeIds, withoutCache.edgeIds);
+        assertEquals(withCache.prevOrNextEdgeIds, withoutCache.prevOrNextEdgeIds);
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getHits() + cache.getMisses());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(FixtureProvider.class)
     public void loopShortcut(Fixture f) {
@@ -21,26 +21,32 @@ package com.graphhopper.storage;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.util.*;
 
 import static com.graphhopper.util.GHUtility.getEdge;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TurnCostStorageTest {
 
+    private static final String LOCATION = "./target/turn-cost-storage-test";
+
     private EncodingManager manager;
     private DecimalEncodedValue carTurnCostEnc;
     private DecimalEncodedValue bikeTurnCostEnc;
     private BooleanEncodedValue accessEnc;
     private DecimalEncodedValue speedEnc;
 
+    @AfterEach
+    public void tearDown() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
     @BeforeEach
     public void setup() {
         accessEnc = new SimpleBooleanEncodedValue("car_access", true);
@@ -165,4 +171,62 @@ public class TurnCostStorageTest {
         assertFalse(iterator.next());
     }
 
+    @Test
+    public void testSortByViaNode() {
+        BaseGraph g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(LOCATION, true)).withTurnCosts(true).create();
+        // a star with center 0 and two further junctions at 1 and 2
+        int edges = 30;
+        for (int i = 1; i <= edges; i++)
+            g.edge(0, i).setDistance(1);
+        g.edge(1, 2).setDistance(1);
+        g.edge(2, 3).setDistance(1);
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+
+        Random rnd = new Random(123);
+        Map<List<Integer>, Double> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            int fromEdge = rnd.nextInt(edges);
+            int toEdge = rnd.nextInt(edges);
+            double cost = rnd.nextBoolean() ? Double.POSITIVE_INFINITY : rnd.nextInt(3);
+            if (expected.putIfAbsent(Arrays.asList(fromEdge, 0, toEdge), cost) == null)
+                turnCostStorage.set(carTurnCostEnc, fromEdge, 0, toEdge, cost);
+        }
+        turnCostStorage.set(carTurnCostEnc, edges, 2, edges + 1, 2);
+        expected.put(Arrays.asList(edges, 2, edges + 1), 2.0);
+        turnCostStorage.set(carTurnCostEnc, 0, 1, edges, Double.POSITIVE_INFINITY);
+        expected.put(Arrays.asList(0, 1, edges), Double.POSITIVE_INFINITY);
+
+        assertFalse(turnCostStorage.isSorted());
+        assertTurnCosts(g, expected);
+        turnCostStorage.sortByViaNode();
+        assertTrue(turnCostStorage.isSorted());
+        assertTurnCosts(g, expected);
+        assertThrows(IllegalStateException.class, () -> turnCostStorage.set(carTurnCostEnc, 1, 0, 2, 1));
+
+        g.flush();
+        g.close();
+        BaseGraph loaded = new BaseGraph.Builder(manager).setDir(new RAMDirectory(LOCATION, true)).withTurnCosts(true).build();
+        assertTrue(loaded.loadExisting());
+        assertTrue(loaded.getTurnCostStorage().isSorted());
+        assertTurnCosts(loaded, expected);
+    }
+
+    private void assertTurnCosts(BaseGraph g, Map<List<Integer>, Double> expected) {
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        for (int node = 0; node < g.getNodes(); node++) {
+            for (int fromEdge = 0; fromEdge < g.getEdges(); fromEdge++) {
+                for (int toEdge = 0; toEdge < g.getEdges(); toEdge++) {
+                    double cost = expected.getOrDefault(Arrays.asList(fromEdge, node, toEdge), 0.0);
+                    assertEquals(cost, turnCostStorage.get(carTurnCostEnc, fromEdge, node, toEdge), 0);
+                }
+            }
+        }
+        Map<List<Integer>, Double> actual = new HashMap<>();
+        TurnCostStorage.Iterator iterator = turnCostStorage.getAllTurnCosts();
+        while (iterator.next()) {
+            actual.put(Arrays.asList(iterator.getFromEdge(), iterator.getViaNode(), iterator.getToEdge()), iterator.getCost(carTurnCostEnc));
+        }
+        assertEquals(expected, actual);
+    }
+
 }
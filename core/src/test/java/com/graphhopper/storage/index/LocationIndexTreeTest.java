@@ -18,6 +18,7 @@
 package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AccessFilter;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -31,10 +32,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.File;
 import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -516,6 +517,165 @@ public class LocationIndexTreeTest {
         g.close();
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    public void testFindClosestBatch(int threads) {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rand = new Random(42);
+        GHUtility.buildRandomGraph(graph, rand, 500, 2.2, false, false, accessEnc, speedEnc, 60d, 0, 0.8, 0.5);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getEdge() % 3 == 0) {
+                NodeAccess na = graph.getNodeAccess();
+                double lat = (na.getLat(iter.getBaseNode()) + na.getLat(iter.getAdjNode())) / 2;
+                double lon = (na.getLon(iter.getBaseNode()) + na.getLon(iter.getAdjNode())) / 2;
+                iter.setWayGeometry(Helper.createPointList(lat + 0.001, lon - 0.001));
+            }
+        }
+        LocationIndexTree index = createIndexNoPrepare(graph, 500);
+        index.prepareIndex();
+        BBox bounds = graph.getBounds();
+        // more points than fit into one batch, some of them outside of the graph bounds
+        double[] lats = new double[3000];
+        double[] lons = new double[3000];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = bounds.minLat - 0.01 + rand.nextDouble() * (bounds.maxLat - bounds.minLat + 0.02);
+            lons[i] = bounds.minLon - 0.01 + rand.nextDouble() * (bounds.maxLon - bounds.minLon + 0.02);
+        }
+        EdgeFilter filter = AccessFilter.allEdges(accessEnc);
+        Snap[] snaps = index.findClosestBatch(lats, lons, filter, threads);
+        assertEquals(lats.length, snaps.length);
+        for (int i = 0; i < lats.length; i++) {
+            Snap expected = index.findClosest(lats[i], lons[i], filter);
+            Snap snap = snaps[i];
+            assertEquals(expected.isValid(), snap.isValid());
+            if (!expected.isValid())
+                continue;
+            assertEquals(expected.getClosestEdge().getEdgeKey(), snap.getClosestEdge().getEdgeKey());
+            assertEquals(expected.getClosestNode(), snap.getClosestNode());
+            assertEquals(expected.getWayIndex(), snap.getWayIndex());
+            assertEquals(expected.getSnappedPosition(), snap.getSnappedPosition());
+            assertEquals(expected.getQueryDistance(), snap.getQueryDistance());
+            assertEquals(expected.getSnappedPoint(), snap.getSnappedPoint());
+        }
+        assertEquals(0, index.findClosestBatch(new double[0], new double[0], filter, threads).length);
+        graph.close();
+    }
+
+    @Test
+    public void testSnapCache() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rand = new Random(42);
+        GHUtility.buildRandomGraph(graph, rand, 200, 2.2, false, false, accessEnc, speedEnc, 60d, 0, 0.8, 0.5);
+        LocationIndexTree index = createIndexNoPrepare(graph, 500);
+        index.prepareIndex();
+        SnapCache cache = new SnapCache(index, 50, 1e-5);
+        BBox bounds = graph.getBounds();
+        EdgeFilter filter = AccessFilter.allEdges(accessEnc);
+        for (int i = 0; i < 100; i++) {
+            // make sure the second point is in the same grid cell
+            double lat = Math.floor((bounds.minLat + rand.nextDouble() * (bounds.maxLat - bounds.minLat)) * 1e5) / 1e5 + 2e-6;
+            double lon = Math.floor((bounds.minLon + rand.nextDouble() * (bounds.maxLon - bounds.minLon)) * 1e5) / 1e5 + 2e-6;
+            Snap expected = index.findClosest(lat, lon, filter);
+            assertSameSnap(expected, cache.findClosest(lat, lon, filter, "car"));
+            long hits = cache.getHits();
+            Snap snap = cache.findClosest(lat + 5e-6, lon + 5e-6, filter, "car");
+            assertEquals(hits + 1, cache.getHits());
+            // the cached edge is used, but the point is snapped onto it exactly
+            assertEquals(expected.getClosestEdge().getEdge(), snap.getClosestEdge().getEdge());
+            assertSameSnap(index.snapToEdge(lat + 5e-6, lon + 5e-6, expected.getClosestEdge().getEdge()), snap);
+            // another filter key does not use the cached edge
+            cache.findClosest(lat, lon, filter, "bike");
+            assertEquals(hits + 1, cache.getHits());
+        }
+        assertEquals(50, cache.size());
+        assertEquals(100, cache.getHits());
+        assertEquals(200, cache.getMisses());
+        graph.close();
+    }
+
+    private static void assertSameSnap(Snap expected, Snap snap) {
+        assertEquals(expected.isValid(), snap.isValid());
+        assertEquals(expected.getClosestEdge().getEdgeKey(), snap.getClosestEdge().getEdgeKey());
+        assertEquals(expected.getClosestNode(), snap.getClosestNode());
+        assertEquals(expected.getWayIndex(), snap.getWayIndex());
+        assertEquals(expected.getSnappedPosition(), snap.getSnappedPosition());
+        assertEquals(expected.getQueryDistance(), snap.getQueryDistance(), 1.e-6);
+        assertEquals(expected.getSnappedPoint(), snap.getSnappedPoint());
+    }
+
+    @Test
+    public void testPackedRTree() {
+        String location = "./target/location-index-rtree";
+        Helper.removeDir(new File(location));
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rand = new Random(7);
+        GHUtility.buildRandomGraph(graph, rand, 300, 2.2, false, false, accessEnc, speedEnc, 60d, 0, 0.8, 0.5);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getEdge() % 2 == 0)
+                iter.setWayGeometry(Helper.createPointList(49.4 + rand.nextDouble() * 0.01, 9.7 + rand.nextDouble() * 0.01));
+            if (iter.getEdge() % 5 == 0)
+                iter.set(accessEnc, false, false);
+        }
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory(location, true).create());
+        index.setPackedRTree(true);
+        index.prepareIndex();
+        index.close();
+
+        index = new LocationIndexTree(graph, new RAMDirectory(location, true));
+        index.setPackedRTree(true);
+        assertTrue(index.loadExisting());
+        assertTrue(index.isPackedRTree());
+        EdgeFilter filter = AccessFilter.allEdges(accessEnc);
+        for (int i = 0; i < 200; i++) {
+            double lat = 49.399 + rand.nextDouble() * 0.012;
+            double lon = 9.699 + rand.nextDouble() * 0.012;
+            List<Double> distances = new ArrayList<>();
+            iter = graph.getAllEdges();
+            while (iter.next()) {
+                if (!filter.accept(iter))
+                    continue;
+                Snap snap = new Snap(lat, lon);
+                EdgeIteratorState edge = graph.getEdgeIteratorState(iter.getEdge(), Integer.MIN_VALUE);
+                index.traverseEdge(lat, lon, edge, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < snap.getQueryDistance())
+                        snap.setQueryDistance(normedDist);
+                });
+                distances.add(DistancePlaneProjection.DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()));
+            }
+            Collections.sort(distances);
+
+            // the R-tree search is exact
+            Snap snap = index.findClosest(lat, lon, filter);
+            assertTrue(snap.isValid());
+            assertEquals(distances.get(0), snap.getQueryDistance(), 1.e-6);
+            assertTrue(filter.accept(snap.getClosestEdge()));
+            List<Snap> snaps = index.findKClosest(lat, lon, 5, filter);
+            assertEquals(5, snaps.size());
+            Set<Integer> edges = new HashSet<>();
+            for (int k = 0; k < snaps.size(); k++) {
+                assertEquals(distances.get(k), snaps.get(k).getQueryDistance(), 1.e-6);
+                assertTrue(edges.add(snaps.get(k).getClosestEdge().getEdge()));
+            }
+        }
+        assertTrue(index.findKClosest(49.6, 9.9, 3, filter).isEmpty());
+        assertFalse(index.findClosest(49.6, 9.9, filter).isValid());
+
+        // every edge with a node within the query bbox is found
+        BBox queryBBox = new BBox(9.702, 9.705, 49.402, 49.406);
+        IntHashSet found = new IntHashSet();
+        index.query(queryBBox, found::add);
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            NodeAccess na = graph.getNodeAccess();
+            if (queryBBox.contains(na.getLat(iter.getBaseNode()), na.getLon(iter.getBaseNode())))
+                assertTrue(found.contains(iter.getEdge()));
+        }
+        index.close();
+        Helper.removeDir(new File(location));
+    }
+
     public BaseGraph createSampleGraph(EncodingManager encodingManager, BooleanEncodedValue accessEnc, DecimalEncodedValue speedEnc) {
         BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
         // length does not matter here but lat,lon and outgoing edges do!
@@ -152,9 +152,7 @@ public class GraphHopperGtfs extends GraphHopper {
         }).toArray();
         if (skippedEdgesForTransfer.length > 0) { // TODO: Elsewhere, we distinguish empty path ("at" a node) from no path
             assert isValidPath(skippedEdgesForTransfer);
-            for (Integer transferEdgeId : transferEdgeIds) {
-                gtfsStorage.getSkippedEdgesForTransfer().put(transferEdgeId, skippedEdgesForTransfer);
-            }
+            gtfsStorage.getTransferPaths().put(transferEdgeIds.stream().mapToInt(Integer::intValue).toArray(), skippedEdgesForTransfer);
         }
     }
 
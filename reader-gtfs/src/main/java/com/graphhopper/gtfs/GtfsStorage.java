@@ -19,9 +19,7 @@
 package com.graphhopper.gtfs;
 
 import com.carrotsearch.hppc.IntIntHashMap;
-import com.carrotsearch.hppc.IntObjectHashMap;
 import com.carrotsearch.hppc.cursors.IntIntCursor;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.conveyal.gtfs.GTFSFeed;
 import com.conveyal.gtfs.model.Fare;
 import com.graphhopper.storage.Directory;
@@ -43,6 +41,7 @@ public class GtfsStorage {
 	private static final Logger LOGGER = LoggerFactory.getLogger(GtfsStorage.class);
 	private LineIntIndex stopIndex;
 	private PtGraph ptGraph;
+	private RaptorTimetable raptorTimetable;
 
 	public void setStopIndex(LineIntIndex stopIndex) {
 		this.stopIndex = stopIndex;
@@ -58,10 +57,21 @@ public class GtfsStorage {
 
     public void setPtGraph(PtGraph ptGraph) {
         this.ptGraph = ptGraph;
+        this.raptorTimetable = null;
     }
 
-	public IntObjectHashMap<int[]> getSkippedEdgesForTransfer() {
-		return skippedEdgesForTransfer;
+    /**
+     * The timetable used by the RAPTOR router. It is derived from the PtGraph the first time it is needed.
+     */
+    public synchronized RaptorTimetable getRaptorTimetable() {
+        if (raptorTimetable == null) {
+            raptorTimetable = RaptorTimetable.fromPtGraph(ptGraph);
+        }
+        return raptorTimetable;
+    }
+
+	public TransferPaths getTransferPaths() {
+		return transferPaths;
 	}
 
 	public static class Validity implements Serializable {
@@ -147,9 +157,10 @@ public class GtfsStorage {
 	private Directory dir;
 	private Set<String> gtfsFeedIds;
 	private Map<String, GTFSFeed> gtfsFeeds = new HashMap<>();
+	private Map<String, PackedGtfsFeed> packedGtfsFeeds = new HashMap<>();
 	private Map<String, Map<String, Fare>> faresByFeed;
 	private Map<FeedIdWithStopId, Integer> stationNodes;
-	private IntObjectHashMap<int[]> skippedEdgesForTransfer;
+	private TransferPaths transferPaths;
 
 	private IntIntHashMap ptToStreet;
 	private IntIntHashMap streetToPt;
@@ -182,10 +193,18 @@ public class GtfsStorage {
 
 			GTFSFeed feed = new GTFSFeed(dbFile);
 			this.gtfsFeeds.put(gtfsFeedId, feed);
+			PackedGtfsFeed packedFeed = new PackedGtfsFeed(dir, gtfsFeedId);
+			if (!packedFeed.loadExisting()) {
+				throw new RuntimeException(String.format("Packed stops and stop times of %s are missing in %s. Please re-import.", gtfsFeedId, dir.getLocation()));
+			}
+			this.packedGtfsFeeds.put(gtfsFeedId, packedFeed);
 		}
 		ptToStreet = deserialize("pt_to_street");
 		streetToPt = deserialize("street_to_pt");
-		skippedEdgesForTransfer = deserializeIntoIntObjectHashMap("skipped_edges_for_transfer");
+		transferPaths = new TransferPaths(dir);
+		if (!transferPaths.loadExisting()) {
+			throw new RuntimeException(String.format("Transfer paths are missing in %s. Please re-import.", dir.getLocation()));
+		}
 		postInit();
 		return true;
 	}
@@ -205,20 +224,6 @@ public class GtfsStorage {
 		}
 	}
 
-	private IntObjectHashMap<int[]> deserializeIntoIntObjectHashMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			IntObjectHashMap<int[]> result = new IntObjectHashMap<>();
-			for (int i = 0; i < size; i++) {
-				result.put(ois.readInt(), ((int[]) ois.readObject()));
-			}
-			return result;
-		} catch (IOException | ClassNotFoundException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	void create() {
 		this.dir.create();
 		final File file = new File(dir.getLocation() + "/transit_schedule");
@@ -229,6 +234,8 @@ public class GtfsStorage {
 		}
 		this.data = DBMaker.newFileDB(file).transactionDisable().mmapFileEnable().asyncWriteEnable().make();
 		init();
+		this.transferPaths = new TransferPaths(dir);
+		this.transferPaths.create(1000);
 	}
 
     private void init() {
@@ -236,7 +243,6 @@ public class GtfsStorage {
 		this.stationNodes = data.getHashMap("stationNodes");
 		this.ptToStreet = new IntIntHashMap();
 		this.streetToPt = new IntIntHashMap();
-		this.skippedEdgesForTransfer = new IntObjectHashMap<>();
 	}
 
 	void loadGtfsFromZipFileOrDirectory(String id, File zipFileOrDirectory) {
@@ -246,6 +252,10 @@ public class GtfsStorage {
 			GTFSFeed feed = new GTFSFeed(dbFile);
 			feed.loadFromFileAndLogErrors(zipFileOrDirectory);
 			this.gtfsFeeds.put(id, feed);
+			PackedGtfsFeed packedFeed = new PackedGtfsFeed(dir, id);
+			packedFeed.create(1000);
+			packedFeed.build(feed);
+			this.packedGtfsFeeds.put(id, packedFeed);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -268,6 +278,10 @@ public class GtfsStorage {
 			for (GTFSFeed feed : gtfsFeeds.values()) {
 				feed.close();
 			}
+			for (PackedGtfsFeed packedFeed : packedGtfsFeeds.values()) {
+				packedFeed.close();
+			}
+			transferPaths.close();
 		}
 	}
 
@@ -287,6 +301,13 @@ public class GtfsStorage {
 		return Collections.unmodifiableMap(gtfsFeeds);
 	}
 
+	/**
+	 * The stops, trips and stop times of each feed in a compact form which is cheap to query at routing time.
+	 */
+	public Map<String, PackedGtfsFeed> getPackedGtfsFeeds() {
+		return Collections.unmodifiableMap(packedGtfsFeeds);
+	}
+
 	public Map<FeedIdWithStopId, Integer> getStationNodes() {
 		return stationNodes;
 	}
@@ -294,18 +315,9 @@ public class GtfsStorage {
 	public void flush() {
 		serialize("pt_to_street", ptToStreet);
 		serialize("street_to_pt", streetToPt);
-		serialize("skipped_edges_for_transfer", skippedEdgesForTransfer);
-	}
-
-	private void serialize(String filename, IntObjectHashMap<int[]> data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (IntObjectCursor<int[]> e : data) {
-				oos.writeInt(e.key);
-				oos.writeObject(e.value);
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+		transferPaths.flush();
+		for (PackedGtfsFeed packedFeed : packedGtfsFeeds.values()) {
+			packedFeed.flush();
 		}
 	}
 
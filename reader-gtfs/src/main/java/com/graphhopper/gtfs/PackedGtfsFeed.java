@@ -0,0 +1,361 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
+import com.conveyal.gtfs.model.Trip;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Columnar, read-only copy of the parts of a GTFS feed which are needed at query time: stops, trips and their stop
+ * times. Everything lives in DataAccess instances, so it is memory-mapped or kept on the heap just like the PtGraph,
+ * and lookups by stop or trip id are binary searches over the sorted records instead of MapDB B-tree traversals.
+ * <p>
+ * Strings are stored only once in a separate string table and referenced by their byte offset. Stop times keep the
+ * scheduled times as they are in the feed (including missing values) as well as the interpolated ones.
+ */
+public class PackedGtfsFeed {
+
+    private static final int NO_STRING = -1;
+    // ids are sorted by their UTF-8 bytes, so that lookups can compare against the string table without decoding
+    private static final Comparator<String> UTF8_ORDER = Comparator.comparing(
+            (String id) -> id.getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned);
+    private static final int FLAG_NOT_INTERPOLATABLE = 1;
+
+    // stops, sorted by stop_id
+    private static final int S_ID = 0, S_NAME = 4, S_ZONE = 8, S_LAT = 12, S_LON = 20;
+    private static final int STOP_BYTES = 28;
+
+    // trips, sorted by trip_id
+    private static final int T_ID = 0, T_ROUTE = 4, T_HEADSIGN = 8, T_FIRST_STOP_TIME = 12, T_STOP_TIME_COUNT = 16, T_FLAGS = 20;
+    private static final int TRIP_BYTES = 24;
+
+    // stop times, grouped by trip and sorted by stop_sequence
+    private static final int ST_SEQUENCE = 0, ST_STOP = 4, ST_ARRIVAL = 8, ST_DEPARTURE = 12,
+            ST_INTERPOLATED_ARRIVAL = 16, ST_INTERPOLATED_DEPARTURE = 20, ST_PICKUP_DROP_OFF = 24;
+    private static final int STOP_TIME_BYTES = 28;
+
+    private final DataAccess stops;
+    private final DataAccess trips;
+    private final DataAccess stopTimes;
+    private final DataAccess strings;
+    private int stopCount;
+    private int tripCount;
+    private int stopTimeCount;
+    private int stringBytes;
+    private int timezone = NO_STRING;
+
+    public PackedGtfsFeed(Directory dir, String feedId) {
+        stops = dir.create(feedId + "_stops", dir.getDefaultType(feedId + "_stops", true), -1);
+        trips = dir.create(feedId + "_trips", dir.getDefaultType(feedId + "_trips", true), -1);
+        stopTimes = dir.create(feedId + "_stop_times", dir.getDefaultType(feedId + "_stop_times", true), -1);
+        strings = dir.create(feedId + "_strings", dir.getDefaultType(feedId + "_strings", false), -1);
+    }
+
+    public void create(long initSize) {
+        stops.create(initSize);
+        trips.create(initSize);
+        stopTimes.create(initSize);
+        strings.create(initSize);
+    }
+
+    public boolean loadExisting() {
+        if (!stops.loadExisting() || !trips.loadExisting() || !stopTimes.loadExisting() || !strings.loadExisting())
+            return false;
+        stopCount = stops.getHeader(0);
+        tripCount = trips.getHeader(0);
+        stopTimeCount = stopTimes.getHeader(0);
+        stringBytes = strings.getHeader(0);
+        timezone = strings.getHeader(4);
+        return true;
+    }
+
+    public void flush() {
+        stops.setHeader(0, stopCount);
+        trips.setHeader(0, tripCount);
+        stopTimes.setHeader(0, stopTimeCount);
+        strings.setHeader(0, stringBytes);
+        strings.setHeader(4, timezone);
+        stops.flush();
+        trips.flush();
+        stopTimes.flush();
+        strings.flush();
+    }
+
+    public void close() {
+        stops.close();
+        trips.close();
+        stopTimes.close();
+        strings.close();
+    }
+
+    /**
+     * Copies stops, trips and stop times from the (MapDB-backed) feed. This is only done at import time.
+     */
+    public void build(GTFSFeed feed) {
+        Map<String, Integer> stringRefs = new HashMap<>();
+        timezone = putString(stringRefs, feed.agency.values().stream().findFirst().map(a -> a.agency_timezone).orElse(null));
+
+        String[] stopIds = feed.stops.keySet().toArray(new String[0]);
+        Arrays.sort(stopIds, UTF8_ORDER);
+        Map<String, Integer> stopIndex = new HashMap<>();
+        stops.ensureCapacity((long) stopIds.length * STOP_BYTES);
+        for (String stopId : stopIds) {
+            Stop stop = feed.stops.get(stopId);
+            long pointer = (long) stopCount * STOP_BYTES;
+            stops.setInt(pointer + S_ID, putString(stringRefs, stop.stop_id));
+            stops.setInt(pointer + S_NAME, putString(stringRefs, stop.stop_name));
+            stops.setInt(pointer + S_ZONE, putString(stringRefs, stop.zone_id));
+            setDouble(stops, pointer + S_LAT, stop.stop_lat);
+            setDouble(stops, pointer + S_LON, stop.stop_lon);
+            stopIndex.put(stopId, stopCount++);
+        }
+
+        String[] tripIds = feed.trips.keySet().toArray(new String[0]);
+        Arrays.sort(tripIds, UTF8_ORDER);
+        trips.ensureCapacity((long) tripIds.length * TRIP_BYTES);
+        for (String tripId : tripIds) {
+            Trip trip = feed.trips.get(tripId);
+            List<StopTime> ordered = new ArrayList<>();
+            feed.getOrderedStopTimesForTrip(tripId).forEach(ordered::add);
+            List<StopTime> interpolated = null;
+            try {
+                interpolated = new ArrayList<>();
+                feed.getInterpolatedStopTimesForTrip(tripId).forEach(interpolated::add);
+            } catch (GTFSFeed.FirstAndLastStopsDoNotHaveTimes e) {
+                interpolated = null;
+            }
+            long pointer = (long) tripCount * TRIP_BYTES;
+            trips.setInt(pointer + T_ID, putString(stringRefs, trip.trip_id));
+            trips.setInt(pointer + T_ROUTE, putString(stringRefs, trip.route_id));
+            trips.setInt(pointer + T_HEADSIGN, putString(stringRefs, trip.trip_headsign));
+            trips.setInt(pointer + T_FIRST_STOP_TIME, stopTimeCount);
+            trips.setInt(pointer + T_STOP_TIME_COUNT, ordered.size());
+            trips.setInt(pointer + T_FLAGS, interpolated == null ? FLAG_NOT_INTERPOLATABLE : 0);
+            tripCount++;
+
+            stopTimes.ensureCapacity((long) (stopTimeCount + ordered.size()) * STOP_TIME_BYTES);
+            for (int i = 0; i < ordered.size(); i++) {
+                StopTime stopTime = ordered.get(i);
+                StopTime interpolatedStopTime = interpolated == null ? stopTime : interpolated.get(i);
+                long stPointer = (long) stopTimeCount * STOP_TIME_BYTES;
+                stopTimes.setInt(stPointer + ST_SEQUENCE, stopTime.stop_sequence);
+                stopTimes.setInt(stPointer + ST_STOP, stopIndex.getOrDefault(stopTime.stop_id, -1));
+                stopTimes.setInt(stPointer + ST_ARRIVAL, stopTime.arrival_time);
+                stopTimes.setInt(stPointer + ST_DEPARTURE, stopTime.departure_time);
+                stopTimes.setInt(stPointer + ST_INTERPOLATED_ARRIVAL, interpolatedStopTime.arrival_time);
+                stopTimes.setInt(stPointer + ST_INTERPOLATED_DEPARTURE, interpolatedStopTime.departure_time);
+                stopTimes.setInt(stPointer + ST_PICKUP_DROP_OFF, (stopTime.pickup_type << 16) | (stopTime.drop_off_type & 0xFFFF));
+                stopTimeCount++;
+            }
+        }
+    }
+
+    public String getTimezone() {
+        return getString(timezone);
+    }
+
+    public int getStopCount() {
+        return stopCount;
+    }
+
+    public int getTripCount() {
+        return tripCount;
+    }
+
+    /**
+     * @return the stop with only id, name, zone and coordinates set, or null if the feed has no such stop
+     */
+    public Stop getStop(String stopId) {
+        int stop = binarySearch(stops, STOP_BYTES, S_ID, stopCount, stopId);
+        return stop < 0 ? null : stop(stop);
+    }
+
+    /**
+     * @return the trip with only id, route and headsign set, or null if the feed has no such trip
+     */
+    public Trip getTrip(String tripId) {
+        int trip = binarySearch(trips, TRIP_BYTES, T_ID, tripCount, tripId);
+        if (trip < 0)
+            return null;
+        long pointer = (long) trip * TRIP_BYTES;
+        Trip result = new Trip();
+        result.trip_id = getString(trips.getInt(pointer + T_ID));
+        result.route_id = getString(trips.getInt(pointer + T_ROUTE));
+        result.trip_headsign = getString(trips.getInt(pointer + T_HEADSIGN));
+        return result;
+    }
+
+    /**
+     * The scheduled stop time as it is in the feed, i.e. arrival or departure time may be missing.
+     *
+     * @return the stop time, or null if the trip does not exist or does not have this stop sequence
+     */
+    public StopTime getStopTime(String tripId, int stopSequence) {
+        int trip = binarySearch(trips, TRIP_BYTES, T_ID, tripCount, tripId);
+        if (trip < 0)
+            return null;
+        long pointer = (long) trip * TRIP_BYTES;
+        int low = trips.getInt(pointer + T_FIRST_STOP_TIME);
+        int high = low + trips.getInt(pointer + T_STOP_TIME_COUNT) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int sequence = stopTimes.getInt((long) mid * STOP_TIME_BYTES + ST_SEQUENCE);
+            if (sequence < stopSequence)
+                low = mid + 1;
+            else if (sequence > stopSequence)
+                high = mid - 1;
+            else
+                return stopTime(tripId, mid, false);
+        }
+        return null;
+    }
+
+    public List<StopTime> getOrderedStopTimesForTrip(String tripId) {
+        return stopTimesForTrip(tripId, false);
+    }
+
+    /**
+     * Like {@link GTFSFeed#getInterpolatedStopTimesForTrip(String)}, but the interpolation was already done at import.
+     *
+     * @throws IllegalStateException if the first or last stop of the trip does not have times
+     */
+    public List<StopTime> getInterpolatedStopTimesForTrip(String tripId) {
+        return stopTimesForTrip(tripId, true);
+    }
+
+    private List<StopTime> stopTimesForTrip(String tripId, boolean interpolated) {
+        int trip = binarySearch(trips, TRIP_BYTES, T_ID, tripCount, tripId);
+        if (trip < 0)
+            return Collections.emptyList();
+        long pointer = (long) trip * TRIP_BYTES;
+        if (interpolated && (trips.getInt(pointer + T_FLAGS) & FLAG_NOT_INTERPOLATABLE) != 0)
+            throw new IllegalStateException("First and last stop of trip " + tripId + " do not have times");
+        int first = trips.getInt(pointer + T_FIRST_STOP_TIME);
+        int count = trips.getInt(pointer + T_STOP_TIME_COUNT);
+        List<StopTime> result = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            result.add(stopTime(tripId, i, interpolated));
+        }
+        return result;
+    }
+
+    private StopTime stopTime(String tripId, int stopTime, boolean interpolated) {
+        long pointer = (long) stopTime * STOP_TIME_BYTES;
+        StopTime result = new StopTime();
+        result.trip_id = tripId;
+        result.stop_sequence = stopTimes.getInt(pointer + ST_SEQUENCE);
+        int stop = stopTimes.getInt(pointer + ST_STOP);
+        result.stop_id = stop < 0 ? null : getString(stops.getInt((long) stop * STOP_BYTES + S_ID));
+        result.arrival_time = stopTimes.getInt(pointer + (interpolated ? ST_INTERPOLATED_ARRIVAL : ST_ARRIVAL));
+        result.departure_time = stopTimes.getInt(pointer + (interpolated ? ST_INTERPOLATED_DEPARTURE : ST_DEPARTURE));
+        int pickupDropOff = stopTimes.getInt(pointer + ST_PICKUP_DROP_OFF);
+        result.pickup_type = pickupDropOff >> 16;
+        result.drop_off_type = (short) pickupDropOff;
+        return result;
+    }
+
+    private Stop stop(int stop) {
+        long pointer = (long) stop * STOP_BYTES;
+        Stop result = new Stop();
+        result.stop_id = getString(stops.getInt(pointer + S_ID));
+        result.stop_name = getString(stops.getInt(pointer + S_NAME));
+        result.zone_id = getString(stops.getInt(pointer + S_ZONE));
+        result.stop_lat = getDouble(stops, pointer + S_LAT);
+        result.stop_lon = getDouble(stops, pointer + S_LON);
+        return result;
+    }
+
+    private int binarySearch(DataAccess da, int entryBytes, int idOffset, int count, String id) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareString(da.getInt((long) mid * entryBytes + idOffset), key);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private int putString(Map<String, Integer> stringRefs, String value) {
+        if (value == null)
+            return NO_STRING;
+        Integer existing = stringRefs.get(value);
+        if (existing != null)
+            return existing;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // keep every entry int-aligned so that the length prefix can be read with getInt
+        long newSize = (long) stringBytes + 4 + ((bytes.length + 3) & ~3);
+        if (newSize > Integer.MAX_VALUE)
+            throw new IllegalStateException("String table of GTFS feed too large: " + newSize);
+        int ref = stringBytes;
+        strings.ensureCapacity(newSize);
+        strings.setInt(ref, bytes.length);
+        strings.setBytes(ref + 4, bytes, bytes.length);
+        stringBytes = (int) newSize;
+        stringRefs.put(value, ref);
+        return ref;
+    }
+
+    /**
+     * Compares the string stored at ref with the given UTF-8 bytes like {@link Arrays#compareUnsigned(byte[], byte[])}
+     */
+    private int compareString(int ref, byte[] key) {
+        int length = strings.getInt(ref);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(strings.getByte(ref + 4 + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private String getString(int ref) {
+        if (ref == NO_STRING)
+            return null;
+        int length = strings.getInt(ref);
+        byte[] bytes = new byte[length];
+        strings.getBytes(ref + 4, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void setDouble(DataAccess da, long pointer, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        da.setInt(pointer, (int) bits);
+        da.setInt(pointer + 4, (int) (bits >>> 32));
+    }
+
+    private static double getDouble(DataAccess da, long pointer) {
+        return Double.longBitsToDouble((da.getInt(pointer) & 0xFFFFFFFFL) | ((long) da.getInt(pointer + 4) << 32));
+    }
+
+}
@@ -61,7 +61,7 @@ public class PtLocationSnapper {
                     IntCursor stopNodeId = result.iterator().next();
                     for (Map.Entry<GtfsStorage.FeedIdWithStopId, Integer> e : gtfsStorage.getStationNodes().entrySet()) {
                         if (e.getValue() == stopNodeId.value) {
-                            Stop stop = gtfsStorage.getGtfsFeeds().get(e.getKey().feedId).stops.get(e.getKey().stopId);
+                            Stop stop = gtfsStorage.getPackedGtfsFeeds().get(e.getKey().feedId).getStop(e.getKey().stopId);
                             final Snap stopSnap = new Snap(stop.stop_lat, stop.stop_lon);
                             stopSnap.setClosestNode(stopNodeId.value);
                             allSnaps.add(() -> new Label.NodeId(gtfsStorage.getPtToStreet().getOrDefault(stopSnap.getClosestNode(), -1), stopSnap.getClosestNode()));
@@ -92,7 +92,7 @@ public class PtLocationSnapper {
         for (Map.Entry<String, GTFSFeed> entry : gtfsStorage.getGtfsFeeds().entrySet()) {
             final Integer node = gtfsStorage.getStationNodes().get(new GtfsStorage.FeedIdWithStopId(entry.getKey(), station.stop_id));
             if (node != null) {
-                Stop stop = gtfsStorage.getGtfsFeeds().get(entry.getKey()).stops.get(station.stop_id);
+                Stop stop = gtfsStorage.getPackedGtfsFeeds().get(entry.getKey()).getStop(station.stop_id);
                 final Snap stationSnap = new Snap(stop.stop_lat, stop.stop_lon);
                 stationSnap.setClosestNode(node);
                 return stationSnap;
@@ -18,6 +18,7 @@
 
 package com.graphhopper.gtfs;
 
+import com.carrotsearch.hppc.IntObjectHashMap;
 import com.conveyal.gtfs.GTFSFeed;
 import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.GHResponse;
@@ -46,6 +47,7 @@ import javax.inject.Inject;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 import static java.util.Comparator.comparingLong;
@@ -110,6 +112,10 @@ public final class PtRouterImpl implements PtRouter {
             return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.fromProtobuf(baseGraph, encodingManager, gtfsStorage, this.transfers, realtimeFeeds), new PathDetailsBuilderFactory());
         }
 
+        public PtRouter createWith(RealtimeFeed realtimeFeed) {
+            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, realtimeFeed, new PathDetailsBuilderFactory());
+        }
+
         public PtRouter createWithoutRealtimeFeed() {
             return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.empty(), new PathDetailsBuilderFactory());
         }
@@ -132,6 +138,7 @@ public final class PtRouterImpl implements PtRouter {
         private final GHLocation exit;
         private final Translation translation;
         private final List<String> requestedPathDetails;
+        private final boolean raptor;
 
         private final GHResponse response = new GHResponse();
         private final long limitTripTime;
@@ -139,6 +146,7 @@ public final class PtRouterImpl implements PtRouter {
         private QueryGraph queryGraph;
         private int visitedNodes;
         private MultiCriteriaLabelSetting router;
+        private ToLongFunction<Label> solutionWeight;
 
         private final Profile accessProfile;
         private final EdgeFilter accessSnapFilter;
@@ -166,6 +174,15 @@ public final class PtRouterImpl implements PtRouter {
             limitTripTime = request.getLimitTripTime() != null ? request.getLimitTripTime().toMillis() : Long.MAX_VALUE;
             limitStreetTime = request.getLimitStreetTime() != null ? request.getLimitStreetTime().toMillis() : Long.MAX_VALUE;
             requestedPathDetails = request.getPathDetails();
+            if ("raptor".equals(request.getAlgorithm())) {
+                if (arriveBy)
+                    throw new IllegalArgumentException("The raptor algorithm does not support arrive_by");
+                raptor = true;
+            } else if ("label_setting".equals(request.getAlgorithm())) {
+                raptor = false;
+            } else {
+                throw new IllegalArgumentException("Unknown algorithm: " + request.getAlgorithm());
+            }
             accessProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getAccessProfile())).findFirst().get();
             accessWeighting = weightingFactory.createWeighting(accessProfile, new PMap(), false);
             accessSnapFilter = new DefaultSnapFilter(new FastestWeighting(
@@ -206,7 +223,7 @@ public final class PtRouterImpl implements PtRouter {
                 final ResponsePath responsePath = tripFromLabel.createResponsePath(translation, waypoints, queryGraph, accessWeighting, egressWeighting, solution, requestedPathDetails);
                 responsePath.setImpossible(solution.stream().anyMatch(t -> t.label.impossible));
                 responsePath.setTime((solution.get(solution.size() - 1).label.currentTime - solution.get(0).label.currentTime));
-                responsePath.setRouteWeight(router.weight(solution.get(solution.size() - 1).label));
+                responsePath.setRouteWeight(solutionWeight.applyAsLong(solution.get(solution.size() - 1).label));
                 response.add(responsePath);
             }
             Comparator<ResponsePath> c = Comparator.comparingInt(p -> (p.isImpossible() ? 1 : 0));
@@ -237,6 +254,9 @@ public final class PtRouterImpl implements PtRouter {
             for (Label stationLabel : stationLabels) {
                 reverseSettledSet.put(stationLabel.node, stationLabel);
             }
+            if (raptor) {
+                return findPathsWithRaptor(startNode, reverseSettledSet, stopWatch);
+            }
 
             GraphExplorer graphExplorer = new GraphExplorer(queryGraph, ptGraph, arriveBy ? egressWeighting : accessWeighting, gtfsStorage, realtimeFeed, arriveBy, false, true, walkSpeedKmH, false, blockedRouteTypes);
             List<Label> discoveredSolutions = new ArrayList<>();
@@ -244,6 +264,7 @@ public final class PtRouterImpl implements PtRouter {
             router.setBetaTransfers(betaTransfers);
             router.setBetaStreetTime(betaStreetTime);
             router.setBoardingPenaltyByRouteType(routeType -> transferPenaltiesByRouteType.getOrDefault(routeType, 0L));
+            solutionWeight = router::weight;
             final long smallestStationLabelWalkTime = stationLabels.stream()
                     .mapToLong(l -> l.streetTime).min()
                     .orElse(Long.MAX_VALUE);
@@ -332,15 +353,7 @@ public final class PtRouterImpl implements PtRouter {
                     pp.addAll(0, patchedPathFromStation);
                     paths.add(pp);
                 } else {
-                    Label destinationStopLabel = pathToDestinationStop.get(pathToDestinationStop.size() - 1).label;
-                    List<Label.Transition> pathFromStation = Label.getTransitions(reverseSettledSet.get(destinationStopLabel.node), true);
-                    long diff = destinationStopLabel.currentTime - pathFromStation.get(0).label.currentTime;
-                    List<Label.Transition> patchedPathFromStation = pathFromStation.stream().map(t -> {
-                        return new Label.Transition(new Label(t.label.currentTime + diff, t.label.edge, t.label.node, destinationStopLabel.nTransfers + t.label.nTransfers, t.label.departureTime, destinationStopLabel.streetTime + pathFromStation.get(0).label.streetTime, destinationStopLabel.extraWeight + t.label.extraWeight, t.label.residualDelay, t.label.impossible, null), t.edge);
-                    }).collect(Collectors.toList());
-                    List<Label.Transition> pp = new ArrayList<>(pathToDestinationStop);
-                    pp.addAll(patchedPathFromStation.subList(1, pathFromStation.size()));
-                    paths.add(pp);
+                    paths.add(appendPathFromStation(pathToDestinationStop, reverseSettledSet));
                 }
             }
 
@@ -356,6 +369,139 @@ public final class PtRouterImpl implements PtRouter {
             return paths;
         }
 
+        private List<Label.Transition> appendPathFromStation(List<Label.Transition> pathToDestinationStop, Map<Label.NodeId, Label> reverseSettledSet) {
+            Label destinationStopLabel = pathToDestinationStop.get(pathToDestinationStop.size() - 1).label;
+            List<Label.Transition> pathFromStation = Label.getTransitions(reverseSettledSet.get(destinationStopLabel.node), true);
+            long diff = destinationStopLabel.currentTime - pathFromStation.get(0).label.currentTime;
+            List<Label.Transition> patchedPathFromStation = pathFromStation.stream().map(t -> {
+                return new Label.Transition(new Label(t.label.currentTime + diff, t.label.edge, t.label.node, destinationStopLabel.nTransfers + t.label.nTransfers, t.label.departureTime, destinationStopLabel.streetTime + pathFromStation.get(0).label.streetTime, destinationStopLabel.extraWeight + t.label.extraWeight, t.label.residualDelay, t.label.impossible, null), t.edge);
+            }).collect(Collectors.toList());
+            List<Label.Transition> pp = new ArrayList<>(pathToDestinationStop);
+            pp.addAll(patchedPathFromStation.subList(1, pathFromStation.size()));
+            return pp;
+        }
+
+        private List<List<Label.Transition>> findPathsWithRaptor(Label.NodeId startNode, Map<Label.NodeId, Label> reverseSettledSet, StopWatch stopWatch) {
+            RaptorTimetable timetable = gtfsStorage.getRaptorTimetable();
+            Raptor raptorRouter = new Raptor(timetable, realtimeFeed);
+            raptorRouter.setBlockedRouteTypes(blockedRouteTypes);
+            raptorRouter.setMindTransfers(!ignoreTransfers);
+            raptorRouter.setLimitTripTime(limitTripTime);
+            long t0 = initialTime.toEpochMilli();
+            solutionWeight = label -> label.currentTime - t0 + (long) (label.nTransfers * betaTransfers) + (long) (label.streetTime * (betaStreetTime - 1.0)) + label.extraWeight;
+
+            // The street part is still done by label setting: Forward to the departure platforms, and
+            // (already done by the caller) backward from the destination to the arrival platforms.
+            GraphExplorer accessGraphExplorer = new GraphExplorer(queryGraph, ptGraph, accessWeighting, gtfsStorage, realtimeFeed, false, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting accessRouter = new MultiCriteriaLabelSetting(accessGraphExplorer, false, false, false, 0, new ArrayList<>());
+            accessRouter.setBetaStreetTime(betaStreetTime);
+            accessRouter.setLimitStreetTime(limitStreetTime);
+            IntObjectHashMap<Label> accessLabels = new IntObjectHashMap<>();
+            for (Label label : accessRouter.calcLabels(startNode, initialTime)) {
+                visitedNodes++;
+                if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                    int stop = timetable.getStopForPlatformNode(label.node.ptNode);
+                    if (stop != -1 && !accessLabels.containsKey(stop)) {
+                        accessLabels.put(stop, label);
+                        raptorRouter.addAccess(stop, label.currentTime - t0);
+                    }
+                }
+            }
+            Label accessEgressModeOnlySolution = null;
+            for (Label label : reverseSettledSet.values()) {
+                if (label.node.equals(startNode)) {
+                    accessEgressModeOnlySolution = new Label(t0, null, startNode, 0, null, 0, 0, 0, false, null);
+                    raptorRouter.setWalkTime(t0 - label.currentTime);
+                } else {
+                    int platform = timetable.getArrivalPlatformForNode(label.node.ptNode);
+                    if (platform != -1) {
+                        raptorRouter.addEgress(platform, t0 - label.currentTime);
+                    }
+                }
+            }
+
+            List<Raptor.Journey> journeys = raptorRouter.route(initialTime, profileQuery ? maxProfileDuration : 0);
+            visitedNodes += raptorRouter.getVisitedStopTimes();
+            List<List<Label.Transition>> paths = new ArrayList<>();
+            if (accessEgressModeOnlySolution != null && (!ignoreTransfers || journeys.isEmpty())) {
+                paths.add(appendPathFromStation(Label.getTransitions(accessEgressModeOnlySolution, false), reverseSettledSet));
+            }
+            for (Raptor.Journey journey : journeys) {
+                if (paths.size() >= limitSolutions)
+                    break;
+                Label label = journeyToLabel(journey, timetable, accessLabels.get(journey.accessStop), accessGraphExplorer);
+                paths.add(appendPathFromStation(Label.getTransitions(label, false), reverseSettledSet));
+            }
+
+            response.addDebugInfo("routing:" + stopWatch.stop().getSeconds() + "s");
+            response.getHints().putObject("visited_nodes.sum", visitedNodes);
+            response.getHints().putObject("visited_nodes.average", visitedNodes);
+            if (paths.isEmpty()) {
+                response.addError(new ConnectionNotFoundException("No route found", Collections.emptyMap()));
+            }
+            return paths;
+        }
+
+        private Label journeyToLabel(Raptor.Journey journey, RaptorTimetable timetable, Label accessLabel, GraphExplorer explorer) {
+            long shift = journey.departureTime - initialTime.toEpochMilli();
+            Label label = null;
+            for (Label.Transition t : Label.getTransitions(accessLabel, false)) {
+                label = new Label(t.label.currentTime + shift, t.edge, t.label.node, 0, null, t.label.streetTime, 0, 0, false, label);
+            }
+            long extraWeight = transferPenaltiesByRouteType.getOrDefault(accessLabel.edge.getRouteType(), 0L);
+            int stopTime = -1;
+            for (Raptor.Ride ride : journey.rides) {
+                stopTime = timetable.stopTime(ride.trip, ride.boardPosition);
+                long departureTime = ride.serviceDayStart + timetable.departures[stopTime] * 1000L;
+                PtGraph.PtEdge board = ptGraph.edge(timetable.boardEdges[stopTime]);
+                if (ride.transfer == -1) {
+                    for (PtGraph.PtEdge edge : ptGraph.backEdgesAround(board.getBaseNode())) {
+                        if (edge.getType() == GtfsStorage.EdgeType.ENTER_TIME_EXPANDED_NETWORK)
+                            label = append(explorer, label, edge, departureTime, extraWeight);
+                    }
+                } else {
+                    PtGraph.PtEdge transfer = ptGraph.edge(timetable.transferEdge[ride.transfer]);
+                    extraWeight += transferPenaltiesByRouteType.getOrDefault(transfer.getAttrs().route_type, 0L);
+                    label = waitUntil(explorer, label, transfer.getBaseNode(), GtfsStorage.EdgeType.WAIT_ARRIVAL, extraWeight);
+                    label = append(explorer, label, transfer, label.currentTime + transfer.getTime() * 1000L, extraWeight);
+                    label = waitUntil(explorer, label, board.getBaseNode(), GtfsStorage.EdgeType.WAIT, extraWeight);
+                }
+                label = append(explorer, label, board, departureTime, extraWeight);
+                for (int position = ride.boardPosition + 1; position <= ride.alightPosition; position++) {
+                    stopTime = timetable.stopTime(ride.trip, position);
+                    label = append(explorer, label, ptGraph.edge(timetable.hopEdges[stopTime]), ride.serviceDayStart + timetable.arrivals[stopTime] * 1000L, extraWeight);
+                    if (position < ride.alightPosition)
+                        label = append(explorer, label, ptGraph.edge(timetable.dwellEdges[stopTime]), ride.serviceDayStart + timetable.departures[stopTime] * 1000L, extraWeight);
+                }
+                label = append(explorer, label, ptGraph.edge(timetable.alightEdges[stopTime]), label.currentTime, extraWeight);
+            }
+            int leaveEdge = timetable.arrivalTimelineLeaveEdge[timetable.arrivalTimelines[stopTime]];
+            return append(explorer, label, ptGraph.edge(leaveEdge), label.currentTime, extraWeight);
+        }
+
+        private Label append(GraphExplorer explorer, Label parent, PtGraph.PtEdge ptEdge, long time, long extraWeight) {
+            GraphExplorer.MultiModalEdge edge = explorer.new MultiModalEdge(ptEdge);
+            Long departureTime = parent.departureTime;
+            if (departureTime == null && edge.getType() == GtfsStorage.EdgeType.BOARD)
+                departureTime = time - parent.streetTime;
+            return new Label(time, edge, edge.getAdjNode(), parent.nTransfers + edge.getTransfers(), departureTime, parent.streetTime, extraWeight, 0, false, parent);
+        }
+
+        private Label waitUntil(GraphExplorer explorer, Label label, int timelineNode, GtfsStorage.EdgeType waitEdgeType, long extraWeight) {
+            int start = label.node.ptNode;
+            while (label.node.ptNode != timelineNode) {
+                PtGraph.PtEdge wait = null;
+                for (PtGraph.PtEdge edge : ptGraph.edgesAround(label.node.ptNode)) {
+                    if (edge.getType() == waitEdgeType || edge.getType() == GtfsStorage.EdgeType.OVERNIGHT)
+                        wait = edge;
+                }
+                if (wait == null || wait.getAdjNode() == start)
+                    throw new IllegalStateException("Timeline at node " + start + " does not lead to " + timelineNode);
+                label = append(explorer, label, wait, label.currentTime + wait.getTime() * 1000L, extraWeight);
+            }
+            return label;
+        }
+
         private boolean profileFinished(MultiCriteriaLabelSetting router, List<Label> discoveredSolutions, Label walkSolution) {
             return discoveredSolutions.size() >= limitSolutions ||
                     (!discoveredSolutions.isEmpty() && router.departureTimeSinceStartTime(discoveredSolutions.get(discoveredSolutions.size() - 1)) != null && router.departureTimeSinceStartTime(discoveredSolutions.get(discoveredSolutions.size() - 1)) > maxProfileDuration) ||
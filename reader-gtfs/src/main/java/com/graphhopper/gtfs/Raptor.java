@@ -0,0 +1,537 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Round-based public transit router (RAPTOR) working on a {@link RaptorTimetable}.
+ * <p>
+ * Round k finds the earliest arrival at every platform using at most k trips. For profile queries,
+ * the rounds are repeated for every departure within the profile window, latest first, re-using the
+ * labels of the previous run (rRAPTOR), which yields the Pareto set of journeys with respect to
+ * departure time, arrival time and number of trips.
+ * <p>
+ * Access and egress are given as walking durations to departure and from arrival platforms, so the
+ * street part of the query is left to the caller. Waiting at a stop is limited to the following
+ * service day. Realtime information is only used to skip blocked boardings and alightings; delays
+ * and added trips, as well as staying seated across block transfers, are not considered.
+ */
+public class Raptor {
+
+    private static final int ACCESS = -1;
+    private static final int COPIED = -2;
+    private static final long UNREACHED = Long.MAX_VALUE;
+
+    private final RaptorTimetable timetable;
+    private final RealtimeFeed realtimeFeed;
+    private int blockedRouteTypes;
+    private boolean mindTransfers = true;
+    private long limitTripTime = Long.MAX_VALUE;
+    private int maxRounds = 16;
+    private int visitedStopTimes;
+
+    private final long[] accessTime;
+    private final long[] egressTime;
+    private long walkTime = UNREACHED;
+
+    // labels per round
+    private final List<long[]> stopArrival = new ArrayList<>();
+    private final List<int[]> stopPredecessor = new ArrayList<>();
+    private final List<long[]> platformArrival = new ArrayList<>();
+    private final List<int[]> platformTrip = new ArrayList<>();
+    private final List<long[]> platformServiceDay = new ArrayList<>();
+    private final List<int[]> platformBoardPosition = new ArrayList<>();
+    private final List<int[]> platformAlightPosition = new ArrayList<>();
+    private final List<long[]> targetArrival = new ArrayList<>();
+    private final List<int[]> targetPlatform = new ArrayList<>();
+
+    private final BitSet markedStops = new BitSet();
+    private final BitSet improvedPlatforms = new BitSet();
+    private final int[] patternFirstPosition;
+    private long startTime;
+    private boolean profileQuery;
+
+    public Raptor(RaptorTimetable timetable, RealtimeFeed realtimeFeed) {
+        this.timetable = timetable;
+        this.realtimeFeed = realtimeFeed;
+        this.accessTime = new long[timetable.getStopCount()];
+        this.egressTime = new long[timetable.getArrivalPlatformCount()];
+        this.patternFirstPosition = new int[timetable.getPatternCount()];
+        Arrays.fill(accessTime, UNREACHED);
+        Arrays.fill(egressTime, UNREACHED);
+        Arrays.fill(patternFirstPosition, Integer.MAX_VALUE);
+    }
+
+    public void setBlockedRouteTypes(int blockedRouteTypes) {
+        this.blockedRouteTypes = blockedRouteTypes;
+    }
+
+    public void setMindTransfers(boolean mindTransfers) {
+        this.mindTransfers = mindTransfers;
+    }
+
+    public void setLimitTripTime(long limitTripTime) {
+        this.limitTripTime = limitTripTime;
+    }
+
+    public void setMaxRounds(int maxRounds) {
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * Walking time in milliseconds from the origin to the given stop. Of several values, the smallest is used.
+     */
+    public void addAccess(int stop, long millis) {
+        accessTime[stop] = Math.min(accessTime[stop], millis);
+    }
+
+    /**
+     * Walking time in milliseconds from the given arrival platform to the destination.
+     */
+    public void addEgress(int arrivalPlatform, long millis) {
+        egressTime[arrivalPlatform] = Math.min(egressTime[arrivalPlatform], millis);
+    }
+
+    /**
+     * Walking time in milliseconds from the origin to the destination without using transit, if possible.
+     * Journeys which are not faster than walking are not reported.
+     */
+    public void setWalkTime(long millis) {
+        this.walkTime = millis;
+    }
+
+    public int getVisitedStopTimes() {
+        return visitedStopTimes;
+    }
+
+    public List<Journey> route(Instant earliestDeparture, long profileDurationMillis) {
+        startTime = earliestDeparture.toEpochMilli();
+        profileQuery = profileDurationMillis > 0;
+        List<Journey> journeys = new ArrayList<>();
+        if (!profileQuery) {
+            run(startTime, journeys);
+        } else {
+            for (long departureTime : candidateDepartureTimes(startTime, startTime + profileDurationMillis)) {
+                run(departureTime, journeys);
+            }
+        }
+        return paretoFilter(journeys);
+    }
+
+    // Departures which can matter in a profile query are exactly those where catching some trip at
+    // some access stop is just possible, plus both ends of the time window. The end is needed because
+    // the best journey for the end of the window may well depart after it.
+    private long[] candidateDepartureTimes(long from, long to) {
+        TreeSet<Long> result = new TreeSet<>();
+        result.add(from);
+        result.add(to);
+        for (int stop = 0; stop < timetable.getStopCount(); stop++) {
+            if (accessTime[stop] == UNREACHED)
+                continue;
+            for (int i = timetable.stopPatternsOffset[stop]; i < timetable.stopPatternsOffset[stop + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                int position = timetable.stopPatternPositions[i];
+                ZoneId zone = timetable.patternZone[pattern];
+                LocalDate firstDay = Instant.ofEpochMilli(from + accessTime[stop]).atZone(zone).toLocalDate().minusDays(timetable.patternMaxDays[pattern]);
+                LocalDate lastDay = Instant.ofEpochMilli(to + accessTime[stop]).atZone(zone).toLocalDate();
+                for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                    long serviceDayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+                    for (int trip = timetable.patternTripsOffset[pattern]; trip < timetable.patternTripsOffset[pattern + 1]; trip++) {
+                        int stopTime = timetable.stopTime(trip, position);
+                        long departureTime = serviceDayStart + timetable.departures[stopTime] * 1000L - accessTime[stop];
+                        if (departureTime >= from && departureTime <= to && canBoard(stopTime, day.toEpochDay()))
+                            result.add(departureTime);
+                    }
+                }
+            }
+        }
+        return result.descendingSet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void run(long departureTime, List<Journey> journeys) {
+        ensureRound(0);
+        long[] stopArrival0 = stopArrival.get(0);
+        int[] stopPredecessor0 = stopPredecessor.get(0);
+        for (int stop = 0; stop < accessTime.length; stop++) {
+            if (accessTime[stop] != UNREACHED && departureTime + accessTime[stop] < stopArrival0[stop]) {
+                stopArrival0[stop] = departureTime + accessTime[stop];
+                stopPredecessor0[stop] = ACCESS;
+                markedStops.set(stop);
+            }
+        }
+        if (walkTime != UNREACHED && departureTime + walkTime < targetArrival.get(0)[0]) {
+            targetArrival.get(0)[0] = departureTime + walkTime;
+            targetPlatform.get(0)[0] = -1;
+        }
+        BitSet improvedTargets = new BitSet();
+        for (int round = 1; round <= maxRounds && !markedStops.isEmpty(); round++) {
+            ensureRound(round);
+            copyFromPreviousRound(round);
+            IntQueue patterns = collectPatterns();
+            improvedPlatforms.clear();
+            for (int i = 0; i < patterns.size; i++) {
+                scanPattern(patterns.values[i], round);
+            }
+            relaxTransfers(round);
+            if (updateTarget(round)) {
+                improvedTargets.set(round);
+            }
+        }
+        markedStops.clear();
+        for (int round = improvedTargets.nextSetBit(0); round >= 0; round = improvedTargets.nextSetBit(round + 1)) {
+            Journey journey = reconstruct(round, targetPlatform.get(round)[0]);
+            if (journey != null)
+                journeys.add(journey);
+        }
+    }
+
+    private void ensureRound(int round) {
+        while (stopArrival.size() <= round) {
+            stopArrival.add(filled(new long[timetable.getStopCount()]));
+            stopPredecessor.add(new int[timetable.getStopCount()]);
+            platformArrival.add(filled(new long[timetable.getArrivalPlatformCount()]));
+            platformTrip.add(new int[timetable.getArrivalPlatformCount()]);
+            platformServiceDay.add(new long[timetable.getArrivalPlatformCount()]);
+            platformBoardPosition.add(new int[timetable.getArrivalPlatformCount()]);
+            platformAlightPosition.add(new int[timetable.getArrivalPlatformCount()]);
+            targetArrival.add(new long[]{UNREACHED});
+            targetPlatform.add(new int[]{-1});
+        }
+    }
+
+    private static long[] filled(long[] array) {
+        Arrays.fill(array, UNREACHED);
+        return array;
+    }
+
+    private void copyFromPreviousRound(int round) {
+        long[] previousStops = stopArrival.get(round - 1), stops = stopArrival.get(round);
+        int[] stopPredecessors = stopPredecessor.get(round);
+        for (int stop = 0; stop < stops.length; stop++) {
+            if (previousStops[stop] < stops[stop]) {
+                stops[stop] = previousStops[stop];
+                stopPredecessors[stop] = COPIED;
+            }
+        }
+        long[] previousPlatforms = platformArrival.get(round - 1), platforms = platformArrival.get(round);
+        int[] platformTrips = platformTrip.get(round);
+        for (int platform = 0; platform < platforms.length; platform++) {
+            if (previousPlatforms[platform] < platforms[platform]) {
+                platforms[platform] = previousPlatforms[platform];
+                platformTrips[platform] = COPIED;
+            }
+        }
+        if (targetArrival.get(round - 1)[0] < targetArrival.get(round)[0]) {
+            targetArrival.get(round)[0] = targetArrival.get(round - 1)[0];
+            targetPlatform.get(round)[0] = COPIED;
+        }
+    }
+
+    private IntQueue collectPatterns() {
+        IntQueue patterns = new IntQueue();
+        for (int stop = markedStops.nextSetBit(0); stop >= 0; stop = markedStops.nextSetBit(stop + 1)) {
+            for (int i = timetable.stopPatternsOffset[stop]; i < timetable.stopPatternsOffset[stop + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                if (patternFirstPosition[pattern] == Integer.MAX_VALUE)
+                    patterns.add(pattern);
+                patternFirstPosition[pattern] = Math.min(patternFirstPosition[pattern], timetable.stopPatternPositions[i]);
+            }
+        }
+        markedStops.clear();
+        return patterns;
+    }
+
+    private void scanPattern(int pattern, int round) {
+        int firstPosition = patternFirstPosition[pattern];
+        patternFirstPosition[pattern] = Integer.MAX_VALUE;
+        long[] previousStops = stopArrival.get(round - 1);
+        long[] platforms = platformArrival.get(round);
+        long target = targetArrival.get(round)[0];
+        int stopsOffset = timetable.patternStopsOffset[pattern];
+        int trip = -1;
+        long serviceDay = 0;
+        long serviceDayStart = 0;
+        int boardPosition = -1;
+        for (int position = firstPosition; position < timetable.patternLength[pattern]; position++) {
+            if (trip != -1) {
+                visitedStopTimes++;
+                int stopTime = timetable.stopTime(trip, position);
+                long arrival = serviceDayStart + timetable.arrivals[stopTime] * 1000L;
+                int platform = timetable.arrivalTimelinePlatform[timetable.arrivalTimelines[stopTime]];
+                if (arrival < platforms[platform] && arrival < target && arrival - startTime <= limitTripTime && canAlight(stopTime, serviceDay)) {
+                    platforms[platform] = arrival;
+                    platformTrip.get(round)[platform] = trip;
+                    platformServiceDay.get(round)[platform] = serviceDayStart;
+                    platformBoardPosition.get(round)[platform] = boardPosition;
+                    platformAlightPosition.get(round)[platform] = position;
+                    improvedPlatforms.set(platform);
+                }
+            }
+            long readyTime = previousStops[timetable.patternStops[stopsOffset + position]];
+            if (readyTime == UNREACHED)
+                continue;
+            if (trip == -1 || readyTime <= serviceDayStart + timetable.departures[timetable.stopTime(trip, position)] * 1000L) {
+                long[] found = earliestTrip(pattern, position, readyTime);
+                if (found != null && (trip == -1 || found[1] + timetable.departures[timetable.stopTime((int) found[0], position)] * 1000L
+                        < serviceDayStart + timetable.departures[timetable.stopTime(trip, position)] * 1000L)) {
+                    trip = (int) found[0];
+                    serviceDayStart = found[1];
+                    serviceDay = found[2];
+                    boardPosition = position;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the trip, the start of its service day in epoch millis and its service day as epoch day
+     */
+    private long[] earliestTrip(int pattern, int position, long readyTime) {
+        ZoneId zone = timetable.patternZone[pattern];
+        LocalDate date = Instant.ofEpochMilli(readyTime).atZone(zone).toLocalDate();
+        long[] best = null;
+        long bestDeparture = UNREACHED;
+        int tripsFrom = timetable.patternTripsOffset[pattern];
+        int tripsTo = timetable.patternTripsOffset[pattern + 1];
+        for (LocalDate day = date.minusDays(timetable.patternMaxDays[pattern]); !day.isAfter(date.plusDays(1)); day = day.plusDays(1)) {
+            long serviceDayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            long seconds = Math.floorDiv(readyTime - serviceDayStart + 999, 1000);
+            int lo = tripsFrom, hi = tripsTo;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timetable.departures[timetable.stopTime(mid, position)] < seconds) lo = mid + 1;
+                else hi = mid;
+            }
+            for (int trip = lo; trip < tripsTo; trip++) {
+                int stopTime = timetable.stopTime(trip, position);
+                long departure = serviceDayStart + timetable.departures[stopTime] * 1000L;
+                if (departure >= bestDeparture)
+                    break;
+                if (departure >= readyTime && canBoard(stopTime, day.toEpochDay())) {
+                    best = new long[]{trip, serviceDayStart, day.toEpochDay()};
+                    bestDeparture = departure;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean canBoard(int stopTime, long serviceDay) {
+        return timetable.isValidOn(stopTime, serviceDay, timetable.departures[stopTime])
+                && !realtimeFeed.isBlocked(timetable.boardEdges[stopTime]);
+    }
+
+    private boolean canAlight(int stopTime, long serviceDay) {
+        return timetable.isValidOn(stopTime, serviceDay, timetable.arrivals[stopTime])
+                && !realtimeFeed.isBlocked(timetable.alightEdges[stopTime]);
+    }
+
+    private void relaxTransfers(int round) {
+        long[] platforms = platformArrival.get(round);
+        long[] stops = stopArrival.get(round);
+        int[] stopPredecessors = stopPredecessor.get(round);
+        long target = targetArrival.get(round)[0];
+        for (int platform = improvedPlatforms.nextSetBit(0); platform >= 0; platform = improvedPlatforms.nextSetBit(platform + 1)) {
+            int arrivalTimeline = timetable.arrivalTimelines[timetable.stopTime(platformTrip.get(round)[platform], platformAlightPosition.get(round)[platform])];
+            for (int i = timetable.transfersOffset[arrivalTimeline]; i < timetable.transfersOffset[arrivalTimeline + 1]; i++) {
+                int routeType = timetable.transferRouteType[i];
+                if (routeType != -1 && ((blockedRouteTypes >> routeType) & 1) == 1)
+                    continue;
+                int stop = timetable.transferToStop[i];
+                long time = platforms[platform] + timetable.transferSeconds[i] * 1000L;
+                // An earlier arrival at the same platform may reach the same departure, in which case we still
+                // want to point to the arrival timeline which now belongs to the platform label.
+                if (time < target && (time < stops[stop] || time == stops[stop] && stopPredecessors[stop] >= 0
+                        && timetable.arrivalTimelinePlatform[transferSource(stopPredecessors[stop])] == platform)) {
+                    stops[stop] = time;
+                    stopPredecessors[stop] = i;
+                    markedStops.set(stop);
+                }
+            }
+        }
+    }
+
+    private int transferSource(int transfer) {
+        int lo = 0, hi = timetable.transfersOffset.length - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (timetable.transfersOffset[mid] <= transfer) lo = mid;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private boolean updateTarget(int round) {
+        long[] platforms = platformArrival.get(round);
+        long[] target = targetArrival.get(round);
+        boolean improved = false;
+        for (int platform = improvedPlatforms.nextSetBit(0); platform >= 0; platform = improvedPlatforms.nextSetBit(platform + 1)) {
+            if (egressTime[platform] == UNREACHED)
+                continue;
+            long arrival = platforms[platform] + egressTime[platform];
+            if (arrival < target[0] && arrival - startTime <= limitTripTime) {
+                target[0] = arrival;
+                targetPlatform.get(round)[0] = platform;
+                improved = true;
+            }
+        }
+        return improved;
+    }
+
+    private Journey reconstruct(int round, int egressPlatform) {
+        if (egressPlatform < 0)
+            return null;
+        Journey journey = new Journey();
+        journey.egressPlatform = egressPlatform;
+        journey.egressTime = egressTime[egressPlatform];
+        int platform = egressPlatform;
+        while (true) {
+            while (platformTrip.get(round)[platform] == COPIED)
+                round--;
+            Ride ride = new Ride();
+            ride.trip = platformTrip.get(round)[platform];
+            ride.serviceDayStart = platformServiceDay.get(round)[platform];
+            ride.boardPosition = platformBoardPosition.get(round)[platform];
+            ride.alightPosition = platformAlightPosition.get(round)[platform];
+            ride.transfer = -1;
+            journey.rides.add(0, ride);
+            int stop = timetable.patternStops[timetable.patternStopsOffset[patternOf(ride.trip)] + ride.boardPosition];
+            round--;
+            while (stopPredecessor.get(round)[stop] == COPIED)
+                round--;
+            int predecessor = stopPredecessor.get(round)[stop];
+            if (predecessor == ACCESS) {
+                journey.accessStop = stop;
+                journey.accessTime = accessTime[stop];
+                journey.departureTime = stopArrival.get(round)[stop] - accessTime[stop];
+                break;
+            }
+            platform = timetable.arrivalTimelinePlatform[transferSource(predecessor)];
+            int arrivalTimeline = timetable.arrivalTimelines[timetable.stopTime(platformTripFollowingCopies(round, platform), platformAlightPositionFollowingCopies(round, platform))];
+            ride.transfer = arrivalTimeline == transferSource(predecessor) ? predecessor : findTransfer(arrivalTimeline, stop);
+            if (ride.transfer == -1)
+                return null;
+        }
+        Ride last = journey.rides.get(journey.rides.size() - 1);
+        journey.arrivalTime = last.serviceDayStart + timetable.arrivals[timetable.stopTime(last.trip, last.alightPosition)] * 1000L + journey.egressTime;
+        return journey;
+    }
+
+    private int platformTripFollowingCopies(int round, int platform) {
+        while (platformTrip.get(round)[platform] == COPIED)
+            round--;
+        return platformTrip.get(round)[platform];
+    }
+
+    private int platformAlightPositionFollowingCopies(int round, int platform) {
+        while (platformTrip.get(round)[platform] == COPIED)
+            round--;
+        return platformAlightPosition.get(round)[platform];
+    }
+
+    private int findTransfer(int arrivalTimeline, int stop) {
+        for (int i = timetable.transfersOffset[arrivalTimeline]; i < timetable.transfersOffset[arrivalTimeline + 1]; i++) {
+            if (timetable.transferToStop[i] == stop)
+                return i;
+        }
+        return -1;
+    }
+
+    int patternOf(int trip) {
+        int lo = 0, hi = timetable.patternTripsOffset.length - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (timetable.patternTripsOffset[mid] <= trip) lo = mid;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private List<Journey> paretoFilter(List<Journey> journeys) {
+        List<Journey> result = new ArrayList<>();
+        for (Journey journey : journeys) {
+            if (journeys.stream().noneMatch(other -> other != journey && dominates(other, journey))
+                    && result.stream().noneMatch(other -> other.isEquivalentTo(journey))) {
+                result.add(journey);
+            }
+        }
+        result.sort(Comparator.comparingLong((Journey j) -> j.departureTime).thenComparingLong(j -> j.arrivalTime));
+        return result;
+    }
+
+    private boolean dominates(Journey a, Journey b) {
+        if (!mindTransfers && !profileQuery) {
+            return a.arrivalTime < b.arrivalTime || a.arrivalTime == b.arrivalTime && a.rides.size() < b.rides.size();
+        }
+        boolean notWorse = (!profileQuery || a.departureTime >= b.departureTime) && a.arrivalTime <= b.arrivalTime && (!mindTransfers || a.rides.size() <= b.rides.size());
+        boolean better = profileQuery && a.departureTime > b.departureTime || a.arrivalTime < b.arrivalTime || mindTransfers && a.rides.size() < b.rides.size();
+        return notWorse && better;
+    }
+
+    public static class Journey {
+        long departureTime;
+        long arrivalTime;
+        int accessStop;
+        long accessTime;
+        int egressPlatform;
+        long egressTime;
+        final List<Ride> rides = new ArrayList<>();
+
+        public long getDepartureTime() {
+            return departureTime;
+        }
+
+        public long getArrivalTime() {
+            return arrivalTime;
+        }
+
+        public int getNumberOfRides() {
+            return rides.size();
+        }
+
+        boolean isEquivalentTo(Journey other) {
+            return departureTime == other.departureTime && arrivalTime == other.arrivalTime && rides.size() == other.rides.size();
+        }
+    }
+
+    static class Ride {
+        int trip;
+        long serviceDayStart;
+        int boardPosition;
+        int alightPosition;
+        // the transfer taken to get to this ride, or -1 for the first ride
+        int transfer;
+    }
+
+    private static class IntQueue {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
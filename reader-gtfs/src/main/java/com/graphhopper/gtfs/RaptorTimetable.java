@@ -0,0 +1,483 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Flat, array-based copy of the timetable stored in the {@link PtGraph}, as needed by {@link Raptor}.
+ * <p>
+ * A stop is a departure platform (the node behind an ENTER_PT edge). Trips which visit the same
+ * platforms in the same order, and which do not overtake each other, are grouped into a pattern.
+ * Stop times are stored as seconds since midnight of the day the trip leaves its first stop, together
+ * with the ids of the BOARD, HOP, DWELL and ALIGHT edges, so that a journey can be turned back into a
+ * path through the PtGraph. Transfers are the TRANSFER edges of the PtGraph, indexed by the arrival
+ * timeline node they start at, so GTFS transfer rules and interpolated walking transfers carry over.
+ */
+public class RaptorTimetable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RaptorTimetable.class);
+    static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    // stops, i.e. departure platforms
+    final int[] stopPlatformNode;
+    final int[] stopPatternsOffset;
+    final int[] stopPatterns;
+    final int[] stopPatternPositions;
+    private final IntIntHashMap stopByPlatformNode;
+
+    // arrival platforms
+    final int[] arrivalPlatformNode;
+    private final IntIntHashMap arrivalPlatformByNode;
+
+    // arrival timelines, and the transfers leaving from them
+    final int[] arrivalTimelinePlatform;
+    final int[] arrivalTimelineLeaveEdge;
+    final int[] transfersOffset;
+    final int[] transferToStop;
+    final int[] transferSeconds;
+    final int[] transferEdge;
+    final int[] transferRouteType;
+
+    // patterns
+    final int[] patternLength;
+    final int[] patternStopsOffset;
+    final int[] patternStops;
+    final int[] patternTripsOffset;
+    final ZoneId[] patternZone;
+    final int[] patternMaxDays;
+
+    // trips and their stop times
+    final int[] tripStopTimesOffset;
+    final int[] arrivals;
+    final int[] departures;
+    final int[] boardEdges;
+    final int[] hopEdges;
+    final int[] dwellEdges;
+    final int[] alightEdges;
+    final int[] arrivalTimelines;
+    final int[] validities;
+    final BitSet[] validityBits;
+    final long[] validityStartDay;
+
+    private RaptorTimetable(Builder b) {
+        stopPlatformNode = b.stopPlatformNode.toArray();
+        stopByPlatformNode = b.stopByPlatformNode;
+        arrivalPlatformNode = b.arrivalPlatformNode.toArray();
+        arrivalPlatformByNode = b.arrivalPlatformByNode;
+        arrivalTimelinePlatform = b.arrivalTimelinePlatform.toArray();
+        arrivalTimelineLeaveEdge = b.arrivalTimelineLeaveEdge.toArray();
+        transfersOffset = b.transfersOffset.toArray();
+        transferToStop = b.transferToStop.toArray();
+        transferSeconds = b.transferSeconds.toArray();
+        transferEdge = b.transferEdge.toArray();
+        transferRouteType = b.transferRouteType.toArray();
+        patternLength = b.patternLength.toArray();
+        patternStopsOffset = b.patternStopsOffset.toArray();
+        patternStops = b.patternStops.toArray();
+        patternTripsOffset = b.patternTripsOffset.toArray();
+        patternZone = b.patternZone.toArray(new ZoneId[0]);
+        patternMaxDays = b.patternMaxDays.toArray();
+        tripStopTimesOffset = b.tripStopTimesOffset.toArray();
+        arrivals = b.arrivals.toArray();
+        departures = b.departures.toArray();
+        boardEdges = b.boardEdges.toArray();
+        hopEdges = b.hopEdges.toArray();
+        dwellEdges = b.dwellEdges.toArray();
+        alightEdges = b.alightEdges.toArray();
+        arrivalTimelines = b.arrivalTimelines.toArray();
+        validities = b.validities.toArray();
+        validityBits = new BitSet[b.validityList.size()];
+        validityStartDay = new long[b.validityList.size()];
+        for (int i = 0; i < b.validityList.size(); i++) {
+            validityBits[i] = b.validityList.get(i).validity;
+            validityStartDay[i] = b.validityList.get(i).start.toEpochDay();
+        }
+
+        int[] counts = new int[stopPlatformNode.length + 1];
+        for (int p = 0; p < patternLength.length; p++) {
+            for (int pos = 0; pos < patternLength[p]; pos++) {
+                counts[patternStops[patternStopsOffset[p] + pos] + 1]++;
+            }
+        }
+        for (int s = 0; s < stopPlatformNode.length; s++) {
+            counts[s + 1] += counts[s];
+        }
+        stopPatternsOffset = counts.clone();
+        stopPatterns = new int[counts[stopPlatformNode.length]];
+        stopPatternPositions = new int[counts[stopPlatformNode.length]];
+        for (int p = 0; p < patternLength.length; p++) {
+            for (int pos = 0; pos < patternLength[p]; pos++) {
+                int s = patternStops[patternStopsOffset[p] + pos];
+                stopPatterns[counts[s]] = p;
+                stopPatternPositions[counts[s]] = pos;
+                counts[s]++;
+            }
+        }
+    }
+
+    public static RaptorTimetable fromPtGraph(PtGraph ptGraph) {
+        Builder builder = new Builder(ptGraph);
+        builder.build();
+        RaptorTimetable timetable = new RaptorTimetable(builder);
+        LOGGER.info("Created RAPTOR timetable with {} stops, {} patterns, {} trips, {} stop times and {} transfers",
+                timetable.getStopCount(), timetable.getPatternCount(), timetable.tripStopTimesOffset.length,
+                timetable.departures.length, timetable.transferEdge.length);
+        return timetable;
+    }
+
+    public int getStopCount() {
+        return stopPlatformNode.length;
+    }
+
+    public int getArrivalPlatformCount() {
+        return arrivalPlatformNode.length;
+    }
+
+    public int getPatternCount() {
+        return patternLength.length;
+    }
+
+    /**
+     * @return the stop for the given platform node (the adjacent node of an ENTER_PT edge), or -1
+     */
+    public int getStopForPlatformNode(int platformNode) {
+        return stopByPlatformNode.getOrDefault(platformNode, -1);
+    }
+
+    /**
+     * @return the arrival platform for the given node (the base node of an EXIT_PT edge), or -1
+     */
+    public int getArrivalPlatformForNode(int platformNode) {
+        return arrivalPlatformByNode.getOrDefault(platformNode, -1);
+    }
+
+    int stopTime(int trip, int position) {
+        return tripStopTimesOffset[trip] + position;
+    }
+
+    boolean isValidOn(int stopTime, long serviceDay, int secondsOfServiceDay) {
+        int validity = validities[stopTime];
+        long trafficDay = serviceDay + Math.floorDiv(secondsOfServiceDay, SECONDS_PER_DAY) - validityStartDay[validity];
+        return trafficDay >= 0 && trafficDay <= Integer.MAX_VALUE && validityBits[validity].get((int) trafficDay);
+    }
+
+    private static class Builder {
+        private final PtGraph ptGraph;
+
+        final IntArrayList stopPlatformNode = new IntArrayList();
+        final IntIntHashMap stopByPlatformNode = new IntIntHashMap();
+        final IntArrayList arrivalPlatformNode = new IntArrayList();
+        final IntIntHashMap arrivalPlatformByNode = new IntIntHashMap();
+        final IntArrayList arrivalTimelinePlatform = new IntArrayList();
+        final IntArrayList arrivalTimelineLeaveEdge = new IntArrayList();
+        final IntIntHashMap arrivalTimelineByNode = new IntIntHashMap();
+        final IntArrayList arrivalTimelineNode = new IntArrayList();
+        final IntArrayList arrivalTimelineTime = new IntArrayList();
+        final IntArrayList transfersOffset = new IntArrayList();
+        final IntArrayList transferToStop = new IntArrayList();
+        final IntArrayList transferSeconds = new IntArrayList();
+        final IntArrayList transferEdge = new IntArrayList();
+        final IntArrayList transferRouteType = new IntArrayList();
+        final IntArrayList patternLength = new IntArrayList();
+        final IntArrayList patternStopsOffset = new IntArrayList();
+        final IntArrayList patternStops = new IntArrayList();
+        final IntArrayList patternTripsOffset = new IntArrayList();
+        final List<ZoneId> patternZone = new ArrayList<>();
+        final IntArrayList patternMaxDays = new IntArrayList();
+        final IntArrayList tripStopTimesOffset = new IntArrayList();
+        final IntArrayList arrivals = new IntArrayList();
+        final IntArrayList departures = new IntArrayList();
+        final IntArrayList boardEdges = new IntArrayList();
+        final IntArrayList hopEdges = new IntArrayList();
+        final IntArrayList dwellEdges = new IntArrayList();
+        final IntArrayList alightEdges = new IntArrayList();
+        final IntArrayList arrivalTimelines = new IntArrayList();
+        final IntArrayList validities = new IntArrayList();
+        final List<GtfsStorage.Validity> validityList = new ArrayList<>();
+        private final Map<GtfsStorage.Validity, Integer> validityIds = new HashMap<>();
+
+        // departure timeline node -> platform node and time of day
+        private final IntIntHashMap departureTimelinePlatform = new IntIntHashMap();
+        private final IntIntHashMap departureTimelineTime = new IntIntHashMap();
+
+        Builder(PtGraph ptGraph) {
+            this.ptGraph = ptGraph;
+        }
+
+        void build() {
+            IntArrayList firstArrivalNodes = new IntArrayList();
+            for (int node = 0; node < ptGraph.getNodeCount(); node++) {
+                for (PtGraph.PtEdge edge : ptGraph.edgesAround(node)) {
+                    if (edge.getType() == GtfsStorage.EdgeType.ENTER_TIME_EXPANDED_NETWORK) {
+                        departureTimelinePlatform.put(edge.getAdjNode(), node);
+                        departureTimelineTime.put(edge.getAdjNode(), edge.getTime());
+                    } else if (edge.getType() == GtfsStorage.EdgeType.LEAVE_TIME_EXPANDED_NETWORK) {
+                        int platform = arrivalPlatformByNode.getOrDefault(edge.getAdjNode(), -1);
+                        if (platform == -1) {
+                            platform = arrivalPlatformNode.size();
+                            arrivalPlatformNode.add(edge.getAdjNode());
+                            arrivalPlatformByNode.put(edge.getAdjNode(), platform);
+                        }
+                        arrivalTimelineByNode.put(node, arrivalTimelineNode.size());
+                        arrivalTimelineNode.add(node);
+                        arrivalTimelineTime.add(edge.getTime());
+                        arrivalTimelinePlatform.add(platform);
+                        arrivalTimelineLeaveEdge.add(edge.getId());
+                    } else if (edge.getType() == GtfsStorage.EdgeType.DWELL && !hasIncomingHop(node)) {
+                        firstArrivalNodes.add(node);
+                    }
+                }
+            }
+
+            Map<PatternKey, List<TripStopTimes>> tripsByPattern = new LinkedHashMap<>();
+            for (int i = 0; i < firstArrivalNodes.size(); i++) {
+                TripStopTimes trip = followTrip(firstArrivalNodes.get(i));
+                if (trip != null) {
+                    tripsByPattern.computeIfAbsent(trip.patternKey(), k -> new ArrayList<>()).add(trip);
+                }
+            }
+            patternTripsOffset.add(0);
+            tripsByPattern.forEach((key, trips) -> {
+                trips.sort(Comparator.comparingInt((TripStopTimes t) -> t.departures[0]).thenComparingInt(t -> t.arrivals[t.arrivals.length - 1]));
+                for (List<TripStopTimes> lane : splitIntoFifoLanes(trips)) {
+                    addPattern(key, lane);
+                }
+            });
+            buildTransfers();
+        }
+
+        private boolean hasIncomingHop(int arrivalNode) {
+            for (PtGraph.PtEdge edge : ptGraph.backEdgesAround(arrivalNode)) {
+                if (edge.getType() == GtfsStorage.EdgeType.HOP)
+                    return true;
+            }
+            return false;
+        }
+
+        private TripStopTimes followTrip(int firstArrivalNode) {
+            IntArrayList stops = new IntArrayList();
+            IntArrayList arrivalPlatforms = new IntArrayList();
+            TripStopTimes trip = new TripStopTimes();
+            List<int[]> positions = new ArrayList<>();
+            ZoneId zoneId = null;
+            int arrivalNode = firstArrivalNode;
+            int hopEdge = -1;
+            int time = -1;
+            while (arrivalNode != -1) {
+                PtGraph.PtEdge dwell = null, alight = null;
+                for (PtGraph.PtEdge edge : ptGraph.edgesAround(arrivalNode)) {
+                    if (edge.getType() == GtfsStorage.EdgeType.DWELL) dwell = edge;
+                    else if (edge.getType() == GtfsStorage.EdgeType.ALIGHT) alight = edge;
+                }
+                if (dwell == null || alight == null)
+                    return null;
+                int departureNode = dwell.getAdjNode();
+                PtGraph.PtEdge board = null, hop = null;
+                for (PtGraph.PtEdge edge : ptGraph.backEdgesAround(departureNode)) {
+                    // block transfers also board this node, but with transfers == 0
+                    if (edge.getType() == GtfsStorage.EdgeType.BOARD && edge.getAttrs().transfers == 1) board = edge;
+                }
+                for (PtGraph.PtEdge edge : ptGraph.edgesAround(departureNode)) {
+                    if (edge.getType() == GtfsStorage.EdgeType.HOP) hop = edge;
+                }
+                if (board == null)
+                    return null;
+                int departureTimeline = board.getAdjNode();
+                int platform = departureTimelinePlatform.getOrDefault(departureTimeline, -1);
+                int arrivalTimeline = arrivalTimelineByNode.getOrDefault(alight.getAdjNode(), -1);
+                if (platform == -1 || arrivalTimeline == -1)
+                    return null;
+                int arrival, departure;
+                if (time == -1) {
+                    departure = departureTimelineTime.get(departureTimeline);
+                    arrival = departure - dwell.getTime();
+                } else {
+                    arrival = time;
+                    departure = arrival + dwell.getTime();
+                }
+                stops.add(stop(platform));
+                arrivalPlatforms.add(arrivalTimelinePlatform.get(arrivalTimeline));
+                zoneId = board.getAttrs().validity.zoneId;
+                positions.add(new int[]{arrival, departure, board.getId(), hopEdge, dwell.getId(), alight.getId(), arrivalTimeline, validity(board.getAttrs().validity)});
+                if (hop == null) {
+                    arrivalNode = -1;
+                } else {
+                    hopEdge = hop.getId();
+                    time = departure + hop.getTime();
+                    arrivalNode = hop.getAdjNode();
+                }
+            }
+            trip.stops = stops.toArray();
+            trip.arrivalPlatforms = arrivalPlatforms.toArray();
+            trip.zoneId = zoneId;
+            trip.positions = positions;
+            trip.arrivals = positions.stream().mapToInt(p -> p[0]).toArray();
+            trip.departures = positions.stream().mapToInt(p -> p[1]).toArray();
+            return trip;
+        }
+
+        private int stop(int platformNode) {
+            int stop = stopByPlatformNode.getOrDefault(platformNode, -1);
+            if (stop == -1) {
+                stop = stopPlatformNode.size();
+                stopPlatformNode.add(platformNode);
+                stopByPlatformNode.put(platformNode, stop);
+            }
+            return stop;
+        }
+
+        private int validity(GtfsStorage.Validity validity) {
+            return validityIds.computeIfAbsent(validity, v -> {
+                validityList.add(v);
+                return validityList.size() - 1;
+            });
+        }
+
+        // RAPTOR relies on the trips of a pattern not overtaking each other, so we
+        // put each trip into the first lane where it does not overtake the last trip.
+        private List<List<TripStopTimes>> splitIntoFifoLanes(List<TripStopTimes> sortedTrips) {
+            List<List<TripStopTimes>> lanes = new ArrayList<>();
+            for (TripStopTimes trip : sortedTrips) {
+                List<TripStopTimes> lane = lanes.stream().filter(l -> !overtakes(trip, l.get(l.size() - 1))).findFirst().orElse(null);
+                if (lane == null) {
+                    lane = new ArrayList<>();
+                    lanes.add(lane);
+                }
+                lane.add(trip);
+            }
+            return lanes;
+        }
+
+        private boolean overtakes(TripStopTimes trip, TripStopTimes previous) {
+            for (int i = 0; i < trip.departures.length; i++) {
+                if (trip.arrivals[i] < previous.arrivals[i] || trip.departures[i] < previous.departures[i])
+                    return true;
+            }
+            return false;
+        }
+
+        private void addPattern(PatternKey key, List<TripStopTimes> trips) {
+            patternLength.add(key.stops.length);
+            patternStopsOffset.add(patternStops.size());
+            patternStops.add(key.stops, 0, key.stops.length);
+            patternZone.add(key.zoneId);
+            int maxSeconds = 0;
+            for (TripStopTimes trip : trips) {
+                tripStopTimesOffset.add(departures.size());
+                for (int[] p : trip.positions) {
+                    arrivals.add(p[0]);
+                    departures.add(p[1]);
+                    boardEdges.add(p[2]);
+                    hopEdges.add(p[3]);
+                    dwellEdges.add(p[4]);
+                    alightEdges.add(p[5]);
+                    arrivalTimelines.add(p[6]);
+                    validities.add(p[7]);
+                    maxSeconds = Math.max(maxSeconds, Math.max(p[0], p[1]));
+                }
+            }
+            patternMaxDays.add(maxSeconds / SECONDS_PER_DAY);
+            patternTripsOffset.add(tripStopTimesOffset.size());
+        }
+
+        // The PtGraph only has transfers to departures on the same day. In the graph, this is fine, since
+        // the next day's trip is always reached by waiting at the origin. RAPTOR only keeps the earliest
+        // arrival per platform though, so we add the transfers of the first arrival of the day as an overnight
+        // wait, to be taken when the arrival itself has none to that stop.
+        private void buildTransfers() {
+            IntIntHashMap firstArrivalTimelineOfPlatform = new IntIntHashMap();
+            for (int i = 0; i < arrivalTimelineNode.size(); i++) {
+                int first = firstArrivalTimelineOfPlatform.getOrDefault(arrivalTimelinePlatform.get(i), -1);
+                if (first == -1 || arrivalTimelineTime.get(i) < arrivalTimelineTime.get(first))
+                    firstArrivalTimelineOfPlatform.put(arrivalTimelinePlatform.get(i), i);
+            }
+            for (int i = 0; i < arrivalTimelineNode.size(); i++) {
+                transfersOffset.add(transferEdge.size());
+                BitSet reachedStops = new BitSet();
+                addTransfers(i, 0, reachedStops);
+                int first = firstArrivalTimelineOfPlatform.get(arrivalTimelinePlatform.get(i));
+                addTransfers(first, SECONDS_PER_DAY - arrivalTimelineTime.get(i) + arrivalTimelineTime.get(first), reachedStops);
+            }
+            transfersOffset.add(transferEdge.size());
+        }
+
+        private void addTransfers(int arrivalTimeline, int waitingSeconds, BitSet reachedStops) {
+            BitSet stops = new BitSet();
+            for (PtGraph.PtEdge edge : ptGraph.edgesAround(arrivalTimelineNode.get(arrivalTimeline))) {
+                if (edge.getType() != GtfsStorage.EdgeType.TRANSFER)
+                    continue;
+                int platform = departureTimelinePlatform.getOrDefault(edge.getAdjNode(), -1);
+                int stop = platform == -1 ? -1 : stopByPlatformNode.getOrDefault(platform, -1);
+                if (stop == -1 || reachedStops.get(stop))
+                    continue;
+                stops.set(stop);
+                transferToStop.add(stop);
+                transferSeconds.add(waitingSeconds + edge.getTime());
+                transferEdge.add(edge.getId());
+                transferRouteType.add(edge.getAttrs().route_type);
+            }
+            reachedStops.or(stops);
+        }
+    }
+
+    private static class TripStopTimes {
+        int[] stops;
+        int[] arrivalPlatforms;
+        ZoneId zoneId;
+        List<int[]> positions;
+        int[] arrivals;
+        int[] departures;
+
+        PatternKey patternKey() {
+            return new PatternKey(stops, arrivalPlatforms, zoneId);
+        }
+    }
+
+    private static class PatternKey {
+        final int[] stops;
+        final int[] arrivalPlatforms;
+        final ZoneId zoneId;
+
+        PatternKey(int[] stops, int[] arrivalPlatforms, ZoneId zoneId) {
+            this.stops = stops;
+            this.arrivalPlatforms = arrivalPlatforms;
+            this.zoneId = zoneId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PatternKey that = (PatternKey) o;
+            return Arrays.equals(stops, that.stops) && Arrays.equals(arrivalPlatforms, that.arrivalPlatforms) && zoneId.equals(that.zoneId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(Arrays.hashCode(stops), Arrays.hashCode(arrivalPlatforms), zoneId);
+        }
+    }
+}
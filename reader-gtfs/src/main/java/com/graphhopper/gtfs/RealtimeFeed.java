@@ -28,7 +28,6 @@ import com.conveyal.gtfs.model.Trip;
 import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.BaseGraph;
-import org.mapdb.Fun;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,21 +53,42 @@ public class RealtimeFeed {
     private final IntLongHashMap delaysForAlightEdges;
     private final List<PtGraph.PtEdge> additionalEdges;
     public final Map<String, GtfsRealtime.FeedMessage> feedMessages;
+    private final Map<String, Map<GtfsRealtime.TripUpdate, TripUpdateEffect>> tripUpdateEffects;
 
     private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges,
-                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
+                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges,
+                         Map<String, Map<GtfsRealtime.TripUpdate, TripUpdateEffect>> tripUpdateEffects) {
         this.feedMessages = feedMessages;
         this.blockedEdges = blockedEdges;
         this.delaysForBoardEdges = delaysForBoardEdges;
         this.delaysForAlightEdges = delaysForAlightEdges;
         this.additionalEdges = additionalEdges;
+        this.tripUpdateEffects = tripUpdateEffects;
     }
 
     public static RealtimeFeed empty() {
-        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
+        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList(), Collections.emptyMap());
     }
 
     public static RealtimeFeed fromProtobuf(BaseGraph baseGraph, EncodingManager encodingManager, GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        return fromProtobuf(baseGraph, encodingManager, staticGtfs, transfers, feedMessages, empty());
+    }
+
+    /**
+     * Creates the realtime overlay for the given feed messages, reusing what can be reused from the previous one.
+     * Neither the static graph nor the previous overlay are modified, so routing requests can keep using the previous
+     * instance until the new one is swapped in.
+     * <p>
+     * If the feed messages did not change at all, the previous instance is returned as it is. Otherwise, only the
+     * TripUpdates which were not already part of the previous feed messages are matched against the timetable again.
+     * The overlay edges for delayed departures and added trips are still created from scratch, but their number
+     * is small compared to the number of TripUpdates.
+     */
+    public static RealtimeFeed fromProtobuf(BaseGraph baseGraph, EncodingManager encodingManager, GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages, RealtimeFeed previous) {
+        if (previous.feedMessages.equals(feedMessages)) {
+            return previous;
+        }
+        final Map<String, Map<GtfsRealtime.TripUpdate, TripUpdateEffect>> tripUpdateEffects = new HashMap<>();
         final IntHashSet blockedEdges = new IntHashSet();
         final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
         final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
@@ -93,6 +113,7 @@ public class RealtimeFeed {
 
         feedMessages.forEach((feedKey, feedMessage) -> {
             GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
+            PackedGtfsFeed packedFeed = staticGtfs.getPackedGtfsFeeds().get(feedKey);
             ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
             PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
             final GtfsReader gtfsReader = new GtfsReader(feedKey, baseGraph, encodingManager, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
@@ -101,44 +122,29 @@ public class RealtimeFeed {
             BitSet validOnDay = new BitSet();
             LocalDate startDate = feed.getStartDate();
             validOnDay.set((int) DAYS.between(startDate, dateToChange));
+            Map<GtfsRealtime.TripUpdate, TripUpdateEffect> previousEffects = previous.tripUpdateEffects.getOrDefault(feedKey, Collections.emptyMap());
+            Map<GtfsRealtime.TripUpdate, TripUpdateEffect> effects = new HashMap<>();
             feedMessage.getEntityList().stream()
                     .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
                     .map(GtfsRealtime.FeedEntity::getTripUpdate)
                     .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
                     .forEach(tripUpdate -> {
-                        Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
-                        int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
-                        final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
-                        final int[] leaveEdges = findLeaveEdgesForTrip(staticGtfs, feedKey, feed, tripUpdate);
-                        if (boardEdges == null || leaveEdges == null) {
+                        TripUpdateEffect effect = effects.computeIfAbsent(tripUpdate, tu -> {
+                            TripUpdateEffect previousEffect = previousEffects.get(tu);
+                            return previousEffect != null ? previousEffect : TripUpdateEffect.of(staticGtfs, feedKey, feed, packedFeed, tu);
+                        });
+                        if (effect == null) {
                             logger.warn("Trip not found: {}", tripUpdate.getTrip());
                             return;
                         }
-                        tripUpdate.getStopTimeUpdateList().stream()
-                                .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
-                                .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
-                                .forEach(skippedStopSequenceNumber -> {
-                                    blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
-                                    blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
-                                });
-                        GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(feed, tripUpdate);
-                        tripWithStopTimes.stopTimes.forEach(stopTime -> {
-                            if (stopTime.stop_sequence > leaveEdges.length - 1) {
-                                logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
-                                return;
-                            }
-                            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
-                            int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
-                            delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
-                            int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
-                            if (departureDelay > 0) {
-                                int boardEdge = boardEdges[stopTime.stop_sequence];
-                                int departureNode = ptGraphNodesAndEdges.edge(boardEdge).getAdjNode();
-                                int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, validOnDay);
-                                delaysForBoardEdges.put(delayedBoardEdge, departureDelay * 1000);
-                            }
-                        });
+                        blockedEdges.addAll(effect.blockedEdges);
+                        delaysForAlightEdges.putAll(effect.delaysForAlightEdges);
+                        for (DelayedDeparture delayedDeparture : effect.delayedDepartures) {
+                            int delayedBoardEdge = gtfsReader.addDelayedBoardEdge(timezone, tripUpdate.getTrip(), delayedDeparture.stopSequence, delayedDeparture.departureTime, delayedDeparture.departureNode, validOnDay);
+                            delaysForBoardEdges.put(delayedBoardEdge, delayedDeparture.delay);
+                        }
                     });
+            tripUpdateEffects.put(feedKey, effects);
             feedMessage.getEntityList().stream()
                     .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
                     .map(GtfsRealtime.FeedEntity::getTripUpdate)
@@ -166,11 +172,71 @@ public class RealtimeFeed {
             gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
         });
 
-        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
+        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges, tripUpdateEffects);
+    }
+
+    /**
+     * What a scheduled TripUpdate does to the static timetable. It only depends on the static feed and on the
+     * TripUpdate itself, so it can be carried over to the next version of the realtime feed if the same TripUpdate
+     * comes in again.
+     */
+    private static class TripUpdateEffect {
+        final IntHashSet blockedEdges = new IntHashSet();
+        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
+        final List<DelayedDeparture> delayedDepartures = new ArrayList<>();
+
+        static TripUpdateEffect of(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, PackedGtfsFeed packedFeed, GtfsRealtime.TripUpdate tripUpdate) {
+            if (packedFeed.getTrip(tripUpdate.getTrip().getTripId()) == null) {
+                return null;
+            }
+            TripUpdateEffect effect = new TripUpdateEffect();
+            Collection<Frequency> frequencies = feed.getFrequencies(tripUpdate.getTrip().getTripId());
+            int timeOffset = (tripUpdate.getTrip().hasStartTime() && !frequencies.isEmpty()) ? LocalTime.parse(tripUpdate.getTrip().getStartTime()).toSecondOfDay() : 0;
+            final int[] boardEdges = findBoardEdgesForTrip(staticGtfs, feedKey, packedFeed, tripUpdate);
+            final int[] leaveEdges = findLeaveEdgesForTrip(staticGtfs, feedKey, packedFeed, tripUpdate);
+            tripUpdate.getStopTimeUpdateList().stream()
+                    .filter(stopTimeUpdate -> stopTimeUpdate.getScheduleRelationship() == SKIPPED)
+                    .mapToInt(GtfsRealtime.TripUpdate.StopTimeUpdate::getStopSequence)
+                    .forEach(skippedStopSequenceNumber -> {
+                        effect.blockedEdges.add(boardEdges[skippedStopSequenceNumber]);
+                        effect.blockedEdges.add(leaveEdges[skippedStopSequenceNumber]);
+                    });
+            GtfsReader.TripWithStopTimes tripWithStopTimes = toTripWithStopTimes(packedFeed, tripUpdate);
+            tripWithStopTimes.stopTimes.forEach(stopTime -> {
+                if (stopTime.stop_sequence > leaveEdges.length - 1) {
+                    logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
+                    return;
+                }
+                final StopTime originalStopTime = packedFeed.getStopTime(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence);
+                int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
+                effect.delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
+                int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
+                if (departureDelay > 0) {
+                    int boardEdge = boardEdges[stopTime.stop_sequence];
+                    int departureNode = staticGtfs.getPtGraph().edge(boardEdge).getAdjNode();
+                    effect.delayedDepartures.add(new DelayedDeparture(stopTime.stop_sequence, stopTime.departure_time + timeOffset, departureNode, departureDelay * 1000));
+                }
+            });
+            return effect;
+        }
     }
 
-    private static int[] findLeaveEdgesForTrip(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
-        Trip trip = feed.trips.get(tripUpdate.getTrip().getTripId());
+    private static class DelayedDeparture {
+        final int stopSequence;
+        final int departureTime;
+        final int departureNode;
+        final long delay;
+
+        DelayedDeparture(int stopSequence, int departureTime, int departureNode, long delay) {
+            this.stopSequence = stopSequence;
+            this.departureTime = departureTime;
+            this.departureNode = departureNode;
+            this.delay = delay;
+        }
+    }
+
+    private static int[] findLeaveEdgesForTrip(GtfsStorage staticGtfs, String feedKey, PackedGtfsFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
+        Trip trip = feed.getTrip(tripUpdate.getTrip().getTripId());
         StopTime next = feed.getOrderedStopTimesForTrip(trip.trip_id).iterator().next();
         int station = staticGtfs.getStationNodes().get(new GtfsStorage.FeedIdWithStopId(feedKey, next.stop_id));
         Optional<PtGraph.PtEdge> firstBoarding = StreamSupport.stream(staticGtfs.getPtGraph().backEdgesAround(station).spliterator(), false)
@@ -185,8 +251,8 @@ public class RealtimeFeed {
         return collectWithPadding(boardEdges);
     }
 
-    private static int[] findBoardEdgesForTrip(GtfsStorage staticGtfs, String feedKey, GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
-        Trip trip = feed.trips.get(tripUpdate.getTrip().getTripId());
+    private static int[] findBoardEdgesForTrip(GtfsStorage staticGtfs, String feedKey, PackedGtfsFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
+        Trip trip = feed.getTrip(tripUpdate.getTrip().getTripId());
         StopTime next = feed.getOrderedStopTimesForTrip(trip.trip_id).iterator().next();
         int station = staticGtfs.getStationNodes().get(new GtfsStorage.FeedIdWithStopId(feedKey, next.stop_id));
         Optional<PtGraph.PtEdge> firstBoarding = StreamSupport.stream(staticGtfs.getPtGraph().edgesAround(station).spliterator(), false)
@@ -268,7 +334,7 @@ public class RealtimeFeed {
         return additionalEdges;
     }
 
-    public Optional<GtfsReader.TripWithStopTimes> getTripUpdate(GTFSFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Instant boardTime) {
+    public Optional<GtfsReader.TripWithStopTimes> getTripUpdate(PackedGtfsFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Instant boardTime) {
         try {
             logger.trace("getTripUpdate {}", tripDescriptor);
             if (!isThisRealtimeUpdateAboutThisLineRun(boardTime)) {
@@ -298,13 +364,13 @@ public class RealtimeFeed {
         return GtfsRealtime.TripDescriptor.newBuilder(tripDescriptor).clearRouteId().build();
     }
 
-    public static GtfsReader.TripWithStopTimes toTripWithStopTimes(GTFSFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
-        ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
+    public static GtfsReader.TripWithStopTimes toTripWithStopTimes(PackedGtfsFeed feed, GtfsRealtime.TripUpdate tripUpdate) {
+        ZoneId timezone = ZoneId.of(feed.getTimezone());
         logger.trace("{}", tripUpdate.getTrip());
         final List<StopTime> stopTimes = new ArrayList<>();
         Set<Integer> cancelledArrivals = new HashSet<>();
         Set<Integer> cancelledDepartures = new HashSet<>();
-        Trip originalTrip = feed.trips.get(tripUpdate.getTrip().getTripId());
+        Trip originalTrip = feed.getTrip(tripUpdate.getTrip().getTripId());
         Trip trip = new Trip();
         if (originalTrip != null) {
             trip.trip_id = originalTrip.trip_id;
@@ -316,20 +382,15 @@ public class RealtimeFeed {
         int delay = 0;
         int time = -1;
         List<GtfsRealtime.TripUpdate.StopTimeUpdate> stopTimeUpdateListWithSentinel = new ArrayList<>(tripUpdate.getStopTimeUpdateList());
-        Iterable<StopTime> interpolatedStopTimesForTrip;
-        try {
-            interpolatedStopTimesForTrip = feed.getInterpolatedStopTimesForTrip(tripUpdate.getTrip().getTripId());
-        } catch (GTFSFeed.FirstAndLastStopsDoNotHaveTimes firstAndLastStopsDoNotHaveTimes) {
-            throw new RuntimeException(firstAndLastStopsDoNotHaveTimes);
-        }
+        List<StopTime> interpolatedStopTimesForTrip = feed.getInterpolatedStopTimesForTrip(tripUpdate.getTrip().getTripId());
         int stopSequenceCeiling = Math.max(stopTimeUpdateListWithSentinel.isEmpty() ? 0 : stopTimeUpdateListWithSentinel.get(stopTimeUpdateListWithSentinel.size() - 1).getStopSequence(),
-                StreamSupport.stream(interpolatedStopTimesForTrip.spliterator(), false).mapToInt(stopTime -> stopTime.stop_sequence).max().orElse(0)
+                interpolatedStopTimesForTrip.stream().mapToInt(stopTime -> stopTime.stop_sequence).max().orElse(0)
         ) + 1;
         stopTimeUpdateListWithSentinel.add(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder().setStopSequence(stopSequenceCeiling).setScheduleRelationship(NO_DATA).build());
         for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateListWithSentinel) {
             int nextStopSequence = stopTimes.isEmpty() ? 1 : stopTimes.get(stopTimes.size() - 1).stop_sequence + 1;
             for (int i = nextStopSequence; i < stopTimeUpdate.getStopSequence(); i++) {
-                StopTime previousOriginalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), i));
+                StopTime previousOriginalStopTime = feed.getStopTime(tripUpdate.getTrip().getTripId(), i);
                 if (previousOriginalStopTime == null) {
                     continue; // This can and does happen. Stop sequence numbers can be left out.
                 }
@@ -344,7 +405,7 @@ public class RealtimeFeed {
                 logger.trace("Number of stop times: {}", stopTimes.size());
             }
 
-            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopSequence()));
+            final StopTime originalStopTime = feed.getStopTime(tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopSequence());
             if (originalStopTime != null) {
                 StopTime updatedStopTime = originalStopTime.clone();
                 if (stopTimeUpdate.getScheduleRelationship() == NO_DATA) {
@@ -427,8 +488,8 @@ public class RealtimeFeed {
         }).findFirst().orElse(Instant.now());
     }
 
-    public StopTime getStopTime(GTFSFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Label.Transition t, Instant boardTime, int stopSequence) {
-        StopTime stopTime = staticFeed.stop_times.get(new Fun.Tuple2<>(tripDescriptor.getTripId(), stopSequence));
+    public StopTime getStopTime(PackedGtfsFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Label.Transition t, Instant boardTime, int stopSequence) {
+        StopTime stopTime = staticFeed.getStopTime(tripDescriptor.getTripId(), stopSequence);
         if (stopTime == null) {
             return getTripUpdate(staticFeed, tripDescriptor, boardTime).get().stopTimes.get(stopSequence - 1);
         } else {
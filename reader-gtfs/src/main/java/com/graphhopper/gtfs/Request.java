@@ -45,6 +45,7 @@ public class Request {
     private List<String> pathDetails = new ArrayList<>();
     private String accessProfile = "foot";
     private String egressProfile = "foot";
+    private String algorithm = "label_setting";
 
     public Request(List<GHLocation> points, Instant departureTime) {
         this.points = points;
@@ -202,4 +203,16 @@ public class Request {
     public void setEgressProfile(String egressProfile) {
         this.egressProfile = egressProfile;
     }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Either "label_setting" (the default), which searches the time-expanded graph, or "raptor", which works on a
+     * flat copy of the timetable. The latter does not support arrive-by queries.
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.util.Arrays;
+
+/**
+ * The street paths of the walking transfers which were precomputed at import time, keyed by the id of the TRANSFER
+ * edge in the PtGraph. The router only needs the duration, which is on the TRANSFER edge itself, so the street graph
+ * is not explored for transfers at query time. The paths are only needed to create the walk legs of the response.
+ * <p>
+ * The table is stored in compressed sparse row form: the edge keys of all paths are stored back to back, and
+ * the transfer edges are sorted by id and reference a range of edge keys. Several transfer edges which share the
+ * same path reference the same range.
+ */
+public class TransferPaths {
+
+    private static final int K_TRANSFER_EDGE = 0, K_FIRST_EDGE_KEY = 4, K_EDGE_KEY_COUNT = 8;
+    private static final int KEY_BYTES = 12;
+
+    private final DataAccess keys;
+    private final DataAccess edgeKeys;
+    private int keyCount;
+    private int edgeKeyCount;
+    // only used while building: transfer edge and path index in one long, and first edge key and length per path
+    private LongArrayList pending = new LongArrayList();
+    private IntArrayList pendingPaths = new IntArrayList();
+
+    public TransferPaths(Directory dir) {
+        keys = dir.create("pt_transfer_path_keys", dir.getDefaultType("pt_transfer_path_keys", true), -1);
+        edgeKeys = dir.create("pt_transfer_path_edge_keys", dir.getDefaultType("pt_transfer_path_edge_keys", true), -1);
+    }
+
+    public void create(long initSize) {
+        keys.create(initSize);
+        edgeKeys.create(initSize);
+    }
+
+    public boolean loadExisting() {
+        if (!keys.loadExisting() || !edgeKeys.loadExisting())
+            return false;
+        keyCount = keys.getHeader(0);
+        edgeKeyCount = edgeKeys.getHeader(0);
+        pending = null;
+        pendingPaths = null;
+        return true;
+    }
+
+    /**
+     * Adds the street path which is walked for each of the given transfer edges. Must not be called after flush.
+     */
+    public void put(int[] transferEdges, int[] path) {
+        if (pending == null)
+            throw new IllegalStateException("Transfer paths were already flushed");
+        int pathIndex = pendingPaths.size() / 2;
+        pendingPaths.add(edgeKeyCount, path.length);
+        edgeKeys.ensureCapacity((long) (edgeKeyCount + path.length) * 4);
+        for (int edgeKey : path) {
+            edgeKeys.setInt((long) edgeKeyCount++ * 4, edgeKey);
+        }
+        for (int transferEdge : transferEdges) {
+            pending.add(((long) transferEdge << 32) | pathIndex);
+        }
+    }
+
+    public void flush() {
+        if (pending != null) {
+            long[] sorted = pending.toArray();
+            Arrays.sort(sorted);
+            keys.ensureCapacity((long) sorted.length * KEY_BYTES);
+            keyCount = 0;
+            for (long transferEdgeAndPath : sorted) {
+                int transferEdge = (int) (transferEdgeAndPath >>> 32);
+                int pathIndex = (int) transferEdgeAndPath;
+                if (keyCount > 0 && keys.getInt((long) (keyCount - 1) * KEY_BYTES + K_TRANSFER_EDGE) == transferEdge)
+                    throw new IllegalStateException("More than one path for transfer edge " + transferEdge);
+                long pointer = (long) keyCount * KEY_BYTES;
+                keys.setInt(pointer + K_TRANSFER_EDGE, transferEdge);
+                keys.setInt(pointer + K_FIRST_EDGE_KEY, pendingPaths.get(2 * pathIndex));
+                keys.setInt(pointer + K_EDGE_KEY_COUNT, pendingPaths.get(2 * pathIndex + 1));
+                keyCount++;
+            }
+            pending = null;
+            pendingPaths = null;
+        }
+        keys.setHeader(0, keyCount);
+        edgeKeys.setHeader(0, edgeKeyCount);
+        keys.flush();
+        edgeKeys.flush();
+    }
+
+    public void close() {
+        keys.close();
+        edgeKeys.close();
+    }
+
+    public int size() {
+        return pending != null ? pending.size() : keyCount;
+    }
+
+    /**
+     * @return the edge keys of the street path walked for this transfer edge, or null if the transfer does not
+     * include walking on the street network
+     */
+    public int[] get(int transferEdge) {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long pointer = (long) mid * KEY_BYTES;
+            int midEdge = keys.getInt(pointer + K_TRANSFER_EDGE);
+            if (midEdge < transferEdge) {
+                low = mid + 1;
+            } else if (midEdge > transferEdge) {
+                high = mid - 1;
+            } else {
+                int first = keys.getInt(pointer + K_FIRST_EDGE_KEY);
+                int[] result = new int[keys.getInt(pointer + K_EDGE_KEY_COUNT)];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = edgeKeys.getInt((long) (first + i) * 4);
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+}
@@ -18,7 +18,6 @@
 
 package com.graphhopper.gtfs;
 
-import com.conveyal.gtfs.GTFSFeed;
 import com.conveyal.gtfs.model.Stop;
 import com.conveyal.gtfs.model.StopTime;
 import com.google.common.collect.Iterables;
@@ -49,7 +48,6 @@ import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import static java.time.temporal.ChronoUnit.SECONDS;
 
@@ -163,11 +161,11 @@ class TripFromLabel {
                             .filter(leg -> leg instanceof Trip.PtLeg)
                             .map(leg -> (Trip.PtLeg) leg)
                             .map(ptLeg -> {
-                                final GTFSFeed gtfsFeed = gtfsStorage.getGtfsFeeds().get(ptLeg.feed_id);
+                                final PackedGtfsFeed gtfsFeed = gtfsStorage.getPackedGtfsFeeds().get(ptLeg.feed_id);
                                 return new com.graphhopper.gtfs.fare.Trip.Segment(ptLeg.feed_id, ptLeg.route_id,
                                         Duration.between(firstPtDepartureTime, GtfsHelper.localDateTimeFromDate(ptLeg.getDepartureTime())).getSeconds(),
-                                        gtfsFeed.stops.get(ptLeg.stops.get(0).stop_id).zone_id, gtfsFeed.stops.get(ptLeg.stops.get(ptLeg.stops.size() - 1).stop_id).zone_id,
-                                        ptLeg.stops.stream().map(s -> gtfsFeed.stops.get(s.stop_id).zone_id).collect(Collectors.toSet()));
+                                        gtfsFeed.getStop(ptLeg.stops.get(0).stop_id).zone_id, gtfsFeed.getStop(ptLeg.stops.get(ptLeg.stops.size() - 1).stop_id).zone_id,
+                                        ptLeg.stops.stream().map(s -> gtfsFeed.getStop(s.stop_id).zone_id).collect(Collectors.toSet()));
                             })
                             .forEach(faresTrip.segments::add);
                     Fares.cheapestFare(gtfsStorage.getFares(), faresTrip)
@@ -207,7 +205,7 @@ class TripFromLabel {
 
         private final GtfsRealtime.TripDescriptor tripDescriptor;
         private final List<Trip.Stop> stops = new ArrayList<>();
-        private final GTFSFeed gtfsFeed;
+        private final PackedGtfsFeed gtfsFeed;
         private Instant boardTime;
         private Instant arrivalTimeFromHopEdge;
         private Optional<Instant> updatedArrival;
@@ -217,7 +215,7 @@ class TripFromLabel {
 
         StopsFromBoardHopDwellEdges(String feedId, GtfsRealtime.TripDescriptor tripDescriptor) {
             this.tripDescriptor = tripDescriptor;
-            this.gtfsFeed = gtfsStorage.getGtfsFeeds().get(feedId);
+            this.gtfsFeed = gtfsStorage.getPackedGtfsFeeds().get(feedId);
             if (this.tripUpdate != null) {
                 validateTripUpdate(this.tripUpdate);
             }
@@ -232,7 +230,7 @@ class TripFromLabel {
                     tripUpdate = realtimeFeed.getTripUpdate(gtfsFeed, tripDescriptor, boardTime).orElse(null);
                     Instant plannedDeparture = Instant.ofEpochMilli(t.label.currentTime);
                     Optional<Instant> updatedDeparture = getDepartureDelay(stopSequence).map(delay -> plannedDeparture.plus(delay, SECONDS));
-                    Stop stop = gtfsFeed.stops.get(stopTime.stop_id);
+                    Stop stop = gtfsFeed.getStop(stopTime.stop_id);
                     stops.add(new Trip.Stop(stop.stop_id, stop.stop_name, geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat)),
                             null, null, null, isArrivalCancelled(stopSequence),
                             updatedDeparture.map(Date::from).orElse(Date.from(plannedDeparture)), Date.from(plannedDeparture),
@@ -249,7 +247,7 @@ class TripFromLabel {
                 case DWELL: {
                     Instant plannedDeparture = Instant.ofEpochMilli(t.label.currentTime);
                     Optional<Instant> updatedDeparture = getDepartureDelay(stopTime.stop_sequence).map(delay -> plannedDeparture.plus(delay, SECONDS));
-                    Stop stop = gtfsFeed.stops.get(stopTime.stop_id);
+                    Stop stop = gtfsFeed.getStop(stopTime.stop_id);
                     stops.add(new Trip.Stop(stop.stop_id, stop.stop_name, geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat)),
                             updatedArrival.map(Date::from).orElse(Date.from(arrivalTimeFromHopEdge)), Date.from(arrivalTimeFromHopEdge),
                             updatedArrival.map(Date::from).orElse(null), isArrivalCancelled(stopSequence),
@@ -300,7 +298,7 @@ class TripFromLabel {
         }
 
         void finish() {
-            Stop stop = gtfsFeed.stops.get(stopTime.stop_id);
+            Stop stop = gtfsFeed.getStop(stopTime.stop_id);
             stops.add(new Trip.Stop(stop.stop_id, stop.stop_name, geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat)),
                     updatedArrival.map(Date::from).orElse(Date.from(arrivalTimeFromHopEdge)), Date.from(arrivalTimeFromHopEdge),
                     updatedArrival.map(Date::from).orElse(null), isArrivalCancelled(stopSequence), null,
@@ -311,15 +309,10 @@ class TripFromLabel {
         }
 
         private void validateTripUpdate(GtfsReader.TripWithStopTimes tripUpdate) {
-            try {
-                Iterable<StopTime> interpolatedStopTimesForTrip = gtfsFeed.getInterpolatedStopTimesForTrip(tripUpdate.trip.trip_id);
-                long nStopTimes = StreamSupport.stream(interpolatedStopTimesForTrip.spliterator(), false).count();
-                logger.trace("Original stop times: {} Updated stop times: {}", nStopTimes, tripUpdate.stopTimes.size());
-                if (nStopTimes != tripUpdate.stopTimes.size()) {
-                    logger.error("Original stop times: {} Updated stop times: {}", nStopTimes, tripUpdate.stopTimes.size());
-                }
-            } catch (GTFSFeed.FirstAndLastStopsDoNotHaveTimes firstAndLastStopsDoNotHaveTimes) {
-                throw new RuntimeException(firstAndLastStopsDoNotHaveTimes);
+            int nStopTimes = gtfsFeed.getInterpolatedStopTimesForTrip(tripUpdate.trip.trip_id).size();
+            logger.trace("Original stop times: {} Updated stop times: {}", nStopTimes, tripUpdate.stopTimes.size());
+            if (nStopTimes != tripUpdate.stopTimes.size()) {
+                logger.error("Original stop times: {} Updated stop times: {}", nStopTimes, tripUpdate.stopTimes.size());
             }
         }
 
@@ -361,7 +354,7 @@ class TripFromLabel {
                             feedId, partition.get(0).edge.getTransfers() == 0,
                             tripDescriptor.getTripId(),
                             tripDescriptor.getRouteId(),
-                            Optional.ofNullable(gtfsStorage.getGtfsFeeds().get(feedId).trips.get(tripDescriptor.getTripId())).map(t -> t.trip_headsign).orElse("extra"),
+                            Optional.ofNullable(gtfsStorage.getPackedGtfsFeeds().get(feedId).getTrip(tripDescriptor.getTripId())).map(t -> t.trip_headsign).orElse("extra"),
                             stops,
                             partition.stream().mapToDouble(t -> t.edge.getDistance()).sum(),
                             path.get(i - 1).label.currentTime - boardTime,
@@ -369,7 +362,7 @@ class TripFromLabel {
                     partition = null;
                     if (edge.getType() == GtfsStorage.EdgeType.TRANSFER) {
                         feedId = edge.getPlatformDescriptor().feed_id;
-                        int[] skippedEdgesForTransfer = gtfsStorage.getSkippedEdgesForTransfer().get(edge.getId());
+                        int[] skippedEdgesForTransfer = gtfsStorage.getTransferPaths().get(edge.getId());
                         if (skippedEdgesForTransfer != null) {
                             List<Trip.Leg> legs = parsePartitionToLegs(transferPath(skippedEdgesForTransfer, weighting, path.get(i - 1).label.currentTime), graph, encodedValueLookup, weighting, tr, requestedPathDetails);
                             result.add(legs.get(0));
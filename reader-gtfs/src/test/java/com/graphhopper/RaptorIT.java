@@ -0,0 +1,189 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper;
+
+import com.graphhopper.config.Profile;
+import com.graphhopper.gtfs.*;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.TranslationMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.graphhopper.gtfs.GtfsHelper.time;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RaptorIT {
+
+    private static final String GRAPH_LOC = "target/RaptorIT";
+    private static PtRouter ptRouter;
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    private static GraphHopperGtfs graphHopperGtfs;
+
+    @BeforeAll
+    public static void init() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("gtfs.file", "files/sample-feed");
+        ghConfig.setProfiles(Arrays.asList(
+                new Profile("foot").setVehicle("foot").setWeighting("fastest"),
+                new Profile("car").setVehicle("car").setWeighting("fastest")));
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+        ptRouter = new PtRouterImpl.Factory(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage())
+                .createWithoutRealtimeFeed();
+    }
+
+    @AfterAll
+    public static void close() {
+        graphHopperGtfs.close();
+    }
+
+    @Test
+    public void testRoute1() {
+        Request ghRequest = raptorRequest("NADAV", "NANAA", LocalDateTime.of(2007, 1, 1, 0, 0));
+        ghRequest.setIgnoreTransfers(true);
+        GHResponse route = ptRouter.route(ghRequest);
+        assertFalse(route.hasErrors());
+        assertEquals(1, route.getAll().size());
+        assertEquals(time(6, 49), route.getBest().getTime(), "Expected travel time == scheduled arrival time");
+        List<Trip.Leg> legs = route.getBest().getLegs();
+        assertEquals(1, legs.size());
+        assertEquals("pt", legs.get(0).type);
+    }
+
+    @Test
+    public void testSameEarliestArrivalAsLabelSetting() {
+        List<String> stops = Arrays.asList("FUR_CREEK_RES", "BEATTY_AIRPORT", "BULLFROG", "STAGECOACH", "NADAV", "NANAA", "DADAN", "EMSI", "AMV");
+        for (String from : stops) {
+            for (String to : stops) {
+                if (from.equals(to))
+                    continue;
+                for (LocalDateTime departure : Arrays.asList(LocalDateTime.of(2007, 1, 1, 0, 0), LocalDateTime.of(2007, 1, 1, 7, 44), LocalDateTime.of(2007, 1, 6, 13, 30))) {
+                    Request labelSettingRequest = new Request(Arrays.asList(new GHStationLocation(from), new GHStationLocation(to)), departure.atZone(zoneId).toInstant());
+                    labelSettingRequest.setIgnoreTransfers(true);
+                    Request raptorRequest = raptorRequest(from, to, departure);
+                    raptorRequest.setIgnoreTransfers(true);
+                    GHResponse expected = ptRouter.route(labelSettingRequest);
+                    GHResponse actual = ptRouter.route(raptorRequest);
+                    String message = from + " -> " + to + " at " + departure;
+                    assertEquals(expected.getAll().isEmpty(), actual.getAll().isEmpty(), message);
+                    if (!expected.getAll().isEmpty()) {
+                        if (staysSeated(expected.getBest())) {
+                            // RAPTOR does not know about block transfers, so it may have to take a later connection
+                            assertTrue(actual.getBest().getTime() >= expected.getBest().getTime(), message);
+                        } else {
+                            assertEquals(expected.getBest().getTime(), actual.getBest().getTime(), message);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameParetoSetAsLabelSetting() {
+        Request labelSettingRequest = new Request(Arrays.asList(new GHStationLocation("FUR_CREEK_RES"), new GHStationLocation("AMV")),
+                LocalDateTime.of(2007, 1, 1, 6, 0).atZone(zoneId).toInstant());
+        Request raptorRequest = raptorRequest("FUR_CREEK_RES", "AMV", LocalDateTime.of(2007, 1, 1, 6, 0));
+        assertEquals(timesAndChanges(ptRouter.route(labelSettingRequest)), timesAndChanges(ptRouter.route(raptorRequest)));
+    }
+
+    @Test
+    public void testRoute1ProfileEarliestArrival() {
+        Request ghRequest = raptorRequest("NADAV", "NANAA", LocalDateTime.of(2007, 1, 1, 6, 0));
+        ghRequest.setProfileQuery(true);
+        ghRequest.setIgnoreTransfers(true);
+        ghRequest.setLimitSolutions(Integer.MAX_VALUE);
+        ghRequest.setMaxProfileDuration(Duration.ofHours(4));
+
+        GHResponse response = ptRouter.route(ghRequest);
+        List<LocalTime> actualDepartureTimes = response.getAll().stream()
+                .map(path -> LocalTime.from(path.getLegs().get(0).getDepartureTime().toInstant().atZone(zoneId)))
+                .collect(Collectors.toList());
+        List<LocalTime> expectedDepartureTimes = Stream.of(
+                "06:44", "07:14", "07:44", "08:14", "08:44", "08:54", "09:04", "09:14", "09:24", "09:34", "09:44", "09:54", "10:04")
+                .map(LocalTime::parse)
+                .collect(Collectors.toList());
+        assertEquals(expectedDepartureTimes, actualDepartureTimes);
+    }
+
+    @Test
+    public void testRoute1ProfileOvernight() {
+        Request ghRequest = raptorRequest("NADAV", "NANAA", LocalDateTime.of(2007, 1, 1, 23, 0));
+        ghRequest.setProfileQuery(true);
+        ghRequest.setMaxProfileDuration(Duration.ofHours(1));
+        ghRequest.setIgnoreTransfers(true);
+
+        GHResponse response = ptRouter.route(ghRequest);
+        List<LocalTime> actualDepartureTimes = response.getAll().stream()
+                .map(path -> LocalTime.from(path.getLegs().get(0).getDepartureTime().toInstant().atZone(zoneId)))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(LocalTime.parse("06:44")), actualDepartureTimes);
+    }
+
+    @Test
+    public void testNoSolutionIfIDontLikeBusses() {
+        Request ghRequest = raptorRequest("NADAV", "NANAA", LocalDateTime.of(2007, 1, 1, 7, 44));
+        ghRequest.setBlockedRouteTypes(8);
+        GHResponse response = ptRouter.route(ghRequest);
+        assertTrue(response.getAll().isEmpty(), "When I block busses, there is no solution");
+    }
+
+    @Test
+    public void testArriveByIsNotSupported() {
+        Request ghRequest = raptorRequest("NADAV", "NANAA", LocalDateTime.of(2007, 1, 1, 7, 44));
+        ghRequest.setArriveBy(true);
+        assertThrows(IllegalArgumentException.class, () -> ptRouter.route(ghRequest));
+    }
+
+    private Request raptorRequest(String from, String to, LocalDateTime departure) {
+        Request request = new Request(Arrays.asList(new GHStationLocation(from), new GHStationLocation(to)), departure.atZone(zoneId).toInstant());
+        request.setAlgorithm("raptor");
+        return request;
+    }
+
+    private boolean staysSeated(ResponsePath path) {
+        long ptLegs = path.getLegs().stream().filter(leg -> leg instanceof Trip.PtLeg).count();
+        return ptLegs - 1 > path.getNumChanges();
+    }
+
+    private List<String> timesAndChanges(GHResponse response) {
+        List<String> result = new ArrayList<>();
+        for (ResponsePath path : response.getAll()) {
+            result.add(path.getTime() + "/" + path.getNumChanges());
+        }
+        return result;
+    }
+
+}
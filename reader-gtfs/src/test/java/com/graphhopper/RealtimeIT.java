@@ -20,10 +20,7 @@ package com.graphhopper;
 
 import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.config.Profile;
-import com.graphhopper.gtfs.GraphHopperGtfs;
-import com.graphhopper.gtfs.PtRouter;
-import com.graphhopper.gtfs.PtRouterImpl;
-import com.graphhopper.gtfs.Request;
+import com.graphhopper.gtfs.*;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.TranslationMap;
 import org.junit.jupiter.api.AfterAll;
@@ -34,6 +31,9 @@ import java.io.File;
 import java.math.BigDecimal;
 import java.time.*;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.google.transit.realtime.GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED;
 import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SCHEDULED;
@@ -736,6 +736,55 @@ public class RealtimeIT {
         assertEquals(250, route.getBest().getFare().multiply(BigDecimal.valueOf(100)).intValue(), "Paid expected fare"); // Two legs, no transfers allowed. Need two 'p' tickets costing 125 cents each.
     }
 
+    @Test
+    public void testIncrementalUpdate() {
+        Map<String, Transfers> transfers = new HashMap<>();
+        graphHopperGtfs.getGtfsStorage().getGtfsFeeds().forEach((id, feed) -> transfers.put(id, new Transfers(feed)));
+
+        final GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(header());
+        feedMessageBuilder.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setScheduleRelationship(SCHEDULED)
+                .setStopSequence(3)
+                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(3600).build());
+        RealtimeFeed first = realtimeFeed(transfers, feedMessageBuilder.build(), RealtimeFeed.empty());
+        assertSame(first, realtimeFeed(transfers, feedMessageBuilder.build(), first), "Nothing changed, nothing to do");
+
+        feedMessageBuilder.addEntityBuilder()
+                .setId("2")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("AB1"))
+                .addStopTimeUpdateBuilder()
+                .setStopSequence(2)
+                .setScheduleRelationship(SCHEDULED)
+                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(300).build());
+        RealtimeFeed incremental = realtimeFeed(transfers, feedMessageBuilder.build(), first);
+        RealtimeFeed fromScratch = realtimeFeed(transfers, feedMessageBuilder.build(), RealtimeFeed.empty());
+
+        Request ghRequest1 = new Request(36.914893, -116.76821, 36.914944, -116.761472); // NADAV -> NANAA
+        ghRequest1.setEarliestDepartureTime(LocalDateTime.of(2007,1,1,6,44).atZone(zoneId).toInstant());
+        Request ghRequest2 = new Request(36.915682, -116.751677, 36.88108, -116.81797); // STAGECOACH -> BULLFROG
+        ghRequest2.setEarliestDepartureTime(LocalDateTime.of(2007,1,1,0,0).atZone(zoneId).toInstant());
+        for (Request ghRequest : Arrays.asList(ghRequest1, ghRequest2)) {
+            GHResponse expected = graphHopperFactory.createWith(fromScratch).route(ghRequest);
+            GHResponse actual = graphHopperFactory.createWith(incremental).route(ghRequest);
+            assertEquals(expected.getAll().size(), actual.getAll().size());
+            for (int i = 0; i < expected.getAll().size(); i++) {
+                assertEquals(expected.getAll().get(i).getTime(), actual.getAll().get(i).getTime());
+                assertEquals(expected.getAll().get(i).isImpossible(), actual.getAll().get(i).isImpossible());
+            }
+        }
+        assertEquals(time(8, 15), graphHopperFactory.createWith(incremental).route(ghRequest2).getBest().getTime(), 0.1, "New delay is applied");
+    }
+
+    private RealtimeFeed realtimeFeed(Map<String, Transfers> transfers, GtfsRealtime.FeedMessage feedMessage, RealtimeFeed previous) {
+        return RealtimeFeed.fromProtobuf(graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getGtfsStorage(),
+                transfers, Collections.singletonMap("gtfs_0", feedMessage), previous);
+    }
 
     public GtfsRealtime.FeedHeader.Builder header() {
         return GtfsRealtime.FeedHeader.newBuilder()
@@ -0,0 +1,146 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
+import com.conveyal.gtfs.model.Trip;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedGtfsFeedTest {
+
+    private static final String LOCATION = "./target/packed-gtfs-feed-test";
+    private GTFSFeed feed;
+
+    @BeforeEach
+    public void init() throws IOException {
+        Helper.removeDir(new File(LOCATION));
+        feed = new GTFSFeed();
+        feed.loadFromZipfileOrDirectory(new File("files/sample-feed"), "");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    @Test
+    public void testSameAsFeed() {
+        Directory dir = new RAMDirectory();
+        PackedGtfsFeed packedFeed = new PackedGtfsFeed(dir, "gtfs_0");
+        packedFeed.create(100);
+        packedFeed.build(feed);
+        assertSameAsFeed(packedFeed);
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        Directory dir = new RAMDirectory(LOCATION, true).create();
+        PackedGtfsFeed packedFeed = new PackedGtfsFeed(dir, "gtfs_0");
+        packedFeed.create(100);
+        packedFeed.build(feed);
+        packedFeed.flush();
+        packedFeed.close();
+
+        dir = new RAMDirectory(LOCATION, true);
+        packedFeed = new PackedGtfsFeed(dir, "gtfs_0");
+        assertTrue(packedFeed.loadExisting());
+        assertSameAsFeed(packedFeed);
+        assertFalse(new PackedGtfsFeed(dir, "gtfs_1").loadExisting());
+    }
+
+    @Test
+    public void testNonAsciiIds() {
+        // UTF-16 and UTF-8 order differ for characters outside the basic multilingual plane
+        for (String stopId : new String[]{"Zürich", "Zebra", "Ärm", "\uD83D\uDE80", "\uFFFD", "z"}) {
+            Stop stop = new Stop();
+            stop.stop_id = stopId;
+            stop.stop_name = stopId + " name";
+            feed.stops.put(stopId, stop);
+        }
+        Directory dir = new RAMDirectory();
+        PackedGtfsFeed packedFeed = new PackedGtfsFeed(dir, "gtfs_0");
+        packedFeed.create(100);
+        packedFeed.build(feed);
+        assertSameAsFeed(packedFeed);
+        assertEquals("Zürich name", packedFeed.getStop("Zürich").stop_name);
+        assertNull(packedFeed.getStop("Zürich2"));
+        assertNull(packedFeed.getStop("Zür"));
+    }
+
+    private void assertSameAsFeed(PackedGtfsFeed packedFeed) {
+        assertEquals("America/Los_Angeles", packedFeed.getTimezone());
+        assertEquals(feed.stops.size(), packedFeed.getStopCount());
+        for (Stop expected : feed.stops.values()) {
+            Stop actual = packedFeed.getStop(expected.stop_id);
+            assertEquals(expected.stop_id, actual.stop_id);
+            assertEquals(expected.stop_name, actual.stop_name);
+            assertEquals(expected.zone_id, actual.zone_id);
+            assertEquals(expected.stop_lat, actual.stop_lat);
+            assertEquals(expected.stop_lon, actual.stop_lon);
+        }
+        assertNull(packedFeed.getStop("NO_SUCH_STOP"));
+
+        assertEquals(feed.trips.size(), packedFeed.getTripCount());
+        for (Trip expected : feed.trips.values()) {
+            Trip actual = packedFeed.getTrip(expected.trip_id);
+            assertEquals(expected.trip_id, actual.trip_id);
+            assertEquals(expected.route_id, actual.route_id);
+            assertEquals(expected.trip_headsign, actual.trip_headsign);
+
+            List<StopTime> expectedStopTimes = new ArrayList<>();
+            feed.getInterpolatedStopTimesForTrip(expected.trip_id).forEach(expectedStopTimes::add);
+            List<StopTime> actualStopTimes = packedFeed.getInterpolatedStopTimesForTrip(expected.trip_id);
+            assertEquals(expectedStopTimes.size(), actualStopTimes.size());
+            for (int i = 0; i < expectedStopTimes.size(); i++) {
+                assertSameStopTime(expectedStopTimes.get(i), actualStopTimes.get(i));
+            }
+            for (StopTime stopTime : feed.getOrderedStopTimesForTrip(expected.trip_id)) {
+                assertSameStopTime(stopTime, packedFeed.getStopTime(expected.trip_id, stopTime.stop_sequence));
+            }
+            assertNull(packedFeed.getStopTime(expected.trip_id, 1000));
+        }
+        assertNull(packedFeed.getTrip("NO_SUCH_TRIP"));
+        assertTrue(packedFeed.getOrderedStopTimesForTrip("NO_SUCH_TRIP").isEmpty());
+    }
+
+    private void assertSameStopTime(StopTime expected, StopTime actual) {
+        assertEquals(expected.trip_id, actual.trip_id);
+        assertEquals(expected.stop_id, actual.stop_id);
+        assertEquals(expected.stop_sequence, actual.stop_sequence);
+        assertEquals(expected.arrival_time, actual.arrival_time);
+        assertEquals(expected.departure_time, actual.departure_time);
+        assertEquals(expected.pickup_type, actual.pickup_type);
+        assertEquals(expected.drop_off_type, actual.drop_off_type);
+    }
+
+}
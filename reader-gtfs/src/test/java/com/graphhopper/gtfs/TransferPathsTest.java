@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferPathsTest {
+
+    private static final String LOCATION = "./target/transfer-paths-test";
+
+    @BeforeEach
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        Directory dir = new RAMDirectory(LOCATION, true).create();
+        TransferPaths transferPaths = new TransferPaths(dir);
+        transferPaths.create(100);
+        transferPaths.put(new int[]{17, 3}, new int[]{4, 8, 15});
+        transferPaths.put(new int[]{5}, new int[]{16});
+        transferPaths.put(new int[]{2000}, new int[]{23, 42});
+        assertEquals(4, transferPaths.size());
+        transferPaths.flush();
+        assertThrows(IllegalStateException.class, () -> transferPaths.put(new int[]{1}, new int[]{1}));
+        assertPaths(transferPaths);
+        transferPaths.close();
+
+        TransferPaths loaded = new TransferPaths(new RAMDirectory(LOCATION, true));
+        assertTrue(loaded.loadExisting());
+        assertEquals(4, loaded.size());
+        assertPaths(loaded);
+    }
+
+    @Test
+    public void testDuplicateTransferEdge() {
+        TransferPaths transferPaths = new TransferPaths(new RAMDirectory());
+        transferPaths.create(100);
+        transferPaths.put(new int[]{1}, new int[]{4});
+        transferPaths.put(new int[]{1}, new int[]{8});
+        assertThrows(IllegalStateException.class, transferPaths::flush);
+    }
+
+    private void assertPaths(TransferPaths transferPaths) {
+        assertArrayEquals(new int[]{4, 8, 15}, transferPaths.get(3));
+        assertArrayEquals(new int[]{4, 8, 15}, transferPaths.get(17));
+        assertArrayEquals(new int[]{16}, transferPaths.get(5));
+        assertArrayEquals(new int[]{23, 42}, transferPaths.get(2000));
+        assertNull(transferPaths.get(0));
+        assertNull(transferPaths.get(4));
+        assertNull(transferPaths.get(3000));
+    }
+
+}
@@ -18,14 +18,19 @@
 
 package com.graphhopper.jackson;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.List;
@@ -52,38 +57,128 @@ public class ResponsePathSerializer {
 
     public static String encodePolyline(PointList poly, boolean includeElevation, double precision) {
         StringBuilder sb = new StringBuilder(Math.max(20, poly.size() * 3));
-        int size = poly.size();
-        int prevLat = 0;
-        int prevLon = 0;
-        int prevEle = 0;
-        for (int i = 0; i < size; i++) {
-            int num = (int) Math.floor(poly.getLat(i) * precision);
-            encodeNumber(sb, num - prevLat);
+        PolylineReader reader = new PolylineReader(poly, includeElevation, precision);
+        char[] buffer = new char[256];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the encoded polyline as JSON string. The characters are encoded chunk by chunk directly into the output
+     * buffer of the generator, i.e. no String of the full polyline is created.
+     */
+    public static void writeEncodedPolyline(JsonGenerator gen, PointList poly, boolean includeElevation, double precision) throws IOException {
+        if (gen instanceof TokenBuffer)
+            // TokenBuffer (used e.g. for ObjectMapper.valueToTree) does not support writing strings from a Reader
+            gen.writeString(encodePolyline(poly, includeElevation, precision));
+        else
+            gen.writeString(new PolylineReader(poly, includeElevation, precision), -1);
+    }
+
+    /**
+     * Writes the points as GeoJSON LineString, the same as the JSON of {@link PointList#toLineString(boolean)} but
+     * without creating the LineString.
+     */
+    public static void writeLineString(JsonGenerator gen, PointList poly, boolean includeElevation) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "LineString");
+        gen.writeArrayFieldStart("coordinates");
+        // special case as just 1 point is not supported in the specification #1412
+        int count = poly.size() == 1 ? 2 : poly.size();
+        for (int i = 0; i < count; i++) {
+            int index = Math.min(i, poly.size() - 1);
+            gen.writeStartArray();
+            gen.writeNumber(Helper.round6(poly.getLon(index)));
+            gen.writeNumber(Helper.round6(poly.getLat(index)));
+            if (includeElevation) {
+                double ele = Helper.round2(poly.getEle(index));
+                if (!Double.isNaN(ele))
+                    gen.writeNumber(ele);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Encodes the points lazily: only the characters of a single point are buffered.
+     */
+    private static class PolylineReader extends Reader {
+        private final PointList poly;
+        private final boolean includeElevation;
+        private final double precision;
+        // an int needs at most 7 characters and a point consists of at most 3 numbers
+        private final char[] pointChars = new char[21];
+        private int pointCharsPos;
+        private int pointCharsLength;
+        private int index;
+        private int prevLat;
+        private int prevLon;
+        private int prevEle;
+
+        PolylineReader(PointList poly, boolean includeElevation, double precision) {
+            this.poly = poly;
+            this.includeElevation = includeElevation;
+            this.precision = precision;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            int count = 0;
+            while (count < len) {
+                if (pointCharsPos == pointCharsLength) {
+                    if (index == poly.size())
+                        break;
+                    encodeNextPoint();
+                }
+                int n = Math.min(len - count, pointCharsLength - pointCharsPos);
+                System.arraycopy(pointChars, pointCharsPos, cbuf, off + count, n);
+                pointCharsPos += n;
+                count += n;
+            }
+            return count == 0 && len > 0 ? -1 : count;
+        }
+
+        private void encodeNextPoint() {
+            int length = 0;
+            int num = (int) Math.floor(poly.getLat(index) * precision);
+            length = encodeNumber(pointChars, length, num - prevLat);
             prevLat = num;
-            num = (int) Math.floor(poly.getLon(i) * precision);
-            encodeNumber(sb, num - prevLon);
+            num = (int) Math.floor(poly.getLon(index) * precision);
+            length = encodeNumber(pointChars, length, num - prevLon);
             prevLon = num;
             if (includeElevation) {
-                num = (int) Math.floor(poly.getEle(i) * 100);
-                encodeNumber(sb, num - prevEle);
+                num = (int) Math.floor(poly.getEle(index) * 100);
+                length = encodeNumber(pointChars, length, num - prevEle);
                 prevEle = num;
             }
+            pointCharsPos = 0;
+            pointCharsLength = length;
+            index++;
+        }
+
+        @Override
+        public void close() {
         }
-        return sb.toString();
     }
 
-    private static void encodeNumber(StringBuilder sb, int num) {
+    private static int encodeNumber(char[] chars, int pos, int num) {
         num = num << 1;
         if (num < 0) {
             num = ~num;
         }
         while (num >= 0x20) {
             int nextValue = (0x20 | (num & 0x1f)) + 63;
-            sb.append((char) (nextValue));
+            chars[pos++] = (char) (nextValue);
             num >>= 5;
         }
         num += 63;
-        sb.append((char) (num));
+        chars[pos++] = (char) (num);
+        return pos;
     }
 
     public static ObjectNode jsonObject(GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double took) {
@@ -121,4 +216,58 @@ public class ResponsePathSerializer {
         }
         return json;
     }
+
+    /**
+     * Writes the same JSON as {@link #jsonObject} but directly to the generator, i.e. without creating the JsonNode
+     * tree first. The start and end of the JSON object are not written so that further fields can be appended.
+     */
+    public static void writeJsonFields(JsonGenerator gen, SerializerProvider provider, GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double took) throws IOException {
+        provider.defaultSerializeField("hints", ghRsp.getHints().toMap(), gen);
+        gen.writeObjectFieldStart("info");
+        gen.writeArrayFieldStart("copyrights");
+        for (String copyright : COPYRIGHTS) {
+            gen.writeString(copyright);
+        }
+        gen.writeEndArray();
+        gen.writeNumberField("took", Math.round(took));
+        gen.writeEndObject();
+        gen.writeArrayFieldStart("paths");
+        for (ResponsePath p : ghRsp.getAll()) {
+            gen.writeStartObject();
+            gen.writeNumberField("distance", Helper.round(p.getDistance(), 3));
+            gen.writeNumberField("weight", Helper.round6(p.getRouteWeight()));
+            gen.writeNumberField("time", p.getTime());
+            gen.writeNumberField("transfers", p.getNumChanges());
+            if (!p.getDescription().isEmpty()) {
+                provider.defaultSerializeField("description", p.getDescription(), gen);
+            }
+            if (calcPoints) {
+                gen.writeBooleanField("points_encoded", pointsEncoded);
+                provider.defaultSerializeField("bbox", p.calcBBox2D(), gen);
+                gen.writeFieldName("points");
+                writePoints(gen, p.getPoints(), enableElevation, pointsEncoded);
+                if (enableInstructions) {
+                    provider.defaultSerializeField("instructions", p.getInstructions(), gen);
+                }
+                provider.defaultSerializeField("legs", p.getLegs(), gen);
+                provider.defaultSerializeField("details", p.getPathDetails(), gen);
+                gen.writeNumberField("ascend", p.getAscend());
+                gen.writeNumberField("descend", p.getDescend());
+            }
+            gen.writeFieldName("snapped_waypoints");
+            writePoints(gen, p.getWaypoints(), enableElevation, pointsEncoded);
+            if (p.getFare() != null) {
+                gen.writeStringField("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writePoints(JsonGenerator gen, PointList points, boolean enableElevation, boolean pointsEncoded) throws IOException {
+        if (pointsEncoded)
+            writeEncodedPolyline(gen, points, enableElevation, 1e5);
+        else
+            writeLineString(gen, points, enableElevation);
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.graphhopper.GHResponse;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The JSON response of the routing API which is written field by field to the output stream when it is serialized,
+ * see {@link ResponsePathSerializer#writeJsonFields}. The result is the same as for
+ * {@link ResponsePathSerializer#jsonObject} but no JsonNode tree and no strings for the encoded polylines are created.
+ */
+public class StreamingGHResponse implements JsonSerializable {
+
+    private final GHResponse ghRsp;
+    private final boolean enableInstructions;
+    private final boolean calcPoints;
+    private final boolean enableElevation;
+    private final boolean pointsEncoded;
+    private final double took;
+    private final Map<String, Object> additionalFields = new LinkedHashMap<>();
+
+    public StreamingGHResponse(GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double took) {
+        this.ghRsp = ghRsp;
+        this.enableInstructions = enableInstructions;
+        this.calcPoints = calcPoints;
+        this.enableElevation = enableElevation;
+        this.pointsEncoded = pointsEncoded;
+        this.took = took;
+    }
+
+    /**
+     * Adds a field which is written after the fields of the GHResponse.
+     */
+    public StreamingGHResponse putPOJO(String fieldName, Object value) {
+        additionalFields.put(fieldName, value);
+        return this;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        ResponsePathSerializer.writeJsonFields(gen, provider, ghRsp, enableInstructions, calcPoints, enableElevation, pointsEncoded, took);
+        for (Map.Entry<String, Object> field : additionalFields.entrySet()) {
+            provider.defaultSerializeField(field.getKey(), field.getValue(), gen);
+        }
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+        serialize(gen, provider);
+    }
+}
@@ -66,6 +66,10 @@ public class Parameters {
             public static final String MAX_WEIGHT = ALT_ROUTE + ".max_weight_factor";
 
             public static final String MAX_SHARE = ALT_ROUTE + ".max_share_factor";
+
+            public static final String MAX_VIA_CANDIDATES = ALT_ROUTE + ".max_via_candidates";
+
+            public static final String PRUNE_PLATEAUS = ALT_ROUTE + ".prune_plateaus";
         }
 
         public static final class AStar {
@@ -97,6 +101,26 @@ public class Parameters {
         public static final String U_TURN_COSTS = "u_turn_costs";
         public static final String MAX_VISITED_NODES = "max_visited_nodes";
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
+        /**
+         * number of threads used to calculate the independent legs of a via-route concurrently, 1 disables this
+         */
+        public static final String INIT_VIA_LEG_THREADS = ROUTING_INIT_PREFIX + "via_leg_threads";
+        /**
+         * maximum memory in MB used to cache the responses of repeated route requests, 0 disables the cache
+         */
+        public static final String INIT_RESPONSE_CACHE_SIZE_MB = ROUTING_INIT_PREFIX + "response_cache_size_mb";
+        /**
+         * maximum number of grid cells for which the closest edge is cached, 0 disables the cache
+         */
+        public static final String INIT_SNAP_CACHE_SIZE = ROUTING_INIT_PREFIX + "snap_cache_size";
+        /**
+         * if true the query graph of every routing thread is reset and reused for the next request
+         */
+        public static final String INIT_REUSE_QUERY_GRAPHS = ROUTING_INIT_PREFIX + "reuse_query_graphs";
+        /**
+         * if false the speeds of the speed overlay (e.g. live traffic) are ignored for this request
+         */
+        public static final String SPEED_OVERLAY = "speed_overlay";
         /**
          * if true the response will contain turn instructions
          */
@@ -17,10 +17,18 @@
  */
 package com.graphhopper.jackson;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -79,4 +87,40 @@ public class ResponsePathRepresentationTest {
     public void testEncode1e6() {
         assertEquals("ohdfzAgt}bVoEL", ResponsePathSerializer.encodePolyline(Helper.createPointList(47.827608, 12.123476, 47.827712, 12.123469), false, 1e6));
     }
+
+    @Test
+    public void testStreamingSameAsJsonObject() throws Exception {
+        // more points than fit into the buffers of the generator and of the polyline encoding
+        PointList points = new PointList(5000, true);
+        for (int i = 0; i < 5000; i++) {
+            points.add(50 + i * 0.0001234, 10 - i * 0.0004321, i % 2 == 0 ? 100 + i * 0.37 : 20);
+        }
+        ResponsePath path = new ResponsePath().setPoints(points).
+                setWaypoints(Helper.createPointList3D(50, 10, 100, 50.617, 7.84, 20)).
+                setDistance(1234.56789).setTime(98765).setRouteWeight(123.4567891).
+                setAscend(10.5).setDescend(3.25).setDescription(Collections.singletonList("via A"));
+        path.setFare(new BigDecimal("2.5"));
+        GHResponse rsp = new GHResponse();
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        rsp.add(path);
+        rsp.add(new ResponsePath().setPoints(Helper.createPointList(50, 10)).setWaypoints(Helper.createPointList(50, 10)));
+
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        for (boolean calcPoints : Arrays.asList(true, false)) {
+            for (boolean pointsEncoded : Arrays.asList(true, false)) {
+                for (boolean elevation : Arrays.asList(true, false)) {
+                    String expected = objectMapper.writeValueAsString(ResponsePathSerializer.jsonObject(rsp, false, calcPoints, elevation, pointsEncoded, 12.3));
+                    StreamingGHResponse streaming = new StreamingGHResponse(rsp, false, calcPoints, elevation, pointsEncoded, 12.3);
+                    assertEquals(expected, objectMapper.writeValueAsString(streaming));
+                    assertEquals(expected, new String(objectMapper.writeValueAsBytes(streaming), StandardCharsets.UTF_8));
+                    assertEquals(expected, objectMapper.writeValueAsString(objectMapper.valueToTree(streaming)));
+                }
+            }
+        }
+
+        String expected = objectMapper.writeValueAsString(ResponsePathSerializer.jsonObject(rsp, false, true, false, true, 12.3).
+                putPOJO("map_matching", Collections.singletonMap("distance", 3)));
+        assertEquals(expected, objectMapper.writeValueAsString(new StreamingGHResponse(rsp, false, true, false, true, 12.3).
+                putPOJO("map_matching", Collections.singletonMap("distance", 3))));
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.routing.RouterMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the stages of the route requests as timers and the visited nodes as histograms in the Dropwizard
+ * {@link MetricRegistry}, so they are available at the /metrics endpoint of the admin connector. The metrics are
+ * named route.&lt;profile&gt;.&lt;algorithm&gt;.&lt;stage&gt; and route.&lt;profile&gt;.&lt;algorithm&gt;.visited_nodes.
+ */
+public class DropwizardRouterMetrics implements RouterMetrics {
+    private final MetricRegistry registry;
+
+    public DropwizardRouterMetrics(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordTime(String profile, String algorithm, Stage stage, long nanos) {
+        registry.timer(createName(profile, algorithm, stage.getName())).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordVisitedNodes(String profile, String algorithm, long visitedNodes) {
+        registry.histogram(createName(profile, algorithm, "visited_nodes")).update(visitedNodes);
+    }
+
+    static String createName(String profile, String algorithm, String metric) {
+        return algorithm == null
+                ? MetricRegistry.name("route", profile, metric)
+                : MetricRegistry.name("route", profile, algorithm, metric);
+    }
+}
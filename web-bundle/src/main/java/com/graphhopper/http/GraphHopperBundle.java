@@ -18,11 +18,13 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.gtfs.*;
 import com.graphhopper.http.health.GraphHopperHealthCheck;
 import com.graphhopper.isochrone.algorithm.JTSTriangulator;
@@ -30,9 +32,13 @@ import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.resources.*;
+import com.graphhopper.routing.RouteResponseCache;
+import com.graphhopper.routing.ch.ShortcutUnpackingCache;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.SnapCache;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
@@ -44,6 +50,8 @@ import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import javax.inject.Inject;
 
+import java.util.function.Supplier;
+
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
     static class TranslationMapFactory implements Factory<TranslationMap> {
@@ -257,6 +265,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        graphHopper.setRouterMetrics(new DropwizardRouterMetrics(environment.metrics()));
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
@@ -304,8 +313,43 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
+        for (CHProfile chProfile : configuration.getGraphHopperConfiguration().getCHProfiles())
+            registerUnpackingCacheMetrics(environment, graphHopper, chProfile.getProfile());
+        registerResponseCacheMetrics(environment, graphHopper);
+        registerSnapCacheMetrics(environment, graphHopper);
         environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
     }
+
+    private static void registerUnpackingCacheMetrics(Environment environment, GraphHopper graphHopper, String profile) {
+        // the CH graphs are only available once GraphHopper is started, so we look up the cache when the gauges are read
+        Supplier<ShortcutUnpackingCache> cache = () -> {
+            RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profile);
+            return chGraph == null ? null : chGraph.getShortcutUnpackingCache();
+        };
+        String prefix = "ch.unpacking_cache." + profile;
+        environment.metrics().register(prefix + ".hit_rate", (Gauge<Double>) () -> cache.get() == null ? 0 : cache.get().getHitRate());
+        environment.metrics().register(prefix + ".hits", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getHits());
+        environment.metrics().register(prefix + ".misses", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getMisses());
+        environment.metrics().register(prefix + ".size", (Gauge<Integer>) () -> cache.get() == null ? 0 : cache.get().size());
+    }
+
+    private static void registerResponseCacheMetrics(Environment environment, GraphHopper graphHopper) {
+        // a new cache is created whenever the graph is loaded, so we look it up when the gauges are read
+        Supplier<RouteResponseCache> cache = graphHopper::getRouteResponseCache;
+        environment.metrics().register("route.response_cache.hit_rate", (Gauge<Double>) () -> cache.get() == null ? 0 : cache.get().getHitRate());
+        environment.metrics().register("route.response_cache.hits", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getHits());
+        environment.metrics().register("route.response_cache.misses", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getMisses());
+        environment.metrics().register("route.response_cache.size", (Gauge<Integer>) () -> cache.get() == null ? 0 : cache.get().size());
+        environment.metrics().register("route.response_cache.bytes", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getBytes());
+    }
+
+    private static void registerSnapCacheMetrics(Environment environment, GraphHopper graphHopper) {
+        Supplier<SnapCache> cache = graphHopper::getSnapCache;
+        environment.metrics().register("route.snap_cache.hit_rate", (Gauge<Double>) () -> cache.get() == null ? 0 : cache.get().getHitRate());
+        environment.metrics().register("route.snap_cache.hits", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getHits());
+        environment.metrics().register("route.snap_cache.misses", (Gauge<Long>) () -> cache.get() == null ? 0 : cache.get().getMisses());
+        environment.metrics().register("route.snap_cache.size", (Gauge<Integer>) () -> cache.get() == null ? 0 : cache.get().size());
+    }
 }
@@ -77,12 +77,12 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
                 .refreshAfterWrite(1, TimeUnit.MINUTES)
                 .build(new CacheLoader<String, RealtimeFeed>() {
                     public RealtimeFeed load(String key) {
-                        return fetchFeedsAndCreateGraph();
+                        return fetchFeedsAndCreateGraph(RealtimeFeed.empty());
                     }
 
                     @Override
                     public ListenableFuture<RealtimeFeed> reload(String key, RealtimeFeed oldValue) {
-                        ListenableFutureTask<RealtimeFeed> task = ListenableFutureTask.create(() -> fetchFeedsAndCreateGraph());
+                        ListenableFutureTask<RealtimeFeed> task = ListenableFutureTask.create(() -> fetchFeedsAndCreateGraph(oldValue));
                         executor.execute(task);
                         return task;
                     }
@@ -108,7 +108,9 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
     public void stop() {
     }
 
-    private RealtimeFeed fetchFeedsAndCreateGraph() {
+    // The old value stays in the cache and is used for routing until the new one is ready, so the new one
+    // is created incrementally from it instead of being rebuilt from scratch on every refresh.
+    private RealtimeFeed fetchFeedsAndCreateGraph(RealtimeFeed previous) {
         Map<String, GtfsRealtime.FeedMessage> feedMessageMap = new HashMap<>();
         for (FeedConfiguration configuration : bundleConfiguration.gtfsrealtime().getFeeds()) {
             try {
@@ -118,7 +120,7 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
                 throw new RuntimeException(e);
             }
         }
-        return RealtimeFeed.fromProtobuf(baseGraph, encodingManager, gtfsStorage, this.transfers, feedMessageMap);
+        return RealtimeFeed.fromProtobuf(baseGraph, encodingManager, gtfsStorage, this.transfers, feedMessageMap, previous);
     }
 
 }
@@ -17,8 +17,12 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -30,6 +34,7 @@ import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.jackson.StreamingGHResponse;
 import com.graphhopper.matching.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
@@ -42,6 +47,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
 import java.util.*;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
@@ -134,7 +140,7 @@ public class MapMatchingResource {
                 .putPOJO("mapmatching", matching.getStatistics()).toString());
 
         if ("extended_json".equals(outType)) {
-            return Response.ok(convertToTree(matchResult, enableElevation, pointsEncoded)).
+            return Response.ok(convertToStream(matchResult, enableElevation, pointsEncoded)).
                     header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                     build();
         } else {
@@ -162,7 +168,7 @@ public class MapMatchingResource {
                         header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                         build();
             } else {
-                ObjectNode map = ResponsePathSerializer.jsonObject(rsp, instructions, calcPoints, enableElevation, pointsEncoded, sw.getMillisDouble());
+                StreamingGHResponse map = new StreamingGHResponse(rsp, instructions, calcPoints, enableElevation, pointsEncoded, sw.getMillisDouble());
 
                 Map<String, Object> matchStatistics = new HashMap<>();
                 matchStatistics.put("distance", matchResult.getMatchLength());
@@ -215,4 +221,53 @@ public class MapMatchingResource {
         return root;
     }
 
+    /**
+     * Creates the same JSON as {@link #convertToTree} but writes it directly to the generator when it is serialized.
+     */
+    public static JsonSerializable convertToStream(MatchResult result, boolean elevation, boolean pointsEncoded) {
+        return new JsonSerializable.Base() {
+            @Override
+            public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+                gen.writeStartObject();
+                gen.writeObjectFieldStart("diary");
+                gen.writeArrayFieldStart("entries");
+                gen.writeStartObject();
+                gen.writeArrayFieldStart("links");
+                for (int emIndex = 0; emIndex < result.getEdgeMatches().size(); emIndex++) {
+                    gen.writeStartObject();
+                    EdgeMatch edgeMatch = result.getEdgeMatches().get(emIndex);
+                    PointList pointList = edgeMatch.getEdgeState().fetchWayGeometry(emIndex == 0 ? FetchMode.ALL : FetchMode.PILLAR_AND_ADJ);
+                    gen.writeObjectFieldStart("geometry");
+                    gen.writeFieldName("coordinates");
+                    if (pointsEncoded)
+                        ResponsePathSerializer.writeEncodedPolyline(gen, pointList, elevation, 1e5);
+                    else
+                        ResponsePathSerializer.writeLineString(gen, pointList, elevation);
+                    gen.writeStringField("type", pointList.size() < 2 ? "Point" : "LineString");
+                    gen.writeEndObject();
+                    gen.writeNumberField("id", edgeMatch.getEdgeState().getEdge());
+                    gen.writeArrayFieldStart("wpts");
+                    for (State extension : edgeMatch.getStates()) {
+                        gen.writeStartObject();
+                        gen.writeNumberField("x", extension.getSnap().getSnappedPoint().lon);
+                        gen.writeNumberField("y", extension.getSnap().getSnappedPoint().lat);
+                        gen.writeEndObject();
+                    }
+                    gen.writeEndArray();
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+                gen.writeEndArray();
+                gen.writeEndObject();
+                gen.writeEndObject();
+            }
+
+            @Override
+            public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+                serialize(gen, serializers);
+            }
+        };
+    }
+
 }
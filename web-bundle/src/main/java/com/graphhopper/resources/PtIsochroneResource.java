@@ -114,7 +114,7 @@ public class PtIsochroneResource {
                 z1.merge(nodeCoordinate, (double) (label.currentTime - initialTime.toEpochMilli()) * (reverseFlow ? -1 : 1), Math::min);
             } else if (label.edge != null && (label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT || label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT)) {
                 GtfsStorage.PlatformDescriptor platformDescriptor = label.edge.getPlatformDescriptor();
-                Stop stop = gtfsStorage.getGtfsFeeds().get(platformDescriptor.feed_id).stops.get(platformDescriptor.stop_id);
+                Stop stop = gtfsStorage.getPackedGtfsFeeds().get(platformDescriptor.feed_id).getStop(platformDescriptor.stop_id);
                 Coordinate nodeCoordinate = new Coordinate(stop.stop_lon, stop.stop_lat);
                 z1.merge(nodeCoordinate, (double) (label.currentTime - initialTime.toEpochMilli()) * (reverseFlow ? -1 : 1), Math::min);
             }
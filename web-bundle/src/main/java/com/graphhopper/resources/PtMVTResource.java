@@ -76,7 +76,7 @@ public class PtMVTResource {
             for (PtGraph.PtEdge ptEdge : gtfsStorage.getPtGraph().backEdgesAround(edgeId)) {
                 if (ptEdge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
                     GtfsStorage.PlatformDescriptor fromPlatformDescriptor = ptEdge.getAttrs().platformDescriptor;
-                    Stop stop = gtfsStorage.getGtfsFeeds().get(fromPlatformDescriptor.feed_id).stops.get(fromPlatformDescriptor.stop_id);
+                    Stop stop = gtfsStorage.getPackedGtfsFeeds().get(fromPlatformDescriptor.feed_id).getStop(fromPlatformDescriptor.stop_id);
                     Map<String, Object> properties = new HashMap<>(2);
                     properties.put("feed_id", fromPlatformDescriptor.feed_id);
                     properties.put("stop_id", fromPlatformDescriptor.stop_id);
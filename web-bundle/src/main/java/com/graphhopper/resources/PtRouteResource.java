@@ -18,7 +18,6 @@
 
 package com.graphhopper.resources;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.GHResponse;
 import com.graphhopper.gtfs.GHLocation;
 import com.graphhopper.gtfs.PtRouter;
@@ -26,7 +25,7 @@ import com.graphhopper.gtfs.Request;
 import com.graphhopper.http.DurationParam;
 import com.graphhopper.http.GHLocationParam;
 import com.graphhopper.http.OffsetDateTimeParam;
-import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.jackson.StreamingGHResponse;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.StopWatch;
 import io.dropwizard.jersey.params.AbstractParam;
@@ -54,7 +53,7 @@ public class PtRouteResource {
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public ObjectNode route(@QueryParam("point") @Size(min=2,max=2) List<GHLocationParam> requestPoints,
+    public StreamingGHResponse route(@QueryParam("point") @Size(min=2,max=2) List<GHLocationParam> requestPoints,
                             @QueryParam("pt.earliest_departure_time") @NotNull OffsetDateTimeParam departureTimeParam,
                             @QueryParam("pt.profile_duration") DurationParam profileDuration,
                             @QueryParam("pt.arrive_by") @DefaultValue("false") boolean arriveBy,
@@ -65,7 +64,8 @@ public class PtRouteResource {
                             @QueryParam("pt.limit_trip_time") DurationParam limitTripTime,
                             @QueryParam("pt.limit_street_time") DurationParam limitStreetTime,
                             @QueryParam("pt.access_profile") String accessProfile,
-                            @QueryParam("pt.egress_profile") String egressProfile) {
+                            @QueryParam("pt.egress_profile") String egressProfile,
+                            @QueryParam("pt.algorithm") String algorithm) {
         StopWatch stopWatch = new StopWatch().start();
         List<GHLocation> points = requestPoints.stream().map(AbstractParam::get).collect(toList());
         Instant departureTime = departureTimeParam.get().toInstant();
@@ -81,9 +81,10 @@ public class PtRouteResource {
         Optional.ofNullable(limitStreetTime.get()).ifPresent(request::setLimitStreetTime);
         Optional.ofNullable(accessProfile).ifPresent(request::setAccessProfile);
         Optional.ofNullable(egressProfile).ifPresent(request::setEgressProfile);
+        Optional.ofNullable(algorithm).ifPresent(request::setAlgorithm);
 
         GHResponse route = ptRouter.route(request);
-        return ResponsePathSerializer.jsonObject(route, true, true, false, false, stopWatch.stop().getMillis());
+        return new StreamingGHResponse(route, true, true, false, false, stopWatch.stop().getMillis());
     }
 
 }
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
@@ -25,7 +27,8 @@ import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.GHRequestTransformer;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.jackson.MultiException;
-import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.jackson.StreamingGHResponse;
+import com.graphhopper.routing.RouterMetrics;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import io.dropwizard.jersey.params.AbstractParam;
@@ -38,6 +41,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -153,7 +157,7 @@ public class RouteResource {
                             header("X-GH-Took", "" + Math.round(took)).
                             build()
                     :
-                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took)).
+                    Response.ok(createJsonResponse(ghResponse, profileName, instructions, calcPoints, enableElevation, pointsEncoded, took)).
                             header("X-GH-Took", "" + Math.round(took)).
                             type(MediaType.APPLICATION_JSON).
                             build();
@@ -200,13 +204,31 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took)).
+            return Response.ok(createJsonResponse(ghResponse, request.getProfile(), instructions, calcPoints, enableElevation, pointsEncoded, took)).
                     header("X-GH-Took", "" + Math.round(took)).
                     type(MediaType.APPLICATION_JSON).
                     build();
         }
     }
 
+    /**
+     * The response is serialized after this resource returned, so we measure the serialization in the entity itself
+     */
+    private StreamingGHResponse createJsonResponse(GHResponse ghResponse, String profile, boolean instructions, boolean calcPoints,
+                                                   boolean enableElevation, boolean pointsEncoded, double took) {
+        RouterMetrics routerMetrics = graphHopper.getRouterMetrics();
+        if (routerMetrics == null)
+            return new StreamingGHResponse(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took);
+        return new StreamingGHResponse(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took) {
+            @Override
+            public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+                long start = System.nanoTime();
+                super.serialize(gen, provider);
+                routerMetrics.recordTime(profile, null, RouterMetrics.Stage.SERIALIZATION, System.nanoTime() - start);
+            }
+        };
+    }
+
     public static void removeLegacyParameters(PMap hints) {
         // these parameters should only be used to resolve the profile, but should not be passed to GraphHopper
         hints.remove("weighting");
@@ -19,6 +19,8 @@
 package com.graphhopper.application.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.jackson.Jackson;
 import com.graphhopper.matching.EdgeMatch;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.Observation;
@@ -58,6 +60,16 @@ public class ExtendedJsonResponseTest {
         assertEquals("-38.9999", link.get("wpts").get(1).get("x").asText(), "wpts[1].x should exists");
     }
 
+    @Test
+    public void streamShouldBeSameAsTree() throws Exception {
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        for (boolean pointsEncoded : new boolean[]{true, false}) {
+            MatchResult matchResult = new MatchResult(getEdgeMatch());
+            assertEquals(objectMapper.writeValueAsString(MapMatchingResource.convertToTree(matchResult, false, pointsEncoded)),
+                    objectMapper.writeValueAsString(MapMatchingResource.convertToStream(matchResult, false, pointsEncoded)));
+        }
+    }
+
     private List<EdgeMatch> getEdgeMatch() {
         List<EdgeMatch> list = new ArrayList<>();
         list.add(new EdgeMatch(getEdgeIterator(), getGpxExtension()));
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.application.resources;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
@@ -111,6 +112,22 @@ public class RouteResourceTest {
         assertTrue(distance < 9500, "distance wasn't correct:" + distance);
     }
 
+    @Test
+    public void testMetrics() {
+        long count = app.getEnvironment().metrics().timer("route.my_car.ch.search").getCount();
+        long serializationCount = app.getEnvironment().metrics().timer("route.my_car.serialization").getCount();
+        final Response response = clientTarget(app, "/route?profile=my_car&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        response.readEntity(JsonNode.class);
+        MetricRegistry metrics = app.getEnvironment().metrics();
+        assertEquals(count + 1, metrics.timer("route.my_car.ch.search").getCount());
+        for (String stage : Arrays.asList("snapping", "query_graph", "path_extraction", "post_processing"))
+            assertTrue(metrics.timer("route.my_car.ch." + stage).getCount() > count, stage);
+        assertEquals(serializationCount + 1, metrics.timer("route.my_car.serialization").getCount());
+        assertTrue(metrics.histogram("route.my_car.ch.visited_nodes").getSnapshot().getMax() > 0);
+    }
+
     @Test
     public void testBasicQuerySamePoint() {
         final Response response = clientTarget(app, "/route?profile=my_car&" +